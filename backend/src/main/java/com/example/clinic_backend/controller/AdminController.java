@@ -5,9 +5,23 @@ import com.example.clinic_backend.model.PatientRegistration;
 import com.example.clinic_backend.model.Payment;
 import com.example.clinic_backend.repository.PatientRegistrationRepository;
 import com.example.clinic_backend.repository.PaymentRepository;
+import com.example.clinic_backend.service.AppointmentCube;
+import com.example.clinic_backend.service.AssignmentPolicy;
 import com.example.clinic_backend.service.DoctorService;
+import com.example.clinic_backend.service.DoctorStatisticsRecorder;
+import com.example.clinic_backend.service.InvoiceStatisticsService;
+import com.example.clinic_backend.service.ExternalCallGuard;
 import com.example.clinic_backend.service.PatientRegistrationService;
+import com.example.clinic_backend.service.RegistrationIntakeService;
+import com.example.clinic_backend.service.ReminderScheduler;
+import com.example.clinic_backend.service.SlotAssignmentService;
+import com.example.clinic_backend.service.SlotOccupancyStream;
+import com.example.clinic_backend.service.StompDigestPublisher;
+import com.example.clinic_backend.service.NotificationDispatcher;
+import com.example.clinic_backend.service.OutboxService;
+import com.example.clinic_backend.service.WaitlistService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -39,6 +53,42 @@ public class AdminController {
     @Autowired
     private PatientRegistrationRepository patientRegistrationRepository;
     
+    @Autowired
+    private SlotAssignmentService slotAssignmentService;
+    
+    @Autowired
+    private RegistrationIntakeService intakeService;
+    
+    @Autowired
+    private WaitlistService waitlistService;
+    
+    @Autowired
+    private NotificationDispatcher notificationDispatcher;
+    
+    @Autowired
+    private OutboxService outboxService;
+    
+    @Autowired
+    private ReminderScheduler reminderScheduler;
+    
+    @Autowired
+    private StompDigestPublisher stompDigestPublisher;
+    
+    @Autowired
+    private SlotOccupancyStream slotOccupancyStream;
+    
+    @Autowired
+    private ExternalCallGuard externalCallGuard;
+    
+    @Autowired
+    private DoctorStatisticsRecorder doctorStatisticsRecorder;
+    
+    @Autowired
+    private AppointmentCube appointmentCube;
+    
+    @Autowired
+    private InvoiceStatisticsService invoiceStatisticsService;
+    
     // API lấy tất cả đơn đăng ký
     @GetMapping("/registrations")
     public ResponseEntity<List<PatientRegistration>> getAllRegistrations() {
@@ -69,22 +119,16 @@ public class AdminController {
         System.out.println("Lay thong ke don dang ky");
         
         try {
-            List<PatientRegistration> all = registrationService.getAll();
+            // dem tung loai trang thai tu cube phan tich (khong tai toan bo don)
+            Map<String, Long> byStatus = appointmentCube.countBy(new AppointmentCube.Slice(), AppointmentCube.Dimension.STATUS);
             
             Map<String, Object> stats = new HashMap<>();
             
-            // dem tung loai trang thai
-            long total = all.size();
-            long approved = all.stream().filter(r -> "APPROVED".equals(r.getStatus())).count();
-            long pending = all.stream().filter(r -> "PENDING".equals(r.getStatus())).count();
-            long review = all.stream().filter(r -> "NEEDS_MANUAL_REVIEW".equals(r.getStatus())).count();
-            long rejected = all.stream().filter(r -> "REJECTED".equals(r.getStatus())).count();
-            
-            stats.put("TOTAL", total);
-            stats.put("APPROVED", approved);
-            stats.put("PENDING", pending);
-            stats.put("NEEDS_MANUAL_REVIEW", review);
-            stats.put("REJECTED", rejected);
+            stats.put("TOTAL", byStatus.values().stream().mapToLong(Long::longValue).sum());
+            stats.put("APPROVED", byStatus.getOrDefault("APPROVED", 0L));
+            stats.put("PENDING", byStatus.getOrDefault("PENDING", 0L));
+            stats.put("NEEDS_MANUAL_REVIEW", byStatus.getOrDefault("NEEDS_MANUAL_REVIEW", 0L));
+            stats.put("REJECTED", byStatus.getOrDefault("REJECTED", 0L));
             
             System.out.println("Thong ke: " + stats);
             return ResponseEntity.ok(stats);
@@ -114,11 +158,7 @@ public class AdminController {
         System.out.println("Danh dau can xu ly thu cong id=" + id);
         
         try {
-            PatientRegistration registration = registrationService.getById(id)
-                .orElseThrow(() -> new RuntimeException("Khong tim thay don"));
-            
-            registration.setStatus("NEEDS_MANUAL_REVIEW");
-            PatientRegistration updated = registrationService.update(registration);
+            PatientRegistration updated = registrationService.markForManualReview(id);
             
             return ResponseEntity.ok(updated);
             
@@ -253,10 +293,11 @@ public class AdminController {
         }
     }
     
-    // API duyet nhanh
+    // API duyet nhanh: tu chon bac si va khung gio theo chinh sach phan cong
     @PostMapping("/registrations/{id}/quick-approve")
-    public ResponseEntity<?> quickApprove(@PathVariable Long id) {
-        System.out.println("Duyet nhanh don " + id);
+    public ResponseEntity<?> quickApprove(@PathVariable Long id,
+                                          @RequestParam(required = false) String policy) {
+        System.out.println("Duyet nhanh don " + id + ", chinh sach: " + policy);
         
         try {
             Optional<PatientRegistration> registrationOpt = registrationService.getById(id);
@@ -265,6 +306,7 @@ public class AdminController {
             }
             
             PatientRegistration registration = registrationOpt.get();
+            AssignmentPolicy assignmentPolicy = AssignmentPolicy.from(policy);
             
             // lay bac si theo khoa
             List<Doctor> doctors = doctorService.getDoctorsByDepartmentName(registration.getDepartment());
@@ -273,43 +315,13 @@ public class AdminController {
                 return ResponseEntity.badRequest().body("Khong co bac si nao trong khoa " + registration.getDepartment());
             }
             
-            // khung gio co dinh
-            String[] timeSlots = {
-                "07:00-08:00", "08:00-09:00", "09:00-10:00", "10:00-11:00", 
-                "11:00-12:00", "13:00-14:00", "14:00-15:00", "15:00-16:00", "16:00-17:00"
-            };
+            // chon o tot nhat trong bang chiem cho cua khoa (khong query tung o)
+            PatientRegistration approved = slotAssignmentService.assignAndApprove(registration, doctors, assignmentPolicy);
             
-            // tim slot trong
-            Doctor selectedDoctor = null;
-            String selectedTimeSlot = null;
-            
-            for (Doctor doctor : doctors) {
-                for (String timeSlot : timeSlots) {
-                    boolean slotAvailable = checkAvailableSlots(
-                        doctor.getId(),
-                        registration.getAppointmentDate(),
-                        timeSlot
-                    );
-                    
-                    if (slotAvailable) {
-                        selectedDoctor = doctor;
-                        selectedTimeSlot = timeSlot;
-                        break;
-                    }
-                }
-                if (selectedDoctor != null) break;
-            }
-            
-            if (selectedDoctor == null) {
+            if (approved == null) {
                 return ResponseEntity.badRequest().body("Khong tim thay khung gio nao con trong");
             }
             
-            // phan cong va duyet
-            registration.setDoctorId(selectedDoctor.getId());
-            registration.setAssignedSession(selectedTimeSlot);
-            
-            PatientRegistration approved = registrationService.tryApproveRegistration(registration.getId());
-            
             return ResponseEntity.ok(approved);
             
         } catch (Exception e) {
@@ -318,6 +330,113 @@ public class AdminController {
         }
     }
     
+    // so don dang cho trong hang doi intake
+    @GetMapping("/intake/stats")
+    public ResponseEntity<Map<String, Object>> getIntakeStats() {
+        return ResponseEntity.ok(intakeService.getQueueStats());
+    }
+    
+    // so don trong danh sach cho tu dong duyet
+    @GetMapping("/waitlist/stats")
+    public ResponseEntity<Map<String, Object>> getWaitlistStats() {
+        return ResponseEntity.ok(waitlistService.getStats());
+    }
+    
+    // do sau hang doi thong bao real-time, so frame STOMP da gom
+    @GetMapping("/notifications/stats")
+    public ResponseEntity<Map<String, Object>> getNotificationStats() {
+        Map<String, Object> stats = new HashMap<>(notificationDispatcher.getStats());
+        stats.put("stomp", stompDigestPublisher.getStats());
+        stats.put("slotStream", slotOccupancyStream.getStats());
+        return ResponseEntity.ok(stats);
+    }
+    
+    // so lich hen dang hen gio nhac
+    @GetMapping("/reminders/stats")
+    public ResponseEntity<Map<String, Object>> getReminderStats() {
+        return ResponseEntity.ok(reminderScheduler.getStats());
+    }
+    
+    // so thong bao outbox theo trang thai, cac thong bao DEAD gan nhat
+    @GetMapping("/outbox/stats")
+    public ResponseEntity<Map<String, Object>> getOutboxStats() {
+        return ResponseEntity.ok(outboxService.getStats());
+    }
+    
+    // trang thai bulkhead / circuit breaker cua cac dich vu ngoai (SMTP, ...)
+    @GetMapping("/external/stats")
+    public ResponseEntity<Map<String, Object>> getExternalStats() {
+        return ResponseEntity.ok(externalCallGuard.getStats());
+    }
+    
+    // bo dem thong ke bac si: so dong cap nhat theo chenh lech, lan doi chieu gan nhat
+    @GetMapping("/doctor-statistics/stats")
+    public ResponseEntity<Map<String, Object>> getDoctorStatisticsStats() {
+        return ResponseEntity.ok(doctorStatisticsRecorder.getStats());
+    }
+    
+    // cat / gop lich hen tu cube phan tich, vd groupBy=DEPARTMENT,WEEK (doanh thu theo khoa moi tuan),
+    // groupBy=SLOT (ty le vang theo khung gio); loc theo doctorId, department, from / to, slot, status, paymentStatus
+    @GetMapping("/analytics/appointments")
+    public ResponseEntity<?> getAppointmentAnalytics(
+            @RequestParam(required = false) List<AppointmentCube.Dimension> groupBy,
+            @RequestParam(required = false) Long doctorId,
+            @RequestParam(required = false) String department,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String slot,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String paymentStatus) {
+        AppointmentCube.Slice slice = new AppointmentCube.Slice()
+                .doctor(doctorId)
+                .department(department)
+                .between(from, to)
+                .slot(slot)
+                .status(status)
+                .paymentStatus(paymentStatus);
+        try {
+            return ResponseEntity.ok(appointmentCube.aggregate(slice, groupBy != null ? groupBy : List.of()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    // cube phan tich: so o, bo nho uoc tinh, lan nap gan nhat, thoi gian truy van
+    @GetMapping("/analytics/stats")
+    public ResponseEntity<Map<String, Object>> getAnalyticsStats() {
+        return ResponseEntity.ok(appointmentCube.getStats());
+    }
+    
+    // thong ke hoa don: so ky da dong trong cache, hit / miss, so query database
+    @GetMapping("/invoice-statistics/stats")
+    public ResponseEntity<Map<String, Object>> getInvoiceStatisticsStats() {
+        return ResponseEntity.ok(invoiceStatisticsService.getStats());
+    }
+    
+    // gui lai thong bao DEAD
+    @PostMapping("/outbox/{id}/retry")
+    public ResponseEntity<?> retryOutboxMessage(@PathVariable Long id) {
+        Map<String, Object> response = new HashMap<>();
+        boolean requeued = outboxService.requeueDead(id);
+        response.put("success", requeued);
+        response.put("message", requeued ? "Da dua thong bao vao hang doi gui lai" : "Khong tim thay thong bao DEAD");
+        return requeued ? ResponseEntity.ok(response) : ResponseEntity.badRequest().body(response);
+    }
+    
+    // API phan cong hang loat cac don NEEDS_MANUAL_REVIEW
+    @PostMapping("/registrations/manual-review/auto-assign")
+    public ResponseEntity<?> autoAssignBacklog(@RequestParam(required = false) String policy) {
+        System.out.println("Phan cong hang loat don cho xu ly, chinh sach: " + policy);
+        
+        try {
+            AssignmentPolicy assignmentPolicy = AssignmentPolicy.from(policy);
+            return ResponseEntity.ok(slotAssignmentService.assignBacklog(assignmentPolicy));
+        } catch (Exception e) {
+            System.out.println("Loi phan cong hang loat: " + e);
+            return ResponseEntity.status(500).body("Loi khi phan cong hang loat: " + e.getMessage());
+        }
+    }
+    
     // kiem tra slot con trong khong
     private boolean checkAvailableSlots(Long doctorId, LocalDate appointmentDate, String timeSlot) {
         try {
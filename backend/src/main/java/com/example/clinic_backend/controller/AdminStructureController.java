@@ -1,5 +1,6 @@
 package com.example.clinic_backend.controller;
 
+import com.example.clinic_backend.dto.SlotGenerationRequest;
 import com.example.clinic_backend.model.DoctorSlot;
 import com.example.clinic_backend.service.DoctorSlotService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -77,15 +78,54 @@ public class AdminStructureController {
     
     // cap nhat hang loat so benh nhan
     @PatchMapping("/slots/bulk-max-patients")
-    public ResponseEntity<Map<String, String>> bulkUpdateMaxPatients(@RequestBody Map<String, Integer> request) {
+    public ResponseEntity<Map<String, Object>> bulkUpdateMaxPatients(@RequestBody Map<String, Integer> request) {
     Integer maxPatients = request.get("maxPatients");
-    doctorSlotService.bulkUpdateMaxPatients(maxPatients);
+    Map<String, Object> response = new HashMap<>(doctorSlotService.bulkUpdateMaxPatients(maxPatients));
     
-    Map<String, String> response = new HashMap<>();
     response.put("message", "Da cap nhat thanh cong cho tat ca slot");
     return ResponseEntity.ok(response);
     }
     
+    // cap nhat so benh nhan theo pham vi: khoang ngay, khoa, bac si (bo trong = khong loc)
+    @PatchMapping("/slots/capacity")
+    public ResponseEntity<?> updateCapacityInScope(@RequestBody Map<String, Object> request) {
+    try {
+        Map<String, Object> response = new HashMap<>(doctorSlotService.updateMaxPatientsInScope(
+            toInteger(request.get("maxPatients")),
+            (String) request.get("startDate"),
+            (String) request.get("endDate"),
+            toLong(request.get("departmentId")),
+            toLong(request.get("doctorId"))
+        ));
+        response.put("message", "Da cap nhat suc chua slot");
+        return ResponseEntity.ok(response);
+    } catch (Exception e) {
+        Map<String, String> response = new HashMap<>();
+        response.put("message", "Loi cap nhat suc chua: " + e.getMessage());
+        return ResponseEntity.badRequest().body(response);
+    }
+    }
+    
+    private Integer toInteger(Object value) {
+    return value != null ? Integer.valueOf(value.toString()) : null;
+    }
+    
+    private Long toLong(Object value) {
+    return value != null ? Long.valueOf(value.toString()) : null;
+    }
+    
+    // tao slot hang loat theo mau khung gio tung thu
+    @PostMapping("/slots/generate")
+    public ResponseEntity<?> generateSlots(@RequestBody SlotGenerationRequest request) {
+    try {
+        return ResponseEntity.ok(doctorSlotService.generateSlotsFromTemplates(request));
+    } catch (Exception e) {
+        Map<String, String> response = new HashMap<>();
+        response.put("message", "Loi tao slot hang loat: " + e.getMessage());
+        return ResponseEntity.badRequest().body(response);
+    }
+    }
+    
     // xoa slot
     @DeleteMapping("/slots/{id}")
     public ResponseEntity<Map<String, String>> deleteSlot(@PathVariable Long id) {
@@ -1,5 +1,6 @@
 package com.example.clinic_backend.controller;
 
+import com.example.clinic_backend.service.AppointmentCube;
 import com.example.clinic_backend.service.DoctorStatisticsService;
 import com.example.clinic_backend.model.PatientRegistration;
 import com.example.clinic_backend.repository.DoctorRepository;
@@ -29,6 +30,9 @@ public class DoctorStatisticsController {
     @Autowired
     private PatientRegistrationRepository patientRegistrationRepository;
     
+    @Autowired
+    private AppointmentCube appointmentCube;
+    
     // Lấy thống kê theo chu kỳ
     @GetMapping("/{userId}")
     public ResponseEntity<Map<String, Object>> getStatistics(
@@ -347,10 +351,8 @@ public class DoctorStatisticsController {
                 appointments = patientRegistrationRepository.findByDoctorIdAndDateRange(doctorId, startDate, endDate);
                 response.put("dateRange", startDate + " to " + endDate);
             } else {
-                // Lấy tất cả
-                appointments = patientRegistrationRepository.findAll().stream()
-                        .filter(apt -> doctorId.equals(apt.getDoctorId()))
-                        .collect(Collectors.toList());
+                // Lấy tất cả của bác sĩ (theo index doctor_id)
+                appointments = patientRegistrationRepository.findByDoctorIdOrderByAppointmentDateDesc(doctorId);
             }
             
             response.put("totalAppointments", appointments.size());
@@ -435,29 +437,16 @@ public class DoctorStatisticsController {
                 put("userId", doctor.getUserId());
             }});
             
-            List<PatientRegistration> allAppointments = patientRegistrationRepository.findAll()
-                    .stream()
-                    .filter(apt -> doctorId.equals(apt.getDoctorId()))
-                    .collect(Collectors.toList());
-            
-            response.put("totalAppointmentsInDB", allAppointments.size());
-            
-            Map<String, Long> appointmentsByDate = new HashMap<>();
-            Map<String, Long> appointmentsByStatus = new HashMap<>();
-            
-            for (PatientRegistration apt : allAppointments) {
-                String dateStr = apt.getAppointmentDate().toString();
-                appointmentsByDate.put(dateStr, appointmentsByDate.getOrDefault(dateStr, 0L) + 1);
-                String status = apt.getStatus();
-                appointmentsByStatus.put(status, appointmentsByStatus.getOrDefault(status, 0L) + 1);
-            }
+            // đếm từ cube phân tích, không tải toàn bộ lịch hẹn
+            AppointmentCube.Slice doctorSlice = new AppointmentCube.Slice().doctor(doctorId);
+            Map<String, Long> appointmentsByStatus = appointmentCube.countBy(doctorSlice, AppointmentCube.Dimension.STATUS);
             
-            response.put("appointmentsByDate", appointmentsByDate);
+            response.put("totalAppointmentsInDB", appointmentsByStatus.values().stream().mapToLong(Long::longValue).sum());
+            response.put("appointmentsByDate", appointmentCube.countBy(doctorSlice, AppointmentCube.Dimension.DAY));
             response.put("appointmentsByStatus", appointmentsByStatus);
             
-            List<Map<String, Object>> recentAppointments = allAppointments.stream()
-                    .sorted((a, b) -> b.getCreatedAt().compareTo(a.getCreatedAt()))
-                    .limit(5)
+            List<Map<String, Object>> recentAppointments = patientRegistrationRepository
+                    .findTop5ByDoctorIdOrderByCreatedAtDesc(doctorId).stream()
                     .map(apt -> {
                         Map<String, Object> map = new HashMap<>();
                         map.put("id", apt.getId());
@@ -475,9 +464,8 @@ public class DoctorStatisticsController {
             LocalDate today = LocalDate.now();
             LocalDate weekAgo = today.minusDays(7);
             
-            long appointmentsLastWeek = allAppointments.stream()
-                    .filter(apt -> !apt.getAppointmentDate().isBefore(weekAgo) && !apt.getAppointmentDate().isAfter(today))
-                    .count();
+            long appointmentsLastWeek = appointmentCube.count(
+                    new AppointmentCube.Slice().doctor(doctorId).between(weekAgo, today));
             
             response.put("appointmentsLast7Days", appointmentsLastWeek);
             
@@ -2,11 +2,16 @@ package com.example.clinic_backend.controller;
 
 import com.example.clinic_backend.model.Invoice;
 import com.example.clinic_backend.service.InvoiceService;
+import com.example.clinic_backend.service.InvoiceStatisticsService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,6 +24,9 @@ public class InvoiceController {
     @Autowired
     private InvoiceService invoiceService;
     
+    @Autowired
+    private InvoiceStatisticsService invoiceStatisticsService;
+    
     // Lấy hóa đơn theo số hóa đơn
     @GetMapping("/{invoiceNumber}")
     public ResponseEntity<?> getInvoiceByNumber(@PathVariable String invoiceNumber) {
@@ -174,6 +182,30 @@ public class InvoiceController {
         }
     }
     
+    // API ADMIN: danh sách hóa đơn theo trang (keyset, mới nhất trước) - trang sau truyền beforeDate + beforeId
+    // lấy từ nextCursor của trang trước
+    @GetMapping("/admin/page")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getInvoicePage(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String paymentMethod,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime beforeDate,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(required = false) Integer size) {
+        try {
+            return ResponseEntity.ok(invoiceService.getInvoicePage(startDate, endDate, status, paymentMethod,
+                    beforeDate, beforeId, size));
+        } catch (Exception e) {
+            System.err.println("ADMIN - Lỗi khi lấy trang hóa đơn: " + e.getMessage());
+            Map<String, Object> error = new HashMap<>();
+            error.put("success", false);
+            error.put("error", "Không thể lấy danh sách hóa đơn");
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+    
     // API để lấy hóa đơn theo trạng thái
     @GetMapping("/status/{status}")
     public ResponseEntity<?> getInvoicesByStatus(@PathVariable String status) {
@@ -313,22 +345,27 @@ public class InvoiceController {
         }
     }
     
-    // API thống kê hóa đơn
+    // API thống kê hóa đơn: doanh thu, số hóa đơn, theo trạng thái / phương thức thanh toán, theo ngày / tuần / tháng
+    // (mặc định 30 ngày gần nhất; granularity DAY / WEEK / MONTH, bỏ trống thì tự chọn theo độ dài khoảng)
     @GetMapping("/statistics")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> getInvoiceStatistics(
             @RequestParam(required = false) String startDate,
-            @RequestParam(required = false) String endDate) {
+            @RequestParam(required = false) String endDate,
+            @RequestParam(required = false) String granularity) {
         try {
             System.out.println("Đang lấy thống kê hóa đơn từ " + startDate + " đến " + endDate);
             
-            // Thực hiện logic thống kê ở đây
-            Map<String, Object> statistics = new HashMap<>();
-            statistics.put("success", true);
-            statistics.put("message", "API thống kê đang được phát triển");
+            LocalDate to = endDate != null && !endDate.isEmpty() ? LocalDate.parse(endDate) : LocalDate.now();
+            LocalDate from = startDate != null && !startDate.isEmpty() ? LocalDate.parse(startDate) : to.minusDays(29);
             
-            return ResponseEntity.ok(statistics);
+            return ResponseEntity.ok(invoiceStatisticsService.statistics(from, to, granularity));
             
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("success", false);
+            error.put("error", "Tham số thống kê không hợp lệ: " + e.getMessage());
+            return ResponseEntity.badRequest().body(error);
         } catch (Exception e) {
             System.err.println("Lỗi khi lấy thống kê: " + e.getMessage());
             Map<String, Object> error = new HashMap<>();
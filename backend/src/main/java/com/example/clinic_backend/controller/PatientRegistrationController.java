@@ -5,12 +5,16 @@ import com.example.clinic_backend.dto.CancelAppointmentDTO;
 import com.example.clinic_backend.model.PatientRegistration;
 import com.example.clinic_backend.repository.PatientRegistrationRepository;
 import com.example.clinic_backend.service.PatientRegistrationService;
+import com.example.clinic_backend.service.RegistrationIntakeService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.dao.DataIntegrityViolationException;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -22,11 +26,14 @@ public class PatientRegistrationController {
 
     private final PatientRegistrationRepository registrationRepository;
     private final PatientRegistrationService registrationService;
+    private final RegistrationIntakeService intakeService;
 
     public PatientRegistrationController(PatientRegistrationRepository registrationRepository, 
-                                       PatientRegistrationService registrationService) {
+                                       PatientRegistrationService registrationService,
+                                       RegistrationIntakeService intakeService) {
         this.registrationRepository = registrationRepository;
         this.registrationService = registrationService;
+        this.intakeService = intakeService;
     }
 
     // Lấy lịch hẹn theo email
@@ -54,58 +61,7 @@ public class PatientRegistrationController {
             System.out.println("=== RECEIVED REGISTRATION REQUEST ===");
             System.out.println("DTO: " + dto.toString());
 
-            // Validation cơ bản
-            if (dto.getFullName() == null || dto.getFullName().trim().isEmpty()) {
-                return ResponseEntity.badRequest().body("Full name is required");
-            }
-            if (dto.getEmail() == null || dto.getEmail().trim().isEmpty()) {
-                return ResponseEntity.badRequest().body("Email is required");
-            }
-            if (dto.getPhone() == null || dto.getPhone().trim().isEmpty()) {
-                return ResponseEntity.badRequest().body("Phone is required");
-            }
-
-            PatientRegistration registration = new PatientRegistration();
-            registration.setFullName(dto.getFullName().trim());
-
-            // Xử lý ngày sinh
-            if (dto.getDob() != null && !dto.getDob().isEmpty()) {
-                try {
-                    registration.setDob(LocalDate.parse(dto.getDob()));
-                } catch (Exception e) {
-                    return ResponseEntity.badRequest().body("Invalid date format for DOB. Use YYYY-MM-DD");
-                }
-            } else {
-                return ResponseEntity.badRequest().body("Date of birth is required");
-            }
-
-            registration.setGender(dto.getGender());
-            registration.setPhone(dto.getPhone().trim());
-            registration.setEmail(dto.getEmail().trim());
-            registration.setAddress(dto.getAddress());
-            registration.setDepartment(dto.getDepartment());
-            registration.setSymptoms(dto.getSymptoms());
-
-            // Xử lý ngày hẹn
-            if (dto.getAppointmentDate() != null && !dto.getAppointmentDate().isEmpty()) {
-                try {
-                    registration.setAppointmentDate(LocalDate.parse(dto.getAppointmentDate()));
-                } catch (Exception e) {
-                    return ResponseEntity.badRequest().body("Invalid date format for appointment date. Use YYYY-MM-DD");
-                }
-            } else {
-                return ResponseEntity.badRequest().body("Appointment date is required");
-            }
-
-            // doctorId có thể là null nếu người dùng không chọn bác sĩ
-            registration.setDoctorId(dto.getDoctorId());
-
-            // Xử lý time slot
-            registration.setAssignedSession(dto.getTimeSlot());
-
-            // Set thời gian tạo và status
-            registration.setCreatedAt(LocalDateTime.now());
-            registration.setStatus("PENDING");
+            PatientRegistration registration = buildRegistration(dto);
 
             System.out.println("Gọi service xử lý đăng ký...");
             
@@ -116,6 +72,8 @@ public class PatientRegistrationController {
             
             return ResponseEntity.ok(savedRegistration);
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             System.err.println("ERROR in createRegistration: " + e.getMessage());
             e.printStackTrace();
@@ -123,6 +81,101 @@ public class PatientRegistrationController {
         }
     }
 
+    // Nhận lịch hẹn bất đồng bộ: lưu đơn, trả về 202 + ticket, worker duyệt sau
+    @PostMapping("/intake")
+    public ResponseEntity<?> submitRegistration(@RequestBody PatientRegistrationDTO dto) {
+        try {
+            PatientRegistration registration = buildRegistration(dto);
+            
+            Long ticketId = intakeService.submit(registration);
+            if (ticketId == null) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "5")
+                        .body("Hệ thống đang quá tải, vui lòng thử lại sau");
+            }
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("ticketId", ticketId);
+            response.put("state", RegistrationIntakeService.QUEUED);
+            response.put("statusUrl", "/api/patient-registrations/intake/" + ticketId);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            System.err.println("ERROR in submitRegistration: " + e.getMessage());
+            return ResponseEntity.internalServerError().body("Error submitting registration: " + e.getMessage());
+        }
+    }
+
+    // Trạng thái ticket intake
+    @GetMapping("/intake/{ticketId}")
+    public ResponseEntity<?> getIntakeStatus(@PathVariable Long ticketId) {
+        Map<String, Object> status = intakeService.getStatus(ticketId);
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    // Chuyển DTO thành đơn đăng ký, dữ liệu không hợp lệ thì ném IllegalArgumentException
+    private PatientRegistration buildRegistration(PatientRegistrationDTO dto) {
+        // Validation cơ bản
+        if (dto.getFullName() == null || dto.getFullName().trim().isEmpty()) {
+            throw new IllegalArgumentException("Full name is required");
+        }
+        if (dto.getEmail() == null || dto.getEmail().trim().isEmpty()) {
+            throw new IllegalArgumentException("Email is required");
+        }
+        if (dto.getPhone() == null || dto.getPhone().trim().isEmpty()) {
+            throw new IllegalArgumentException("Phone is required");
+        }
+
+        PatientRegistration registration = new PatientRegistration();
+        registration.setFullName(dto.getFullName().trim());
+
+        // Xử lý ngày sinh
+        if (dto.getDob() != null && !dto.getDob().isEmpty()) {
+            try {
+                registration.setDob(LocalDate.parse(dto.getDob()));
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Invalid date format for DOB. Use YYYY-MM-DD");
+            }
+        } else {
+            throw new IllegalArgumentException("Date of birth is required");
+        }
+
+        registration.setGender(dto.getGender());
+        registration.setPhone(dto.getPhone().trim());
+        registration.setEmail(dto.getEmail().trim());
+        registration.setAddress(dto.getAddress());
+        registration.setDepartment(dto.getDepartment());
+        registration.setSymptoms(dto.getSymptoms());
+
+        // Xử lý ngày hẹn
+        if (dto.getAppointmentDate() != null && !dto.getAppointmentDate().isEmpty()) {
+            try {
+                registration.setAppointmentDate(LocalDate.parse(dto.getAppointmentDate()));
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Invalid date format for appointment date. Use YYYY-MM-DD");
+            }
+        } else {
+            throw new IllegalArgumentException("Appointment date is required");
+        }
+
+        // doctorId có thể là null nếu người dùng không chọn bác sĩ
+        registration.setDoctorId(dto.getDoctorId());
+
+        // Xử lý time slot
+        registration.setAssignedSession(dto.getTimeSlot());
+
+        // Set thời gian tạo và status
+        registration.setCreatedAt(LocalDateTime.now());
+        registration.setStatus("PENDING");
+
+        return registration;
+    }
+
     // Lấy tất cả lịch hẹn (cho admin)
     @GetMapping
     public ResponseEntity<List<PatientRegistration>> getAllRegistrations() {
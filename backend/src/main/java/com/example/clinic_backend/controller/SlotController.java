@@ -6,7 +6,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api")
@@ -26,4 +28,29 @@ public class SlotController {
             return ResponseEntity.badRequest().body("Lỗi khi lấy danh sách slot: " + e.getMessage());
         }
     }
+    
+    // ma tran slot trong: bac si x ngay x khung gio (theo khoa hoac danh sach bac si)
+    @GetMapping("/doctor-slots/matrix")
+    public ResponseEntity<?> getAvailabilityMatrix(
+            @RequestParam(required = false) String department,
+            @RequestParam(required = false) List<Long> doctorIds,
+            @RequestParam String startDate,
+            @RequestParam String endDate) {
+        try {
+            LocalDate start = LocalDate.parse(startDate);
+            LocalDate end = LocalDate.parse(endDate);
+            
+            Map<String, Object> matrix;
+            if (doctorIds != null && !doctorIds.isEmpty()) {
+                matrix = doctorSlotService.getAvailabilityMatrixByDoctors(doctorIds, start, end);
+            } else if (department != null && !department.isBlank()) {
+                matrix = doctorSlotService.getAvailabilityMatrixByDepartment(department, start, end);
+            } else {
+                return ResponseEntity.badRequest().body("Cần truyền department hoặc doctorIds");
+            }
+            return ResponseEntity.ok(matrix);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Lỗi khi lấy ma trận slot: " + e.getMessage());
+        }
+    }
 }
\ No newline at end of file
@@ -5,7 +5,7 @@ import com.example.clinic_backend.model.Payment;
 import com.example.clinic_backend.model.PatientRegistration;
 import com.example.clinic_backend.repository.PaymentRepository;
 import com.example.clinic_backend.repository.PatientRegistrationRepository;
-import com.example.clinic_backend.service.EmailService;
+import com.example.clinic_backend.service.OutboxService;
 import com.example.clinic_backend.service.PaymentService;
 import com.example.clinic_backend.service.InvoiceService;
 import com.example.clinic_backend.model.Wallet;
@@ -30,20 +30,20 @@ public class VnPayController {
 
     private final PaymentService paymentService;
     private final PaymentRepository paymentRepository;
-    private final EmailService emailService;
+    private final OutboxService outboxService;
     private final PatientRegistrationRepository patientRegistrationRepository;
     private final InvoiceService invoiceService;
     private final WalletRepository walletRepository;
 
     public VnPayController(PaymentService paymentService, 
                           PaymentRepository paymentRepository,
-                          EmailService emailService,
+                          OutboxService outboxService,
                           PatientRegistrationRepository patientRegistrationRepository,
                           InvoiceService invoiceService,
                           WalletRepository walletRepository) {
         this.paymentService = paymentService;
         this.paymentRepository = paymentRepository;
-        this.emailService = emailService;
+        this.outboxService = outboxService;
         this.patientRegistrationRepository = patientRegistrationRepository;
         this.invoiceService = invoiceService;
         this.walletRepository = walletRepository;
@@ -388,14 +388,8 @@ public class VnPayController {
                             System.out.println("So tien: " + amountInVND);
                             System.out.println("Thoi gian: " + registration.getPaidAt());
                             
-                            // 4. gui email thong bao
-                            try {
-                                System.out.println("Dang gui email thong bao...");
-                                emailService.sendPaymentSuccessEmail(savedRegistration);
-                                System.out.println("Da gui email cho: " + savedRegistration.getEmail());
-                            } catch (Exception emailException) {
-                                System.out.println("Loi gui email: " + emailException.getMessage());
-                            }
+                            // 4. email thong bao: ghi outbox, relay gui sau khi commit
+                            outboxService.enqueue(OutboxService.EMAIL_PAYMENT_SUCCESS, savedRegistration.getId(), null);
                             
                             // 5. tao hoa don
                             System.out.println("Bat dau tao hoa don...");
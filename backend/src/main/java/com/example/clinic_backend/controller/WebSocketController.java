@@ -1,13 +1,17 @@
 package com.example.clinic_backend.controller;
 
 import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.service.SlotOccupancyStream;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Controller
@@ -16,6 +20,16 @@ public class WebSocketController {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private SlotOccupancyStream slotOccupancyStream;
+
+    // Snapshot chỗ trống khi client subscribe /app/slots/{doctorId}/{date};
+    // sau đó nghe delta trên /topic/slots/{doctorId}/{date}
+    @SubscribeMapping("/slots/{doctorId}/{date}")
+    public List<Map<String, Object>> slotSnapshot(@DestinationVariable Long doctorId, @DestinationVariable String date) {
+        return slotOccupancyStream.snapshot(doctorId, LocalDate.parse(date));
+    }
+
     // Gửi thông báo khi có đơn đăng ký mới
     public void sendNewAppointmentNotification(PatientRegistration appointment) {
         try {
@@ -0,0 +1,25 @@
+package com.example.clinic_backend.dto;
+
+// Một ô trong ma trận slot trống: bác sĩ x ngày x khung giờ
+public class AvailabilityCellDTO {
+    private int max;
+    private int current;
+    private boolean available;
+
+    public AvailabilityCellDTO() {}
+
+    public AvailabilityCellDTO(int max, int current, boolean active) {
+        this.max = max;
+        this.current = current;
+        this.available = active && current < max;
+    }
+
+    public int getMax() { return max; }
+    public void setMax(int max) { this.max = max; }
+
+    public int getCurrent() { return current; }
+    public void setCurrent(int current) { this.current = current; }
+
+    public boolean isAvailable() { return available; }
+    public void setAvailable(boolean available) { this.available = available; }
+}
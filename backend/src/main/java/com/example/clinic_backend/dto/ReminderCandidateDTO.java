@@ -0,0 +1,27 @@
+package com.example.clinic_backend.dto;
+
+import java.time.LocalDate;
+
+// Lịch hẹn cần nhắc (chỉ các cột cần để tính giờ nhắc, không nạp cả entity + bác sĩ)
+public class ReminderCandidateDTO {
+    private Long id;
+    private LocalDate appointmentDate;
+    private String assignedSession;
+
+    public ReminderCandidateDTO() {}
+
+    public ReminderCandidateDTO(Long id, LocalDate appointmentDate, String assignedSession) {
+        this.id = id;
+        this.appointmentDate = appointmentDate;
+        this.assignedSession = assignedSession;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public LocalDate getAppointmentDate() { return appointmentDate; }
+    public void setAppointmentDate(LocalDate appointmentDate) { this.appointmentDate = appointmentDate; }
+
+    public String getAssignedSession() { return assignedSession; }
+    public void setAssignedSession(String assignedSession) { this.assignedSession = assignedSession; }
+}
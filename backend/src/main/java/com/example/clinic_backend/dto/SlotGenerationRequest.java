@@ -0,0 +1,30 @@
+package com.example.clinic_backend.dto;
+
+import java.util.List;
+import java.util.Map;
+
+// Yeu cau tao slot hang loat: bac si x khoang ngay x mau khung gio theo thu
+public class SlotGenerationRequest {
+    private List<Long> doctorIds;
+    private String startDate;   // yyyy-MM-dd
+    private String endDate;     // yyyy-MM-dd
+    private Integer maxPatients;
+    // MONDAY..SUNDAY -> danh sach khung gio; bo trong thi dung 9 khung gio mac dinh cho moi ngay
+    private Map<String, List<String>> weekdayTemplates;
+    
+    // Getter và Setter
+    public List<Long> getDoctorIds() { return doctorIds; }
+    public void setDoctorIds(List<Long> doctorIds) { this.doctorIds = doctorIds; }
+    
+    public String getStartDate() { return startDate; }
+    public void setStartDate(String startDate) { this.startDate = startDate; }
+    
+    public String getEndDate() { return endDate; }
+    public void setEndDate(String endDate) { this.endDate = endDate; }
+    
+    public Integer getMaxPatients() { return maxPatients; }
+    public void setMaxPatients(Integer maxPatients) { this.maxPatients = maxPatients; }
+    
+    public Map<String, List<String>> getWeekdayTemplates() { return weekdayTemplates; }
+    public void setWeekdayTemplates(Map<String, List<String>> weekdayTemplates) { this.weekdayTemplates = weekdayTemplates; }
+}
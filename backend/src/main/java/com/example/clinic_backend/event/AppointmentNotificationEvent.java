@@ -0,0 +1,36 @@
+package com.example.clinic_backend.event;
+
+import com.example.clinic_backend.model.PatientRegistration;
+
+// yeu cau gui thong bao real-time cho admin / benh nhan
+// chi duoc gui sau khi transaction tao ra no da commit (NotificationDispatcher)
+public class AppointmentNotificationEvent {
+
+    public static final String NEW_APPOINTMENT = "NEW_APPOINTMENT";
+    public static final String APPOINTMENT_CANCELLED = "APPOINTMENT_CANCELLED";
+
+    private final String type;
+    private final PatientRegistration registration;
+
+    public AppointmentNotificationEvent(String type, PatientRegistration registration) {
+        this.type = type;
+        this.registration = registration;
+    }
+
+    public static AppointmentNotificationEvent newAppointment(PatientRegistration registration) {
+        return new AppointmentNotificationEvent(NEW_APPOINTMENT, registration);
+    }
+
+    public static AppointmentNotificationEvent cancelled(PatientRegistration registration) {
+        return new AppointmentNotificationEvent(APPOINTMENT_CANCELLED, registration);
+    }
+
+    // cung loai + cung don -> chi gui ban moi nhat
+    public String coalesceKey() {
+        return type + "|" + registration.getId();
+    }
+
+    public String getType() { return type; }
+
+    public PatientRegistration getRegistration() { return registration; }
+}
@@ -0,0 +1,13 @@
+package com.example.clinic_backend.event;
+
+// co thong bao moi trong outbox; relay duoc danh thuc sau khi transaction commit
+public class OutboxEnqueuedEvent {
+
+    private final Long messageId;
+
+    public OutboxEnqueuedEvent(Long messageId) {
+        this.messageId = messageId;
+    }
+
+    public Long getMessageId() { return messageId; }
+}
@@ -0,0 +1,55 @@
+package com.example.clinic_backend.event;
+
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.model.RegistrationSnapshot;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+
+// Entity listener cua PatientRegistration: chup RegistrationSnapshot luc nap tu database,
+// sau moi lan insert / update / delete phat RegistrationChangedEvent (anh truoc, anh sau) trong transaction luu.
+// Bat duoc moi thay doi qua JPA (duyet, huy, hoan thanh, vang, doi bac si / ngay, thanh toan) ma khong can sua
+// tung service; DoctorStatisticsRecorder va AppointmentCube nghe su kien va ghi chenh lech khi commit.
+// Hibernate tao listener qua Spring (SpringBeanContainer).
+public class RegistrationChangeListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public RegistrationChangeListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostLoad
+    public void onLoad(PatientRegistration registration) {
+        registration.setPersistedState(RegistrationSnapshot.of(registration));
+    }
+
+    @PostPersist
+    public void onPersist(PatientRegistration registration) {
+        RegistrationSnapshot current = RegistrationSnapshot.of(registration);
+        registration.setPersistedState(current);
+        eventPublisher.publishEvent(new RegistrationChangedEvent(registration.getId(), null, current));
+    }
+
+    @PostUpdate
+    public void onUpdate(PatientRegistration registration) {
+        RegistrationSnapshot previous = registration.getPersistedState();
+        RegistrationSnapshot current = RegistrationSnapshot.of(registration);
+        registration.setPersistedState(current);
+        // khong co anh truoc (khong nap qua JPA): doi chieu hang dem / lan nap cube ke tiep sua
+        if (previous != null && !previous.equals(current)) {
+            eventPublisher.publishEvent(new RegistrationChangedEvent(registration.getId(), previous, current));
+        }
+    }
+
+    @PostRemove
+    public void onRemove(PatientRegistration registration) {
+        RegistrationSnapshot previous = registration.getPersistedState();
+        registration.setPersistedState(null);
+        if (previous != null) {
+            eventPublisher.publishEvent(new RegistrationChangedEvent(registration.getId(), previous, null));
+        }
+    }
+}
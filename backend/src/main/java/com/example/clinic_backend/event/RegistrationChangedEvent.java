@@ -0,0 +1,33 @@
+package com.example.clinic_backend.event;
+
+import com.example.clinic_backend.model.RegistrationSnapshot;
+
+// su kien khi don dang ky duoc luu qua JPA (phat trong transaction luu don, truoc khi commit)
+// previous null = don moi, current null = don da xoa
+public class RegistrationChangedEvent {
+
+    private final Long registrationId;
+    private final RegistrationSnapshot previous;
+    private final RegistrationSnapshot current;
+
+    public RegistrationChangedEvent(Long registrationId, RegistrationSnapshot previous, RegistrationSnapshot current) {
+        this.registrationId = registrationId;
+        this.previous = previous;
+        this.current = current;
+    }
+
+    public Long getRegistrationId() { return registrationId; }
+
+    public RegistrationSnapshot getPrevious() { return previous; }
+
+    public RegistrationSnapshot getCurrent() { return current; }
+
+    @Override
+    public String toString() {
+        return "RegistrationChangedEvent{" +
+                "registrationId=" + registrationId +
+                ", previous=" + (previous != null ? previous.getStatus() : null) +
+                ", current=" + (current != null ? current.getStatus() : null) +
+                '}';
+    }
+}
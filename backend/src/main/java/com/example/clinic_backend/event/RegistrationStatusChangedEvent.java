@@ -0,0 +1,49 @@
+package com.example.clinic_backend.event;
+
+import com.example.clinic_backend.model.PatientRegistration;
+
+import java.time.LocalDate;
+
+// su kien khi trang thai don dang ky thay doi (duyet, huy, tu choi, ...)
+public class RegistrationStatusChangedEvent {
+
+    private final Long registrationId;
+    private final Long doctorId;
+    private final LocalDate appointmentDate;
+    private final String assignedSession;
+    private final String previousStatus;
+    private final String newStatus;
+
+    // chup lai thong tin don tai thoi diem thay doi
+    public RegistrationStatusChangedEvent(PatientRegistration registration, String previousStatus) {
+        this.registrationId = registration.getId();
+        this.doctorId = registration.getDoctorId();
+        this.appointmentDate = registration.getAppointmentDate();
+        this.assignedSession = registration.getAssignedSession();
+        this.previousStatus = previousStatus;
+        this.newStatus = registration.getStatus();
+    }
+
+    public Long getRegistrationId() { return registrationId; }
+
+    public Long getDoctorId() { return doctorId; }
+
+    public LocalDate getAppointmentDate() { return appointmentDate; }
+
+    public String getAssignedSession() { return assignedSession; }
+
+    public String getPreviousStatus() { return previousStatus; }
+
+    public String getNewStatus() { return newStatus; }
+
+    @Override
+    public String toString() {
+        return "RegistrationStatusChangedEvent{" +
+                "registrationId=" + registrationId +
+                ", doctorId=" + doctorId +
+                ", appointmentDate=" + appointmentDate +
+                ", assignedSession='" + assignedSession + '\'' +
+                ", " + previousStatus + " -> " + newStatus +
+                '}';
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.clinic_backend.event;
+
+import java.time.LocalDate;
+
+// su kien khi cau hinh slot thay doi (so benh nhan toi da, bat/tat, xoa)
+// doctorId/appointmentDate null nghia la thay doi hang loat
+public class SlotCapacityChangedEvent {
+
+    private final Long doctorId;
+    private final LocalDate appointmentDate;
+    private final String timeSlot;
+
+    public SlotCapacityChangedEvent(Long doctorId, LocalDate appointmentDate, String timeSlot) {
+        this.doctorId = doctorId;
+        this.appointmentDate = appointmentDate;
+        this.timeSlot = timeSlot;
+    }
+
+    // thay doi hang loat cho tat ca slot
+    public static SlotCapacityChangedEvent all() {
+        return new SlotCapacityChangedEvent(null, null, null);
+    }
+
+    public boolean isBulk() {
+        return doctorId == null || appointmentDate == null;
+    }
+
+    public Long getDoctorId() { return doctorId; }
+
+    public LocalDate getAppointmentDate() { return appointmentDate; }
+
+    public String getTimeSlot() { return timeSlot; }
+}
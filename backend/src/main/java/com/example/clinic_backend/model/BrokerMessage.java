@@ -0,0 +1,62 @@
+package com.example.clinic_backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Message STOMP chuyển giữa các node (DatabaseRelayFanout); mỗi node đọc các dòng mới theo id.
+@Entity
+@Table(name = "broker_messages", indexes = {
+    @Index(name = "idx_broker_created", columnList = "created_at")
+})
+public class BrokerMessage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // node gửi (node đó đã tự giao cho client của mình)
+    @Column(name = "node_id", nullable = false, length = 36)
+    private String nodeId;
+
+    @Column(name = "destination", nullable = false)
+    private String destination;
+
+    // null = gửi cho topic; có giá trị = /user/{user}/...
+    @Column(name = "target_user", length = 100)
+    private String targetUser;
+
+    @Column(name = "payload", columnDefinition = "MEDIUMTEXT")
+    private String payload;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    public BrokerMessage() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public BrokerMessage(String nodeId, String destination, String targetUser, String payload) {
+        this();
+        this.nodeId = nodeId;
+        this.destination = destination;
+        this.targetUser = targetUser;
+        this.payload = payload;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getNodeId() { return nodeId; }
+    public void setNodeId(String nodeId) { this.nodeId = nodeId; }
+
+    public String getDestination() { return destination; }
+    public void setDestination(String destination) { this.destination = destination; }
+
+    public String getTargetUser() { return targetUser; }
+    public void setTargetUser(String targetUser) { this.targetUser = targetUser; }
+
+    public String getPayload() { return payload; }
+    public void setPayload(String payload) { this.payload = payload; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
@@ -4,7 +4,9 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "doctor_slots")
+@Table(name = "doctor_slots",
+       uniqueConstraints = @UniqueConstraint(name = "uk_doctor_slot",
+                                             columnNames = {"doctor_id", "appointment_date", "time_slot"}))
 public class DoctorSlot {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -25,6 +27,15 @@ public class DoctorSlot {
     @Column(name = "is_active")
     private Boolean isActive = true;
 
+    // so cho da giu trong che do dat lich optimistic (null = chua khoi tao tu so don da duyet)
+    @Column(name = "occupied_count")
+    private Integer occupiedCount;
+
+    // tang moi lan doi occupied_count / cau hinh (khoa lac quan cua JPA)
+    @Version
+    @Column(name = "version", columnDefinition = "bigint not null default 0")
+    private Long version = 0L;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
@@ -96,6 +107,22 @@ public class DoctorSlot {
         this.updatedAt = LocalDateTime.now();
     }
 
+    public Integer getOccupiedCount() {
+        return occupiedCount;
+    }
+
+    public void setOccupiedCount(Integer occupiedCount) {
+        this.occupiedCount = occupiedCount;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
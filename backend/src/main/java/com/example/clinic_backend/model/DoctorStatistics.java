@@ -5,7 +5,12 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "doctor_statistics")
+@Table(name = "doctor_statistics", uniqueConstraints = {
+    // 1 dong moi (bac si, loai, ngay): cong don chenh lech bang INSERT IGNORE + UPDATE
+    @UniqueConstraint(name = "uk_doctor_stat", columnNames = {"doctor_id", "stat_type", "stat_date"})
+}, indexes = {
+    @Index(name = "idx_stat_type_date", columnList = "stat_type, stat_date")
+})
 public class DoctorStatistics {
     
     @Id
@@ -33,6 +38,12 @@ public class DoctorStatistics {
     @Column(name = "no_show_appointments", nullable = false)
     private Integer noShowAppointments = 0;
     
+    @Column(name = "approved_appointments", nullable = false)
+    private Integer approvedAppointments = 0;
+    
+    @Column(name = "pending_appointments", nullable = false)
+    private Integer pendingAppointments = 0;
+    
     @Column(name = "success_rate")
     private Double successRate;
     
@@ -87,6 +98,16 @@ public class DoctorStatistics {
         this.noShowAppointments = noShowAppointments; 
     }
     
+    public Integer getApprovedAppointments() { return approvedAppointments; }
+    public void setApprovedAppointments(Integer approvedAppointments) { 
+        this.approvedAppointments = approvedAppointments; 
+    }
+    
+    public Integer getPendingAppointments() { return pendingAppointments; }
+    public void setPendingAppointments(Integer pendingAppointments) { 
+        this.pendingAppointments = pendingAppointments; 
+    }
+    
     public Double getSuccessRate() { return successRate; }
     public void setSuccessRate(Double successRate) { this.successRate = successRate; }
     
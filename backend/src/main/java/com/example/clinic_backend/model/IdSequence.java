@@ -0,0 +1,34 @@
+package com.example.clinic_backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Bảng sequence cho các mã hiển thị (mã phiếu, mã bệnh nhân, mã giao dịch, mã hóa đơn).
+// Mỗi node lấy trước một khối số (Hi/Lo) bằng cách cộng next_value, sau đó cấp trong bộ nhớ.
+@Entity
+@Table(name = "id_sequences")
+public class IdSequence {
+    @Id
+    @Column(name = "sequence_name", length = 64)
+    private String sequenceName;
+
+    // số lớn nhất đã được cấp phát cho một khối nào đó
+    @Column(name = "next_value", nullable = false)
+    private Long nextValue = 0L;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public IdSequence() {
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public String getSequenceName() { return sequenceName; }
+    public void setSequenceName(String sequenceName) { this.sequenceName = sequenceName; }
+
+    public Long getNextValue() { return nextValue; }
+    public void setNextValue(Long nextValue) { this.nextValue = nextValue; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -5,7 +5,12 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "invoices")
+@Table(name = "invoices", indexes = {
+    // danh sach theo keyset (invoice_date DESC, id DESC): InnoDB gan san id vao cuoi index
+    @Index(name = "idx_invoice_date", columnList = "invoice_date"),
+    // thong ke theo ky: GROUP BY chi doc index
+    @Index(name = "idx_invoice_stats", columnList = "invoice_date, status, payment_method, amount")
+})
 public class Invoice {
     
     @Id
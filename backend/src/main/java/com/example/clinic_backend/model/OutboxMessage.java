@@ -0,0 +1,88 @@
+package com.example.clinic_backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Thông báo gửi ra ngoài (email, WebSocket) ghi cùng transaction với thay đổi dữ liệu.
+// OutboxRelay đọc các dòng PENDING đến hạn, gửi, thất bại thì hẹn lại (backoff), quá số lần thì DEAD.
+@Entity
+@Table(name = "outbox_messages", indexes = {
+    @Index(name = "idx_outbox_status_next", columnList = "status, next_attempt_at")
+})
+public class OutboxMessage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // loại thông báo, xem OutboxService
+    @Column(name = "type", nullable = false, length = 50)
+    private String type;
+
+    @Column(name = "registration_id")
+    private Long registrationId;
+
+    // dữ liệu thêm (lý do hủy, ghi chú admin, số tiền hoàn)
+    @Column(name = "payload", columnDefinition = "TEXT")
+    private String payload;
+
+    // PENDING, SENT, DEAD
+    @Column(name = "status", nullable = false, length = 20)
+    private String status = "PENDING";
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+
+    public OutboxMessage() {
+        this.createdAt = LocalDateTime.now();
+        this.nextAttemptAt = this.createdAt;
+    }
+
+    public OutboxMessage(String type, Long registrationId, String payload) {
+        this();
+        this.type = type;
+        this.registrationId = registrationId;
+        this.payload = payload;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public Long getRegistrationId() { return registrationId; }
+    public void setRegistrationId(Long registrationId) { this.registrationId = registrationId; }
+
+    public String getPayload() { return payload; }
+    public void setPayload(String payload) { this.payload = payload; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public Integer getAttempts() { return attempts; }
+    public void setAttempts(Integer attempts) { this.attempts = attempts; }
+
+    public LocalDateTime getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getSentAt() { return sentAt; }
+    public void setSentAt(LocalDateTime sentAt) { this.sentAt = sentAt; }
+}
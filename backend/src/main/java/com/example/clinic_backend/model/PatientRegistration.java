@@ -1,12 +1,20 @@
 package com.example.clinic_backend.model;
 
+import com.example.clinic_backend.event.RegistrationChangeListener;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "patient_registrations")
+@EntityListeners(RegistrationChangeListener.class)
+@Table(name = "patient_registrations", indexes = {
+    // thong ke bac si theo khoang ngay: GROUP BY chi doc index
+    @Index(name = "idx_registration_doctor_stats", columnList = "doctor_id, appointment_date, status, examination_status"),
+    // dem don theo ngay / nam (khoi tao sequence ma phieu, ma benh nhan), quet don PENDING cu
+    @Index(name = "idx_registration_created_at", columnList = "created_at")
+})
 public class PatientRegistration {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -134,6 +142,11 @@ public class PatientRegistration {
     @Column(name = "refund_processed_at")
     private LocalDateTime refundProcessedAt;
 
+    // anh da tinh vao thong ke bac si / cube phan tich - RegistrationChangeListener so sanh khi luu
+    @Transient
+    @JsonIgnore
+    private RegistrationSnapshot persistedState;
+
     // Constructor mặc định
     public PatientRegistration() {
         this.createdAt = LocalDateTime.now();
@@ -308,6 +321,10 @@ public class PatientRegistration {
                 "CANCELLED".equals(this.status);
     }
 
+    // khong theo dang getter de khong bi serialize ra JSON
+    public RegistrationSnapshot getPersistedState() { return persistedState; }
+    public void setPersistedState(RegistrationSnapshot persistedState) { this.persistedState = persistedState; }
+
     @Override
     public String toString() {
         return "PatientRegistration{" +
@@ -0,0 +1,68 @@
+package com.example.clinic_backend.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Objects;
+
+// Anh cac cot cua don ma thong ke bac si (doctor_statistics) va cube phan tich da tinh vao.
+// Chup luc nap tu database va sau moi lan luu; lan luu ke tiep so voi anh nay de biet chenh lech.
+public final class RegistrationSnapshot {
+
+    private final Long doctorId;
+    private final String department;
+    private final LocalDate appointmentDate;
+    private final String assignedSession;
+    private final String status;
+    private final String examinationStatus;
+    private final String paymentStatus;
+    private final BigDecimal paidAmount;
+
+    private RegistrationSnapshot(PatientRegistration registration) {
+        this.doctorId = registration.getDoctorId();
+        this.department = registration.getDepartment();
+        this.appointmentDate = registration.getAppointmentDate();
+        this.assignedSession = registration.getAssignedSession();
+        this.status = registration.getStatus();
+        this.examinationStatus = registration.getExaminationStatus();
+        this.paymentStatus = registration.getPaymentStatus();
+        this.paidAmount = registration.getPaidAmount();
+    }
+
+    public static RegistrationSnapshot of(PatientRegistration registration) {
+        return new RegistrationSnapshot(registration);
+    }
+
+    public Long getDoctorId() { return doctorId; }
+
+    public String getDepartment() { return department; }
+
+    public LocalDate getAppointmentDate() { return appointmentDate; }
+
+    public String getAssignedSession() { return assignedSession; }
+
+    public String getStatus() { return status; }
+
+    public String getExaminationStatus() { return examinationStatus; }
+
+    public String getPaymentStatus() { return paymentStatus; }
+
+    public BigDecimal getPaidAmount() { return paidAmount; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RegistrationSnapshot)) return false;
+        RegistrationSnapshot other = (RegistrationSnapshot) o;
+        return Objects.equals(doctorId, other.doctorId) && Objects.equals(department, other.department)
+            && Objects.equals(appointmentDate, other.appointmentDate)
+            && Objects.equals(assignedSession, other.assignedSession) && Objects.equals(status, other.status)
+            && Objects.equals(examinationStatus, other.examinationStatus)
+            && Objects.equals(paymentStatus, other.paymentStatus) && Objects.equals(paidAmount, other.paidAmount);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(doctorId, department, appointmentDate, assignedSession, status, examinationStatus,
+            paymentStatus, paidAmount);
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.clinic_backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Lease cho job @Scheduled chạy 1 lần trong cả cụm (SchedulerLockService).
+// Node giữ lease gia hạn định kỳ; node chết thì lease tự hết hạn và node khác nhận.
+// fencing_token tăng mỗi lần đổi người giữ để node cũ (lease đã mất) không ghi đè.
+@Entity
+@Table(name = "scheduler_locks")
+public class SchedulerLock {
+    @Id
+    @Column(name = "lock_name", length = 64)
+    private String lockName;
+
+    // node đang giữ (hostname:id tiến trình), null = chưa ai giữ
+    @Column(name = "holder", length = 128)
+    private String holder;
+
+    // theo giờ database, tránh lệch đồng hồ giữa các node
+    @Column(name = "lease_until", nullable = false, columnDefinition = "DATETIME(3)")
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "fencing_token", nullable = false)
+    private Long fencingToken = 0L;
+
+    public SchedulerLock() {
+    }
+
+    public String getLockName() { return lockName; }
+    public void setLockName(String lockName) { this.lockName = lockName; }
+
+    public String getHolder() { return holder; }
+    public void setHolder(String holder) { this.holder = holder; }
+
+    public LocalDateTime getLeaseUntil() { return leaseUntil; }
+    public void setLeaseUntil(LocalDateTime leaseUntil) { this.leaseUntil = leaseUntil; }
+
+    public Long getFencingToken() { return fencingToken; }
+    public void setFencingToken(Long fencingToken) { this.fencingToken = fencingToken; }
+}
@@ -0,0 +1,54 @@
+package com.example.clinic_backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Bộ đếm số thứ tự riêng cho từng (bác sĩ, ngày, khung giờ)
+@Entity
+@Table(name = "slot_queue_counters",
+       uniqueConstraints = @UniqueConstraint(name = "uk_slot_queue_counter",
+                                             columnNames = {"doctor_id", "appointment_date", "time_slot"}))
+public class SlotQueueCounter {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "doctor_id", nullable = false)
+    private Long doctorId;
+
+    @Column(name = "appointment_date", nullable = false)
+    private LocalDate appointmentDate;
+
+    @Column(name = "time_slot", nullable = false, length = 20)
+    private String timeSlot;
+
+    // số thứ tự đã cấp gần nhất
+    @Column(name = "last_number", nullable = false)
+    private Integer lastNumber = 0;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public SlotQueueCounter() {
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getDoctorId() { return doctorId; }
+    public void setDoctorId(Long doctorId) { this.doctorId = doctorId; }
+
+    public LocalDate getAppointmentDate() { return appointmentDate; }
+    public void setAppointmentDate(LocalDate appointmentDate) { this.appointmentDate = appointmentDate; }
+
+    public String getTimeSlot() { return timeSlot; }
+    public void setTimeSlot(String timeSlot) { this.timeSlot = timeSlot; }
+
+    public Integer getLastNumber() { return lastNumber; }
+    public void setLastNumber(Integer lastNumber) { this.lastNumber = lastNumber; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,29 @@
+package com.example.clinic_backend.repository;
+
+import com.example.clinic_backend.model.BrokerMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BrokerMessageRepository extends JpaRepository<BrokerMessage, Long> {
+
+    // Các message mới hơn id đã đọc (theo khóa chính, không quét bảng)
+    List<BrokerMessage> findTop500ByIdGreaterThanOrderByIdAsc(Long id);
+
+    // Đọc lại các id bị hở (insert commit muộn)
+    List<BrokerMessage> findByIdInOrderByIdAsc(Collection<Long> ids);
+
+    @Query("SELECT COALESCE(MAX(b.id), 0) FROM BrokerMessage b")
+    Long findMaxId();
+
+    @Modifying
+    @Query("DELETE FROM BrokerMessage b WHERE b.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
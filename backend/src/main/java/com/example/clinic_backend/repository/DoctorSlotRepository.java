@@ -2,6 +2,7 @@ package com.example.clinic_backend.repository;
 
 import com.example.clinic_backend.model.DoctorSlot;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -29,6 +30,157 @@ public interface DoctorSlotRepository extends JpaRepository<DoctorSlot, Long> {
  List<DoctorSlot> findByDoctorId(Long doctorId);
  
     
+    // appointmentDate luu dang "yyyy-MM-dd" nen so sanh chuoi van dung thu tu ngay
+    @Query("SELECT ds FROM DoctorSlot ds WHERE ds.appointmentDate BETWEEN :startDate AND :endDate")
+    List<DoctorSlot> findByAppointmentDateBetween(@Param("startDate") String startDate,
+                                                  @Param("endDate") String endDate);
+    
+    // Cac o (bac si, ngay, khung gio) da co trong khoang ngay - dung khi tao slot hang loat
+    @Query("SELECT ds.doctorId, ds.appointmentDate, ds.timeSlot FROM DoctorSlot ds " +
+           "WHERE ds.doctorId IN :doctorIds AND ds.appointmentDate BETWEEN :startDate AND :endDate")
+    List<Object[]> findSlotKeys(@Param("doctorIds") List<Long> doctorIds,
+                                @Param("startDate") String startDate,
+                                @Param("endDate") String endDate);
+    
+    // So o trong khoang ngay cua cac bac si (dem so o vua tao hang loat)
+    @Query("SELECT COUNT(ds) FROM DoctorSlot ds " +
+           "WHERE ds.doctorId IN :doctorIds AND ds.appointmentDate BETWEEN :startDate AND :endDate")
+    long countSlots(@Param("doctorIds") List<Long> doctorIds,
+                    @Param("startDate") String startDate,
+                    @Param("endDate") String endDate);
+    
+    // Ma tran slot: cau hinh doctor_slots + so don APPROVED trong 1 query
+    // tra ve: doctor_id, appointment_date, time_slot, max_patients, active, approved
+    @Query(value = "SELECT c.doctor_id, c.appointment_date, c.time_slot, " +
+                   "MAX(c.max_patients), MIN(c.active), SUM(c.approved) FROM (" +
+                   "  SELECT ds.doctor_id, ds.appointment_date, ds.time_slot, ds.max_patients, " +
+                   "         CASE WHEN ds.is_active = 0 THEN 0 ELSE 1 END AS active, 0 AS approved " +
+                   "  FROM doctor_slots ds " +
+                   "  WHERE ds.doctor_id IN (:doctorIds) AND ds.appointment_date BETWEEN :startDate AND :endDate " +
+                   "  UNION ALL " +
+                   "  SELECT p.doctor_id, DATE_FORMAT(p.appointment_date, '%Y-%m-%d'), p.assigned_session, " +
+                   "         NULL, NULL, COUNT(*) " +
+                   "  FROM patient_registrations p " +
+                   "  WHERE p.doctor_id IN (:doctorIds) AND p.appointment_date BETWEEN :startDate AND :endDate " +
+                   "    AND p.status = 'APPROVED' " +
+                   "  GROUP BY p.doctor_id, p.appointment_date, p.assigned_session" +
+                   ") c GROUP BY c.doctor_id, c.appointment_date, c.time_slot",
+           nativeQuery = true)
+    List<Object[]> findAvailabilityCells(@Param("doctorIds") List<Long> doctorIds,
+                                         @Param("startDate") String startDate,
+                                         @Param("endDate") String endDate);
+    
+    // So don APPROVED cua tung slot, tinh bang subquery group by (dung cho cap nhat suc chua hang loat)
+    String APPROVED_OCCUPANCY_JOIN =
+        "LEFT JOIN (" +
+        "  SELECT p.doctor_id, DATE_FORMAT(p.appointment_date, '%Y-%m-%d') AS appointment_date, " +
+        "         p.assigned_session, COUNT(*) AS approved " +
+        "  FROM patient_registrations p " +
+        "  WHERE p.status = 'APPROVED' " +
+        "    AND (:startDate IS NULL OR p.appointment_date >= :startDate) " +
+        "    AND (:endDate IS NULL OR p.appointment_date <= :endDate) " +
+        "  GROUP BY p.doctor_id, p.appointment_date, p.assigned_session" +
+        ") occ ON occ.doctor_id = ds.doctor_id AND occ.appointment_date = ds.appointment_date " +
+        "     AND occ.assigned_session = ds.time_slot ";
+    
+    // Loc theo khoang ngay / khoa / bac si (tham so null = khong loc)
+    String CAPACITY_SCOPE_FILTER =
+        "WHERE (:startDate IS NULL OR ds.appointment_date >= :startDate) " +
+        "  AND (:endDate IS NULL OR ds.appointment_date <= :endDate) " +
+        "  AND (:doctorId IS NULL OR ds.doctor_id = :doctorId) " +
+        "  AND (:departmentId IS NULL OR ds.doctor_id IN (SELECT d.id FROM doctors d WHERE d.department_id = :departmentId)) ";
+    
+    // Doi so benh nhan toi da trong 1 cau UPDATE, chi cho slot co so don da duyet <= gia tri moi
+    @Modifying
+    @Query(value = "UPDATE doctor_slots ds " + APPROVED_OCCUPANCY_JOIN +
+                   "SET ds.max_patients = :maxPatients, ds.updated_at = NOW() " +
+                   CAPACITY_SCOPE_FILTER +
+                   "  AND COALESCE(occ.approved, 0) <= :maxPatients",
+           nativeQuery = true)
+    int updateMaxPatientsInScope(@Param("maxPatients") int maxPatients,
+                                 @Param("startDate") String startDate,
+                                 @Param("endDate") String endDate,
+                                 @Param("departmentId") Long departmentId,
+                                 @Param("doctorId") Long doctorId);
+    
+    // Cac slot khong the giam xuong gia tri moi (so don da duyet > gia tri moi)
+    // tra ve: id, doctor_id, appointment_date, time_slot, max_patients, approved
+    @Query(value = "SELECT ds.id, ds.doctor_id, ds.appointment_date, ds.time_slot, ds.max_patients, occ.approved " +
+                   "FROM doctor_slots ds " + APPROVED_OCCUPANCY_JOIN +
+                   CAPACITY_SCOPE_FILTER +
+                   "  AND occ.approved > :maxPatients " +
+                   "ORDER BY ds.appointment_date, ds.doctor_id, ds.time_slot",
+           nativeQuery = true)
+    List<Object[]> findSlotsOverCapacity(@Param("maxPatients") int maxPatients,
+                                         @Param("startDate") String startDate,
+                                         @Param("endDate") String endDate,
+                                         @Param("departmentId") Long departmentId,
+                                         @Param("doctorId") Long doctorId);
+    
+    // ========== DAT LICH OPTIMISTIC ==========
+    
+    // trang thai slot khi giu cho khong duoc: id, occupied_count, max_patients, is_active
+    // (khoa dong toi het transaction, doc ban moi nhat)
+    @Query(value = "SELECT ds.id, ds.occupied_count, ds.max_patients, ds.is_active FROM doctor_slots ds " +
+                   "WHERE ds.doctor_id = :doctorId AND ds.appointment_date = :appointmentDate AND ds.time_slot = :timeSlot " +
+                   "FOR UPDATE",
+           nativeQuery = true)
+    List<Object[]> lockBookingState(@Param("doctorId") Long doctorId,
+                                    @Param("appointmentDate") String appointmentDate,
+                                    @Param("timeSlot") String timeSlot);
+    
+    // giu 1 cho neu con cho; 0 dong = het cho, slot bi khoa, chua co slot hoac chua co bo dem
+    @Modifying
+    @Query(value = "UPDATE doctor_slots SET occupied_count = occupied_count + 1, version = version + 1, updated_at = NOW() " +
+                   "WHERE doctor_id = :doctorId AND appointment_date = :appointmentDate AND time_slot = :timeSlot " +
+                   "AND occupied_count < COALESCE(max_patients, 10) AND (is_active IS NULL OR is_active = 1)",
+           nativeQuery = true)
+    int incrementOccupiedIfAvailable(@Param("doctorId") Long doctorId,
+                                     @Param("appointmentDate") String appointmentDate,
+                                     @Param("timeSlot") String timeSlot);
+    
+    // tra 1 cho (huy / tu choi don da duyet)
+    @Modifying
+    @Query(value = "UPDATE doctor_slots SET occupied_count = occupied_count - 1, version = version + 1, updated_at = NOW() " +
+                   "WHERE doctor_id = :doctorId AND appointment_date = :appointmentDate AND time_slot = :timeSlot " +
+                   "AND occupied_count > 0",
+           nativeQuery = true)
+    int decrementOccupied(@Param("doctorId") Long doctorId,
+                          @Param("appointmentDate") String appointmentDate,
+                          @Param("timeSlot") String timeSlot);
+    
+    // dat lai occupied_count = so don APPROVED cho slot tu startDate tro di bi lech va khong doi trong quietSeconds
+    // (bo qua slot vua co dat lich: cho da giu nhung don chua commit)
+    @Modifying
+    @Query(value = "UPDATE doctor_slots ds " + APPROVED_OCCUPANCY_JOIN +
+                   "SET ds.occupied_count = COALESCE(occ.approved, 0), ds.version = ds.version + 1, ds.updated_at = NOW() " +
+                   "WHERE ds.appointment_date >= :startDate AND (:endDate IS NULL OR ds.appointment_date <= :endDate) " +
+                   "  AND ds.occupied_count IS NOT NULL " +
+                   "  AND ds.occupied_count <> COALESCE(occ.approved, 0) " +
+                   "  AND ds.updated_at < NOW() - INTERVAL :quietSeconds SECOND",
+           nativeQuery = true)
+    int reconcileOccupied(@Param("startDate") String startDate,
+                          @Param("endDate") String endDate,
+                          @Param("quietSeconds") int quietSeconds);
+    
+    // khoi tao occupied_count tu so don da duyet (slot cu chua co bo dem)
+    @Modifying
+    @Query(value = "UPDATE doctor_slots SET occupied_count = :occupied, version = version + 1 " +
+                   "WHERE id = :id AND occupied_count IS NULL",
+           nativeQuery = true)
+    int initOccupied(@Param("id") Long id, @Param("occupied") int occupied);
+    
+    // tao slot mac dinh neu chua co (2 request cung tao thi bo qua)
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO doctor_slots (doctor_id, appointment_date, time_slot, max_patients, is_active, " +
+                   "occupied_count, version, created_at, updated_at) " +
+                   "VALUES (:doctorId, :appointmentDate, :timeSlot, 10, 1, :occupied, 0, NOW(), NOW())",
+           nativeQuery = true)
+    int insertSlotIfAbsent(@Param("doctorId") Long doctorId,
+                           @Param("appointmentDate") String appointmentDate,
+                           @Param("timeSlot") String timeSlot,
+                           @Param("occupied") int occupied);
+    
     @Query("SELECT ds FROM DoctorSlot ds WHERE ds.isActive = true")
     List<DoctorSlot> findActiveSlots();
 }
\ No newline at end of file
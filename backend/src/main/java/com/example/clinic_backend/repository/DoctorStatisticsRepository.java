@@ -2,12 +2,16 @@
 package com.example.clinic_backend.repository;
 
 import com.example.clinic_backend.model.DoctorStatistics;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,6 +25,102 @@ public interface DoctorStatisticsRepository extends JpaRepository<DoctorStatisti
             String statType
     );
     
+    // Dòng thống kê 1 loại của bác sĩ trong khoảng ngày (quét theo khóa doctor_id, stat_type, stat_date)
+    List<DoctorStatistics> findByDoctorIdAndStatTypeAndStatDateBetweenOrderByStatDateAsc(
+            Long doctorId,
+            String statType,
+            LocalDate startDate,
+            LocalDate endDate
+    );
+    
+    // Tạo dòng đếm DAY nếu chưa có; trùng khóa thì bỏ qua
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO doctor_statistics (doctor_id, stat_date, stat_type, total_appointments, " +
+                   "completed_appointments, cancelled_appointments, no_show_appointments, approved_appointments, " +
+                   "pending_appointments, success_rate, created_at) " +
+                   "VALUES (:doctorId, :statDate, 'DAY', 0, 0, 0, 0, 0, 0, 0, NOW())",
+           nativeQuery = true)
+    int insertDayIfAbsent(@Param("doctorId") Long doctorId, @Param("statDate") LocalDate statDate);
+    
+    // Dòng tổng hợp (WEEK / MONTH / YEAR) của bác sĩ có ngày đầu kỳ trong khoảng
+    List<DoctorStatistics> findByDoctorIdAndStatTypeInAndStatDateBetween(
+            Long doctorId,
+            Collection<String> statTypes,
+            LocalDate startDate,
+            LocalDate endDate
+    );
+    
+    // Dòng thống kê 1 loại của bác sĩ tại các ngày rời rạc (phần lẻ chưa có dòng tổng hợp)
+    List<DoctorStatistics> findByDoctorIdAndStatTypeAndStatDateIn(
+            Long doctorId,
+            String statType,
+            Collection<LocalDate> statDates
+    );
+    
+    // Cộng chênh lệch vào dòng (bác sĩ, loại, ngày) bằng một câu UPDATE nguyên tử (success_rate tính từ giá trị mới)
+    // Dòng chưa có thì không làm gì (dòng tổng hợp do job tạo khi kỳ đóng)
+    @Modifying
+    @Query(value = "UPDATE doctor_statistics SET total_appointments = total_appointments + :total, " +
+                   "completed_appointments = completed_appointments + :completed, " +
+                   "cancelled_appointments = cancelled_appointments + :cancelled, " +
+                   "no_show_appointments = no_show_appointments + :noShow, " +
+                   "approved_appointments = approved_appointments + :approved, " +
+                   "pending_appointments = pending_appointments + :pending, " +
+                   "success_rate = IF(total_appointments > 0, completed_appointments * 100.0 / total_appointments, 0), " +
+                   "updated_at = NOW() " +
+                   "WHERE doctor_id = :doctorId AND stat_type = :statType AND stat_date = :statDate",
+           nativeQuery = true)
+    int addDelta(@Param("doctorId") Long doctorId,
+                 @Param("statType") String statType,
+                 @Param("statDate") LocalDate statDate,
+                 @Param("total") int total,
+                 @Param("completed") int completed,
+                 @Param("cancelled") int cancelled,
+                 @Param("noShow") int noShow,
+                 @Param("approved") int approved,
+                 @Param("pending") int pending);
+    
+    // Tổng hợp 1 kỳ đã đóng cho mọi bác sĩ từ dòng loại nguồn (DAY -> WEEK / MONTH, MONTH -> YEAR).
+    // stat_date của dòng tổng hợp = ngày đầu kỳ; bác sĩ không có lịch hẹn vẫn có dòng 0
+    // (thiếu dòng = kỳ chưa tổng hợp). Ghi đè nên chạy lại được.
+    @Modifying
+    @Query(value = "INSERT INTO doctor_statistics (doctor_id, stat_date, stat_type, total_appointments, " +
+                   "completed_appointments, cancelled_appointments, no_show_appointments, approved_appointments, " +
+                   "pending_appointments, success_rate, created_at, updated_at) " +
+                   "SELECT d.id, :periodStart, :statType, " +
+                   "COALESCE(SUM(s.total_appointments), 0), COALESCE(SUM(s.completed_appointments), 0), " +
+                   "COALESCE(SUM(s.cancelled_appointments), 0), COALESCE(SUM(s.no_show_appointments), 0), " +
+                   "COALESCE(SUM(s.approved_appointments), 0), COALESCE(SUM(s.pending_appointments), 0), " +
+                   "IF(SUM(s.total_appointments) > 0, SUM(s.completed_appointments) * 100.0 / SUM(s.total_appointments), 0), " +
+                   "NOW(), NOW() " +
+                   "FROM doctors d LEFT JOIN doctor_statistics s ON s.doctor_id = d.id " +
+                   "AND s.stat_type = :sourceType AND s.stat_date BETWEEN :periodStart AND :periodEnd " +
+                   "GROUP BY d.id " +
+                   "ON DUPLICATE KEY UPDATE total_appointments = VALUES(total_appointments), " +
+                   "completed_appointments = VALUES(completed_appointments), " +
+                   "cancelled_appointments = VALUES(cancelled_appointments), " +
+                   "no_show_appointments = VALUES(no_show_appointments), " +
+                   "approved_appointments = VALUES(approved_appointments), " +
+                   "pending_appointments = VALUES(pending_appointments), " +
+                   "success_rate = VALUES(success_rate), updated_at = NOW()",
+           nativeQuery = true)
+    int upsertRollup(@Param("statType") String statType,
+                     @Param("sourceType") String sourceType,
+                     @Param("periodStart") LocalDate periodStart,
+                     @Param("periodEnd") LocalDate periodEnd);
+    
+    // Khóa các dòng trong khoảng để đối chiếu (chênh lệch đồng thời chờ tới khi đối chiếu xong)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM DoctorStatistics s WHERE s.statType = :statType " +
+           "AND s.statDate BETWEEN :startDate AND :endDate " +
+           "AND (:doctorId IS NULL OR s.doctorId = :doctorId)")
+    List<DoctorStatistics> lockForReconcile(
+            @Param("statType") String statType,
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate,
+            @Param("doctorId") Long doctorId
+    );
+    
     // Lấy thống kê theo bác sĩ và khoảng thời gian
     @Query("SELECT s FROM DoctorStatistics s WHERE s.doctorId = :doctorId " +
            "AND s.statDate BETWEEN :startDate AND :endDate " +
@@ -40,22 +140,4 @@ public interface DoctorStatisticsRepository extends JpaRepository<DoctorStatisti
             @Param("statType") String statType,
             @Param("limit") int limit
     );
-    
-    // Thống kê theo tuần
-    @Query("SELECT s FROM DoctorStatistics s WHERE s.doctorId = :doctorId " +
-           "AND YEAR(s.statDate) = YEAR(CURRENT_DATE) " +
-           "AND WEEK(s.statDate) = WEEK(CURRENT_DATE) " +
-           "AND s.statType = 'DAY'")
-    List<DoctorStatistics> findWeeklyStatistics(
-            @Param("doctorId") Long doctorId
-    );
-    
-    // Thống kê theo tháng
-    @Query("SELECT s FROM DoctorStatistics s WHERE s.doctorId = :doctorId " +
-           "AND YEAR(s.statDate) = YEAR(CURRENT_DATE) " +
-           "AND MONTH(s.statDate) = MONTH(CURRENT_DATE) " +
-           "AND s.statType = 'DAY'")
-    List<DoctorStatistics> findMonthlyStatistics(
-            @Param("doctorId") Long doctorId
-    );
 }
\ No newline at end of file
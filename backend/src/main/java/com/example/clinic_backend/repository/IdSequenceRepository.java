@@ -0,0 +1,35 @@
+package com.example.clinic_backend.repository;
+
+import com.example.clinic_backend.model.IdSequence;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface IdSequenceRepository extends JpaRepository<IdSequence, String> {
+
+    // Giữ trước một khối số: chỉ khóa đúng 1 dòng theo khóa chính, không quét bảng
+    @Modifying
+    @Query(value = "UPDATE id_sequences SET next_value = next_value + :blockSize, updated_at = NOW() " +
+                   "WHERE sequence_name = :sequenceName",
+           nativeQuery = true)
+    int advance(@Param("sequenceName") String sequenceName,
+                @Param("blockSize") long blockSize);
+
+    // Đọc lại giá trị vừa cộng (cùng transaction nên thấy giá trị của chính mình)
+    @Query(value = "SELECT next_value FROM id_sequences WHERE sequence_name = :sequenceName",
+           nativeQuery = true)
+    Optional<Long> findNextValue(@Param("sequenceName") String sequenceName);
+
+    // Tạo sequence nếu chưa có; trùng khóa thì bỏ qua (2 node cùng tạo)
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO id_sequences (sequence_name, next_value, updated_at) " +
+                   "VALUES (:sequenceName, :initialValue, NOW())",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("sequenceName") String sequenceName,
+                       @Param("initialValue") long initialValue);
+}
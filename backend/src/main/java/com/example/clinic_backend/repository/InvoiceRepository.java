@@ -1,11 +1,13 @@
 package com.example.clinic_backend.repository;
 
 import com.example.clinic_backend.model.Invoice;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,4 +31,45 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
 
     @Query("SELECT i FROM Invoice i ORDER BY i.invoiceDate DESC")
     List<Invoice> findAllOrderByInvoiceDateDesc();
+    
+    // Hóa đơn trong khoảng ngày (quét khoảng trên idx_invoice_date)
+    List<Invoice> findByInvoiceDateBetweenOrderByInvoiceDateDesc(LocalDateTime fromDate, LocalDateTime toDate);
+    
+    // Tìm theo số hóa đơn / mã giao dịch (khớp đúng) hoặc tên / email / số điện thoại (chứa từ khóa), lọc trạng thái nếu có
+    @Query("SELECT i FROM Invoice i WHERE (:status IS NULL OR i.status = :status) " +
+           "AND (i.invoiceNumber = :keyword OR i.transactionNo = :keyword " +
+           "OR LOWER(i.patientName) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
+           "OR i.patientEmail LIKE CONCAT('%', :keyword, '%') " +
+           "OR i.patientPhone LIKE CONCAT('%', :keyword, '%')) " +
+           "ORDER BY i.invoiceDate DESC")
+    List<Invoice> search(@Param("keyword") String keyword, @Param("status") String status);
+    
+    // Trang hóa đơn theo keyset: các hóa đơn trong [from, to) đứng sau con trỏ (invoiceDate, id) theo thứ tự
+    // invoice_date DESC, id DESC; chỉ đọc pageable.size dòng trên idx_invoice_date dù trang sâu đến đâu
+    @Query("SELECT i FROM Invoice i WHERE i.invoiceDate >= :from AND i.invoiceDate < :to " +
+           "AND (i.invoiceDate < :cursorDate OR (i.invoiceDate = :cursorDate AND i.id < :cursorId)) " +
+           "AND (:status IS NULL OR i.status = :status) " +
+           "AND (:paymentMethod IS NULL OR i.paymentMethod = :paymentMethod) " +
+           "ORDER BY i.invoiceDate DESC, i.id DESC")
+    List<Invoice> findPageBefore(@Param("from") LocalDateTime from,
+                                 @Param("to") LocalDateTime to,
+                                 @Param("cursorDate") LocalDateTime cursorDate,
+                                 @Param("cursorId") Long cursorId,
+                                 @Param("status") String status,
+                                 @Param("paymentMethod") String paymentMethod,
+                                 Pageable pageable);
+    
+    // Gộp hóa đơn trong [from, to) theo kỳ (DAY / WEEK bắt đầu thứ 2 / MONTH; cột period = ngày đầu kỳ yyyy-MM-dd),
+    // trạng thái và phương thức thanh toán: số hóa đơn + tổng tiền; quét khoảng trên idx_invoice_stats, không đọc dòng
+    @Query(value = "SELECT CASE :unit " +
+                   "WHEN 'MONTH' THEN DATE_FORMAT(invoice_date, '%Y-%m-01') " +
+                   "WHEN 'WEEK' THEN DATE_FORMAT(DATE_SUB(invoice_date, INTERVAL WEEKDAY(invoice_date) DAY), '%Y-%m-%d') " +
+                   "ELSE DATE_FORMAT(invoice_date, '%Y-%m-%d') END AS period, " +
+                   "status, payment_method, COUNT(*), COALESCE(SUM(amount), 0) " +
+                   "FROM invoices WHERE invoice_date >= :from AND invoice_date < :to " +
+                   "GROUP BY period, status, payment_method",
+           nativeQuery = true)
+    List<Object[]> aggregateByPeriod(@Param("unit") String unit,
+                                     @Param("from") LocalDateTime from,
+                                     @Param("to") LocalDateTime to);
 }
\ No newline at end of file
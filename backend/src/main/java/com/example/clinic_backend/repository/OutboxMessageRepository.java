@@ -0,0 +1,44 @@
+package com.example.clinic_backend.repository;
+
+import com.example.clinic_backend.model.OutboxMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+
+    // Khóa các dòng đến hạn; dòng node khác đang giữ thì bỏ qua (không chờ)
+    @Query(value = "SELECT id FROM outbox_messages WHERE status = 'PENDING' AND next_attempt_at <= :now " +
+                   "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<Long> lockDueIds(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    // Nhận lô để gửi: dời hạn sang leaseUntil, node chết giữa chừng thì lô được gửi lại sau hạn
+    @Modifying
+    @Query("UPDATE OutboxMessage o SET o.nextAttemptAt = :leaseUntil, o.attempts = o.attempts + 1 WHERE o.id IN :ids")
+    int claim(@Param("ids") List<Long> ids, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Modifying
+    @Query("UPDATE OutboxMessage o SET o.status = 'SENT', o.sentAt = :sentAt, o.lastError = null WHERE o.id IN :ids")
+    int markSent(@Param("ids") List<Long> ids, @Param("sentAt") LocalDateTime sentAt);
+
+    // Gửi lại thông báo DEAD (admin)
+    @Modifying
+    @Query("UPDATE OutboxMessage o SET o.status = 'PENDING', o.attempts = 0, o.nextAttemptAt = :now WHERE o.id = :id AND o.status = 'DEAD'")
+    int requeueDead(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    // Dọn các dòng đã gửi
+    @Modifying
+    @Query("DELETE FROM OutboxMessage o WHERE o.status = 'SENT' AND o.sentAt < :before")
+    int deleteSentBefore(@Param("before") LocalDateTime before);
+
+    long countByStatus(String status);
+
+    List<OutboxMessage> findTop50ByStatusOrderByIdDesc(String status);
+}
@@ -1,17 +1,21 @@
 package com.example.clinic_backend.repository;
 
+import com.example.clinic_backend.dto.ReminderCandidateDTO;
 import com.example.clinic_backend.model.PatientRegistration;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import jakarta.persistence.LockModeType;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface PatientRegistrationRepository extends JpaRepository<PatientRegistration, Long> {
@@ -28,6 +32,18 @@ public interface PatientRegistrationRepository extends JpaRepository<PatientRegi
             @Param("date") LocalDate date, 
             @Param("status") String status);
     
+    // Lịch hẹn đã duyệt chưa nhắc trong khoảng ngày (chỉ lấy cột cần, không join bác sĩ)
+    @Query("SELECT new com.example.clinic_backend.dto.ReminderCandidateDTO(p.id, p.appointmentDate, p.assignedSession) " +
+           "FROM PatientRegistration p WHERE p.appointmentDate BETWEEN :fromDate AND :toDate " +
+           "AND p.status = 'APPROVED' AND (p.reminderSent = false OR p.reminderSent IS NULL)")
+    List<ReminderCandidateDTO> findReminderCandidates(@Param("fromDate") LocalDate fromDate,
+                                                      @Param("toDate") LocalDate toDate);
+    
+    // Đánh dấu đã gửi reminder cho nhiều lịch hẹn (1 câu UPDATE)
+    @Modifying
+    @Query("UPDATE PatientRegistration p SET p.reminderSent = true, p.lastReminderSentAt = :sentAt WHERE p.id IN :ids")
+    int markRemindersSent(@Param("ids") List<Long> ids, @Param("sentAt") LocalDateTime sentAt);
+    
     // Lấy tất cả lịch hẹn với thông tin bác sĩ
     @EntityGraph(attributePaths = {"doctor"})
     @Query("SELECT pr FROM PatientRegistration pr ORDER BY pr.createdAt DESC")
@@ -45,11 +61,9 @@ public interface PatientRegistrationRepository extends JpaRepository<PatientRegi
     List<PatientRegistration> findByRefundStatus(String refundStatus);
 
     // Thống kê
-    @Query("SELECT COUNT(r) FROM PatientRegistration r WHERE DATE(r.createdAt) = CURRENT_DATE")
-    Long countByCreatedAtToday();
-    
-    @Query("SELECT COUNT(r) FROM PatientRegistration r WHERE YEAR(r.createdAt) = :year")
-    Long countByYear(@Param("year") int year);
+    // đếm đơn tạo trong [from, to): so sánh trực tiếp created_at để dùng được index
+    @Query("SELECT COUNT(r) FROM PatientRegistration r WHERE r.createdAt >= :from AND r.createdAt < :to")
+    Long countCreatedBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
     
     @Query("SELECT COUNT(r) FROM PatientRegistration r WHERE r.appointmentDate = :appointmentDate AND r.assignedSession = :assignedSession AND r.status = 'APPROVED'")
     int countApprovedByDateAndSession(@Param("appointmentDate") LocalDate appointmentDate, 
@@ -59,6 +73,28 @@ public interface PatientRegistrationRepository extends JpaRepository<PatientRegi
     List<PatientRegistration> findByEmailOrderByCreatedAtDesc(String email);
     List<PatientRegistration> findByStatusOrderByCreatedAtAsc(String status);
     
+    // Danh sách chờ: đơn cần xử lý thủ công đã có bác sĩ + khung giờ, theo thứ tự đăng ký
+    @Query("SELECT r FROM PatientRegistration r WHERE r.status = 'NEEDS_MANUAL_REVIEW' " +
+           "AND r.doctorId IS NOT NULL AND r.assignedSession IS NOT NULL " +
+           "AND r.appointmentDate >= :fromDate ORDER BY r.createdAt ASC, r.id ASC")
+    List<PatientRegistration> findWaitlistCandidates(@Param("fromDate") LocalDate fromDate);
+    
+    // Đơn PENDING bị bỏ lại (node khởi động lại hoặc hàng đợi intake đầy) - dùng để đưa lại vào hàng đợi.
+    // Dòng đang bị worker (node bất kỳ) giữ bằng claimPending thì bỏ qua, không chờ
+    @Query(value = "SELECT id FROM patient_registrations WHERE status = 'PENDING' " +
+                   "AND appointment_date >= :fromDate AND created_at < :createdBefore " +
+                   "ORDER BY created_at ASC FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<Long> findStalePendingIds(@Param("fromDate") LocalDate fromDate,
+                                   @Param("createdBefore") LocalDateTime createdBefore);
+    
+    // Worker intake giành đơn PENDING trong transaction xử lý: 1 = giành được, 0 = đơn đã được xử lý ở nơi khác.
+    // Khóa dòng tới khi transaction kết thúc: worker thứ 2 chờ rồi nhận 0; rollback thì đơn về PENDING
+    @Modifying
+    @Query(value = "UPDATE patient_registrations SET status = 'PROCESSING' WHERE id = :id AND status = 'PENDING'",
+           nativeQuery = true)
+    int claimPending(@Param("id") Long id);
+    
     // Quản lý slot
     @Query("SELECT COUNT(p) FROM PatientRegistration p WHERE p.doctorId = :doctorId AND p.appointmentDate = :appointmentDate AND p.assignedSession = :assignedSession AND p.status = :status")
     Integer countByDoctorIdAndAppointmentDateAndAssignedSessionAndStatus(
@@ -68,10 +104,38 @@ public interface PatientRegistrationRepository extends JpaRepository<PatientRegi
         @Param("status") String status
     );
     
-    // Khóa khi đếm để tránh race condition
-    @Lock(LockModeType.PESSIMISTIC_WRITE)
-    @Query("SELECT COUNT(p) FROM PatientRegistration p WHERE p.doctorId = :doctorId AND p.appointmentDate = :appointmentDate AND p.assignedSession = :assignedSession AND p.status = 'APPROVED'")
-    Integer countApprovedRegistrationsWithLock(
+    // Id đơn approved theo khung giờ của một bác sĩ trong ngày (1 query cho cả ngày)
+    // trả về: assignedSession, id
+    @Query("SELECT p.assignedSession, p.id FROM PatientRegistration p WHERE p.doctorId = :doctorId " +
+           "AND p.appointmentDate = :appointmentDate AND p.status = 'APPROVED'")
+    List<Object[]> findApprovedIdsBySession(
+        @Param("doctorId") Long doctorId,
+        @Param("appointmentDate") LocalDate appointmentDate
+    );
+    
+    // Id đơn approved của nhiều bác sĩ trong một ngày
+    // trả về: doctorId, assignedSession, id
+    @Query("SELECT p.doctorId, p.assignedSession, p.id FROM PatientRegistration p " +
+           "WHERE p.doctorId IN :doctorIds AND p.appointmentDate = :appointmentDate AND p.status = 'APPROVED'")
+    List<Object[]> findApprovedIdsByDoctors(
+        @Param("doctorIds") List<Long> doctorIds,
+        @Param("appointmentDate") LocalDate appointmentDate
+    );
+    
+    // Id đơn approved theo bác sĩ, ngày, khung giờ trong một khoảng ngày
+    // trả về: doctorId, appointmentDate, assignedSession, id
+    @Query("SELECT p.doctorId, p.appointmentDate, p.assignedSession, p.id FROM PatientRegistration p " +
+           "WHERE p.appointmentDate BETWEEN :startDate AND :endDate AND p.status = 'APPROVED' " +
+           "AND p.doctorId IS NOT NULL")
+    List<Object[]> findApprovedIdsByDateRange(
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+    
+    // Số thứ tự lớn nhất đã cấp trong slot (khởi tạo bộ đếm số thứ tự)
+    @Query("SELECT MAX(p.queueNumber) FROM PatientRegistration p WHERE p.doctorId = :doctorId " +
+           "AND p.appointmentDate = :appointmentDate AND p.assignedSession = :assignedSession")
+    Integer findMaxQueueNumber(
         @Param("doctorId") Long doctorId,
         @Param("appointmentDate") LocalDate appointmentDate,
         @Param("assignedSession") String assignedSession
@@ -97,6 +161,53 @@ public interface PatientRegistrationRepository extends JpaRepository<PatientRegi
         @Param("endDate") LocalDate endDate
     );
     
+    // Thống kê bác sĩ: đếm theo ngày + trạng thái trong 1 lần quét (biểu đồ và tổng hợp)
+    @Query("SELECT p.appointmentDate, p.status, p.examinationStatus, COUNT(p) FROM PatientRegistration p " +
+           "WHERE p.doctorId = :doctorId AND p.appointmentDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY p.appointmentDate, p.status, p.examinationStatus")
+    List<Object[]> countByDoctorGroupedByDateAndStatus(
+        @Param("doctorId") Long doctorId,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate
+    );
+    
+    // Đối chiếu thống kê: đếm theo bác sĩ, ngày, trạng thái (1 bác sĩ hoặc tất cả)
+    @Query("SELECT p.doctorId, p.appointmentDate, p.status, p.examinationStatus, COUNT(p) FROM PatientRegistration p " +
+           "WHERE p.appointmentDate BETWEEN :startDate AND :endDate AND p.doctorId IS NOT NULL " +
+           "AND (:doctorId IS NULL OR p.doctorId = :doctorId) " +
+           "GROUP BY p.doctorId, p.appointmentDate, p.status, p.examinationStatus")
+    List<Object[]> countGroupedByDoctorAndDate(
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate,
+        @Param("doctorId") Long doctorId
+    );
+    
+    // Thống kê bác sĩ trong 1 ngày: đếm theo khung giờ + trạng thái
+    @Query("SELECT p.assignedSession, p.status, p.examinationStatus, COUNT(p) FROM PatientRegistration p " +
+           "WHERE p.doctorId = :doctorId AND p.appointmentDate = :appointmentDate " +
+           "GROUP BY p.assignedSession, p.status, p.examinationStatus")
+    List<Object[]> countByDoctorGroupedBySessionAndStatus(
+        @Param("doctorId") Long doctorId,
+        @Param("appointmentDate") LocalDate appointmentDate
+    );
+    
+    // Nạp cube phân tích: chỉ các cột cần, đọc dần từng dòng (fetch size MIN_VALUE = MySQL streaming), không tạo entity
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "" + Integer.MIN_VALUE))
+    @Query("SELECT p.doctorId, p.department, p.appointmentDate, p.assignedSession, p.status, p.paymentStatus, " +
+           "p.examinationStatus, p.paidAmount FROM PatientRegistration p")
+    Stream<Object[]> streamAnalyticsFacts();
+    
+    // Cùng các cột như trên, kèm id đầu dòng: đọc lại các đơn thay đổi trong lúc nạp cube
+    @Query("SELECT p.id, p.doctorId, p.department, p.appointmentDate, p.assignedSession, p.status, p.paymentStatus, " +
+           "p.examinationStatus, p.paidAmount FROM PatientRegistration p WHERE p.id IN :ids")
+    List<Object[]> findAnalyticsFactsByIds(@Param("ids") List<Long> ids);
+    
+    // Lịch hẹn của bác sĩ (theo index doctor_id)
+    List<PatientRegistration> findByDoctorIdOrderByAppointmentDateDesc(Long doctorId);
+    
+    // Lịch hẹn tạo gần nhất của bác sĩ
+    List<PatientRegistration> findTop5ByDoctorIdOrderByCreatedAtDesc(Long doctorId);
+    
     // Tìm theo userId
     @Query("SELECT p FROM PatientRegistration p WHERE p.userId = :userId ORDER BY p.appointmentDate DESC")
     List<PatientRegistration> findByUserId(@Param("userId") Long userId);
@@ -0,0 +1,55 @@
+package com.example.clinic_backend.repository;
+
+import com.example.clinic_backend.model.SchedulerLock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface SchedulerLockRepository extends JpaRepository<SchedulerLock, String> {
+
+    // Tạo dòng lock nếu chưa có; trùng khóa thì bỏ qua (2 node cùng tạo)
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO scheduler_locks (lock_name, holder, lease_until, fencing_token) " +
+                   "VALUES (:lockName, NULL, NOW(3), 0)",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("lockName") String lockName);
+
+    // Nhận hoặc gia hạn lease: thành công nếu đang giữ hoặc lease cũ đã hết hạn.
+    // Đổi người giữ / lease bị gián đoạn thì tăng fencing_token (gán trước holder vì MySQL gán theo thứ tự)
+    @Modifying
+    @Query(value = "UPDATE scheduler_locks SET " +
+                   "fencing_token = IF(holder = :holder AND lease_until > NOW(3), fencing_token, fencing_token + 1), " +
+                   "lease_until = NOW(3) + INTERVAL (:leaseMs * 1000) MICROSECOND, " +
+                   "holder = :holder " +
+                   "WHERE lock_name = :lockName AND (holder = :holder OR lease_until <= NOW(3))",
+           nativeQuery = true)
+    int acquire(@Param("lockName") String lockName,
+                @Param("holder") String holder,
+                @Param("leaseMs") long leaseMs);
+
+    // Token hiện tại của người giữ (cùng transaction với acquire)
+    @Query(value = "SELECT fencing_token FROM scheduler_locks WHERE lock_name = :lockName AND holder = :holder",
+           nativeQuery = true)
+    Optional<Long> findToken(@Param("lockName") String lockName,
+                             @Param("holder") String holder);
+
+    // Fencing: token còn hiệu lực (chưa bị node khác nhận, lease chưa hết hạn)
+    @Query(value = "SELECT COUNT(*) FROM scheduler_locks WHERE lock_name = :lockName AND holder = :holder " +
+                   "AND fencing_token = :token AND lease_until > NOW(3)",
+           nativeQuery = true)
+    long countValid(@Param("lockName") String lockName,
+                    @Param("holder") String holder,
+                    @Param("token") long token);
+
+    // Trả lease ngay (khi tắt node) để node khác không phải chờ hết hạn
+    @Modifying
+    @Query(value = "UPDATE scheduler_locks SET lease_until = NOW(3) WHERE lock_name = :lockName AND holder = :holder",
+           nativeQuery = true)
+    int release(@Param("lockName") String lockName,
+                @Param("holder") String holder);
+}
@@ -0,0 +1,42 @@
+package com.example.clinic_backend.repository;
+
+import com.example.clinic_backend.model.SlotQueueCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository
+public interface SlotQueueCounterRepository extends JpaRepository<SlotQueueCounter, Long> {
+
+    // Tăng số thứ tự bằng một câu UPDATE nguyên tử, chỉ khóa đúng 1 dòng của slot này
+    @Modifying
+    @Query(value = "UPDATE slot_queue_counters SET last_number = last_number + 1, updated_at = NOW() " +
+                   "WHERE doctor_id = :doctorId AND appointment_date = :appointmentDate AND time_slot = :timeSlot",
+           nativeQuery = true)
+    int increment(@Param("doctorId") Long doctorId,
+                  @Param("appointmentDate") LocalDate appointmentDate,
+                  @Param("timeSlot") String timeSlot);
+
+    // Đọc lại số vừa cấp (cùng transaction nên thấy giá trị của chính mình)
+    @Query(value = "SELECT last_number FROM slot_queue_counters " +
+                   "WHERE doctor_id = :doctorId AND appointment_date = :appointmentDate AND time_slot = :timeSlot",
+           nativeQuery = true)
+    Optional<Integer> findLastNumber(@Param("doctorId") Long doctorId,
+                                     @Param("appointmentDate") LocalDate appointmentDate,
+                                     @Param("timeSlot") String timeSlot);
+
+    // Tạo dòng đếm nếu chưa có; trùng khóa thì bỏ qua (2 request cùng tạo)
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO slot_queue_counters (doctor_id, appointment_date, time_slot, last_number, updated_at) " +
+                   "VALUES (:doctorId, :appointmentDate, :timeSlot, :lastNumber, NOW())",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("doctorId") Long doctorId,
+                       @Param("appointmentDate") LocalDate appointmentDate,
+                       @Param("timeSlot") String timeSlot,
+                       @Param("lastNumber") int lastNumber);
+}
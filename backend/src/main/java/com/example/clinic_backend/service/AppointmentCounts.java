@@ -0,0 +1,115 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.model.DoctorStatistics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// So lich hen theo trang thai cua 1 bac si / 1 khoang (cong don tu nhom GROUP BY, dong doctor_statistics hoac chenh lech).
+// count am dung cho chenh lech (don roi khoi trang thai cu).
+final class AppointmentCounts {
+
+    int total;
+    int completed;
+    int cancelled;
+    int noShow;
+    int approved;
+    int pending;
+
+    void add(String status, String examinationStatus, int count) {
+        total += count;
+        if ("COMPLETED".equals(status)) {
+            completed += count;
+        } else if ("CANCELLED".equals(status)) {
+            cancelled += count;
+        } else if ("APPROVED".equals(status)) {
+            approved += count;
+        } else if ("PENDING".equals(status)) {
+            pending += count;
+        }
+        if ("MISSED".equals(examinationStatus)) {
+            noShow += count;
+        }
+    }
+
+    void add(AppointmentCounts other) {
+        total += other.total;
+        completed += other.completed;
+        cancelled += other.cancelled;
+        noShow += other.noShow;
+        approved += other.approved;
+        pending += other.pending;
+    }
+
+    void add(DoctorStatistics row) {
+        total += value(row.getTotalAppointments());
+        completed += value(row.getCompletedAppointments());
+        cancelled += value(row.getCancelledAppointments());
+        noShow += value(row.getNoShowAppointments());
+        approved += value(row.getApprovedAppointments());
+        pending += value(row.getPendingAppointments());
+    }
+
+    void subtract(DoctorStatistics row) {
+        total -= value(row.getTotalAppointments());
+        completed -= value(row.getCompletedAppointments());
+        cancelled -= value(row.getCancelledAppointments());
+        noShow -= value(row.getNoShowAppointments());
+        approved -= value(row.getApprovedAppointments());
+        pending -= value(row.getPendingAppointments());
+    }
+
+    boolean isZero() {
+        return total == 0 && completed == 0 && cancelled == 0 && noShow == 0 && approved == 0 && pending == 0;
+    }
+
+    boolean matches(DoctorStatistics row) {
+        return total == value(row.getTotalAppointments())
+            && completed == value(row.getCompletedAppointments())
+            && cancelled == value(row.getCancelledAppointments())
+            && noShow == value(row.getNoShowAppointments())
+            && approved == value(row.getApprovedAppointments())
+            && pending == value(row.getPendingAppointments());
+    }
+
+    void copyTo(DoctorStatistics row) {
+        row.setTotalAppointments(total);
+        row.setCompletedAppointments(completed);
+        row.setCancelledAppointments(cancelled);
+        row.setNoShowAppointments(noShow);
+        row.setApprovedAppointments(approved);
+        row.setPendingAppointments(pending);
+        row.calculateSuccessRate();
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> stats = new HashMap<>();
+        double successRate = rate(completed, total);
+
+        stats.put("totalAppointments", total);
+        stats.put("completedAppointments", completed);
+        stats.put("cancelledAppointments", cancelled);
+        stats.put("noShowAppointments", noShow);
+        stats.put("successRate", successRate);
+        stats.put("failureRate", Math.round((100 - successRate) * 100.0) / 100.0);
+        stats.put("approvedAppointments", approved);
+        stats.put("pendingAppointments", pending);
+        return stats;
+    }
+
+    // ty le phan tram, lam tron 2 chu so
+    static double rate(int part, int total) {
+        double percent = total > 0 ? ((double) part / total) * 100 : 0.0;
+        return Math.round(percent * 100.0) / 100.0;
+    }
+
+    private static int value(Integer value) {
+        return value != null ? value : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Total=" + total + ", Completed=" + completed + ", Cancelled=" + cancelled
+            + ", NoShow=" + noShow + ", Approved=" + approved + ", Pending=" + pending;
+    }
+}
@@ -0,0 +1,831 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.event.RegistrationChangedEvent;
+import com.example.clinic_backend.model.RegistrationSnapshot;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+// Cube phan tich lich hen trong bo nho cho bao cao admin (thay cho findAll() + loc bang stream).
+// - moi o = (bac si, khoa, ngay hen, khung gio, trang thai, trang thai thanh toan); do do: so lich hen, so vang, doanh thu
+// - luu theo cot trong mang nguyen thuy, chuoi ma hoa qua tu dien; 6 ma gop thanh 1 khoa long de tra o khi cap nhat
+// - nap lai tu 1 lan quet streaming patient_registrations (luc khoi dong va dinh ky, moi node mot ban);
+//   giua 2 lan nap cap nhat theo chenh lech tu RegistrationChangedEvent sau khi commit
+// - thay doi commit trong luc nap ghi vao nhat ky theo id don; truoc khi doi ban, trong cung snapshot voi lan quet,
+//   doc lai cac don do, tru trang thai da quet roi cong trang thai cuoi trong nhat ky (khong dem 2 lan)
+// - truy van cat / gop (loc theo chieu, nhom theo chieu + ngay / tuan / thang) chi quet cac cot, khong cham database
+// Thay doi tu node khac chi thay sau lan nap ke tiep (app.analytics-cube.rebuild-interval-ms).
+@Service
+public class AppointmentCube {
+
+    private static final Logger logger = LoggerFactory.getLogger(AppointmentCube.class);
+
+    public enum Dimension { DOCTOR, DEPARTMENT, DAY, WEEK, MONTH, SLOT, STATUS, PAYMENT_STATUS }
+
+    // so bit cua moi ma trong khoa o (tong 64); vuot gioi han thi bo qua dong (dem vao factsSkipped)
+    private static final int DOCTOR_BITS = 20;
+    private static final int DEPARTMENT_BITS = 10;
+    private static final int DAY_BITS = 16;
+    private static final int SMALL_BITS = 6;
+    // so id moi lan doc lai don trong nhat ky (gioi han IN (...))
+    private static final int JOURNAL_LOOKUP_CHUNK = 500;
+
+    private final PatientRegistrationRepository registrationRepository;
+    private final TransactionTemplate readTransaction;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile Storage storage;
+    // chenh lech commit trong luc dang quet, ap lai vao ban moi truoc khi doi
+    private List<Change> journal;
+
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong updatesApplied = new AtomicLong();
+    private final AtomicLong factsSkipped = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+    private volatile long factsLoaded;
+    private volatile long lastBuildMillis;
+    private volatile long lastQueryMicros;
+    private volatile LocalDateTime builtAt;
+
+    public AppointmentCube(PatientRegistrationRepository registrationRepository,
+                           PlatformTransactionManager transactionManager) {
+        this.registrationRepository = registrationRepository;
+        // streaming can transaction; chi doc, 1 snapshot cho ca lan quet va lan doc lai don trong nhat ky
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.readTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    // ========== NAP ==========
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${app.analytics-cube.rebuild-interval-ms:3600000}",
+               initialDelayString = "${app.analytics-cube.rebuild-interval-ms:3600000}")
+    public synchronized void rebuild() {
+        long started = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            journal = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Storage fresh = new Storage();
+        long[] loaded = new long[1];
+        try {
+            readTransaction.executeWithoutResult(status -> {
+                try (Stream<Object[]> rows = registrationRepository.streamAnalyticsFacts()) {
+                    rows.forEach(row -> {
+                        if (!fresh.add(Fact.of(row, 0), 1)) {
+                            factsSkipped.incrementAndGet();
+                        }
+                        loaded[0]++;
+                    });
+                }
+                // van trong snapshot cua lan quet: khoa ghi de nhat ky khong doi cho toi luc doi ban
+                lock.writeLock().lock();
+                try {
+                    replayJournal(fresh);
+                    storage = fresh;
+                } finally {
+                    journal = null;
+                    lock.writeLock().unlock();
+                }
+            });
+        } catch (Exception e) {
+            lock.writeLock().lock();
+            try {
+                journal = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            logger.error("Lỗi nạp cube phân tích lịch hẹn (giữ bản cũ): {}", e.getMessage());
+            return;
+        }
+
+        rebuilds.incrementAndGet();
+        factsLoaded = loaded[0];
+        lastBuildMillis = (System.nanoTime() - started) / 1_000_000;
+        builtAt = LocalDateTime.now();
+        logger.info("Nạp cube phân tích lịch hẹn: {} đơn -> {} ô trong {} ms", loaded[0], fresh.size, lastBuildMillis);
+    }
+
+    // moi don trong nhat ky: bo trang thai lan quet da thay (doc lai trong cung snapshot), cong trang thai cuoi;
+    // dung ca khi thay doi commit truoc hay sau snapshot (goi khi dang giu khoa ghi)
+    private void replayJournal(Storage fresh) {
+        Map<Long, Fact> latest = new LinkedHashMap<>();
+        for (Change change : journal) {
+            if (change.registrationId == null) {
+                applyTo(fresh, change.previous, change.current);
+            } else {
+                latest.put(change.registrationId, change.current);
+            }
+        }
+        List<Long> ids = new ArrayList<>(latest.keySet());
+        for (int from = 0; from < ids.size(); from += JOURNAL_LOOKUP_CHUNK) {
+            List<Long> chunk = ids.subList(from, Math.min(from + JOURNAL_LOOKUP_CHUNK, ids.size()));
+            for (Object[] row : registrationRepository.findAnalyticsFactsByIds(chunk)) {
+                applyTo(fresh, Fact.of(row, 1), null);
+            }
+        }
+        for (Fact current : latest.values()) {
+            applyTo(fresh, null, current);
+        }
+    }
+
+    private Storage ready() {
+        Storage current = storage;
+        if (current == null) {
+            // truy van truoc khi ung dung san sang: nap ngay
+            rebuild();
+            current = storage;
+        }
+        if (current == null) {
+            throw new IllegalStateException("Cube phân tích chưa nạp được dữ liệu");
+        }
+        return current;
+    }
+
+    // ========== CHENH LECH ==========
+
+    // don luu qua JPA: phat trong transaction luu don (truoc commit)
+    @EventListener
+    public void onRegistrationChanged(RegistrationChangedEvent event) {
+        Fact previous = Fact.of(event.getPrevious());
+        Fact current = Fact.of(event.getCurrent());
+        if (previous != null && previous.equals(current)) {
+            return;
+        }
+        record(event.getRegistrationId(), previous, current);
+    }
+
+    // previous / current null = don moi / da xoa
+    void record(Long registrationId, Fact previous, Fact current) {
+        Change change = new Change(registrationId, previous, current);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingChanges().changes.add(change);
+            return;
+        }
+        apply(List.of(change));
+    }
+
+    private PendingChanges pendingChanges() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PendingChanges pending && pending.owner() == this) {
+                return pending;
+            }
+        }
+        PendingChanges pending = new PendingChanges();
+        TransactionSynchronizationManager.registerSynchronization(pending);
+        return pending;
+    }
+
+    private void apply(List<Change> changes) {
+        lock.writeLock().lock();
+        try {
+            Storage current = storage;
+            for (Change change : changes) {
+                if (current != null) {
+                    applyTo(current, change.previous, change.current);
+                }
+                if (journal != null) {
+                    journal.add(change);
+                }
+            }
+            updatesApplied.addAndGet(changes.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void applyTo(Storage target, Fact previous, Fact current) {
+        if (previous != null && !target.add(previous, -1)) {
+            factsSkipped.incrementAndGet();
+        }
+        if (current != null && !target.add(current, 1)) {
+            factsSkipped.incrementAndGet();
+        }
+    }
+
+    // chi tinh vao cube khi transaction commit
+    private final class PendingChanges implements TransactionSynchronization {
+        private final List<Change> changes = new ArrayList<>();
+
+        AppointmentCube owner() {
+            return AppointmentCube.this;
+        }
+
+        @Override
+        public void afterCommit() {
+            apply(changes);
+        }
+    }
+
+    // ========== TRUY VAN ==========
+
+    // cat theo slice, gop theo cac chieu groupBy (rong = 1 dong tong); moi dong: gia tri cac chieu + count, noShows,
+    // noShowRate, revenue; sap theo khoa nhom (chieu thoi gian dung dau thi theo thu tu thoi gian)
+    public List<Map<String, Object>> aggregate(Slice slice, List<Dimension> groupBy) {
+        int bits = 0;
+        for (Dimension dimension : groupBy) {
+            bits += bits(dimension);
+        }
+        if (bits > 64) {
+            throw new IllegalArgumentException("Quá nhiều chiều gộp: " + groupBy);
+        }
+
+        Storage current = ready();
+        long started = System.nanoTime();
+        Groups groups = new Groups();
+        lock.readLock().lock();
+        try {
+            Filter filter = new Filter(current, slice);
+            if (!filter.empty) {
+                for (int cell = 0; cell < current.size; cell++) {
+                    if (current.count[cell] <= 0 || !filter.matches(cell)) {
+                        continue;
+                    }
+                    long key = 0;
+                    for (Dimension dimension : groupBy) {
+                        key = (key << bits(dimension)) | current.code(cell, dimension);
+                    }
+                    groups.add(key, current.count[cell], current.noShow[cell], current.revenue[cell]);
+                }
+            }
+
+            List<Map<String, Object>> rows = new ArrayList<>(groups.size);
+            Object[] values = new Object[groupBy.size()];
+            for (int group : groups.sorted()) {
+                long key = groups.keys[group];
+                for (int i = groupBy.size() - 1; i >= 0; i--) {
+                    Dimension dimension = groupBy.get(i);
+                    values[i] = current.decode((int) (key & ((1L << bits(dimension)) - 1)), dimension);
+                    key >>>= bits(dimension);
+                }
+                Map<String, Object> row = new LinkedHashMap<>();
+                for (int i = 0; i < values.length; i++) {
+                    row.put(name(groupBy.get(i)), values[i]);
+                }
+                row.put("count", groups.counts[group]);
+                row.put("noShows", groups.noShows[group]);
+                row.put("noShowRate", AppointmentCounts.rate((int) groups.noShows[group], (int) groups.counts[group]));
+                row.put("revenue", groups.revenues[group]);
+                rows.add(row);
+            }
+            return rows;
+        } finally {
+            lock.readLock().unlock();
+            lastQueryMicros = (System.nanoTime() - started) / 1_000;
+            queries.incrementAndGet();
+        }
+    }
+
+    // so lich hen theo 1 chieu (gia tri -> count), vd trang thai, ngay
+    public Map<String, Long> countBy(Slice slice, Dimension dimension) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map<String, Object> row : aggregate(slice, List.of(dimension))) {
+            counts.put(String.valueOf(row.get(name(dimension))), (Long) row.get("count"));
+        }
+        return counts;
+    }
+
+    public long count(Slice slice) {
+        List<Map<String, Object>> rows = aggregate(slice, List.of());
+        return rows.isEmpty() ? 0 : (Long) rows.get(0).get("count");
+    }
+
+    private static int bits(Dimension dimension) {
+        switch (dimension) {
+            case DOCTOR:
+                return DOCTOR_BITS;
+            case DEPARTMENT:
+                return DEPARTMENT_BITS;
+            case DAY:
+            case WEEK:
+            case MONTH:
+                return DAY_BITS;
+            default:
+                return SMALL_BITS;
+        }
+    }
+
+    private static String name(Dimension dimension) {
+        switch (dimension) {
+            case DOCTOR:
+                return "doctorId";
+            case DEPARTMENT:
+                return "department";
+            case DAY:
+                return "date";
+            case WEEK:
+                return "week";
+            case MONTH:
+                return "month";
+            case SLOT:
+                return "slot";
+            case STATUS:
+                return "status";
+            default:
+                return "paymentStatus";
+        }
+    }
+
+    // ========== CHI SO ==========
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        Storage current = storage;
+        lock.readLock().lock();
+        try {
+            stats.put("ready", current != null);
+            if (current != null) {
+                stats.put("cells", current.size);
+                stats.put("cellCapacity", current.count.length);
+                stats.put("indexCapacity", current.index.keys.length);
+                stats.put("memoryBytes", current.memoryBytes());
+                stats.put("doctors", current.doctors.size());
+                stats.put("departments", current.departments.size());
+                stats.put("slots", current.slots.size());
+                stats.put("statuses", current.statuses.size());
+                stats.put("paymentStatuses", current.payments.size());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("rebuilds", rebuilds.get());
+        stats.put("factsLoaded", factsLoaded);
+        stats.put("factsSkipped", factsSkipped.get());
+        stats.put("updatesApplied", updatesApplied.get());
+        stats.put("lastBuildMillis", lastBuildMillis);
+        stats.put("builtAt", builtAt != null ? builtAt.toString() : null);
+        stats.put("queries", queries.get());
+        stats.put("lastQueryMicros", lastQueryMicros);
+        return stats;
+    }
+
+    // ========== CAU TRUC DU LIEU ==========
+
+    // dieu kien loc; null = khong loc chieu do
+    public static final class Slice {
+        private Long doctorId;
+        private String department;
+        private LocalDate from;
+        private LocalDate to;
+        private String slot;
+        private String status;
+        private String paymentStatus;
+
+        public Slice doctor(Long doctorId) {
+            this.doctorId = doctorId;
+            return this;
+        }
+
+        public Slice department(String department) {
+            this.department = department;
+            return this;
+        }
+
+        public Slice between(LocalDate from, LocalDate to) {
+            this.from = from;
+            this.to = to;
+            return this;
+        }
+
+        public Slice slot(String slot) {
+            this.slot = slot;
+            return this;
+        }
+
+        public Slice status(String status) {
+            this.status = status;
+            return this;
+        }
+
+        public Slice paymentStatus(String paymentStatus) {
+            this.paymentStatus = paymentStatus;
+            return this;
+        }
+    }
+
+    // slice da doi sang ma cua ban dang doc; gia tri chua tung xuat hien = ket qua rong
+    private static final class Filter {
+        private static final int ANY = -1;
+
+        final Storage storage;
+        final int doctor;
+        final int department;
+        final int slot;
+        final int status;
+        final int payment;
+        final int fromDay;
+        final int toDay;
+        final boolean empty;
+
+        Filter(Storage storage, Slice slice) {
+            this.storage = storage;
+            this.doctor = slice.doctorId == null ? ANY : storage.doctors.find(slice.doctorId);
+            this.department = slice.department == null ? ANY : storage.departments.find(slice.department);
+            this.slot = slice.slot == null ? ANY : storage.slots.find(slice.slot);
+            this.status = slice.status == null ? ANY : storage.statuses.find(slice.status);
+            this.payment = slice.paymentStatus == null ? ANY : storage.payments.find(slice.paymentStatus);
+            this.fromDay = slice.from == null ? Integer.MIN_VALUE : (int) slice.from.toEpochDay();
+            this.toDay = slice.to == null ? Integer.MAX_VALUE : (int) slice.to.toEpochDay();
+            this.empty = (slice.doctorId != null && doctor == ANY) || (slice.department != null && department == ANY)
+                || (slice.slot != null && slot == ANY) || (slice.status != null && status == ANY)
+                || (slice.paymentStatus != null && payment == ANY) || fromDay > toDay;
+        }
+
+        boolean matches(int cell) {
+            int day = storage.day[cell];
+            return day >= fromDay && day <= toDay
+                && (doctor == ANY || storage.doctor[cell] == doctor)
+                && (department == ANY || storage.department[cell] == department)
+                && (slot == ANY || storage.slot[cell] == slot)
+                && (status == ANY || storage.status[cell] == status)
+                && (payment == ANY || storage.payment[cell] == payment);
+        }
+    }
+
+    // cac cot cua cube; ma 0 cua moi tu dien = null
+    private static final class Storage {
+        private static final int INITIAL_CAPACITY = 1024;
+
+        final Dictionary<Long> doctors = new Dictionary<>(1 << DOCTOR_BITS);
+        final Dictionary<String> departments = new Dictionary<>(1 << DEPARTMENT_BITS);
+        final Dictionary<String> slots = new Dictionary<>(1 << SMALL_BITS);
+        final Dictionary<String> statuses = new Dictionary<>(1 << SMALL_BITS);
+        final Dictionary<String> payments = new Dictionary<>(1 << SMALL_BITS);
+        final CellIndex index = new CellIndex(INITIAL_CAPACITY * 2);
+
+        int size;
+        int[] doctor = new int[INITIAL_CAPACITY];
+        short[] department = new short[INITIAL_CAPACITY];
+        int[] day = new int[INITIAL_CAPACITY];
+        byte[] slot = new byte[INITIAL_CAPACITY];
+        byte[] status = new byte[INITIAL_CAPACITY];
+        byte[] payment = new byte[INITIAL_CAPACITY];
+        int[] count = new int[INITIAL_CAPACITY];
+        int[] noShow = new int[INITIAL_CAPACITY];
+        long[] revenue = new long[INITIAL_CAPACITY];
+
+        // cong / tru 1 don vao o cua no; false neu vuot gioi han ma (khong tinh)
+        boolean add(Fact fact, int sign) {
+            if (fact.date == null) {
+                return false;
+            }
+            long epochDay = fact.date.toEpochDay();
+            int doctorCode = doctors.code(fact.doctorId);
+            int departmentCode = departments.code(fact.department);
+            int slotCode = slots.code(fact.slot);
+            int statusCode = statuses.code(fact.status);
+            int paymentCode = payments.code(fact.paymentStatus);
+            if (epochDay < 0 || epochDay >= (1L << DAY_BITS) || doctorCode < 0 || departmentCode < 0
+                    || slotCode < 0 || statusCode < 0 || paymentCode < 0) {
+                return false;
+            }
+
+            long key = doctorCode;
+            key = (key << DEPARTMENT_BITS) | departmentCode;
+            key = (key << DAY_BITS) | epochDay;
+            key = (key << SMALL_BITS) | slotCode;
+            key = (key << SMALL_BITS) | statusCode;
+            key = (key << SMALL_BITS) | paymentCode;
+
+            int cell = index.get(key);
+            if (cell < 0) {
+                cell = append(doctorCode, departmentCode, (int) epochDay, slotCode, statusCode, paymentCode);
+                index.put(key, cell);
+            }
+            count[cell] += sign;
+            if (fact.missed) {
+                noShow[cell] += sign;
+            }
+            revenue[cell] += sign * fact.revenue;
+            return true;
+        }
+
+        private int append(int doctorCode, int departmentCode, int epochDay, int slotCode, int statusCode, int paymentCode) {
+            if (size == count.length) {
+                int capacity = size * 2;
+                doctor = Arrays.copyOf(doctor, capacity);
+                department = Arrays.copyOf(department, capacity);
+                day = Arrays.copyOf(day, capacity);
+                slot = Arrays.copyOf(slot, capacity);
+                status = Arrays.copyOf(status, capacity);
+                payment = Arrays.copyOf(payment, capacity);
+                count = Arrays.copyOf(count, capacity);
+                noShow = Arrays.copyOf(noShow, capacity);
+                revenue = Arrays.copyOf(revenue, capacity);
+            }
+            doctor[size] = doctorCode;
+            department[size] = (short) departmentCode;
+            day[size] = epochDay;
+            slot[size] = (byte) slotCode;
+            status[size] = (byte) statusCode;
+            payment[size] = (byte) paymentCode;
+            return size++;
+        }
+
+        // ma cua o theo chieu gop (tuan = so tuan tu thu 2 dau tien sau 1970-01-01, thang = so thang tu 1970)
+        long code(int cell, Dimension dimension) {
+            switch (dimension) {
+                case DOCTOR:
+                    return doctor[cell];
+                case DEPARTMENT:
+                    return department[cell];
+                case DAY:
+                    return day[cell];
+                case WEEK:
+                    return (day[cell] + 3) / 7;
+                case MONTH:
+                    return MonthIndex.OF_DAY[day[cell]];
+                case SLOT:
+                    return slot[cell];
+                case STATUS:
+                    return status[cell];
+                default:
+                    return payment[cell];
+            }
+        }
+
+        Object decode(int code, Dimension dimension) {
+            switch (dimension) {
+                case DOCTOR:
+                    return doctors.value(code);
+                case DEPARTMENT:
+                    return departments.value(code);
+                case DAY:
+                    return LocalDate.ofEpochDay(code).toString();
+                case WEEK:
+                    return LocalDate.ofEpochDay(code * 7L - 3).toString();
+                case MONTH:
+                    return LocalDate.of(1970 + code / 12, code % 12 + 1, 1).toString().substring(0, 7);
+                case SLOT:
+                    return slots.value(code);
+                case STATUS:
+                    return statuses.value(code);
+                default:
+                    return payments.value(code);
+            }
+        }
+
+        // uoc luong bo nho cac mang (khong tinh chuoi trong tu dien)
+        long memoryBytes() {
+            long perCell = 4 + 2 + 4 + 1 + 1 + 1 + 4 + 4 + 8;
+            return perCell * count.length + (8L + 4) * index.keys.length
+                + 16L * (doctors.size() + departments.size() + slots.size() + statuses.size() + payments.size());
+        }
+    }
+
+    // ma hoa gia tri -> so nho; ma 0 = null
+    private static final class Dictionary<T> {
+        private final Map<T, Integer> codes = new HashMap<>();
+        private final List<T> values = new ArrayList<>();
+        private final int limit;
+
+        Dictionary(int limit) {
+            this.limit = limit;
+            values.add(null);
+        }
+
+        // ma cua value, them moi neu chua co; -1 neu het cho
+        int code(T value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            if (values.size() >= limit) {
+                return -1;
+            }
+            codes.put(value, values.size());
+            values.add(value);
+            return values.size() - 1;
+        }
+
+        // ma cua value da co; -1 neu chua tung xuat hien
+        int find(T value) {
+            Integer code = codes.get(value);
+            return code != null ? code : -1;
+        }
+
+        T value(int code) {
+            return values.get(code);
+        }
+
+        int size() {
+            return values.size() - 1;
+        }
+    }
+
+    // tong theo nhom khi truy van (khoa nhom -> vi tri qua CellIndex, tong trong mang nguyen thuy)
+    private static final class Groups {
+        private final CellIndex index = new CellIndex(64);
+        long[] keys = new long[16];
+        long[] counts = new long[16];
+        long[] noShows = new long[16];
+        long[] revenues = new long[16];
+        int size;
+
+        void add(long key, int count, int noShow, long revenue) {
+            int group = index.get(key);
+            if (group < 0) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    counts = Arrays.copyOf(counts, size * 2);
+                    noShows = Arrays.copyOf(noShows, size * 2);
+                    revenues = Arrays.copyOf(revenues, size * 2);
+                }
+                group = size++;
+                keys[group] = key;
+                index.put(key, group);
+            }
+            counts[group] += count;
+            noShows[group] += noShow;
+            revenues[group] += revenue;
+        }
+
+        // thu tu nhom theo khoa (chieu thoi gian dung dau thi theo thoi gian)
+        List<Integer> sorted() {
+            List<Integer> order = new ArrayList<>(size);
+            for (int group = 0; group < size; group++) {
+                order.add(group);
+            }
+            order.sort((a, b) -> Long.compareUnsigned(keys[a], keys[b]));
+            return order;
+        }
+    }
+
+    // bang bam dia chi mo long -> so thu tu o (khong boxing)
+    private static final class CellIndex {
+        long[] keys;
+        int[] cells;
+        private int size;
+
+        CellIndex(int capacity) {
+            keys = new long[capacity];
+            cells = new int[capacity];
+        }
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                if (cells[i] == 0) {
+                    return -1;
+                }
+                if (keys[i] == key) {
+                    return cells[i] - 1;
+                }
+            }
+        }
+
+        void put(long key, int cell) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            insert(key, cell);
+            size++;
+        }
+
+        private void insert(long key, int cell) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (cells[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            cells[i] = cell + 1;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldCells = cells;
+            keys = new long[oldKeys.length * 2];
+            cells = new int[oldCells.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCells[i] != 0) {
+                    insert(oldKeys[i], oldCells[i] - 1);
+                }
+            }
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    // so thang (tu 1970) cua moi ngay trong mien ma ngay; tinh 1 lan khi can
+    private static final class MonthIndex {
+        static final short[] OF_DAY = build();
+
+        private static short[] build() {
+            short[] months = new short[1 << DAY_BITS];
+            LocalDate date = LocalDate.ofEpochDay(0);
+            for (int day = 0; day < months.length; day++, date = date.plusDays(1)) {
+                months[day] = (short) ((date.getYear() - 1970) * 12 + date.getMonthValue() - 1);
+            }
+            return months;
+        }
+    }
+
+    // 1 thay doi da commit cua 1 don
+    private static final class Change {
+        final Long registrationId;
+        final Fact previous;
+        final Fact current;
+
+        Change(Long registrationId, Fact previous, Fact current) {
+            this.registrationId = registrationId;
+            this.previous = previous;
+            this.current = current;
+        }
+    }
+
+    // toa do + do do cua 1 don trong cube
+    static final class Fact {
+        final Long doctorId;
+        final String department;
+        final LocalDate date;
+        final String slot;
+        final String status;
+        final String paymentStatus;
+        final boolean missed;
+        final long revenue;
+
+        private Fact(Long doctorId, String department, LocalDate date, String slot, String status,
+                     String paymentStatus, String examinationStatus, BigDecimal paidAmount) {
+            this.doctorId = doctorId;
+            this.department = department;
+            this.date = date;
+            this.slot = slot;
+            this.status = status;
+            this.paymentStatus = paymentStatus;
+            this.missed = "MISSED".equals(examinationStatus);
+            this.revenue = paidAmount != null ? paidAmount.setScale(0, RoundingMode.HALF_UP).longValue() : 0;
+        }
+
+        static Fact of(RegistrationSnapshot snapshot) {
+            if (snapshot == null) {
+                return null;
+            }
+            return new Fact(snapshot.getDoctorId(), snapshot.getDepartment(), snapshot.getAppointmentDate(),
+                snapshot.getAssignedSession(), snapshot.getStatus(), snapshot.getPaymentStatus(),
+                snapshot.getExaminationStatus(), snapshot.getPaidAmount());
+        }
+
+        // dong cua PatientRegistrationRepository.streamAnalyticsFacts (offset 0)
+        // hoac findAnalyticsFactsByIds (offset 1, cot dau la id)
+        static Fact of(Object[] row, int offset) {
+            return new Fact((Long) row[offset], (String) row[offset + 1], (LocalDate) row[offset + 2],
+                (String) row[offset + 3], (String) row[offset + 4], (String) row[offset + 5], (String) row[offset + 6],
+                (BigDecimal) row[offset + 7]);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Fact)) return false;
+            Fact other = (Fact) o;
+            return missed == other.missed && revenue == other.revenue && Objects.equals(doctorId, other.doctorId)
+                && Objects.equals(department, other.department) && Objects.equals(date, other.date)
+                && Objects.equals(slot, other.slot) && Objects.equals(status, other.status)
+                && Objects.equals(paymentStatus, other.paymentStatus);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(doctorId, department, date, slot, status, paymentStatus, missed, revenue);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.clinic_backend.service;
+
+// Chinh sach chon (bac si, khung gio) khi phan cong tu dong.
+// Moi chinh sach duyet bang chiem cho cua khoa mot lan, tra ve {chi so bac si, chi so khung gio}
+// hoac null neu khong con cho.
+public enum AssignmentPolicy {
+
+    // khung gio som nhat, neu trung thi chon bac si it benh nhan hon
+    EARLIEST_SLOT {
+        @Override
+        int[] pick(SlotAssignmentService.Occupancy occupancy, int offset) {
+            for (int s = 0; s < occupancy.slotCount(); s++) {
+                int best = -1;
+                for (int d = 0; d < occupancy.doctorCount(); d++) {
+                    if (occupancy.isFree(d, s) && (best < 0 || occupancy.load(d) < occupancy.load(best))) {
+                        best = d;
+                    }
+                }
+                if (best >= 0) {
+                    return new int[]{best, s};
+                }
+            }
+            return null;
+        }
+    },
+
+    // bac si co it benh nhan nhat trong ngay, lay khung gio som nhat cua bac si do
+    LEAST_LOADED {
+        @Override
+        int[] pick(SlotAssignmentService.Occupancy occupancy, int offset) {
+            int best = -1;
+            for (int d = 0; d < occupancy.doctorCount(); d++) {
+                if (occupancy.firstFreeSlot(d) >= 0 && (best < 0 || occupancy.load(d) < occupancy.load(best))) {
+                    best = d;
+                }
+            }
+            return best >= 0 ? new int[]{best, occupancy.firstFreeSlot(best)} : null;
+        }
+    },
+
+    // xoay vong bac si trong khoa, bo qua bac si da kin lich
+    ROUND_ROBIN {
+        @Override
+        int[] pick(SlotAssignmentService.Occupancy occupancy, int offset) {
+            int n = occupancy.doctorCount();
+            for (int i = 0; i < n; i++) {
+                int d = Math.floorMod(offset + i, n);
+                int s = occupancy.firstFreeSlot(d);
+                if (s >= 0) {
+                    return new int[]{d, s};
+                }
+            }
+            return null;
+        }
+    };
+
+    abstract int[] pick(SlotAssignmentService.Occupancy occupancy, int offset);
+
+    // doc tu request param, mac dinh LEAST_LOADED
+    public static AssignmentPolicy from(String value) {
+        if (value == null || value.isBlank()) {
+            return LEAST_LOADED;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Chinh sach phan cong khong hop le: " + value);
+        }
+    }
+}
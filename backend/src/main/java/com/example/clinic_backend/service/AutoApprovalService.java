@@ -1,21 +1,19 @@
 package com.example.clinic_backend.service;
 
-import com.example.clinic_backend.model.DoctorSlot;
+import com.example.clinic_backend.event.RegistrationStatusChangedEvent;
 import com.example.clinic_backend.model.PatientRegistration;
 import com.example.clinic_backend.repository.DoctorSlotRepository;
 import com.example.clinic_backend.repository.PatientRegistrationRepository;
 import com.example.clinic_backend.repository.DoctorRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import java.math.BigDecimal;
-import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.Date;
-import java.util.Optional;
-import java.util.Random;
 
 @Service
 @Transactional
@@ -34,7 +32,19 @@ public class AutoApprovalService {
     private DoctorSlotRepository doctorSlotRepository;
 
     @Autowired
-    private EmailService emailService;
+    private OutboxService outboxService;
+    
+    @Autowired
+    private SlotCapacityLedger slotCapacityLedger;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Autowired
+    private IdentifierService identifierService;
+    
+    @Autowired
+    private SlotBookingService slotBookingService;
     
     // cac khung gio co dinh
     private static final String[] TIME_SLOTS = {
@@ -42,37 +52,16 @@ public class AutoApprovalService {
         "11:00-12:00", "13:00-14:00", "14:00-15:00", "15:00-16:00", "16:00-17:00"
     };
     
-    // kiem tra slot con trong khong
+    // kiem tra slot con trong khong (doc tu so cai trong bo nho)
     public boolean checkAvailableSlots(Long doctorId, LocalDate appointmentDate, String timeSlot) {
         try {
-            System.out.println("Kiem tra slot: bac si " + doctorId + ", ngay " + appointmentDate + ", gio " + timeSlot);
-            
-            // tim slot trong database
-            Optional<DoctorSlot> slotOpt = doctorSlotRepository.findByDoctorIdAndAppointmentDateAndTimeSlot(doctorId, appointmentDate.toString(), timeSlot);
-            
-            int maxPatients;
-            if (slotOpt.isPresent()) {
-                DoctorSlot slot = slotOpt.get();
-                // kiem tra slot co active khong
-                if (slot.getIsActive() != null && !slot.getIsActive()) {
-                    System.out.println("Slot da bi vo hieu hoa");
-                    return false;
-                }
-                maxPatients = slot.getMaxPatients() != null ? slot.getMaxPatients() : 10;
-                System.out.println("Slot tu DB - So benh nhan toi da: " + maxPatients);
-            } else {
-                maxPatients = 10; // mac dinh
-                System.out.println("Slot mac dinh - So benh nhan toi da: " + maxPatients);
+            if (!slotCapacityLedger.isActive(doctorId, appointmentDate, timeSlot)) {
+                System.out.println("Slot da bi vo hieu hoa");
+                return false;
             }
             
-            // dem so don da duyet
-            Integer approvedCount = repository.countByDoctorIdAndAppointmentDateAndAssignedSessionAndStatus(
-                doctorId, appointmentDate, timeSlot, "APPROVED"
-            );
-            
-            if (approvedCount == null) {
-                approvedCount = 0;
-            }
+            int approvedCount = slotCapacityLedger.getApprovedCount(doctorId, appointmentDate, timeSlot);
+            int maxPatients = slotCapacityLedger.getMaxPatients(doctorId, appointmentDate, timeSlot);
             
             System.out.println("Kiem tra slot - " + timeSlot + ": " + approvedCount + "/" + maxPatients + " don da duyet");
             
@@ -94,9 +83,7 @@ public class AutoApprovalService {
         // neu khong co bac si -> chuyen sang manual review
         if (registration.getDoctorId() == null) {
             System.out.println("Khong co bac si, chuyen sang MANUAL REVIEW");
-            registration.setStatus("NEEDS_MANUAL_REVIEW");
-            registration.setRegistrationNumber(generateRegistrationNumber(registration));
-            return repository.save(registration);
+            return saveForManualReview(registration);
         }
         
         // neu da co assignedSession (tu frontend), kiem tra slot
@@ -112,9 +99,7 @@ public class AutoApprovalService {
                 return autoApproveRegistration(registration, registration.getAssignedSession());
             } else {
                 System.out.println("Het slot, chuyen sang manual review");
-                registration.setStatus("NEEDS_MANUAL_REVIEW");
-                registration.setRegistrationNumber(generateRegistrationNumber(registration));
-                return repository.save(registration);
+                return saveForManualReview(registration);
             }
         } else {
             // neu khong co assignedSession, tim slot tu dong
@@ -126,9 +111,7 @@ public class AutoApprovalService {
                 return autoApproveRegistration(registration, availableSlot);
             } else {
                 System.out.println("Khong tim thay slot nao");
-                registration.setStatus("NEEDS_MANUAL_REVIEW");
-                registration.setRegistrationNumber(generateRegistrationNumber(registration));
-                return repository.save(registration);
+                return saveForManualReview(registration);
             }
         }
     }
@@ -149,10 +132,23 @@ public class AutoApprovalService {
     @Transactional
     public PatientRegistration autoApproveRegistration(PatientRegistration registration, String timeSlot) {
         System.out.println("Bat dau tu dong duyet don - Khung gio: " + timeSlot);
+        String previousStatus = registration.getStatus();
+        boolean seatReserved = false;
+        boolean queueAllocated = false;
         
         try {
-            // su dung lock de lay so thu tu
-            assignQueueAndTimeSlotWithLock(registration, timeSlot);
+            if (!"APPROVED".equals(previousStatus)) {
+                if (slotBookingService.isOptimistic()) {
+                    // che do optimistic: giu cho bang UPDATE co dieu kien tren doctor_slots (cung transaction) truoc khi cap so thu tu
+                    if (!slotBookingService.reserveSeat(registration.getDoctorId(), registration.getAppointmentDate(), timeSlot)) {
+                        throw new RuntimeException("Slot " + timeSlot + " da du so benh nhan");
+                    }
+                    seatReserved = true;
+                } else if (!slotCapacityLedger.tryReserve(registration, timeSlot)) {
+                    // che do bo dem: giu cho trong so cai (kiem tra va tang trong 1 buoc), transaction ket thuc thi tra
+                    throw new RuntimeException("Slot " + timeSlot + " da du so benh nhan");
+                }
+            }
             
             // tao cac thong tin khac
             registration.setRegistrationNumber(generateRegistrationNumber(registration));
@@ -171,6 +167,11 @@ public class AutoApprovalService {
             registration.setExaminationFee(calculateFee(registration));
             registration.setInsuranceType("Không BHYT");
             
+            // lay so thu tu tu bo dem cua slot: buoc cuoi truoc khi luu,
+            // tu day moi loi deu rollback ca transaction nen so khong bi mat
+            queueAllocated = true;
+            assignQueueAndTimeSlot(registration, timeSlot);
+            
             // set status APPROVED
             registration.setStatus("APPROVED");
             registration.setAutoApproved(true);
@@ -179,14 +180,10 @@ public class AutoApprovalService {
             
             // luu vao database
             PatientRegistration saved = repository.save(registration);
+            eventPublisher.publishEvent(new RegistrationStatusChangedEvent(saved, previousStatus));
 
-            // gui email khi duyet don
-            try {
-                emailService.sendApprovalEmail(saved);
-                System.out.println("Da gui email duyet don cho: " + saved.getEmail());
-            } catch (Exception e) {
-                System.out.println("Loi gui email duyet don: " + e.getMessage());
-            }
+            // email duyet don: ghi outbox cung transaction, relay gui sau khi commit
+            outboxService.enqueue(OutboxService.EMAIL_APPROVAL, saved.getId(), null);
             
             System.out.println("Da tu dong duyet thanh cong!");
             System.out.println("Thong tin cuoi cung:");
@@ -198,43 +195,52 @@ public class AutoApprovalService {
             return saved;
         } catch (Exception e) {
             System.out.println("Loi khi tu dong duyet: " + e.getMessage());
+            // loi tu luc cap so (hoac transaction da bi danh dau rollback): nem lai de rollback ca don,
+            // cho da giu duoc tra sau rollback, nguoi goi tu xu ly
+            if (queueAllocated || TransactionAspectSupport.currentTransactionStatus().isRollbackOnly()) {
+                throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+            }
+            if (seatReserved) {
+                slotBookingService.cancelReservation(registration.getDoctorId(), registration.getAppointmentDate(), timeSlot);
+            }
             registration.setStatus("NEEDS_MANUAL_REVIEW");
-            return repository.save(registration);
+            PatientRegistration saved = repository.save(registration);
+            eventPublisher.publishEvent(new RegistrationStatusChangedEvent(saved, previousStatus));
+            return saved;
         }
     }
     
-    // su dung lock de tranh trung so thu tu
-    private void assignQueueAndTimeSlotWithLock(PatientRegistration registration, String timeSlot) {
+    // chuyen don sang xu ly thu cong (vao danh sach cho)
+    private PatientRegistration saveForManualReview(PatientRegistration registration) {
+        String previousStatus = registration.getStatus();
+        registration.setStatus("NEEDS_MANUAL_REVIEW");
+        registration.setRegistrationNumber(generateRegistrationNumber(registration));
+        PatientRegistration saved = repository.save(registration);
+        eventPublisher.publishEvent(new RegistrationStatusChangedEvent(saved, previousStatus));
+        return saved;
+    }
+    
+    // cap so thu tu tu bo dem rieng cua slot (khong khoa theo khoang)
+    private void assignQueueAndTimeSlot(PatientRegistration registration, String timeSlot) {
         LocalDate appointmentDate = registration.getAppointmentDate();
         Long doctorId = registration.getDoctorId();
         
-        System.out.println("Dang lay so thu tu voi LOCK:");
-        System.out.println("Bac si: " + doctorId);
-        System.out.println("Ngay: " + appointmentDate);
-        System.out.println("Khung gio: " + timeSlot);
-        
-        // su dung method co LOCK
-        int queueNumber = doctorSlotService.getNextQueueNumberWithLock(doctorId, appointmentDate, timeSlot);
+        int queueNumber = doctorSlotService.allocateQueueNumber(doctorId, appointmentDate, timeSlot);
         
         registration.setQueueNumber(queueNumber);
         registration.setExpectedTimeSlot(timeSlot);
         
         System.out.println("So thu tu cua don hien tai: " + queueNumber);
-        
-        // kiem tra lai sau khi co lock
-        Integer finalCheck = repository.countByDoctorIdAndAppointmentDateAndAssignedSessionAndStatus(
-            doctorId, appointmentDate, timeSlot, "APPROVED"
-        );
-        System.out.println("Final check - So don approved: " + finalCheck);
     }
     
-    // tao ma phieu dang ky
+    // tao ma phieu dang ky (giu ma U da cap truoc do, vd. luc chuyen sang manual review)
     private String generateRegistrationNumber(PatientRegistration reg) {
         try {
-            String datePart = new SimpleDateFormat("ddMMyy").format(new Date());
-            Long dailyCount = repository.countByCreatedAtToday();
-            if (dailyCount == null) dailyCount = 0L;
-            return "U" + datePart + String.format("%04d", dailyCount + 1);
+            String current = reg.getRegistrationNumber();
+            if (current != null && current.startsWith("U")) {
+                return current;
+            }
+            return identifierService.nextRegistrationNumber();
         } catch (Exception e) {
             System.out.println("Loi generate ma phieu: " + e.getMessage());
             return "U" + System.currentTimeMillis();
@@ -244,10 +250,7 @@ public class AutoApprovalService {
     // tao ma giao dich
     private String generateTransactionNumber() {
         try {
-            String timePart = new SimpleDateFormat("yyMMddHHmm").format(new Date());
-            Random random = new Random();
-            String randomPart = String.format("%03d", random.nextInt(1000));
-            return timePart + randomPart;
+            return identifierService.nextTransactionNumber();
         } catch (Exception e) {
             System.out.println("Loi generate ma giao dich: " + e.getMessage());
             return "TXN" + System.currentTimeMillis();
@@ -257,10 +260,7 @@ public class AutoApprovalService {
     // tao ma benh nhan
     private String generatePatientCode(PatientRegistration reg) {
         try {
-            String yearPart = new SimpleDateFormat("yy").format(new Date());
-            Long yearlyCount = repository.countByYear(2024);
-            if (yearlyCount == null) yearlyCount = 0L;
-            return "N" + yearPart + "-" + String.format("%06d", yearlyCount + 1);
+            return identifierService.nextPatientCode();
         } catch (Exception e) {
             System.out.println("Loi generate ma benh nhan: " + e.getMessage());
             return "N" + System.currentTimeMillis();
@@ -0,0 +1,176 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.model.BrokerMessage;
+import com.example.clinic_backend.repository.BrokerMessageRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+// Nhieu node: gui cho client cua node minh ngay, dong thoi ghi vao bang broker_messages;
+// cac node khac poll theo id (mac dinh 200ms) va giao cho client cua ho.
+// Id tu tang co the commit khong theo thu tu: id bi ho duoc ghi lai rieng, cac message phia sau van giao ngay;
+// moi lan poll doc lai cac id ho, commit muon thi giao bu, qua GAP_WAIT_MS ma van khong thay thi coi nhu rollback.
+@Service
+@ConditionalOnProperty(name = "app.broker.mode", havingValue = "database")
+public class DatabaseRelayFanout implements MessageFanout {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseRelayFanout.class);
+
+    private static final long GAP_WAIT_MS = 2000;
+    // gioi han so id ho theo doi (vd. rollback hang loat lam nhay id xa)
+    private static final int MAX_GAPS = 1000;
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final BrokerMessageRepository brokerRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate writeTransaction;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private long lastSeenId;
+    // id ho -> thoi diem phat hien
+    private final TreeMap<Long, Long> gaps = new TreeMap<>();
+    private long relayed;
+    private long lateDelivered;
+    private long skipped;
+
+    public DatabaseRelayFanout(SimpMessagingTemplate messagingTemplate,
+                               BrokerMessageRepository brokerRepository,
+                               ObjectMapper objectMapper,
+                               PlatformTransactionManager transactionManager) {
+        this.messagingTemplate = messagingTemplate;
+        this.brokerRepository = brokerRepository;
+        this.objectMapper = objectMapper;
+        // co the duoc goi trong listener sau commit: ghi bang transaction rieng
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    public void start() {
+        // chi nhan message moi, khong phat lai lich su
+        lastSeenId = brokerRepository.findMaxId();
+        logger.info("Broker relay qua database: node {}, bắt đầu từ message {}", nodeId, lastSeenId);
+    }
+
+    @Override
+    public void convertAndSend(String destination, Object payload) {
+        messagingTemplate.convertAndSend(destination, payload);
+        relay(destination, null, payload);
+    }
+
+    @Override
+    public void convertAndSendToUser(String user, String destination, Object payload) {
+        messagingTemplate.convertAndSendToUser(user, destination, payload);
+        relay(destination, user, payload);
+    }
+
+    // doc message cua node khac va giao cho client cua node nay
+    @Scheduled(fixedDelayString = "${app.broker.poll-interval-ms:200}")
+    public void poll() {
+        poll(System.currentTimeMillis());
+    }
+
+    synchronized void poll(long now) {
+        recheckGaps(now);
+        List<BrokerMessage> messages = brokerRepository.findTop500ByIdGreaterThanOrderByIdAsc(lastSeenId);
+        for (BrokerMessage message : messages) {
+            // id bi ho: co the la insert chua commit, ghi lai de doc lai o cac lan poll sau
+            for (long id = Math.max(lastSeenId + 1, message.getId() - MAX_GAPS); id < message.getId(); id++) {
+                gaps.put(id, now);
+            }
+            lastSeenId = message.getId();
+            deliver(message);
+        }
+        while (gaps.size() > MAX_GAPS) {
+            gaps.pollFirstEntry();
+            skipped++;
+        }
+    }
+
+    // giao bu message commit muon; id ho qua han thi bo (rollback)
+    private void recheckGaps(long now) {
+        if (gaps.isEmpty()) {
+            return;
+        }
+        for (BrokerMessage message : brokerRepository.findByIdInOrderByIdAsc(new ArrayList<>(gaps.keySet()))) {
+            if (gaps.remove(message.getId()) != null) {
+                lateDelivered++;
+                deliver(message);
+            }
+        }
+        int expired = 0;
+        Iterator<Map.Entry<Long, Long>> iterator = gaps.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getValue() >= GAP_WAIT_MS) {
+                iterator.remove();
+                expired++;
+            }
+        }
+        if (expired > 0) {
+            skipped += expired;
+            logger.debug("Bỏ qua {} id message relay không xuất hiện sau {}ms", expired, GAP_WAIT_MS);
+        }
+    }
+
+    // xoa message cu (cac node da doc tu lau)
+    @Scheduled(fixedDelay = 60000)
+    public void purge() {
+        writeTransaction.executeWithoutResult(status ->
+            brokerRepository.deleteCreatedBefore(LocalDateTime.now().minusMinutes(10)));
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("lastSeenId", lastSeenId);
+        stats.put("relayed", relayed);
+        stats.put("pendingGaps", gaps.size());
+        stats.put("lateDelivered", lateDelivered);
+        stats.put("skipped", skipped);
+        return stats;
+    }
+
+    private void relay(String destination, String user, Object payload) {
+        try {
+            String json = objectMapper.writeValueAsString(payload);
+            writeTransaction.executeWithoutResult(status ->
+                brokerRepository.save(new BrokerMessage(nodeId, destination, user, json)));
+        } catch (Exception e) {
+            logger.error("Lỗi ghi message relay {}: {}", destination, e.getMessage());
+        }
+    }
+
+    private void deliver(BrokerMessage message) {
+        if (nodeId.equals(message.getNodeId())) {
+            return;
+        }
+        try {
+            Object payload = objectMapper.readValue(message.getPayload(), Object.class);
+            if (message.getTargetUser() != null) {
+                messagingTemplate.convertAndSendToUser(message.getTargetUser(), message.getDestination(), payload);
+            } else {
+                messagingTemplate.convertAndSend(message.getDestination(), payload);
+            }
+            relayed++;
+        } catch (Exception e) {
+            logger.error("Lỗi giao message relay {}: {}", message.getId(), e.getMessage());
+        }
+    }
+}
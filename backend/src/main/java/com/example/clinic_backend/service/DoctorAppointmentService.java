@@ -1,9 +1,11 @@
 package com.example.clinic_backend.service;
 
+import com.example.clinic_backend.event.RegistrationStatusChangedEvent;
 import com.example.clinic_backend.model.PatientRegistration;
 import com.example.clinic_backend.model.Doctor;
 import com.example.clinic_backend.repository.DoctorAppointmentRepository;
 import com.example.clinic_backend.repository.DoctorRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import java.util.List;
 import java.util.HashMap;
@@ -16,11 +18,14 @@ public class DoctorAppointmentService {
     
     private final DoctorAppointmentRepository doctorAppointmentRepository;
     private final DoctorRepository doctorRepository;
+    private final ApplicationEventPublisher eventPublisher;
     
     public DoctorAppointmentService(DoctorAppointmentRepository doctorAppointmentRepository, 
-                                   DoctorRepository doctorRepository) {
+                                   DoctorRepository doctorRepository,
+                                   ApplicationEventPublisher eventPublisher) {
         this.doctorAppointmentRepository = doctorAppointmentRepository;
         this.doctorRepository = doctorRepository;
+        this.eventPublisher = eventPublisher;
     }
     
     // lay tat ca lich hen cua bac si
@@ -170,8 +175,10 @@ public class DoctorAppointmentService {
                     .orElseThrow(() -> new RuntimeException("Khong tim thay lich hen"));
             
             // cap nhat trang thai
+            String previousStatus = appointment.getStatus();
             appointment.setStatus("CONFIRMED");
             doctorAppointmentRepository.save(appointment);
+            eventPublisher.publishEvent(new RegistrationStatusChangedEvent(appointment, previousStatus));
             
             System.out.println("Da xac nhan lich hen " + appointmentId);
             
@@ -199,8 +206,10 @@ public class DoctorAppointmentService {
                     .orElseThrow(() -> new RuntimeException("Khong tim thay lich hen"));
             
             // cap nhat trang thai
+            String previousStatus = appointment.getStatus();
             appointment.setStatus("COMPLETED");
             doctorAppointmentRepository.save(appointment);
+            eventPublisher.publishEvent(new RegistrationStatusChangedEvent(appointment, previousStatus));
             
             System.out.println("Da danh dau da kham " + appointmentId);
             
@@ -228,8 +237,10 @@ public class DoctorAppointmentService {
                     .orElseThrow(() -> new RuntimeException("Khong tim thay lich hen"));
             
             // cap nhat trang thai
+            String previousStatus = appointment.getStatus();
             appointment.setStatus("CANCELLED");
             doctorAppointmentRepository.save(appointment);
+            eventPublisher.publishEvent(new RegistrationStatusChangedEvent(appointment, previousStatus));
             
             System.out.println("Da huy lich hen " + appointmentId);
             
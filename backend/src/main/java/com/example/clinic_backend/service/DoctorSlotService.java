@@ -1,18 +1,26 @@
 package com.example.clinic_backend.service;
 
+import com.example.clinic_backend.dto.AvailabilityCellDTO;
 import com.example.clinic_backend.dto.DoctorSlotDTO;
+import com.example.clinic_backend.dto.SlotGenerationRequest;
+import com.example.clinic_backend.event.SlotCapacityChangedEvent;
+import com.example.clinic_backend.model.Doctor;
 import com.example.clinic_backend.model.DoctorSlot;
-import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.DoctorRepository;
 import com.example.clinic_backend.repository.DoctorSlotRepository;
 import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import com.example.clinic_backend.repository.SlotQueueCounterRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Optional;
 import java.util.*;
 
 @Service
@@ -24,6 +32,21 @@ public class DoctorSlotService {
     @Autowired
     private PatientRegistrationRepository patientRegistrationRepository;
     
+    @Autowired
+    private SlotQueueCounterRepository slotQueueCounterRepository;
+    
+    @Autowired
+    private DoctorRepository doctorRepository;
+    
+    @Autowired
+    private SlotCapacityLedger slotCapacityLedger;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
     // cac khung gio mac dinh
     private static final String[] DEFAULT_TIME_SLOTS = {
         "07:00-08:00", "08:00-09:00", "09:00-10:00", "10:00-11:00", 
@@ -32,6 +55,17 @@ public class DoctorSlotService {
     
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     
+    // so ngay toi da cho ma tran slot
+    private static final int MAX_MATRIX_DAYS = 31;
+    
+    // tao slot hang loat: toi da 1 nam, ghi moi lan 1000 dong
+    private static final int MAX_GENERATION_DAYS = 366;
+    private static final int GENERATION_BATCH_SIZE = 1000;
+    
+    private static final String INSERT_SLOT_SQL =
+        "INSERT IGNORE INTO doctor_slots (doctor_id, appointment_date, time_slot, max_patients, is_active, created_at, updated_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    
     // ========== ADMIN CRUD ==========
     
     // lay tat ca slot
@@ -88,7 +122,9 @@ public class DoctorSlotService {
         slot.setCreatedAt(LocalDateTime.now());
         slot.setUpdatedAt(LocalDateTime.now());
         
-        return doctorSlotRepository.save(slot);
+        DoctorSlot saved = doctorSlotRepository.save(slot);
+        publishCapacityChanged(saved);
+        return saved;
     }
     
     // cap nhat slot
@@ -105,7 +141,9 @@ public class DoctorSlotService {
         
         slot.setUpdatedAt(LocalDateTime.now());
         
-        return doctorSlotRepository.save(slot);
+        DoctorSlot saved = doctorSlotRepository.save(slot);
+        publishCapacityChanged(saved);
+        return saved;
     }
     
     // cap nhat so benh nhan toi da
@@ -126,28 +164,51 @@ public class DoctorSlotService {
         slot.setMaxPatients(maxPatients);
         slot.setUpdatedAt(LocalDateTime.now());
         
-        return doctorSlotRepository.save(slot);
+        DoctorSlot saved = doctorSlotRepository.save(slot);
+        publishCapacityChanged(saved);
+        return saved;
     }
     
-    // cap nhat hang loat
-    public void bulkUpdateMaxPatients(Integer maxPatients) {
+    // cap nhat hang loat cho tat ca slot
+    @Transactional
+    public Map<String, Object> bulkUpdateMaxPatients(Integer maxPatients) {
+        return updateMaxPatientsInScope(maxPatients, null, null, null, null);
+    }
+    
+    // cap nhat suc chua theo pham vi (khoang ngay / khoa / bac si) bang 1 cau UPDATE
+    // slot co so don da duyet > gia tri moi thi giu nguyen va tra ve trong "rejected"
+    @Transactional
+    public Map<String, Object> updateMaxPatientsInScope(Integer maxPatients, String startDate, String endDate,
+                                                        Long departmentId, Long doctorId) {
         if (maxPatients == null || maxPatients < 1) {
             throw new RuntimeException("So benh nhan toi da phai > 0");
         }
+        // kiem tra dinh dang ngay
+        if (startDate != null) LocalDate.parse(startDate);
+        if (endDate != null) LocalDate.parse(endDate);
         
-        List<DoctorSlot> allSlots = doctorSlotRepository.findAll();
-        
-        for (DoctorSlot slot : allSlots) {
-            // kiem tra tung slot
-            Integer currentPatients = getCurrentPatientsForSlot(slot);
-            if (currentPatients <= maxPatients) {
-                slot.setMaxPatients(maxPatients);
-                slot.setUpdatedAt(LocalDateTime.now());
-            }
-            // neu currentPatients > maxPatients, bo qua
+        List<Map<String, Object>> rejected = new ArrayList<>();
+        for (Object[] row : doctorSlotRepository.findSlotsOverCapacity(maxPatients, startDate, endDate, departmentId, doctorId)) {
+            Map<String, Object> slot = new LinkedHashMap<>();
+            slot.put("id", ((Number) row[0]).longValue());
+            slot.put("doctorId", ((Number) row[1]).longValue());
+            slot.put("appointmentDate", row[2]);
+            slot.put("timeSlot", row[3]);
+            slot.put("maxPatients", row[4] != null ? ((Number) row[4]).intValue() : null);
+            slot.put("currentPatients", ((Number) row[5]).intValue());
+            rejected.add(slot);
         }
         
-        doctorSlotRepository.saveAll(allSlots);
+        int updated = doctorSlotRepository.updateMaxPatientsInScope(maxPatients, startDate, endDate, departmentId, doctorId);
+        eventPublisher.publishEvent(SlotCapacityChangedEvent.all());
+        
+        System.out.println("Cap nhat suc chua hang loat: " + updated + " slot, " + rejected.size() + " slot khong the giam");
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("maxPatients", maxPatients);
+        result.put("updated", updated);
+        result.put("rejected", rejected);
+        return result;
     }
     
     // xoa slot
@@ -161,46 +222,28 @@ public class DoctorSlotService {
         }
         
         doctorSlotRepository.deleteById(id);
+        publishCapacityChanged(slot);
     }
     
     // ========== PUBLIC ==========
     
-    // lay slot theo bac si va ngay
+    // lay slot theo bac si va ngay (1 query cho ca 9 khung gio)
     public List<DoctorSlotDTO> getSlotsByDoctorAndDate(Long doctorId, String appointmentDate) {
         List<DoctorSlotDTO> result = new ArrayList<>();
         
-        // lay slot tu database (neu co)
-        List<DoctorSlot> existingSlots = doctorSlotRepository
-            .findByDoctorIdAndAppointmentDate(doctorId, appointmentDate);
+        Map<String, AvailabilityCellDTO> cells = loadAvailabilityCells(
+            Collections.singletonList(doctorId), appointmentDate, appointmentDate);
         
-        Map<String, DoctorSlot> slotMap = new HashMap<>();
-        for (DoctorSlot slot : existingSlots) {
-            if (slot.getIsActive()) {
-                slotMap.put(slot.getTimeSlot(), slot);
-            }
-        }
-        
-        // tao slot cho tat ca khung gio
         for (String timeSlot : DEFAULT_TIME_SLOTS) {
+            AvailabilityCellDTO cell = cellOrDefault(cells, doctorId, appointmentDate, timeSlot);
+            
             DoctorSlotDTO slotDTO = new DoctorSlotDTO();
             slotDTO.setDoctorId(doctorId);
             slotDTO.setAppointmentDate(appointmentDate);
             slotDTO.setTimeSlot(timeSlot);
-            
-            // lay slot tu database neu co
-            DoctorSlot dbSlot = slotMap.get(timeSlot);
-            if (dbSlot != null) {
-                // slot da duoc cau hinh trong database
-                slotDTO.setMaxPatients(dbSlot.getMaxPatients());
-            } else {
-                // slot mac dinh
-                slotDTO.setMaxPatients(10);
-            }
-            
-            // tinh so benh nhan hien tai
-            Integer currentPatients = getCurrentPatients(doctorId, appointmentDate, timeSlot);
-            slotDTO.setCurrentPatients(currentPatients != null ? currentPatients : 0);
-            slotDTO.setAvailable(currentPatients == null || currentPatients < slotDTO.getMaxPatients());
+            slotDTO.setMaxPatients(cell.getMax());
+            slotDTO.setCurrentPatients(cell.getCurrent());
+            slotDTO.setAvailable(cell.isAvailable());
             
             result.add(slotDTO);
         }
@@ -208,27 +251,106 @@ public class DoctorSlotService {
         return result;
     }
     
-    // kiem tra slot con trong khong
-    public boolean isSlotAvailable(Long doctorId, String appointmentDate, String timeSlot) {
-        try {
-            // lay slot tu database
-            Optional<DoctorSlot> slotOpt = doctorSlotRepository.findByDoctorIdAndAppointmentDateAndTimeSlot(doctorId, appointmentDate, timeSlot);
-            
-            int maxPatients;
-            if (slotOpt.isPresent()) {
-                DoctorSlot slot = slotOpt.get();
-                if (!slot.getIsActive()) {
-                    return false; // slot bi vo hieu hoa
+    // ma tran slot trong cho ca khoa
+    public Map<String, Object> getAvailabilityMatrixByDepartment(String department, LocalDate startDate, LocalDate endDate) {
+        List<Doctor> doctors = doctorRepository.findByDepartmentNameContaining(department);
+        return getAvailabilityMatrix(doctors, startDate, endDate);
+    }
+    
+    // ma tran slot trong cho danh sach bac si
+    public Map<String, Object> getAvailabilityMatrixByDoctors(List<Long> doctorIds, LocalDate startDate, LocalDate endDate) {
+        List<Doctor> doctors = doctorRepository.findAllById(doctorIds);
+        return getAvailabilityMatrix(doctors, startDate, endDate);
+    }
+    
+    // bac si x ngay x khung gio -> {max, current, available}
+    private Map<String, Object> getAvailabilityMatrix(List<Doctor> doctors, LocalDate startDate, LocalDate endDate) {
+        if (startDate == null || endDate == null || endDate.isBefore(startDate)) {
+            throw new RuntimeException("Khoang ngay khong hop le");
+        }
+        if (startDate.plusDays(MAX_MATRIX_DAYS - 1).isBefore(endDate)) {
+            throw new RuntimeException("Chi ho tro toi da " + MAX_MATRIX_DAYS + " ngay");
+        }
+        
+        List<String> dates = new ArrayList<>();
+        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+            dates.add(date.format(DATE_FORMATTER));
+        }
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("startDate", startDate.format(DATE_FORMATTER));
+        result.put("endDate", endDate.format(DATE_FORMATTER));
+        result.put("dates", dates);
+        result.put("timeSlots", Arrays.asList(DEFAULT_TIME_SLOTS));
+        
+        List<Map<String, Object>> doctorRows = new ArrayList<>();
+        result.put("doctors", doctorRows);
+        
+        if (doctors.isEmpty()) {
+            return result;
+        }
+        
+        List<Long> doctorIds = new ArrayList<>();
+        for (Doctor doctor : doctors) {
+            doctorIds.add(doctor.getId());
+        }
+        
+        Map<String, AvailabilityCellDTO> cells = loadAvailabilityCells(
+            doctorIds, dates.get(0), dates.get(dates.size() - 1));
+        
+        for (Doctor doctor : doctors) {
+            // moi ngay la mot mang theo dung thu tu timeSlots
+            Map<String, List<AvailabilityCellDTO>> days = new LinkedHashMap<>();
+            for (String date : dates) {
+                List<AvailabilityCellDTO> row = new ArrayList<>(DEFAULT_TIME_SLOTS.length);
+                for (String timeSlot : DEFAULT_TIME_SLOTS) {
+                    row.add(cellOrDefault(cells, doctor.getId(), date, timeSlot));
                 }
-                maxPatients = slot.getMaxPatients();
-            } else {
-                maxPatients = 10; // mac dinh
+                days.put(date, row);
             }
             
-            // tinh so benh nhan hien tai
-            Integer currentPatients = getCurrentPatients(doctorId, appointmentDate, timeSlot);
+            Map<String, Object> doctorRow = new LinkedHashMap<>();
+            doctorRow.put("doctorId", doctor.getId());
+            doctorRow.put("doctorName", doctor.getFullName());
+            doctorRow.put("days", days);
+            doctorRows.add(doctorRow);
+        }
+        
+        return result;
+    }
+    
+    // doc cau hinh slot va so don da duyet trong 1 query group by
+    private Map<String, AvailabilityCellDTO> loadAvailabilityCells(List<Long> doctorIds, String startDate, String endDate) {
+        Map<String, AvailabilityCellDTO> cells = new HashMap<>();
+        
+        for (Object[] row : doctorSlotRepository.findAvailabilityCells(doctorIds, startDate, endDate)) {
+            if (row[2] == null) {
+                continue;
+            }
+            Long doctorId = ((Number) row[0]).longValue();
+            int max = row[3] != null ? ((Number) row[3]).intValue() : 10;
+            boolean active = row[4] == null || ((Number) row[4]).intValue() != 0;
+            int current = row[5] != null ? ((Number) row[5]).intValue() : 0;
             
-            return currentPatients == null || currentPatients < maxPatients;
+            cells.put(cellKey(doctorId, row[1].toString(), (String) row[2]), new AvailabilityCellDTO(max, current, active));
+        }
+        
+        return cells;
+    }
+    
+    private AvailabilityCellDTO cellOrDefault(Map<String, AvailabilityCellDTO> cells, Long doctorId, String date, String timeSlot) {
+        AvailabilityCellDTO cell = cells.get(cellKey(doctorId, date, timeSlot));
+        return cell != null ? cell : new AvailabilityCellDTO(10, 0, true);
+    }
+    
+    private String cellKey(Long doctorId, String date, String timeSlot) {
+        return doctorId + "|" + date + "|" + timeSlot;
+    }
+    
+    // kiem tra slot con trong khong (doc tu so cai trong bo nho)
+    public boolean isSlotAvailable(Long doctorId, String appointmentDate, String timeSlot) {
+        try {
+            return slotCapacityLedger.hasCapacity(doctorId, LocalDate.parse(appointmentDate), timeSlot);
         } catch (Exception e) {
             System.out.println("Loi kiem tra slot: " + e.getMessage());
             return false;
@@ -252,55 +374,156 @@ public class DoctorSlotService {
     
     // tao slot tu dong cho mot bac si trong mot ngay
     public void generateSlotsForDoctor(Long doctorId, String appointmentDate, Integer maxPatients) {
-        for (String timeSlot : DEFAULT_TIME_SLOTS) {
-            // kiem tra slot da ton tai chua
-            boolean exists = doctorSlotRepository.existsByDoctorIdAndAppointmentDateAndTimeSlot(
-                doctorId, appointmentDate, timeSlot);
-            
-            if (!exists) {
-                DoctorSlot slot = new DoctorSlot();
-                slot.setDoctorId(doctorId);
-                slot.setAppointmentDate(appointmentDate);
-                slot.setTimeSlot(timeSlot);
-                slot.setMaxPatients(maxPatients != null ? maxPatients : 10);
-                slot.setIsActive(true);
-                
-                doctorSlotRepository.save(slot);
+        SlotGenerationRequest request = new SlotGenerationRequest();
+        request.setDoctorIds(Collections.singletonList(doctorId));
+        request.setStartDate(appointmentDate);
+        request.setEndDate(appointmentDate);
+        request.setMaxPatients(maxPatients);
+        generateSlotsFromTemplates(request);
+    }
+    
+    // tao slot hang loat: bac si x khoang ngay x mau khung gio theo thu
+    // doc cac o da co bang 1 query, tinh o con thieu trong bo nho, ghi bang JDBC batch (INSERT IGNORE)
+    @Transactional
+    public Map<String, Object> generateSlotsFromTemplates(SlotGenerationRequest request) {
+        long startedAt = System.currentTimeMillis();
+        
+        if (request.getDoctorIds() == null || request.getDoctorIds().isEmpty()) {
+            throw new RuntimeException("Chua chon bac si");
+        }
+        LocalDate startDate = LocalDate.parse(request.getStartDate());
+        LocalDate endDate = LocalDate.parse(request.getEndDate());
+        if (endDate.isBefore(startDate)) {
+            throw new RuntimeException("Khoang ngay khong hop le");
+        }
+        if (startDate.plusDays(MAX_GENERATION_DAYS - 1).isBefore(endDate)) {
+            throw new RuntimeException("Chi ho tro toi da " + MAX_GENERATION_DAYS + " ngay");
+        }
+        
+        Map<DayOfWeek, List<String>> templates = resolveTemplates(request.getWeekdayTemplates());
+        int maxPatients = request.getMaxPatients() != null ? request.getMaxPatients() : 10;
+        List<Long> doctorIds = request.getDoctorIds();
+        
+        // cac o da ton tai
+        Set<String> existing = new HashSet<>();
+        List<Object[]> existingKeys = doctorSlotRepository.findSlotKeys(
+                doctorIds, startDate.format(DATE_FORMATTER), endDate.format(DATE_FORMATTER));
+        for (Object[] row : existingKeys) {
+            existing.add(cellKey((Long) row[0], (String) row[1], (String) row[2]));
+        }
+        
+        // tinh cac o con thieu
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>();
+        Map<Long, Set<LocalDate>> touchedDays = new LinkedHashMap<>();
+        int requested = 0;
+        
+        for (Long doctorId : doctorIds) {
+            for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+                List<String> timeSlots = templates.get(date.getDayOfWeek());
+                if (timeSlots == null) {
+                    continue;
+                }
+                String dateStr = date.format(DATE_FORMATTER);
+                for (String timeSlot : timeSlots) {
+                    requested++;
+                    if (existing.add(cellKey(doctorId, dateStr, timeSlot))) {
+                        rows.add(new Object[]{doctorId, dateStr, timeSlot, maxPatients, true, now, now});
+                        touchedDays.computeIfAbsent(doctorId, k -> new LinkedHashSet<>()).add(date);
+                    }
+                }
+            }
+        }
+        
+        int created = 0;
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SLOT_SQL, rows, GENERATION_BATCH_SIZE, (ps, row) -> {
+                for (int i = 0; i < row.length; i++) {
+                    ps.setObject(i + 1, row[i]);
+                }
+            });
+            // driver gop batch tra ve SUCCESS_NO_INFO (khong biet dong nao bi INSERT IGNORE bo qua):
+            // dem lai so o trong khoang sau khi ghi, tru so o da co
+            long after = doctorSlotRepository.countSlots(
+                    doctorIds, startDate.format(DATE_FORMATTER), endDate.format(DATE_FORMATTER));
+            created = (int) Math.max(0, after - existingKeys.size());
+        }
+        
+        for (Map.Entry<Long, Set<LocalDate>> entry : touchedDays.entrySet()) {
+            for (LocalDate date : entry.getValue()) {
+                eventPublisher.publishEvent(new SlotCapacityChangedEvent(entry.getKey(), date, null));
             }
         }
+        
+        long durationMs = System.currentTimeMillis() - startedAt;
+        System.out.println("Tao slot hang loat: " + created + "/" + requested + " o moi, "
+                         + doctorIds.size() + " bac si, " + durationMs + "ms");
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("requested", requested);
+        result.put("created", created);
+        result.put("skipped", requested - created);
+        result.put("durationMs", durationMs);
+        return result;
     }
     
-    // lay so thu tu tiep theo voi lock
-    @Transactional
-    public Integer getNextQueueNumberWithLock(Long doctorId, LocalDate appointmentDate, String timeSlot) {
-        try {
-            System.out.println("Dang lay so thu tu voi LOCK: bac si " + doctorId + 
-                             ", ngay " + appointmentDate + ", gio " + timeSlot);
-            
-            Integer currentCount = patientRegistrationRepository.countApprovedRegistrationsWithLock(
-                doctorId, appointmentDate, timeSlot
-            );
-            
-            int nextQueue = (currentCount != null ? currentCount : 0) + 1;
-            
-            System.out.println("So luong hien tai: " + currentCount + ", So thu tu tiep theo: " + nextQueue);
-            
-            List<PatientRegistration> existingRegistrations = patientRegistrationRepository
-                .findByDoctorAndDateAndSession(doctorId, appointmentDate, timeSlot);
-            
-            if (!existingRegistrations.isEmpty()) {
-                System.out.println("Cac dang ky hien tai:");
-                existingRegistrations.forEach(reg -> {
-                    System.out.println("ID: " + reg.getId() + ", STT: " + reg.getQueueNumber() + 
-                                     ", Ten: " + reg.getFullName());
-                });
+    // mau khung gio theo thu; khong co mau thi moi ngay dung 9 khung gio mac dinh
+    private Map<DayOfWeek, List<String>> resolveTemplates(Map<String, List<String>> weekdayTemplates) {
+        Map<DayOfWeek, List<String>> templates = new EnumMap<>(DayOfWeek.class);
+        
+        if (weekdayTemplates == null || weekdayTemplates.isEmpty()) {
+            for (DayOfWeek day : DayOfWeek.values()) {
+                templates.put(day, Arrays.asList(DEFAULT_TIME_SLOTS));
             }
-            
-            return nextQueue;
-        } catch (Exception e) {
-            System.out.println("Loi khi lay so thu tu voi lock: " + e.getMessage());
-            return getNextQueueNumber(doctorId, appointmentDate, timeSlot);
+            return templates;
         }
+        
+        for (Map.Entry<String, List<String>> entry : weekdayTemplates.entrySet()) {
+            DayOfWeek day;
+            try {
+                day = DayOfWeek.valueOf(entry.getKey().trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Thu khong hop le: " + entry.getKey());
+            }
+            if (entry.getValue() != null && !entry.getValue().isEmpty()) {
+                templates.put(day, new ArrayList<>(new LinkedHashSet<>(entry.getValue())));
+            }
+        }
+        return templates;
+    }
+    
+    // bao cho so cai slot biet cau hinh slot da thay doi
+    private void publishCapacityChanged(DoctorSlot slot) {
+        eventPublisher.publishEvent(new SlotCapacityChangedEvent(
+            slot.getDoctorId(), LocalDate.parse(slot.getAppointmentDate()), slot.getTimeSlot()));
+    }
+    
+    // cap so thu tu tiep theo tu bo dem rieng cua slot
+    // chi khoa dung 1 dong dem cua (bac si, ngay, khung gio) nen cac slot khac khong bi chan
+    // bo dem tang trong transaction cua nguoi goi: dat lich rollback thi so duoc tra lai;
+    // so cua don da duyet roi bi huy / tu choi thi khong cap lai (day so co the co khoang trong)
+    @Transactional
+    public Integer allocateQueueNumber(Long doctorId, LocalDate appointmentDate, String timeSlot) {
+        int updated = slotQueueCounterRepository.increment(doctorId, appointmentDate, timeSlot);
+        
+        if (updated == 0) {
+            // chua co dong dem: khoi tao tu so thu tu lon nhat da cap (du lieu cu)
+            Integer maxQueue = patientRegistrationRepository.findMaxQueueNumber(doctorId, appointmentDate, timeSlot);
+            slotQueueCounterRepository.insertIfAbsent(doctorId, appointmentDate, timeSlot,
+                maxQueue != null ? maxQueue : 0);
+            updated = slotQueueCounterRepository.increment(doctorId, appointmentDate, timeSlot);
+        }
+        
+        if (updated == 0) {
+            throw new RuntimeException("Khong the cap so thu tu cho slot " + timeSlot);
+        }
+        
+        Integer queueNumber = slotQueueCounterRepository.findLastNumber(doctorId, appointmentDate, timeSlot)
+            .orElseThrow(() -> new RuntimeException("Khong tim thay bo dem so thu tu cho slot " + timeSlot));
+        
+        System.out.println("Cap so thu tu: bac si " + doctorId + ", ngay " + appointmentDate +
+                         ", gio " + timeSlot + " -> STT " + queueNumber);
+        return queueNumber;
     }
     
     // lay so thu tu tiep theo
@@ -0,0 +1,449 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.event.RegistrationChangedEvent;
+import com.example.clinic_backend.model.DoctorStatistics;
+import com.example.clinic_backend.model.RegistrationSnapshot;
+import com.example.clinic_backend.repository.DoctorStatisticsRepository;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bo dem DAY trong doctor_statistics cap nhat theo chenh lech thay vi tinh lai tu patient_registrations.
+// - RegistrationChangedEvent (RegistrationChangeListener) bao (bac si, ngay, trang thai) truoc / sau moi lan luu don
+// - chenh lech gop theo (bac si, ngay) trong transaction (ke ca phan flush luc commit),
+//   sau commit chuyen vao hang doi co gioi han cho 1 thread ghi (gop tiep giua cac transaction):
+//   thread dat lich khong muon them ket noi trong luc ket noi cua no chua duoc tra, loi ghi khong lam hong dat lich
+// - hang doi day / loi ghi: bo chenh lech, dem lai, doi chieu hang dem sua
+// - doi chieu hang dem (1 node) tinh lai tu patient_registrations va sua dong lech
+//   (cap nhat hang loat bang SQL khong qua listener, loi ghi sau commit, du lieu truoc khi co bo dem),
+//   roi DoctorStatisticsRollup tong hop WEEK / MONTH / YEAR cho cac ky da dong
+// - chenh lech (ke ca phan doi chieu sua) cung cong vao dong tong hop cua ky da dong
+// Dashboard doc dong DAY theo khoa (doctor_id, stat_type, stat_date) trong cua so da doi chieu.
+@Service
+public class DoctorStatisticsRecorder {
+
+    private static final Logger logger = LoggerFactory.getLogger(DoctorStatisticsRecorder.class);
+
+    static final String DAY = "DAY";
+    private static final String RECONCILE_LOCK = "doctor-stats-reconcile";
+    // doi chieu moi lan 1 thang de transaction va khoa dong ngan
+    private static final int RECONCILE_CHUNK_DAYS = 31;
+
+    private final DoctorStatisticsRepository statisticsRepository;
+    private final PatientRegistrationRepository registrationRepository;
+    private final SchedulerLockService schedulerLockService;
+    private final DoctorStatisticsRollup rollup;
+    private final TransactionTemplate writeTransaction;
+    private final int daysBack;
+    private final int daysAhead;
+    private final int maxPending;
+
+    // chenh lech da commit cho thread ghi, gop theo (bac si, ngay)
+    private final Map<DayKey, AppointmentCounts> queued = new HashMap<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> new Thread(r, "doctor-stats-writer"));
+
+    private final AtomicLong transactionsRecorded = new AtomicLong();
+    private final AtomicLong rowsUpdated = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong droppedDeltas = new AtomicLong();
+    private final AtomicLong reconciledRows = new AtomicLong();
+    private volatile LocalDateTime lastReconciledAt;
+
+    public DoctorStatisticsRecorder(DoctorStatisticsRepository statisticsRepository,
+                                    PatientRegistrationRepository registrationRepository,
+                                    SchedulerLockService schedulerLockService,
+                                    DoctorStatisticsRollup rollup,
+                                    PlatformTransactionManager transactionManager,
+                                    @Value("${app.doctor-stats.reconcile-days-back:400}") int daysBack,
+                                    @Value("${app.doctor-stats.reconcile-days-ahead:90}") int daysAhead,
+                                    @Value("${app.doctor-stats.max-pending:10000}") int maxPending) {
+        this.statisticsRepository = statisticsRepository;
+        this.registrationRepository = registrationRepository;
+        this.schedulerLockService = schedulerLockService;
+        this.rollup = rollup;
+        // thread ghi / doi chieu: transaction rieng
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.daysBack = Math.max(1, daysBack);
+        this.daysAhead = Math.max(0, daysAhead);
+        this.maxPending = Math.max(1, maxPending);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    // ========== CHENH LECH THEO TRANSACTION ==========
+
+    // don luu qua JPA: phat trong transaction luu don (truoc commit)
+    @EventListener
+    public void onRegistrationChanged(RegistrationChangedEvent event) {
+        DayState previous = DayState.of(event.getPrevious());
+        DayState current = DayState.of(event.getCurrent());
+        if (!Objects.equals(previous, current)) {
+            record(previous, current);
+        }
+    }
+
+    // previous / current null = don moi / da xoa / chua co bac si
+    void record(DayState previous, DayState current) {
+        Map<DayKey, AppointmentCounts> delta = new HashMap<>(4);
+        if (previous != null) {
+            delta.computeIfAbsent(previous.key(), k -> new AppointmentCounts())
+                .add(previous.status, previous.examinationStatus, -1);
+        }
+        if (current != null) {
+            delta.computeIfAbsent(current.key(), k -> new AppointmentCounts())
+                .add(current.status, current.examinationStatus, 1);
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingDeltas().merge(delta);
+            return;
+        }
+        enqueue(delta);
+    }
+
+    // dua chenh lech da commit cho thread ghi; day thi bo phan cua (bac si, ngay) moi
+    private void enqueue(Map<DayKey, AppointmentCounts> delta) {
+        synchronized (queued) {
+            delta.forEach((key, counts) -> {
+                AppointmentCounts target = queued.get(key);
+                if (target == null) {
+                    if (queued.size() >= maxPending) {
+                        droppedDeltas.incrementAndGet();
+                        return;
+                    }
+                    target = new AppointmentCounts();
+                    queued.put(key, target);
+                }
+                target.add(counts);
+            });
+        }
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                writer.execute(this::drain);
+            } catch (RuntimeException e) {
+                // dang tat ung dung
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        Map<DayKey, AppointmentCounts> batch;
+        synchronized (queued) {
+            if (queued.isEmpty()) {
+                return;
+            }
+            batch = new HashMap<>(queued);
+            queued.clear();
+        }
+        try {
+            writeTransaction.executeWithoutResult(status -> apply(batch));
+        } catch (Exception e) {
+            failedBatches.incrementAndGet();
+            logger.error("Lỗi cập nhật thống kê bác sĩ (chờ đối chiếu): {}", e.getMessage());
+        }
+    }
+
+    // cho thread ghi xu ly xong cac chenh lech da dua vao (test)
+    void awaitWrites() throws Exception {
+        writer.submit(() -> { }).get(5, TimeUnit.SECONDS);
+    }
+
+    // chenh lech cua transaction hien tai (tim trong synchronization nen dung voi REQUIRES_NEW long nhau)
+    private PendingDeltas pendingDeltas() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PendingDeltas pending && pending.owner() == this) {
+                return pending;
+            }
+        }
+        PendingDeltas pending = new PendingDeltas();
+        TransactionSynchronizationManager.registerSynchronization(pending);
+        transactionsRecorded.incrementAndGet();
+        return pending;
+    }
+
+    // INSERT IGNORE + UPDATE cong don; theo thu tu khoa (DAY truoc, tong hop sau) de 2 transaction khong khoa cheo
+    private void apply(Map<DayKey, AppointmentCounts> deltas) {
+        List<Map.Entry<DayKey, AppointmentCounts>> entries = new ArrayList<>(deltas.entrySet());
+        entries.sort(Map.Entry.comparingByKey(DayKey.ORDER));
+        for (Map.Entry<DayKey, AppointmentCounts> entry : entries) {
+            AppointmentCounts delta = entry.getValue();
+            if (delta.isZero()) {
+                continue;
+            }
+            DayKey key = entry.getKey();
+            statisticsRepository.insertDayIfAbsent(key.doctorId, key.date);
+            statisticsRepository.addDelta(key.doctorId, DAY, key.date, delta.total, delta.completed,
+                delta.cancelled, delta.noShow, delta.approved, delta.pending);
+            rowsUpdated.incrementAndGet();
+        }
+        applyRollups(deltas);
+    }
+
+    // cong chenh lech vao dong WEEK / MONTH / YEAR cua ky da dong (chi UPDATE; ky dang mo chua co dong)
+    private void applyRollups(Map<DayKey, AppointmentCounts> deltas) {
+        LocalDate today = LocalDate.now();
+        Map<RollupKey, AppointmentCounts> rollups = new TreeMap<>(RollupKey.ORDER);
+        deltas.forEach((key, delta) -> {
+            if (delta.isZero()) {
+                return;
+            }
+            for (String level : DoctorStatisticsRollup.LEVELS) {
+                LocalDate start = DoctorStatisticsRollup.periodStart(key.date, level);
+                if (DoctorStatisticsRollup.closed(start, level, today)) {
+                    rollups.computeIfAbsent(new RollupKey(key.doctorId, level, start), k -> new AppointmentCounts())
+                        .add(delta);
+                }
+            }
+        });
+        rollups.forEach((key, delta) -> statisticsRepository.addDelta(key.doctorId, key.level, key.date,
+            delta.total, delta.completed, delta.cancelled, delta.noShow, delta.approved, delta.pending));
+    }
+
+    private final class PendingDeltas implements TransactionSynchronization {
+        private final Map<DayKey, AppointmentCounts> deltas = new HashMap<>();
+
+        DoctorStatisticsRecorder owner() {
+            return DoctorStatisticsRecorder.this;
+        }
+
+        void merge(Map<DayKey, AppointmentCounts> delta) {
+            delta.forEach((key, counts) -> deltas.computeIfAbsent(key, k -> new AppointmentCounts()).add(counts));
+        }
+
+        // thay doi da commit: chi dua vao hang doi, ket noi cua transaction nay chua duoc tra
+        @Override
+        public void afterCommit() {
+            if (!deltas.isEmpty()) {
+                enqueue(deltas);
+            }
+        }
+    }
+
+    // ========== DOI CHIEU ==========
+
+    // dong DAY tu ngay nay tro di da duoc doi chieu (dashboard doc truc tiep)
+    public boolean covers(LocalDate startDate) {
+        return !startDate.isBefore(LocalDate.now().minusDays(daysBack));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        reconcileWindow();
+    }
+
+    @Scheduled(cron = "${app.doctor-stats.reconcile-cron:0 30 2 * * *}")
+    public void reconcileWindow() {
+        schedulerLockService.runIfLeader(RECONCILE_LOCK, () -> {
+            LocalDate today = LocalDate.now();
+            int corrected = reconcile(null, today.minusDays(daysBack), today.plusDays(daysAhead));
+            logger.info("Đối chiếu thống kê bác sĩ {} ngày: sửa {} dòng", daysBack + daysAhead + 1, corrected);
+            int periods = rollup.rollUp(today.minusDays(daysBack), today);
+            logger.info("Tổng hợp thống kê bác sĩ tuần / tháng / năm: {} kỳ", periods);
+        });
+    }
+
+    // tinh lai dong DAY tu patient_registrations, chi ghi dong lech; doctorId null = tat ca bac si
+    public int reconcile(Long doctorId, LocalDate startDate, LocalDate endDate) {
+        int corrected = 0;
+        for (LocalDate from = startDate; !from.isAfter(endDate); from = from.plusDays(RECONCILE_CHUNK_DAYS)) {
+            LocalDate to = from.plusDays(RECONCILE_CHUNK_DAYS - 1);
+            if (to.isAfter(endDate)) {
+                to = endDate;
+            }
+            try {
+                corrected += reconcileChunk(doctorId, from, to);
+            } catch (Exception e) {
+                logger.error("Lỗi đối chiếu thống kê bác sĩ {} - {}: {}", from, to, e.getMessage());
+            }
+        }
+        reconciledRows.addAndGet(corrected);
+        lastReconciledAt = LocalDateTime.now();
+        return corrected;
+    }
+
+    private int reconcileChunk(Long doctorId, LocalDate from, LocalDate to) {
+        Integer corrected = writeTransaction.execute(status -> {
+            // khoa dong thong ke truoc roi moi dem: chenh lech dong thoi cho toi khi transaction nay xong
+            Map<DayKey, DoctorStatistics> stored = new HashMap<>();
+            for (DoctorStatistics row : statisticsRepository.lockForReconcile(DAY, from, to, doctorId)) {
+                stored.put(new DayKey(row.getDoctorId(), row.getStatDate()), row);
+            }
+
+            Map<DayKey, AppointmentCounts> actual = new HashMap<>();
+            for (Object[] row : registrationRepository.countGroupedByDoctorAndDate(from, to, doctorId)) {
+                DayKey key = new DayKey(((Number) row[0]).longValue(), (LocalDate) row[1]);
+                actual.computeIfAbsent(key, k -> new AppointmentCounts())
+                    .add((String) row[2], (String) row[3], ((Number) row[4]).intValue());
+            }
+
+            // phan sua cua moi dong DAY, cong tiep vao dong tong hop
+            Map<DayKey, AppointmentCounts> changes = new HashMap<>();
+            for (Map.Entry<DayKey, AppointmentCounts> entry : actual.entrySet()) {
+                DoctorStatistics row = stored.remove(entry.getKey());
+                if (row == null) {
+                    row = new DoctorStatistics(entry.getKey().doctorId, entry.getKey().date, DAY);
+                } else if (entry.getValue().matches(row)) {
+                    continue;
+                }
+                changes.put(entry.getKey(), correction(row, entry.getValue()));
+                entry.getValue().copyTo(row);
+                statisticsRepository.save(row);
+            }
+            // dong con lai: khong con lich hen nao trong ngay
+            AppointmentCounts empty = new AppointmentCounts();
+            for (DoctorStatistics row : stored.values()) {
+                if (!empty.matches(row)) {
+                    changes.put(new DayKey(row.getDoctorId(), row.getStatDate()), correction(row, empty));
+                    empty.copyTo(row);
+                    statisticsRepository.save(row);
+                }
+            }
+            applyRollups(changes);
+            return changes.size();
+        });
+        return corrected != null ? corrected : 0;
+    }
+
+    private static AppointmentCounts correction(DoctorStatistics stored, AppointmentCounts actual) {
+        AppointmentCounts change = new AppointmentCounts();
+        change.add(actual);
+        change.subtract(stored);
+        return change;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("transactionsRecorded", transactionsRecorded.get());
+        stats.put("rowsUpdated", rowsUpdated.get());
+        stats.put("failedBatches", failedBatches.get());
+        synchronized (queued) {
+            stats.put("queued", queued.size());
+        }
+        stats.put("maxPending", maxPending);
+        stats.put("droppedDeltas", droppedDeltas.get());
+        stats.put("reconciledRows", reconciledRows.get());
+        stats.put("lastReconciledAt", lastReconciledAt != null ? lastReconciledAt.toString() : null);
+        stats.put("reconcileDaysBack", daysBack);
+        stats.put("reconcileDaysAhead", daysAhead);
+        stats.put("rollup", rollup.getStats());
+        return stats;
+    }
+
+    // (bac si, ngay, trang thai, trang thai kham) cua 1 don; null neu chua co bac si / ngay
+    static final class DayState {
+        final Long doctorId;
+        final LocalDate date;
+        final String status;
+        final String examinationStatus;
+
+        private DayState(Long doctorId, LocalDate date, String status, String examinationStatus) {
+            this.doctorId = doctorId;
+            this.date = date;
+            this.status = status;
+            this.examinationStatus = examinationStatus;
+        }
+
+        static DayState of(RegistrationSnapshot snapshot) {
+            if (snapshot == null || snapshot.getDoctorId() == null || snapshot.getAppointmentDate() == null) {
+                return null;
+            }
+            return new DayState(snapshot.getDoctorId(), snapshot.getAppointmentDate(),
+                snapshot.getStatus(), snapshot.getExaminationStatus());
+        }
+
+        DayKey key() {
+            return new DayKey(doctorId, date);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DayState)) return false;
+            DayState other = (DayState) o;
+            return doctorId.equals(other.doctorId) && date.equals(other.date)
+                && Objects.equals(status, other.status) && Objects.equals(examinationStatus, other.examinationStatus);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(doctorId, date, status, examinationStatus);
+        }
+    }
+
+    static final class DayKey {
+        static final Comparator<DayKey> ORDER = Comparator.<DayKey, Long>comparing(k -> k.doctorId)
+            .thenComparing(k -> k.date);
+
+        final Long doctorId;
+        final LocalDate date;
+
+        DayKey(Long doctorId, LocalDate date) {
+            this.doctorId = doctorId;
+            this.date = date;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DayKey)) return false;
+            DayKey other = (DayKey) o;
+            return doctorId.equals(other.doctorId) && date.equals(other.date);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * doctorId.hashCode() + date.hashCode();
+        }
+    }
+
+    // khoa dong tong hop; thu tu trung voi uk_doctor_stat (doctor_id, stat_type, stat_date)
+    static final class RollupKey {
+        static final Comparator<RollupKey> ORDER = Comparator.<RollupKey, Long>comparing(k -> k.doctorId)
+            .thenComparing(k -> k.level)
+            .thenComparing(k -> k.date);
+
+        final Long doctorId;
+        final String level;
+        final LocalDate date;
+
+        RollupKey(Long doctorId, String level, LocalDate date) {
+            this.doctorId = doctorId;
+            this.level = level;
+            this.date = date;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.repository.DoctorStatisticsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Dong tong hop WEEK / MONTH / YEAR trong doctor_statistics (stat_date = ngay dau ky), tao khi ky da dong:
+// - WEEK (thu 2 - chu nhat) va MONTH cong tu dong DAY, YEAR cong tu 12 dong MONTH
+// - chay sau doi chieu hang dem (DoctorStatisticsRecorder), tong hop lai moi ky nam tron trong cua so doi chieu
+// - sau do DoctorStatisticsRecorder cong chenh lech vao dong tong hop da co, nen ky cu van dung
+// Dashboard khoang dai doc dong tong hop va ghep phan le tu dong DAY.
+@Service
+public class DoctorStatisticsRollup {
+
+    private static final Logger logger = LoggerFactory.getLogger(DoctorStatisticsRollup.class);
+
+    static final String WEEK = "WEEK";
+    static final String MONTH = "MONTH";
+    static final String YEAR = "YEAR";
+    // YEAR lay tu MONTH nen MONTH phai tong hop truoc
+    static final List<String> LEVELS = List.of(WEEK, MONTH, YEAR);
+
+    private final DoctorStatisticsRepository statisticsRepository;
+    private final TransactionTemplate writeTransaction;
+
+    private final AtomicLong periodsRolled = new AtomicLong();
+    private final AtomicLong failedPeriods = new AtomicLong();
+    private volatile LocalDateTime lastRolledAt;
+
+    public DoctorStatisticsRollup(DoctorStatisticsRepository statisticsRepository,
+                                  PlatformTransactionManager transactionManager) {
+        this.statisticsRepository = statisticsRepository;
+        // moi ky 1 transaction ngan
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // tong hop moi ky da dong (ket thuc truoc hom nay) bat dau tu windowStart tro di
+    public int rollUp(LocalDate windowStart, LocalDate today) {
+        int rolled = 0;
+        for (String level : LEVELS) {
+            LocalDate start = periodStart(windowStart, level);
+            if (start.isBefore(windowStart)) {
+                start = periodEnd(start, level).plusDays(1);
+            }
+            for (; closed(start, level, today); start = periodEnd(start, level).plusDays(1)) {
+                LocalDate from = start;
+                LocalDate to = periodEnd(start, level);
+                try {
+                    writeTransaction.executeWithoutResult(status ->
+                        statisticsRepository.upsertRollup(level, sourceOf(level), from, to));
+                    rolled++;
+                } catch (Exception e) {
+                    failedPeriods.incrementAndGet();
+                    logger.error("Lỗi tổng hợp thống kê bác sĩ {} {} - {}: {}", level, from, to, e.getMessage());
+                }
+            }
+        }
+        periodsRolled.addAndGet(rolled);
+        lastRolledAt = LocalDateTime.now();
+        return rolled;
+    }
+
+    static String sourceOf(String level) {
+        return YEAR.equals(level) ? MONTH : DoctorStatisticsRecorder.DAY;
+    }
+
+    // ngay dau ky chua date; DAY = chinh ngay do
+    static LocalDate periodStart(LocalDate date, String level) {
+        switch (level) {
+            case WEEK:
+                return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH:
+                return date.withDayOfMonth(1);
+            case YEAR:
+                return date.withDayOfYear(1);
+            default:
+                return date;
+        }
+    }
+
+    static LocalDate periodEnd(LocalDate periodStart, String level) {
+        switch (level) {
+            case WEEK:
+                return periodStart.plusDays(6);
+            case MONTH:
+                return periodStart.with(TemporalAdjusters.lastDayOfMonth());
+            case YEAR:
+                return periodStart.with(TemporalAdjusters.lastDayOfYear());
+            default:
+                return periodStart;
+        }
+    }
+
+    // don vi dem khoang cach giua 2 ngay dau ky
+    static ChronoUnit unitOf(String level) {
+        switch (level) {
+            case WEEK:
+                return ChronoUnit.WEEKS;
+            case MONTH:
+                return ChronoUnit.MONTHS;
+            case YEAR:
+                return ChronoUnit.YEARS;
+            default:
+                return ChronoUnit.DAYS;
+        }
+    }
+
+    // chi ky da dong moi co dong tong hop
+    static boolean closed(LocalDate periodStart, String level, LocalDate today) {
+        return periodEnd(periodStart, level).isBefore(today);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("periodsRolled", periodsRolled.get());
+        stats.put("failedPeriods", failedPeriods.get());
+        stats.put("lastRolledAt", lastRolledAt != null ? lastRolledAt.toString() : null);
+        return stats;
+    }
+}
@@ -1,84 +1,71 @@
 package com.example.clinic_backend.service;
 
 import com.example.clinic_backend.model.DoctorStatistics;
-import com.example.clinic_backend.model.PatientRegistration;
 import com.example.clinic_backend.model.Doctor;
 import com.example.clinic_backend.repository.DoctorStatisticsRepository;
 import com.example.clinic_backend.repository.PatientRegistrationRepository;
 import com.example.clinic_backend.repository.DoctorRepository;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import java.time.format.DateTimeFormatter;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.DayOfWeek;
+import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalAdjusters;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class DoctorStatisticsService {
     
-    @Autowired
-    private DoctorStatisticsRepository statisticsRepository;
+    private static final DateTimeFormatter DAY_MONTH = DateTimeFormatter.ofPattern("dd/MM");
+    private static final DateTimeFormatter MONTH_YEAR = DateTimeFormatter.ofPattern("MM/yyyy");
     
-    @Autowired
-    private PatientRegistrationRepository patientRegistrationRepository;
+    // khoang tuy chinh dai hon thi bieu do theo tuan / thang / nam (doc dong tong hop)
+    private static final int DAILY_MAX_DAYS = 62;
+    private static final int WEEKLY_MAX_DAYS = 190;
+    private static final int MONTHLY_MAX_DAYS = 1096;
     
-    @Autowired
-    private DoctorRepository doctorRepository;
+    // danh sach cac khung gio trong ngay
+    private static final String[] TIME_SLOTS = {
+        "07:00-08:00", "08:00-09:00", "09:00-10:00", "10:00-11:00", 
+        "11:00-12:00", "13:00-14:00", "14:00-15:00", "15:00-16:00", "16:00-17:00"
+    };
+    
+    private final DoctorStatisticsRepository statisticsRepository;
+    private final PatientRegistrationRepository patientRegistrationRepository;
+    private final DoctorRepository doctorRepository;
+    private final DoctorStatisticsRecorder statisticsRecorder;
+    
+    public DoctorStatisticsService(DoctorStatisticsRepository statisticsRepository,
+                                   PatientRegistrationRepository patientRegistrationRepository,
+                                   DoctorRepository doctorRepository,
+                                   DoctorStatisticsRecorder statisticsRecorder) {
+        this.statisticsRepository = statisticsRepository;
+        this.patientRegistrationRepository = patientRegistrationRepository;
+        this.doctorRepository = doctorRepository;
+        this.statisticsRecorder = statisticsRecorder;
+    }
     
     // cap nhat thong ke hang ngay
-    @Transactional
     public void updateDailyStatistics(Long doctorId) {
         LocalDate today = LocalDate.now();
         updateStatisticsForDate(doctorId, today);
     }
     
     // cap nhat thong ke cho mot ngay cu the
-    @Transactional
+    // bo dem DAY da cap nhat theo tung thay doi; o day chi doi chieu lai ngay nay tu patient_registrations
     public void updateStatisticsForDate(Long doctorId, LocalDate date) {
         System.out.println("Cap nhat thong ke cho bac si " + doctorId + ", ngay " + date);
         
-        DoctorStatistics stats = statisticsRepository
-                .findByDoctorIdAndStatDateAndStatType(doctorId, date, "DAY")
-                .orElse(new DoctorStatistics(doctorId, date, "DAY"));
-        
-        // lay tat ca lich hen cua bac si trong ngay
-        List<PatientRegistration> todayAppointments = patientRegistrationRepository
-                .findByDoctorAndDateAndSession(doctorId, date, null);
-        
-        System.out.println("Tim thay " + todayAppointments.size() + " lich hen cho ngay " + date);
-        
-        // tinh toan thong ke
-        int total = todayAppointments.size();
-        int completed = (int) todayAppointments.stream()
-                .filter(apt -> "COMPLETED".equals(apt.getStatus()))
-                .count();
-        int cancelled = (int) todayAppointments.stream()
-                .filter(apt -> "CANCELLED".equals(apt.getStatus()))
-                .count();
-        int noShow = (int) todayAppointments.stream()
-                .filter(apt -> "MISSED".equals(apt.getExaminationStatus()))
-                .count();
+        int corrected = statisticsRecorder.reconcile(doctorId, date, date);
         
-        System.out.println("Thong ke: Total=" + total + ", Completed=" + completed + 
-                          ", Cancelled=" + cancelled + ", NoShow=" + noShow);
-        
-        // cap nhat gia tri
-        stats.setTotalAppointments(total);
-        stats.setCompletedAppointments(completed);
-        stats.setCancelledAppointments(cancelled);
-        stats.setNoShowAppointments(noShow);
-        stats.calculateSuccessRate();
-        
-        statisticsRepository.save(stats);
-        System.out.println("Da luu thong ke ngay cho bac si " + doctorId);
+        System.out.println("Da doi chieu thong ke ngay cho bac si " + doctorId + ", sua " + corrected + " dong");
     }
     
     // lay thong ke chi tiet
+    // bieu do va tong hop doc tu dong DAY / tong hop cua doctor_statistics (theo khoa); TODAY / khoang chua doi chieu
+    // tinh tu 1 truy van GROUP BY tren patient_registrations, khong tai entity
     public Map<String, Object> getDoctorStatistics(Long doctorId, String period) {
         System.out.println("Lay thong ke cho bac si " + doctorId + ", period " + period);
         
@@ -93,40 +80,40 @@ public class DoctorStatisticsService {
             LocalDate today = LocalDate.now();
             LocalDate startDate = today;
             LocalDate endDate = today;
-            Map<String, Object> chartData = new HashMap<>();
+            String chartPeriod;
             
             // xac dinh khoang thoi gian
             switch (period.toUpperCase()) {
                 case "TODAY":
-                    startDate = today;
-                    endDate = today;
-                    chartData = prepareHourlyChartData(doctorId, today);
+                    chartPeriod = "TODAY";
                     System.out.println("Khoang thoi gian: TODAY");
                     break;
                 case "WEEK":
                     startDate = today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
-                    endDate = today;
-                    chartData = prepareChartData(doctorId, startDate, endDate, "WEEK");
+                    chartPeriod = "WEEK";
                     System.out.println("Khoang thoi gian: TUAN");
                     break;
                 case "MONTH":
                     startDate = today.withDayOfMonth(1);
-                    endDate = today;
-                    chartData = prepareChartData(doctorId, startDate, endDate, "MONTH");
+                    chartPeriod = "MONTH";
                     System.out.println("Khoang thoi gian: THANG");
                     break;
                 default:
-                    startDate = today;
-                    endDate = today;
-                    chartData = prepareChartData(doctorId, startDate, endDate, "DAY");
+                    chartPeriod = "DAY";
             }
             
-            // lay tat ca lich hen trong khoang thoi gian
-            List<PatientRegistration> appointments = getAppointmentsByDateRange(doctorId, startDate, endDate);
-            System.out.println("Tong lich hen trong khoang: " + appointments.size());
+            AppointmentCounts summary = new AppointmentCounts();
+            Map<String, Object> chartData;
+            if ("TODAY".equals(chartPeriod)) {
+                chartData = prepareHourlyChartData(doctorId, today, summary);
+            } else {
+                chartData = prepareChartData(doctorId, startDate, endDate, chartPeriod, summary);
+            }
+            System.out.println("Tong lich hen trong khoang: " + summary.total);
             
             // tinh toan thong ke
-            Map<String, Object> statsMap = calculateStatisticsFromAppointments(appointments);
+            Map<String, Object> statsMap = summary.toMap();
+            System.out.println("Tinh toan thong ke: " + summary);
             
             response.put("success", true);
             response.put("doctorId", doctorId);
@@ -163,15 +150,18 @@ public class DoctorStatisticsService {
             Doctor doctor = doctorRepository.findById(doctorId)
                     .orElseThrow(() -> new RuntimeException("Khong tim thay bac si voi ID: " + doctorId));
             
-            // lay tat ca lich hen trong khoang thoi gian
-            List<PatientRegistration> appointments = getAppointmentsByDateRange(doctorId, startDate, endDate);
-            System.out.println("Lich hen trong khoang tuy chinh: " + appointments.size());
+            if (endDate.isBefore(startDate)) {
+                throw new RuntimeException("Ngay ket thuc phai sau ngay bat dau");
+            }
             
-            // tinh toan thong ke
-            Map<String, Object> statsMap = calculateStatisticsFromAppointments(appointments);
+            // chuan bi du lieu bieu do va tong hop trong cung 1 truy van
+            AppointmentCounts summary = new AppointmentCounts();
+            Map<String, Object> chartData = prepareChartData(doctorId, startDate, endDate, "CUSTOM", summary);
+            System.out.println("Lich hen trong khoang tuy chinh: " + summary.total);
             
-            // chuan bi du lieu bieu do
-            Map<String, Object> chartData = prepareChartData(doctorId, startDate, endDate, "CUSTOM");
+            // tinh toan thong ke
+            Map<String, Object> statsMap = summary.toMap();
+            System.out.println("Tinh toan thong ke: " + summary);
             
             response.put("success", true);
             response.put("doctorId", doctorId);
@@ -198,215 +188,256 @@ public class DoctorStatisticsService {
     }
     
     // helper methods
-    private List<PatientRegistration> getAppointmentsByDateRange(Long doctorId, LocalDate startDate, LocalDate endDate) {
-    System.out.println("Lay lich hen cho bac si " + doctorId + 
-                      ", tu " + startDate + " den " + endDate);
     
-    // su dung phuong thuc tu repository
-    List<PatientRegistration> appointments = patientRegistrationRepository
-            .findByDoctorIdAndDateRange(doctorId, startDate, endDate);
-    
-    System.out.println("Tim thay " + appointments.size() + " lich hen trong khoang");
-    
-    // debug neu khong co lich hen
-    if (appointments.isEmpty()) {
-        System.out.println("Khong tim thay lich hen nao cho bac si " + doctorId);
+    // bieu do theo ngay (dashboard, khoang tuy chinh ngan) hoac theo tuan / thang / nam (khoang tuy chinh dai):
+    // - ky da dong nam tron trong khoang doc tu dong tong hop WEEK / MONTH / YEAR (moi ky 1 dong)
+    // - ngay con lai doc tu dong DAY neu da duoc doi chieu, ngay cu hon cua so doi chieu thi nhom
+    //   (ngay, status, examinationStatus) tren patient_registrations; moi nguon toi da 1 truy van
+    private Map<String, Object> prepareChartData(Long doctorId, LocalDate startDate, LocalDate endDate,
+                                                 String period, AppointmentCounts summary) {
+        System.out.println("Chuan bi du lieu bieu do cho period: " + period + 
+                          ", tu " + startDate + " den " + endDate);
         
-        // kiem tra tong lich hen trong database
-        List<PatientRegistration> allAppointments = patientRegistrationRepository.findAll();
-        long totalForDoctor = allAppointments.stream()
-                .filter(apt -> doctorId.equals(apt.getDoctorId()))
-                .count();
-        System.out.println("Tong lich hen cho bac si nay trong database: " + totalForDoctor);
+        String granularity = granularity(startDate, endDate, period);
+        ChartBuckets chart = new ChartBuckets(startDate, endDate, granularity, summary);
+        int rowCount = 0;
         
-        // hien thi mot vai lich hen de debug
-        if (totalForDoctor > 0) {
-            System.out.println("Mau lich hen cho bac si " + doctorId + ":");
-            allAppointments.stream()
-                .filter(apt -> doctorId.equals(apt.getDoctorId()))
-                .limit(5)
-                .forEach(apt -> {
-                    try {
-                        System.out.println("ID: " + apt.getId() + 
-                                         ", Ngay: " + apt.getAppointmentDate() + 
-                                         ", Trang thai: " + apt.getStatus());
-                    } catch (Exception e) {
-                        System.out.println("ID: " + apt.getId() + " (loi lay chi tiet)");
+        // ngay chua co dong tong hop
+        List<LocalDate> days = new ArrayList<>();
+        if (DoctorStatisticsRecorder.DAY.equals(granularity)) {
+            for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+                days.add(date);
+            }
+        } else {
+            Map<String, Map<LocalDate, DoctorStatistics>> rollups = new HashMap<>();
+            List<String> levels = rollupLevels(granularity);
+            for (DoctorStatistics row : statisticsRepository.findByDoctorIdAndStatTypeInAndStatDateBetween(
+                    doctorId, levels, startDate, endDate)) {
+                rollups.computeIfAbsent(row.getStatType(), k -> new HashMap<>()).put(row.getStatDate(), row);
+            }
+            
+            // di tu dau khoang, lay ky lon nhat bat dau tai ngay nay, nam tron trong khoang va da tong hop
+            LocalDate cursor = startDate;
+            while (!cursor.isAfter(endDate)) {
+                DoctorStatistics covering = null;
+                for (String level : levels) {
+                    LocalDate end = DoctorStatisticsRollup.periodEnd(cursor, level);
+                    if (DoctorStatisticsRollup.periodStart(cursor, level).equals(cursor) && !end.isAfter(endDate)) {
+                        covering = rollups.getOrDefault(level, Map.of()).get(cursor);
+                        if (covering != null) {
+                            break;
+                        }
                     }
-                });
+                }
+                if (covering == null) {
+                    days.add(cursor);
+                    cursor = cursor.plusDays(1);
+                    continue;
+                }
+                chart.add(cursor, covering);
+                rowCount++;
+                cursor = DoctorStatisticsRollup.periodEnd(cursor, covering.getStatType()).plusDays(1);
+            }
+        }
+        
+        // ngay truoc cua so doi chieu chua chac co dong DAY
+        int firstCovered = 0;
+        while (firstCovered < days.size() && !statisticsRecorder.covers(days.get(firstCovered))) {
+            firstCovered++;
         }
-    } else {
-        // hien thi chi tiet cac lich hen tim thay
-        appointments.forEach(apt -> {
-            try {
-                System.out.println("Tim thay lich hen: " + 
-                                 "ID=" + apt.getId() + 
-                                 ", Ngay=" + apt.getAppointmentDate() + 
-                                 ", Trang thai=" + apt.getStatus());
-            } catch (Exception e) {
-                System.out.println("Tim thay lich hen ID=" + apt.getId());
+        rowCount += addRegistrationCounts(doctorId, days.subList(0, firstCovered), chart);
+        rowCount += addDayRows(doctorId, days.subList(firstCovered, days.size()), chart);
+        
+        System.out.println("Da chuan bi du lieu bieu do: " + chart.size() + " diem du lieu (" + granularity
+                + ") tu " + rowCount + " dong");
+        
+        Map<String, Object> chartData = chartData(chart.labels(period), chart.totals, chart.completeds);
+        chartData.put("granularity", granularity);
+        return chartData;
+    }
+    
+    // dong DAY cua cac ngay (lien nhau: quet khoang, roi rac: tra theo khoa)
+    private int addDayRows(Long doctorId, List<LocalDate> days, ChartBuckets chart) {
+        if (days.isEmpty()) {
+            return 0;
+        }
+        LocalDate from = days.get(0);
+        LocalDate to = days.get(days.size() - 1);
+        List<DoctorStatistics> rows = contiguous(days)
+                ? statisticsRepository.findByDoctorIdAndStatTypeAndStatDateBetweenOrderByStatDateAsc(
+                        doctorId, DoctorStatisticsRecorder.DAY, from, to)
+                : statisticsRepository.findByDoctorIdAndStatTypeAndStatDateIn(
+                        doctorId, DoctorStatisticsRecorder.DAY, days);
+        for (DoctorStatistics row : rows) {
+            chart.add(row.getStatDate(), row);
+        }
+        return rows.size();
+    }
+    
+    // nhom (ngay, status, examinationStatus) tren patient_registrations, bo ngay da tinh tu nguon khac
+    private int addRegistrationCounts(Long doctorId, List<LocalDate> days, ChartBuckets chart) {
+        if (days.isEmpty()) {
+            return 0;
+        }
+        Set<LocalDate> wanted = contiguous(days) ? null : new HashSet<>(days);
+        List<Object[]> rows = patientRegistrationRepository
+                .countByDoctorGroupedByDateAndStatus(doctorId, days.get(0), days.get(days.size() - 1));
+        for (Object[] row : rows) {
+            LocalDate date = (LocalDate) row[0];
+            if (wanted == null || wanted.contains(date)) {
+                chart.add(date, (String) row[1], (String) row[2], ((Number) row[3]).intValue());
             }
-        });
+        }
+        return rows.size();
     }
     
-    return appointments;
-}
+    private static boolean contiguous(List<LocalDate> days) {
+        return ChronoUnit.DAYS.between(days.get(0), days.get(days.size() - 1)) + 1 == days.size();
+    }
     
-    private Map<String, Object> calculateStatisticsFromAppointments(List<PatientRegistration> appointments) {
-        Map<String, Object> stats = new HashMap<>();
-        
-        int total = appointments.size();
-        int completed = (int) appointments.stream()
-                .filter(apt -> "COMPLETED".equals(apt.getStatus()))
-                .count();
-        int cancelled = (int) appointments.stream()
-                .filter(apt -> "CANCELLED".equals(apt.getStatus()))
-                .count();
-        int noShow = (int) appointments.stream()
-                .filter(apt -> "MISSED".equals(apt.getExaminationStatus()))
-                .count();
-        
-        double successRate = total > 0 ? ((double) completed / total) * 100 : 0.0;
-        double failureRate = 100 - successRate;
-        
-        stats.put("totalAppointments", total);
-        stats.put("completedAppointments", completed);
-        stats.put("cancelledAppointments", cancelled);
-        stats.put("noShowAppointments", noShow);
-        stats.put("successRate", Math.round(successRate * 100.0) / 100.0);
-        stats.put("failureRate", Math.round(failureRate * 100.0) / 100.0);
-        
-        // them cac stat khac de debug
-        stats.put("approvedAppointments", (int) appointments.stream()
-                .filter(apt -> "APPROVED".equals(apt.getStatus()))
-                .count());
-        stats.put("pendingAppointments", (int) appointments.stream()
-                .filter(apt -> "PENDING".equals(apt.getStatus()))
-                .count());
-        
-        System.out.println("Tinh toan thong ke: Total=" + total + 
-                          ", Completed=" + completed + 
-                          ", Cancelled=" + cancelled + 
-                          ", NoShow=" + noShow +
-                          ", Success Rate=" + successRate + "%");
-        
-        return stats;
+    // dashboard (tuan / thang) luon theo ngay; khoang tuy chinh cang dai thi diem cang tho
+    private static String granularity(LocalDate startDate, LocalDate endDate, String period) {
+        if (!"CUSTOM".equals(period)) {
+            return DoctorStatisticsRecorder.DAY;
+        }
+        long days = ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        if (days <= DAILY_MAX_DAYS) {
+            return DoctorStatisticsRecorder.DAY;
+        } else if (days <= WEEKLY_MAX_DAYS) {
+            return DoctorStatisticsRollup.WEEK;
+        } else if (days <= MONTHLY_MAX_DAYS) {
+            return DoctorStatisticsRollup.MONTH;
+        }
+        return DoctorStatisticsRollup.YEAR;
     }
     
-    private Map<String, Object> prepareChartData(Long doctorId, LocalDate startDate, LocalDate endDate, String period) {
-        Map<String, Object> chartData = new HashMap<>();
-        List<String> labels = new ArrayList<>();
-        List<Integer> totals = new ArrayList<>();
-        List<Integer> completeds = new ArrayList<>();
-        List<Double> successRates = new ArrayList<>();
-        
-        LocalDate currentDate = startDate;
-        
-        System.out.println("Chuan bi du lieu bieu do cho period: " + period + 
-                          ", tu " + startDate + " den " + endDate);
+    // dong tong hop dung duoc cho 1 diem bieu do (lon truoc); ky khong vuot qua 1 diem
+    private static List<String> rollupLevels(String granularity) {
+        if (DoctorStatisticsRollup.YEAR.equals(granularity)) {
+            return List.of(DoctorStatisticsRollup.YEAR, DoctorStatisticsRollup.MONTH);
+        }
+        return List.of(granularity);
+    }
+    
+    private Map<String, Object> prepareHourlyChartData(Long doctorId, LocalDate date, AppointmentCounts summary) {
+        System.out.println("Chuan bi du lieu bieu do theo gio cho ngay: " + date);
         
-        while (!currentDate.isAfter(endDate)) {
-            // lay appointments cua ngay hien tai
-            List<PatientRegistration> dailyAppointments = patientRegistrationRepository
-                    .findByDoctorAndDateAndSession(doctorId, currentDate, null);
-            
-            int dailyTotal = dailyAppointments.size();
-            int dailyCompleted = (int) dailyAppointments.stream()
-                    .filter(apt -> "COMPLETED".equals(apt.getStatus()))
-                    .count();
-            double dailySuccessRate = dailyTotal > 0 ? ((double) dailyCompleted / dailyTotal) * 100 : 0.0;
-            
-            // format label dua tren period
-            String label;
-            switch (period.toUpperCase()) {
-                case "WEEK":
-                    label = currentDate.getDayOfWeek().toString().substring(0, 3) + 
-                           " " + currentDate.format(DateTimeFormatter.ofPattern("dd/MM"));
-                    break;
-                case "MONTH":
-                    label = String.valueOf(currentDate.getDayOfMonth());
-                    break;
-                case "CUSTOM":
-                    label = currentDate.format(DateTimeFormatter.ofPattern("dd/MM"));
-                    break;
-                default:
-                    label = currentDate.format(DateTimeFormatter.ofPattern("dd/MM"));
+        int[] totals = new int[TIME_SLOTS.length];
+        int[] completeds = new int[TIME_SLOTS.length];
+        List<String> slots = Arrays.asList(TIME_SLOTS);
+        
+        // lich hen ngoai cac khung gio (chua xep gio) van tinh vao tong hop
+        List<Object[]> rows = patientRegistrationRepository
+                .countByDoctorGroupedBySessionAndStatus(doctorId, date);
+        for (Object[] row : rows) {
+            String status = (String) row[1];
+            int count = ((Number) row[3]).intValue();
+            summary.add(status, (String) row[2], count);
+            int slot = slots.indexOf((String) row[0]);
+            if (slot < 0) {
+                continue;
             }
-            
-            labels.add(label);
-            totals.add(dailyTotal);
-            completeds.add(dailyCompleted);
-            successRates.add(Math.round(dailySuccessRate * 100.0) / 100.0);
-            
-            if (dailyTotal > 0) {
-                System.out.println("Ngay " + currentDate + ": " + dailyTotal + " lich hen, " + 
-                                 dailyCompleted + " da hoan thanh (" + dailySuccessRate + "%)");
+            totals[slot] += count;
+            if ("COMPLETED".equals(status)) {
+                completeds[slot] += count;
             }
-            
-            currentDate = currentDate.plusDays(1);
         }
         
-        chartData.put("labels", labels);
-        chartData.put("totals", totals);
-        chartData.put("completeds", completeds);
-        chartData.put("successRates", successRates);
+        System.out.println("Lich hen trong ngay cho bieu do theo gio: " + summary.total);
         
-        System.out.println("Da chuan bi du lieu bieu do: " + labels.size() + " diem du lieu");
+        return chartData(new ArrayList<>(slots), totals, completeds);
+    }
+    
+    // format label dua tren period / do tho cua diem
+    private static String label(LocalDate date, String period, String granularity) {
+        if (DoctorStatisticsRollup.WEEK.equals(granularity)) {
+            return date.format(DAY_MONTH);
+        } else if (DoctorStatisticsRollup.MONTH.equals(granularity)) {
+            return date.format(MONTH_YEAR);
+        } else if (DoctorStatisticsRollup.YEAR.equals(granularity)) {
+            return String.valueOf(date.getYear());
+        }
+        switch (period.toUpperCase()) {
+            case "WEEK":
+                return date.getDayOfWeek().toString().substring(0, 3) + " " + date.format(DAY_MONTH);
+            case "MONTH":
+                return String.valueOf(date.getDayOfMonth());
+            default:
+                return date.format(DAY_MONTH);
+        }
+    }
+    
+    private static Map<String, Object> chartData(List<String> labels, int[] totals, int[] completeds) {
+        List<Integer> totalList = new ArrayList<>(totals.length);
+        List<Integer> completedList = new ArrayList<>(totals.length);
+        List<Double> successRates = new ArrayList<>(totals.length);
+        for (int i = 0; i < totals.length; i++) {
+            totalList.add(totals[i]);
+            completedList.add(completeds[i]);
+            successRates.add(AppointmentCounts.rate(completeds[i], totals[i]));
+        }
         
+        Map<String, Object> chartData = new HashMap<>();
+        chartData.put("labels", labels);
+        chartData.put("totals", totalList);
+        chartData.put("completeds", completedList);
+        chartData.put("successRates", successRates);
         return chartData;
     }
     
-    private Map<String, Object> prepareHourlyChartData(Long doctorId, LocalDate date) {
-        Map<String, Object> chartData = new HashMap<>();
-        List<String> labels = new ArrayList<>();
-        List<Integer> totals = new ArrayList<>();
-        List<Integer> completeds = new ArrayList<>();
-        List<Double> successRates = new ArrayList<>();
-        
-        System.out.println("Chuan bi du lieu bieu do theo gio cho ngay: " + date);
+    // diem bieu do theo do tho: tong / hoan thanh cua moi diem, cong vao tong hop chung
+    private static final class ChartBuckets {
+        private final LocalDate startDate;
+        private final LocalDate firstBucket;
+        private final String granularity;
+        private final AppointmentCounts summary;
+        private final int[] totals;
+        private final int[] completeds;
+        
+        ChartBuckets(LocalDate startDate, LocalDate endDate, String granularity, AppointmentCounts summary) {
+            this.startDate = startDate;
+            this.firstBucket = DoctorStatisticsRollup.periodStart(startDate, granularity);
+            this.granularity = granularity;
+            this.summary = summary;
+            int size = index(endDate) + 1;
+            this.totals = new int[size];
+            this.completeds = new int[size];
+        }
         
-        // danh sach cac khung gio trong ngay
-        String[] timeSlots = {
-            "07:00-08:00", "08:00-09:00", "09:00-10:00", "10:00-11:00", 
-            "11:00-12:00", "13:00-14:00", "14:00-15:00", "15:00-16:00", "16:00-17:00"
-        };
+        int size() {
+            return totals.length;
+        }
         
-        // lay tat ca appointments cua ngay
-        List<PatientRegistration> dailyAppointments = patientRegistrationRepository
-                .findByDoctorAndDateAndSession(doctorId, date, null);
+        private int index(LocalDate date) {
+            return (int) DoctorStatisticsRollup.unitOf(granularity)
+                    .between(firstBucket, DoctorStatisticsRollup.periodStart(date, granularity));
+        }
         
-        System.out.println("Lich hen trong ngay cho bieu do theo gio: " + dailyAppointments.size());
+        void add(LocalDate date, DoctorStatistics row) {
+            int index = index(date);
+            summary.add(row);
+            totals[index] += row.getTotalAppointments();
+            completeds[index] += row.getCompletedAppointments();
+        }
         
-        for (String timeSlot : timeSlots) {
-            // loc appointments theo khung gio
-            List<PatientRegistration> slotAppointments = dailyAppointments.stream()
-                    .filter(apt -> timeSlot.equals(apt.getAssignedSession()))
-                    .collect(Collectors.toList());
-            
-            int slotTotal = slotAppointments.size();
-            int slotCompleted = (int) slotAppointments.stream()
-                    .filter(apt -> "COMPLETED".equals(apt.getStatus()))
-                    .count();
-            double slotSuccessRate = slotTotal > 0 ? ((double) slotCompleted / slotTotal) * 100 : 0.0;
-            
-            labels.add(timeSlot);
-            totals.add(slotTotal);
-            completeds.add(slotCompleted);
-            successRates.add(Math.round(slotSuccessRate * 100.0) / 100.0);
-            
-            if (slotTotal > 0) {
-                System.out.println("Khung gio " + timeSlot + ": " + slotTotal + " lich hen, " + 
-                                 slotCompleted + " da hoan thanh");
+        void add(LocalDate date, String status, String examinationStatus, int count) {
+            int index = index(date);
+            summary.add(status, examinationStatus, count);
+            totals[index] += count;
+            if ("COMPLETED".equals(status)) {
+                completeds[index] += count;
             }
         }
         
-        chartData.put("labels", labels);
-        chartData.put("totals", totals);
-        chartData.put("completeds", completeds);
-        chartData.put("successRates", successRates);
-        
-        System.out.println("Da chuan bi du lieu bieu do theo gio");
-        
-        return chartData;
+        // diem dau bat dau tu ngay dau khoang (ky co the bat dau truoc do)
+        List<String> labels(String period) {
+            List<String> labels = new ArrayList<>(totals.length);
+            LocalDate bucketStart = firstBucket;
+            for (int index = 0; index < totals.length; index++) {
+                labels.add(label(bucketStart.isBefore(startDate) ? startDate : bucketStart, period, granularity));
+                bucketStart = DoctorStatisticsRollup.periodEnd(bucketStart, granularity).plusDays(1);
+            }
+            return labels;
+        }
     }
-}
\ No newline at end of file
+}
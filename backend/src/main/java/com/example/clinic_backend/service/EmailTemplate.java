@@ -0,0 +1,206 @@
+package com.example.clinic_backend.service;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Template HTML cho email, bien dich 1 lan thanh danh sach doan tinh + vi tri bien.
+// Cu phap: {{ten}} (bien, escape HTML), {{#ten}}...{{/ten}} (chi hien khi bien khac rong),
+// {{>file}} (chen file khac luc bien dich - css, footer dung chung).
+// Doan tinh lien tiep (css, header, footer) duoc gop san; render chi noi chuoi vao buffer dung lai theo thread.
+final class EmailTemplate {
+
+    static final String LOCATION = "email-templates/";
+
+    // buffer dung lai theo thread (ReminderEngine gui tu nhieu worker)
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFERS = ThreadLocal.withInitial(() -> new StringBuilder(8192));
+
+    private final String name;
+    private final Node[] nodes;
+    private final int variableCount;
+
+    private EmailTemplate(String name, Node[] nodes, int variableCount) {
+        this.name = name;
+        this.nodes = nodes;
+        this.variableCount = variableCount;
+    }
+
+    // doc template tu classpath (email-templates/{name}.html); gia tri render theo dung thu tu variables
+    static EmailTemplate load(String name, String... variables) {
+        return compile(name, read(name + ".html"), EmailTemplate::read, variables);
+    }
+
+    static EmailTemplate compile(String name, String source, Function<String, String> partials, String... variables) {
+        String expanded = expandPartials(source, partials, 0);
+        // bo thut dau dong va xuong dong giua cac the
+        String compact = expanded.lines().map(String::strip).collect(Collectors.joining());
+        Parser parser = new Parser(name, compact, Arrays.asList(variables));
+        Node[] nodes = parser.parse(null);
+        return new EmailTemplate(name, nodes, variables.length);
+    }
+
+    String render(String... values) {
+        if (values.length != variableCount) {
+            throw new IllegalArgumentException("Template " + name + " cần " + variableCount + " giá trị, nhận " + values.length);
+        }
+        StringBuilder buffer = BUFFERS.get();
+        buffer.setLength(0);
+        render(nodes, values, buffer);
+        String html = buffer.toString();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            BUFFERS.remove();
+        }
+        return html;
+    }
+
+    private static void render(Node[] nodes, String[] values, StringBuilder out) {
+        for (Node node : nodes) {
+            if (node.text != null) {
+                out.append(node.text);
+            } else if (node.children == null) {
+                escape(values[node.variable], out);
+            } else if (values[node.variable] != null && !values[node.variable].isEmpty()) {
+                render(node.children, values, out);
+            }
+        }
+    }
+
+    private static void escape(String value, StringBuilder out) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> out.append("&amp;");
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    private static String expandPartials(String source, Function<String, String> partials, int depth) {
+        if (depth > 5) {
+            throw new IllegalStateException("Template chèn lồng quá sâu");
+        }
+        StringBuilder out = new StringBuilder(source.length());
+        int from = 0;
+        int start;
+        while ((start = source.indexOf("{{>", from)) >= 0) {
+            int end = source.indexOf("}}", start);
+            if (end < 0) {
+                throw new IllegalStateException("Thiếu }} sau {{> tại vị trí " + start);
+            }
+            out.append(source, from, start);
+            out.append(expandPartials(partials.apply(source.substring(start + 3, end).trim()), partials, depth + 1));
+            from = end + 2;
+        }
+        return out.append(source, from, source.length()).toString();
+    }
+
+    private static String read(String file) {
+        try {
+            return StreamUtils.copyToString(new ClassPathResource(LOCATION + file).getInputStream(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Không đọc được template email " + file, e);
+        }
+    }
+
+    // doan tinh (text), bien (variable) hoac section (variable + children)
+    private static final class Node {
+        private final String text;
+        private final int variable;
+        private final Node[] children;
+
+        private Node(String text, int variable, Node[] children) {
+            this.text = text;
+            this.variable = variable;
+            this.children = children;
+        }
+    }
+
+    private static final class Parser {
+        private final String name;
+        private final String source;
+        private final List<String> variables;
+        private int position;
+
+        private Parser(String name, String source, List<String> variables) {
+            this.name = name;
+            this.source = source;
+            this.variables = variables;
+        }
+
+        // doc den het chuoi hoac den {{/section}}
+        private Node[] parse(String section) {
+            List<Node> nodes = new ArrayList<>();
+            StringBuilder text = new StringBuilder();
+            while (position < source.length()) {
+                int start = source.indexOf("{{", position);
+                if (start < 0) {
+                    text.append(source, position, source.length());
+                    position = source.length();
+                    break;
+                }
+                int end = source.indexOf("}}", start);
+                if (end < 0) {
+                    throw error("thiếu }}", start);
+                }
+                text.append(source, position, start);
+                position = end + 2;
+
+                String tag = source.substring(start + 2, end).trim();
+                if (tag.startsWith("/")) {
+                    if (!tag.substring(1).equals(section)) {
+                        throw error("đóng section không khớp " + tag, start);
+                    }
+                    flush(text, nodes);
+                    return nodes.toArray(new Node[0]);
+                }
+
+                flush(text, nodes);
+                if (tag.startsWith("#")) {
+                    String variable = tag.substring(1);
+                    nodes.add(new Node(null, indexOf(variable, start), parse(variable)));
+                } else {
+                    nodes.add(new Node(null, indexOf(tag, start), null));
+                }
+            }
+            if (section != null) {
+                throw error("thiếu {{/" + section + "}}", position);
+            }
+            flush(text, nodes);
+            return nodes.toArray(new Node[0]);
+        }
+
+        private void flush(StringBuilder text, List<Node> nodes) {
+            if (text.length() > 0) {
+                nodes.add(new Node(text.toString(), -1, null));
+                text.setLength(0);
+            }
+        }
+
+        private int indexOf(String variable, int at) {
+            int index = variables.indexOf(variable);
+            if (index < 0) {
+                throw error("biến không khai báo " + variable, at);
+            }
+            return index;
+        }
+
+        private IllegalStateException error(String message, int at) {
+            return new IllegalStateException("Template " + name + ": " + message + " (vị trí " + at + ")");
+        }
+    }
+}
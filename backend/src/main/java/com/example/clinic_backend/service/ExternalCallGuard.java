@@ -0,0 +1,280 @@
+package com.example.clinic_backend.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Cach ly cac dich vu ben ngoai (SMTP, ...): moi dich vu 1 bulkhead rieng gom
+// - pool thread + hang doi co gioi han: day thi tu choi ngay, khong giu thread goi
+// - timeout moi lan goi
+// - circuit breaker: loi lien tiep qua nguong thi mo (tu choi ngay), het thoi gian mo thi cho 1 lan thu (half-open)
+// Cau hinh theo ten: app.external.{ten}.threads / queue / timeout-ms / failure-threshold / open-ms
+@Service
+public class ExternalCallGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExternalCallGuard.class);
+
+    public static final String SMTP = "smtp";
+
+    private final Environment environment;
+    private final ConcurrentHashMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    public ExternalCallGuard(Environment environment) {
+        this.environment = environment;
+    }
+
+    @PreDestroy
+    public void stop() {
+        bulkheads.values().forEach(Bulkhead::shutdown);
+    }
+
+    // goi tren pool rieng cua dich vu, cho toi da timeout
+    public <T> T call(String dependency, Callable<T> task) {
+        return bulkhead(dependency).call(task);
+    }
+
+    // goi tren thread hien tai (da nam trong pool co gioi han rieng), chi qua circuit breaker
+    public <T> T callInline(String dependency, Callable<T> task) {
+        return bulkhead(dependency).callInline(task);
+    }
+
+    // breaker dang dong hoac den luc thu lai: dung de hoan viec truoc khi goi
+    public boolean isCallPermitted(String dependency) {
+        return bulkhead(dependency).isCallPermitted();
+    }
+
+    // loi do guard tu choi (breaker mo, pool day), dich vu chua he duoc goi
+    public static boolean isRejected(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof RejectedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        bulkheads.forEach((name, bulkhead) -> stats.put(name, bulkhead.getStats()));
+        return stats;
+    }
+
+    private Bulkhead bulkhead(String dependency) {
+        return bulkheads.computeIfAbsent(dependency, name -> {
+            String prefix = "app.external." + name + ".";
+            Bulkhead bulkhead = new Bulkhead(name,
+                environment.getProperty(prefix + "threads", Integer.class, 4),
+                environment.getProperty(prefix + "queue", Integer.class, 20),
+                environment.getProperty(prefix + "timeout-ms", Long.class, 10000L),
+                environment.getProperty(prefix + "failure-threshold", Integer.class, 5),
+                environment.getProperty(prefix + "open-ms", Long.class, 30000L),
+                System::currentTimeMillis);
+            logger.info("Bulkhead {}: {}", name, bulkhead.getStats());
+            return bulkhead;
+        });
+    }
+
+    public static class RejectedException extends RuntimeException {
+        public RejectedException(String message) {
+            super(message);
+        }
+    }
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    static final class Bulkhead {
+        private final String name;
+        private final ThreadPoolExecutor executor;
+        private final int threads;
+        private final int queueCapacity;
+        private final long timeoutMs;
+        private final int failureThreshold;
+        private final long openMs;
+        private final LongSupplier clock;
+
+        // trang thai breaker (doi trong synchronized)
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean probeInFlight;
+
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong successes = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong shortCircuited = new AtomicLong();
+        private final AtomicLong totalLatencyMs = new AtomicLong();
+
+        Bulkhead(String name, int threads, int queueCapacity, long timeoutMs,
+                 int failureThreshold, long openMs, LongSupplier clock) {
+            this.name = name;
+            this.threads = Math.max(1, threads);
+            this.queueCapacity = Math.max(1, queueCapacity);
+            this.timeoutMs = Math.max(1, timeoutMs);
+            this.failureThreshold = Math.max(1, failureThreshold);
+            this.openMs = Math.max(1, openMs);
+            this.clock = clock;
+            AtomicInteger counter = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "external-" + name + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        }
+
+        <T> T call(Callable<T> task) {
+            boolean probe = acquirePermission();
+            long start = clock.getAsLong();
+            Future<T> future;
+            try {
+                future = executor.submit(task);
+            } catch (RejectedExecutionException e) {
+                releaseProbe(probe);
+                rejected.incrementAndGet();
+                throw new RejectedException("Dịch vụ " + name + " quá tải (" + threads + " luồng, "
+                    + queueCapacity + " chờ)");
+            }
+
+            try {
+                T result = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+                onSuccess(start);
+                return result;
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                timeouts.incrementAndGet();
+                onFailure(start);
+                throw new RuntimeException("Dịch vụ " + name + " không phản hồi sau " + timeoutMs + " ms");
+            } catch (ExecutionException e) {
+                onFailure(start);
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause
+                    : new RuntimeException(cause.getMessage(), cause);
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                releaseProbe(probe);
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Bị ngắt khi chờ dịch vụ " + name);
+            }
+        }
+
+        <T> T callInline(Callable<T> task) {
+            acquirePermission();
+            long start = clock.getAsLong();
+            try {
+                T result = task.call();
+                onSuccess(start);
+                return result;
+            } catch (RuntimeException e) {
+                onFailure(start);
+                throw e;
+            } catch (Exception e) {
+                onFailure(start);
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
+
+        synchronized boolean isCallPermitted() {
+            if (state == State.OPEN && clock.getAsLong() - openedAt >= openMs) {
+                return true;
+            }
+            return state == State.CLOSED || (state == State.HALF_OPEN && !probeInFlight);
+        }
+
+        // tra ve true neu lan goi nay la lan thu (half-open)
+        private synchronized boolean acquirePermission() {
+            calls.incrementAndGet();
+            if (state == State.OPEN && clock.getAsLong() - openedAt >= openMs) {
+                state = State.HALF_OPEN;
+                probeInFlight = false;
+            }
+            if (state == State.CLOSED) {
+                return false;
+            }
+            if (state == State.HALF_OPEN && !probeInFlight) {
+                probeInFlight = true;
+                return true;
+            }
+            shortCircuited.incrementAndGet();
+            throw new RejectedException("Dịch vụ " + name + " tạm ngưng do lỗi liên tiếp");
+        }
+
+        private synchronized void releaseProbe(boolean probe) {
+            if (probe) {
+                probeInFlight = false;
+            }
+        }
+
+        private synchronized void onSuccess(long start) {
+            successes.incrementAndGet();
+            totalLatencyMs.addAndGet(clock.getAsLong() - start);
+            consecutiveFailures = 0;
+            if (state != State.CLOSED) {
+                logger.info("Dịch vụ {} hoạt động lại, đóng circuit breaker", name);
+            }
+            state = State.CLOSED;
+            probeInFlight = false;
+        }
+
+        private synchronized void onFailure(long start) {
+            failures.incrementAndGet();
+            totalLatencyMs.addAndGet(clock.getAsLong() - start);
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                if (state != State.OPEN) {
+                    logger.warn("Dịch vụ {} lỗi {} lần liên tiếp, mở circuit breaker {} ms", name, consecutiveFailures, openMs);
+                }
+                state = State.OPEN;
+                openedAt = clock.getAsLong();
+                probeInFlight = false;
+            }
+        }
+
+        synchronized State state() {
+            return state;
+        }
+
+        synchronized Map<String, Object> getStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("state", state.name());
+            stats.put("threads", threads);
+            stats.put("queueCapacity", queueCapacity);
+            stats.put("timeoutMs", timeoutMs);
+            stats.put("active", executor.getActiveCount());
+            stats.put("queued", executor.getQueue().size());
+            stats.put("calls", calls.get());
+            stats.put("successes", successes.get());
+            stats.put("failures", failures.get());
+            stats.put("timeouts", timeouts.get());
+            stats.put("rejected", rejected.get());
+            stats.put("shortCircuited", shortCircuited.get());
+            long completed = successes.get() + failures.get();
+            stats.put("avgLatencyMs", completed > 0 ? totalLatencyMs.get() / completed : 0);
+            return stats;
+        }
+
+        void shutdown() {
+            executor.shutdownNow();
+        }
+    }
+}
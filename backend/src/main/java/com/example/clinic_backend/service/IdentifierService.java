@@ -0,0 +1,242 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.repository.IdSequenceRepository;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+
+// Cap cac ma hien thi (ma phieu, ma benh nhan, ma giao dich, ma hoa don) theo kieu Hi/Lo.
+// Moi node giu truoc mot khoi so tu bang id_sequences (1 UPDATE theo khoa chinh),
+// sau do cap tung so trong bo nho. Khoi cua cac node khong giao nhau nen khong trung ma.
+// Khoi moi luon duoc lay ngoai khoa JVM (khong luong nao giu connection de cho transaction khac);
+// khoi dung qua nua thi lay truoc khoi ke tiep o luong nen nen luong goi hiem khi phai cho.
+// Luong goi dang trong transaction (vd. dat lich) khong tu lay khoi: no da giu 1 ket noi, lay them
+// ket noi cho transaction rieng se can pool; thay vao do cho luong nen lay (1 ket noi cho ca node).
+@Service
+public class IdentifierService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdentifierService.class);
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("ddMMyy");
+    private static final DateTimeFormatter YEAR = DateTimeFormatter.ofPattern("yy");
+    private static final DateTimeFormatter TXN_DAY = DateTimeFormatter.ofPattern("yyMMdd");
+    private static final DateTimeFormatter INVOICE_DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+    // cho luong nen lay khoi toi da (ngan hon connection-timeout: luong goi bo cuoc, tra ket noi cho pool)
+    private static final long BLOCK_WAIT_SECONDS = 10;
+
+    private final IdSequenceRepository sequenceRepository;
+    private final PatientRegistrationRepository registrationRepository;
+    private final TransactionTemplate blockTransaction;
+    private final int blockSize;
+
+    // khoi dang dung theo loai ma (REG, PAT, TXN, INV)
+    private final ConcurrentHashMap<String, Block> blocks = new ConcurrentHashMap<>();
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(r -> new Thread(r, "id-block-prefetch"));
+
+    public IdentifierService(IdSequenceRepository sequenceRepository,
+                             PatientRegistrationRepository registrationRepository,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${app.id-sequence.block-size:50}") int blockSize) {
+        this.sequenceRepository = sequenceRepository;
+        this.registrationRepository = registrationRepository;
+        // lay khoi trong transaction rieng de nha khoa dong ngay, khong phu thuoc transaction goi
+        this.blockTransaction = new TransactionTemplate(transactionManager);
+        this.blockTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        prefetcher.shutdown();
+        prefetcher.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    // ma phieu: U + ddMMyy + so trong ngay
+    public String nextRegistrationNumber() {
+        LocalDate today = LocalDate.now();
+        String day = today.format(DAY);
+        // ngay moi: bat dau sau so phieu da tao trong ngay (du lieu cu)
+        LocalDateTime startOfDay = today.atStartOfDay();
+        long value = nextValue("REG", "REG-" + day,
+            () -> safe(registrationRepository.countCreatedBetween(startOfDay, startOfDay.plusDays(1))));
+        return "U" + day + String.format("%04d", value);
+    }
+
+    // ma benh nhan: N + yy + - + so trong nam
+    public String nextPatientCode() {
+        LocalDate today = LocalDate.now();
+        String year = today.format(YEAR);
+        LocalDateTime startOfYear = today.withDayOfYear(1).atStartOfDay();
+        long value = nextValue("PAT", "PAT-" + year,
+            () -> safe(registrationRepository.countCreatedBetween(startOfYear, startOfYear.plusYears(1))));
+        return "N" + year + "-" + String.format("%06d", value);
+    }
+
+    // ma giao dich: yyMMdd + so trong ngay
+    public String nextTransactionNumber() {
+        String day = LocalDate.now().format(TXN_DAY);
+        long value = nextValue("TXN", "TXN-" + day, () -> 0L);
+        return day + String.format("%07d", value);
+    }
+
+    // ma hoa don: INV + yyyyMMdd + so trong ngay
+    public String nextInvoiceNumber() {
+        String day = LocalDate.now().format(INVOICE_DAY);
+        long value = nextValue("INV", "INV-" + day, () -> 0L);
+        return "INV" + day + String.format("%06d", value);
+    }
+
+    // cap so tiep theo cua sequence; het khoi thi lay khoi moi tu database (ngoai khoa)
+    long nextValue(String kind, String sequenceName, LongSupplier seed) {
+        Block block = blocks.computeIfAbsent(kind, k -> new Block());
+        boolean inTransaction = TransactionSynchronizationManager.isActualTransactionActive();
+        while (true) {
+            Future<?> pending = null;
+            synchronized (block) {
+                if (!sequenceName.equals(block.sequenceName)) {
+                    // sequence moi (vd. sang ngay moi): bo khoi cu va khoi du phong
+                    block.sequenceName = sequenceName;
+                    block.next = 1;
+                    block.last = 0;
+                    block.spares.clear();
+                }
+                if (block.next > block.last && !block.spares.isEmpty()) {
+                    block.install(block.spares.poll(), blockSize);
+                }
+                if (block.next <= block.last) {
+                    long value = block.next++;
+                    if (block.last - value < blockSize / 2 && block.spares.isEmpty() && !block.prefetching) {
+                        prefetch(block, sequenceName, seed);
+                    }
+                    return value;
+                }
+                if (inTransaction) {
+                    // het khoi trong transaction cua nguoi goi: cho khoi cua luong nen
+                    if (!block.prefetching) {
+                        prefetch(block, sequenceName, seed);
+                    }
+                    pending = block.prefetch;
+                    if (pending == null) {
+                        throw new RuntimeException("Khong the cap khoi so cho sequence " + sequenceName);
+                    }
+                }
+            }
+            if (pending != null) {
+                await(pending, sequenceName);
+            } else {
+                // ngoai transaction: tu lay, nhieu luong cung lay thi cac khoi them thanh du phong
+                offer(block, sequenceName, reserveBlock(sequenceName, seed));
+            }
+        }
+    }
+
+    // lay truoc khoi ke tiep o luong nen (goi khi dang giu khoa block)
+    private void prefetch(Block block, String sequenceName, LongSupplier seed) {
+        block.prefetching = true;
+        try {
+            block.prefetch = prefetcher.submit(() -> {
+                try {
+                    offer(block, sequenceName, reserveBlock(sequenceName, seed));
+                } catch (RuntimeException e) {
+                    logger.warn("Lỗi lấy trước khối số {}: {}", sequenceName, e.getMessage());
+                    throw e;
+                } finally {
+                    synchronized (block) {
+                        block.prefetching = false;
+                        block.prefetch = null;
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            block.prefetching = false;
+            block.prefetch = null;
+        }
+    }
+
+    // cho luong nen lay xong khoi; loi / qua lau thi nem de transaction goi rollback
+    private static void await(Future<?> pending, String sequenceName) {
+        try {
+            pending.get(BLOCK_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Bi ngat khi cho khoi so cho sequence " + sequenceName, e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new RuntimeException("Khong the cap khoi so cho sequence " + sequenceName, e);
+        }
+    }
+
+    // dua khoi vua lay vao dung: thay khoi da het, hoac giu lam du phong; khoi cua sequence cu thi bo
+    private void offer(Block block, String sequenceName, long high) {
+        synchronized (block) {
+            if (!sequenceName.equals(block.sequenceName)) {
+                return;
+            }
+            if (block.next > block.last) {
+                block.install(high, blockSize);
+            } else {
+                block.spares.add(high);
+            }
+        }
+    }
+
+    // cong next_value them 1 khoi, tra ve so cuoi cua khoi vua giu
+    private long reserveBlock(String sequenceName, LongSupplier seed) {
+        Long high = blockTransaction.execute(status -> {
+            int updated = sequenceRepository.advance(sequenceName, blockSize);
+            if (updated == 0) {
+                // sequence moi: khoi tao tu du lieu cu (chi chay 1 lan cho moi sequence)
+                sequenceRepository.insertIfAbsent(sequenceName, seed.getAsLong());
+                updated = sequenceRepository.advance(sequenceName, blockSize);
+            }
+            if (updated == 0) {
+                throw new RuntimeException("Khong the cap khoi so cho sequence " + sequenceName);
+            }
+            return sequenceRepository.findNextValue(sequenceName)
+                .orElseThrow(() -> new RuntimeException("Khong tim thay sequence " + sequenceName));
+        });
+
+        logger.debug("Giu khoi so {}: {}..{}", sequenceName, high - blockSize + 1, high);
+        return high;
+    }
+
+    private static long safe(Long count) {
+        return count != null ? count : 0L;
+    }
+
+    private static final class Block {
+        private String sequenceName;
+        private long next = 1;
+        private long last = 0;
+        // so cuoi cua cac khoi du phong da giu, dung theo thu tu
+        private final ArrayDeque<Long> spares = new ArrayDeque<>();
+        private boolean prefetching;
+        // lan lay truoc dang chay (luong goi trong transaction cho tren no)
+        private Future<?> prefetch;
+
+        private void install(long high, int blockSize) {
+            next = high - blockSize + 1;
+            last = high;
+        }
+    }
+}
@@ -5,13 +5,16 @@ import com.example.clinic_backend.model.PatientRegistration;
 import com.example.clinic_backend.repository.InvoiceRepository;
 import com.example.clinic_backend.repository.PatientRegistrationRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -23,11 +26,19 @@ public class InvoiceService {
     @Autowired
     private PatientRegistrationRepository patientRegistrationRepository;
     
-    // Tạo số hóa đơn tự động: INV + YYYYMMDD + 6 số ngẫu nhiên
+    @Autowired
+    private IdentifierService identifierService;
+    
+    @Autowired
+    private InvoiceStatisticsService invoiceStatisticsService;
+    
+    // kich thuoc trang danh sach hoa don (keyset)
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    
+    // Tạo số hóa đơn tự động: INV + YYYYMMDD + số thứ tự trong ngày
     private String generateInvoiceNumber() {
-        String datePart = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        String randomPart = String.format("%06d", (int)(Math.random() * 1000000));
-        return "INV" + datePart + randomPart;
+        return identifierService.nextInvoiceNumber();
     }
     
     @Transactional
@@ -251,6 +262,8 @@ public class InvoiceService {
                 invoice.setPaymentDate(LocalDateTime.now());
             }
             
+            // ky da dong chua hoa don nay trong cache thong ke phai tinh lai
+            invoiceStatisticsService.invoiceChanged(invoice.getInvoiceDate());
             return invoiceRepository.save(invoice);
         }
         return null;
@@ -259,39 +272,57 @@ public class InvoiceService {
     // Xóa hóa đơn
     @Transactional
     public void deleteInvoice(Long id) {
-        invoiceRepository.deleteById(id);
+        invoiceRepository.findById(id).ifPresent(invoice -> {
+            invoiceRepository.delete(invoice);
+            invoiceStatisticsService.invoiceChanged(invoice.getInvoiceDate());
+        });
     }
     
-    // Tìm kiếm hóa đơn (đơn giản hóa)
+    // Tìm kiếm hóa đơn theo từ khóa (số hóa đơn, mã giao dịch, tên, email, số điện thoại) và trạng thái
     public List<Invoice> searchInvoices(String keyword, String status) {
-        try {
-            if (status != null && !status.isEmpty()) {
-                return getInvoicesByStatus(status);
-            } 
-            
-            if (keyword != null && !keyword.trim().isEmpty()) {
-                // Tìm kiếm đơn giản - trước mắt trả về tất cả
-                // Có thể implement tìm kiếm nâng cao sau
-                return getAllInvoices();
-            } 
-            
-            return getAllInvoices();
-            
-        } catch (Exception e) {
-            System.out.println("Lỗi khi tìm kiếm hóa đơn: " + e.getMessage());
-            return getAllInvoices();
+        String normalizedStatus = status != null && !status.isEmpty() ? status : null;
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return normalizedStatus != null ? getInvoicesByStatus(normalizedStatus) : getAllInvoices();
         }
+        return invoiceRepository.search(keyword.trim(), normalizedStatus);
     }
     
-    // Lấy hóa đơn theo khoảng thời gian
+    // Lấy hóa đơn theo khoảng thời gian (tính cả 2 đầu)
     public List<Invoice> getInvoicesByDateRange(LocalDateTime fromDate, LocalDateTime toDate) {
-        try {
-            // Tạm thời trả về tất cả
-            // Có thể implement query theo ngày sau
-            return getAllInvoices();
-        } catch (Exception e) {
-            System.out.println("Lỗi khi lấy hóa đơn theo ngày: " + e.getMessage());
-            return getAllInvoices();
+        return invoiceRepository.findByInvoiceDateBetweenOrderByInvoiceDateDesc(fromDate, toDate);
+    }
+    
+    // Trang hóa đơn trong [fromDate, toDate] mới nhất trước, theo keyset: trang đầu không có con trỏ,
+    // trang sau truyền lại nextCursor (invoiceDate, id) của trang trước
+    public Map<String, Object> getInvoicePage(LocalDate fromDate, LocalDate toDate, String status, String paymentMethod,
+                                              LocalDateTime beforeDate, Long beforeId, Integer size) {
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        LocalDateTime from = (fromDate != null ? fromDate : LocalDate.of(1970, 1, 1)).atStartOfDay();
+        LocalDateTime to = (toDate != null ? toDate : LocalDate.now()).plusDays(1).atStartOfDay();
+        // trang dau: con tro dung sau moi hoa don trong khoang
+        LocalDateTime cursorDate = beforeDate != null && beforeId != null ? beforeDate : to;
+        Long cursorId = beforeDate != null && beforeId != null ? beforeId : Long.MAX_VALUE;
+        
+        // doc them 1 dong de biet con trang sau
+        List<Invoice> rows = invoiceRepository.findPageBefore(from, to, cursorDate, cursorId,
+                status != null && !status.isEmpty() ? status : null,
+                paymentMethod != null && !paymentMethod.isEmpty() ? paymentMethod : null,
+                PageRequest.of(0, pageSize + 1));
+        boolean hasMore = rows.size() > pageSize;
+        List<Invoice> invoices = hasMore ? rows.subList(0, pageSize) : rows;
+        
+        Map<String, Object> page = new HashMap<>();
+        page.put("success", true);
+        page.put("invoices", invoices);
+        page.put("count", invoices.size());
+        page.put("hasMore", hasMore);
+        if (hasMore) {
+            Invoice last = invoices.get(invoices.size() - 1);
+            Map<String, Object> nextCursor = new HashMap<>();
+            nextCursor.put("beforeDate", last.getInvoiceDate().toString());
+            nextCursor.put("beforeId", last.getId());
+            page.put("nextCursor", nextCursor);
         }
+        return page;
     }
 }
\ No newline at end of file
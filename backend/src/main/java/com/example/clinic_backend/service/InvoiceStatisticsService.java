@@ -0,0 +1,340 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.repository.InvoiceRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Thong ke hoa don cho dashboard tai chinh (GET /api/invoices/statistics) thay cho tai toan bo hoa don:
+// - gop trong database theo ky (DAY / WEEK tu thu 2 / MONTH) x trang thai x phuong thuc thanh toan,
+//   quet khoang invoice_date tren idx_invoice_stats
+// - ky da dong (ket thuc truoc hom nay, nam tron trong khoang hoi) giu ket qua trong bo nho; lan sau chi hoi database
+//   cac ky con mo / bi cat, cac ky lien nhau gop thanh 1 query
+// - InvoiceService bao hoa don bi sua / xoa: bo cac ky chua hoa don do sau commit
+// Moi node mot cache; sua tu node khac thay sau app.invoice-stats.closed-period-ttl-ms.
+@Service
+public class InvoiceStatisticsService {
+
+    static final String DAY = DoctorStatisticsRecorder.DAY;
+    static final String WEEK = DoctorStatisticsRollup.WEEK;
+    static final String MONTH = DoctorStatisticsRollup.MONTH;
+    static final List<String> LEVELS = List.of(DAY, WEEK, MONTH);
+
+    private static final String PAID = "PAID";
+    private static final String UNKNOWN = "UNKNOWN";
+    private static final DateTimeFormatter DAY_MONTH = DateTimeFormatter.ofPattern("dd/MM");
+    private static final DateTimeFormatter MONTH_YEAR = DateTimeFormatter.ofPattern("MM/yyyy");
+
+    private final InvoiceRepository invoiceRepository;
+    private final long closedPeriodTtlMillis;
+
+    private final Map<PeriodKey, CachedPeriod> closedPeriods = new ConcurrentHashMap<>();
+    // tang moi lan bo cache; ket qua query bat dau truoc lan bo thi khong dua vao cache
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong databaseQueries = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile long lastQueryMillis;
+
+    public InvoiceStatisticsService(InvoiceRepository invoiceRepository,
+                                    @Value("${app.invoice-stats.closed-period-ttl-ms:21600000}") long closedPeriodTtlMillis) {
+        this.invoiceRepository = invoiceRepository;
+        this.closedPeriodTtlMillis = Math.max(0, closedPeriodTtlMillis);
+    }
+
+    // ========== THONG KE ==========
+
+    // granularity null = tu chon theo do dai khoang
+    public Map<String, Object> statistics(LocalDate from, LocalDate to, String granularity) {
+        return statistics(from, to, granularity, LocalDate.now());
+    }
+
+    Map<String, Object> statistics(LocalDate from, LocalDate to, String granularity, LocalDate today) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("Ngày bắt đầu phải trước ngày kết thúc");
+        }
+        String level = granularity != null ? granularity.toUpperCase() : granularityOf(from, to);
+        if (!LEVELS.contains(level)) {
+            throw new IllegalArgumentException("Đơn vị thống kê không hợp lệ: " + granularity);
+        }
+        long started = System.nanoTime();
+
+        List<LocalDate> starts = new ArrayList<>();
+        for (LocalDate start = DoctorStatisticsRollup.periodStart(from, level); !start.isAfter(to);
+             start = DoctorStatisticsRollup.periodEnd(start, level).plusDays(1)) {
+            starts.add(start);
+        }
+        PeriodTotals[] totals = new PeriodTotals[starts.size()];
+        long now = System.currentTimeMillis();
+        int cached = 0;
+        for (int i = 0; i < totals.length; i++) {
+            if (cacheable(starts.get(i), level, from, to, today)) {
+                CachedPeriod hit = closedPeriods.get(new PeriodKey(level, starts.get(i)));
+                if (hit != null && now - hit.cachedAt < closedPeriodTtlMillis) {
+                    totals[i] = hit.totals;
+                    cached++;
+                }
+            }
+        }
+        cacheHits.addAndGet(cached);
+        cacheMisses.addAndGet(totals.length - cached);
+
+        // cac ky lien nhau chua co: 1 query cho ca doan
+        for (int i = 0; i < totals.length; ) {
+            if (totals[i] != null) {
+                i++;
+                continue;
+            }
+            int j = i;
+            while (j + 1 < totals.length && totals[j + 1] == null) {
+                j++;
+            }
+            LocalDate rangeFrom = starts.get(i).isBefore(from) ? from : starts.get(i);
+            LocalDate rangeEnd = DoctorStatisticsRollup.periodEnd(starts.get(j), level);
+            LocalDate rangeTo = rangeEnd.isAfter(to) ? to : rangeEnd;
+            long generationBefore = generation.get();
+            Map<LocalDate, PeriodTotals> loaded = load(level, rangeFrom, rangeTo);
+            for (int k = i; k <= j; k++) {
+                totals[k] = loaded.getOrDefault(starts.get(k), new PeriodTotals());
+                if (cacheable(starts.get(k), level, from, to, today) && generation.get() == generationBefore) {
+                    closedPeriods.put(new PeriodKey(level, starts.get(k)), new CachedPeriod(totals[k], now));
+                }
+            }
+            i = j + 1;
+        }
+
+        PeriodTotals overall = new PeriodTotals();
+        List<Map<String, Object>> periods = new ArrayList<>(totals.length);
+        for (int i = 0; i < totals.length; i++) {
+            PeriodTotals period = totals[i];
+            overall.addAll(period);
+            LocalDate start = starts.get(i);
+            Map<String, Object> point = new LinkedHashMap<>();
+            point.put("period", start.toString());
+            point.put("label", label(start.isBefore(from) ? from : start, level));
+            point.put("invoices", period.invoices);
+            point.put("paidInvoices", period.paidInvoices);
+            point.put("revenue", period.revenue);
+            point.put("revenueByPaymentMethod", new TreeMap<>(period.revenueByMethod));
+            periods.add(point);
+        }
+
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("success", true);
+        statistics.put("startDate", from.toString());
+        statistics.put("endDate", to.toString());
+        statistics.put("granularity", level);
+        statistics.put("totalInvoices", overall.invoices);
+        statistics.put("paidInvoices", overall.paidInvoices);
+        statistics.put("totalRevenue", overall.revenue);
+        statistics.put("averageRevenue", overall.paidInvoices > 0
+            ? overall.revenue.divide(BigDecimal.valueOf(overall.paidInvoices), 0, RoundingMode.HALF_UP)
+            : BigDecimal.ZERO);
+        statistics.put("byStatus", new TreeMap<>(overall.byStatus));
+        statistics.put("byPaymentMethod", paymentMethods(overall));
+        statistics.put("periods", periods);
+        statistics.put("cachedPeriods", cached);
+
+        lastQueryMillis = (System.nanoTime() - started) / 1_000_000;
+        return statistics;
+    }
+
+    private Map<LocalDate, PeriodTotals> load(String level, LocalDate from, LocalDate to) {
+        databaseQueries.incrementAndGet();
+        Map<LocalDate, PeriodTotals> loaded = new HashMap<>();
+        List<Object[]> rows = invoiceRepository.aggregateByPeriod(level, from.atStartOfDay(), to.plusDays(1).atStartOfDay());
+        for (Object[] row : rows) {
+            loaded.computeIfAbsent(LocalDate.parse(String.valueOf(row[0])), d -> new PeriodTotals())
+                .add((String) row[1], (String) row[2], ((Number) row[3]).longValue(), decimal(row[4]));
+        }
+        return loaded;
+    }
+
+    // chi ky nam tron trong khoang hoi va da ket thuc moi dua vao cache
+    private static boolean cacheable(LocalDate start, String level, LocalDate from, LocalDate to, LocalDate today) {
+        return !start.isBefore(from) && !DoctorStatisticsRollup.periodEnd(start, level).isAfter(to)
+            && DoctorStatisticsRollup.closed(start, level, today);
+    }
+
+    static String granularityOf(LocalDate from, LocalDate to) {
+        long days = ChronoUnit.DAYS.between(from, to) + 1;
+        if (days <= 62) {
+            return DAY;
+        }
+        return days <= 190 ? WEEK : MONTH;
+    }
+
+    private static String label(LocalDate date, String level) {
+        return MONTH.equals(level) ? date.format(MONTH_YEAR) : date.format(DAY_MONTH);
+    }
+
+    // ty trong doanh thu theo phuong thuc (hoa don PAID)
+    private static List<Map<String, Object>> paymentMethods(PeriodTotals overall) {
+        List<Map<String, Object>> methods = new ArrayList<>();
+        for (Map.Entry<String, BigDecimal> entry : new TreeMap<>(overall.revenueByMethod).entrySet()) {
+            Map<String, Object> method = new LinkedHashMap<>();
+            method.put("paymentMethod", entry.getKey());
+            method.put("invoices", overall.paidByMethod.getOrDefault(entry.getKey(), 0L));
+            method.put("revenue", entry.getValue());
+            method.put("share", overall.revenue.signum() > 0
+                ? entry.getValue().multiply(BigDecimal.valueOf(100)).divide(overall.revenue, 2, RoundingMode.HALF_UP).doubleValue()
+                : 0.0);
+            methods.add(method);
+        }
+        return methods;
+    }
+
+    private static BigDecimal decimal(Object value) {
+        if (value == null) {
+            return BigDecimal.ZERO;
+        }
+        return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+    }
+
+    // ========== BO CACHE ==========
+
+    // goi tu InvoiceService khi hoa don bi sua / xoa; trong transaction thi bo sau commit
+    public void invoiceChanged(LocalDateTime invoiceDate) {
+        if (invoiceDate == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingEvictions().dates.add(invoiceDate.toLocalDate());
+            return;
+        }
+        evict(invoiceDate.toLocalDate());
+    }
+
+    private PendingEvictions pendingEvictions() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PendingEvictions pending && pending.owner() == this) {
+                return pending;
+            }
+        }
+        PendingEvictions pending = new PendingEvictions();
+        TransactionSynchronizationManager.registerSynchronization(pending);
+        return pending;
+    }
+
+    private void evict(LocalDate date) {
+        generation.incrementAndGet();
+        for (String level : LEVELS) {
+            if (closedPeriods.remove(new PeriodKey(level, DoctorStatisticsRollup.periodStart(date, level))) != null) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private final class PendingEvictions implements TransactionSynchronization {
+        private final Set<LocalDate> dates = new HashSet<>();
+
+        InvoiceStatisticsService owner() {
+            return InvoiceStatisticsService.this;
+        }
+
+        @Override
+        public void afterCommit() {
+            dates.forEach(InvoiceStatisticsService.this::evict);
+        }
+    }
+
+    // ========== CHI SO ==========
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("cachedPeriods", closedPeriods.size());
+        stats.put("cacheHits", cacheHits.get());
+        stats.put("cacheMisses", cacheMisses.get());
+        stats.put("databaseQueries", databaseQueries.get());
+        stats.put("evictions", evictions.get());
+        stats.put("lastQueryMillis", lastQueryMillis);
+        stats.put("closedPeriodTtlMs", closedPeriodTtlMillis);
+        return stats;
+    }
+
+    // ========== CAU TRUC DU LIEU ==========
+
+    // tong cua 1 ky; ban trong cache khong sua sau khi tao
+    static final class PeriodTotals {
+        long invoices;
+        long paidInvoices;
+        BigDecimal revenue = BigDecimal.ZERO;
+        final Map<String, Long> byStatus = new HashMap<>();
+        final Map<String, Long> paidByMethod = new HashMap<>();
+        final Map<String, BigDecimal> revenueByMethod = new HashMap<>();
+
+        void add(String status, String paymentMethod, long count, BigDecimal amount) {
+            invoices += count;
+            byStatus.merge(status != null ? status : UNKNOWN, count, Long::sum);
+            if (PAID.equals(status)) {
+                String method = paymentMethod != null ? paymentMethod : UNKNOWN;
+                paidInvoices += count;
+                revenue = revenue.add(amount);
+                paidByMethod.merge(method, count, Long::sum);
+                revenueByMethod.merge(method, amount, BigDecimal::add);
+            }
+        }
+
+        void addAll(PeriodTotals other) {
+            invoices += other.invoices;
+            paidInvoices += other.paidInvoices;
+            revenue = revenue.add(other.revenue);
+            other.byStatus.forEach((status, count) -> byStatus.merge(status, count, Long::sum));
+            other.paidByMethod.forEach((method, count) -> paidByMethod.merge(method, count, Long::sum));
+            other.revenueByMethod.forEach((method, amount) -> revenueByMethod.merge(method, amount, BigDecimal::add));
+        }
+    }
+
+    private static final class CachedPeriod {
+        final PeriodTotals totals;
+        final long cachedAt;
+
+        CachedPeriod(PeriodTotals totals, long cachedAt) {
+            this.totals = totals;
+            this.cachedAt = cachedAt;
+        }
+    }
+
+    static final class PeriodKey {
+        final String level;
+        final LocalDate start;
+
+        PeriodKey(String level, LocalDate start) {
+            this.level = level;
+            this.start = start;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PeriodKey)) return false;
+            PeriodKey other = (PeriodKey) o;
+            return level.equals(other.level) && start.equals(other.start);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * level.hashCode() + start.hashCode();
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package com.example.clinic_backend.service;
 
+import com.example.clinic_backend.event.RegistrationStatusChangedEvent;
 import com.example.clinic_backend.model.MedicalRecord;
 import com.example.clinic_backend.model.PatientRegistration;
 import com.example.clinic_backend.repository.MedicalRecordRepository;
 import com.example.clinic_backend.repository.DoctorAppointmentRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -24,11 +26,14 @@ public class MedicalRecordService {
     private static final Logger logger = LoggerFactory.getLogger(MedicalRecordService.class);
     private final MedicalRecordRepository medicalRecordRepository;
     private final DoctorAppointmentRepository doctorAppointmentRepository;
+    private final ApplicationEventPublisher eventPublisher;
     
     public MedicalRecordService(MedicalRecordRepository medicalRecordRepository,
-                              DoctorAppointmentRepository doctorAppointmentRepository) {
+                              DoctorAppointmentRepository doctorAppointmentRepository,
+                              ApplicationEventPublisher eventPublisher) {
         this.medicalRecordRepository = medicalRecordRepository;
         this.doctorAppointmentRepository = doctorAppointmentRepository;
+        this.eventPublisher = eventPublisher;
     }
     
     public Map<String, Object> startExamination(Long appointmentId, Long requestDoctorId) {
@@ -230,9 +235,11 @@ public class MedicalRecordService {
             Optional<PatientRegistration> appointmentOpt = doctorAppointmentRepository.findById(appointmentId);
             if (appointmentOpt.isPresent()) {
                 PatientRegistration appointment = appointmentOpt.get();
+                String previousStatus = appointment.getStatus();
                 appointment.setExaminationStatus(examinationStatus);
                 appointment.setStatus(status);
-                doctorAppointmentRepository.save(appointment);
+                PatientRegistration saved = doctorAppointmentRepository.save(appointment);
+                eventPublisher.publishEvent(new RegistrationStatusChangedEvent(saved, previousStatus));
                 logger.info("Updated appointment status to: {}", status);
             }
         } catch (Exception e) {
@@ -294,9 +301,11 @@ public class MedicalRecordService {
             }
             
             PatientRegistration appointment = appointmentOpt.get();
+            String previousStatus = appointment.getStatus();
             appointment.setExaminationStatus("MISSED");
             appointment.setStatus("CANCELLED");
             PatientRegistration savedAppointment = doctorAppointmentRepository.save(appointment);
+            eventPublisher.publishEvent(new RegistrationStatusChangedEvent(savedAppointment, previousStatus));
             
             // Sử dụng DTO
             Map<String, Object> appointmentDTO = createAppointmentDTO(savedAppointment);
@@ -0,0 +1,11 @@
+package com.example.clinic_backend.service;
+
+// Gui message STOMP toi client tren moi node.
+// simple: chi broker trong process (1 node); database: relay qua bang broker_messages (nhieu node).
+// Chon bang app.broker.mode.
+public interface MessageFanout {
+
+    void convertAndSend(String destination, Object payload);
+
+    void convertAndSendToUser(String user, String destination, Object payload);
+}
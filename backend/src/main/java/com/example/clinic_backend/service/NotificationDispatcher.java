@@ -0,0 +1,132 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.event.AppointmentNotificationEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Gui thong bao WebSocket sau khi transaction commit (du lieu da doc duoc tu database).
+// Su kien duoc gom theo (loai, don): nhieu thay doi lien tiep cua 1 don chi gui 1 lan.
+// Hang doi co gioi han; 1 thread gui lan luot nen khong tao thread moi cho moi don.
+@Service
+public class NotificationDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    private final WebSocketService webSocketService;
+    private final int maxPending;
+
+    // thu tu vao hang doi, key = loai|id don
+    private final LinkedHashMap<String, AppointmentNotificationEvent> pending = new LinkedHashMap<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(r -> new Thread(r, "notification-dispatcher"));
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private int highWaterMark;
+
+    public NotificationDispatcher(WebSocketService webSocketService,
+                                  @Value("${app.notifications.max-pending:5000}") int maxPending) {
+        this.webSocketService = webSocketService;
+        this.maxPending = Math.max(1, maxPending);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        sender.shutdown();
+        sender.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    // chi chay sau commit; khong co transaction (goi ngoai service) thi gui ngay
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onNotification(AppointmentNotificationEvent event) {
+        if (event.getRegistration() == null || event.getRegistration().getId() == null) {
+            return;
+        }
+        synchronized (pending) {
+            if (pending.put(event.coalesceKey(), event) != null) {
+                coalesced.incrementAndGet();
+            } else if (pending.size() > maxPending) {
+                // day: bo thong bao cu nhat, admin van xem duoc don trong danh sach
+                Iterator<String> oldest = pending.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+                dropped.incrementAndGet();
+            }
+            highWaterMark = Math.max(highWaterMark, pending.size());
+        }
+        scheduleDrain();
+    }
+
+    // do sau hang doi va so thong bao da gui / gop / bo / loi
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (pending) {
+            stats.put("pending", pending.size());
+            stats.put("highWaterMark", highWaterMark);
+        }
+        stats.put("maxPending", maxPending);
+        stats.put("delivered", delivered.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("dropped", dropped.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                sender.execute(this::drain);
+            } catch (RuntimeException e) {
+                // dang tat ung dung
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        List<AppointmentNotificationEvent> batch;
+        synchronized (pending) {
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+
+        for (AppointmentNotificationEvent event : batch) {
+            try {
+                send(event);
+                delivered.incrementAndGet();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                logger.error("Lỗi gửi thông báo {} cho đơn {}: {}",
+                    event.getType(), event.getRegistration().getId(), e.getMessage());
+            }
+        }
+    }
+
+    private void send(AppointmentNotificationEvent event) {
+        if (AppointmentNotificationEvent.APPOINTMENT_CANCELLED.equals(event.getType())) {
+            webSocketService.notifyAppointmentCancelled(event.getRegistration());
+        } else {
+            webSocketService.notifyNewAppointment(event.getRegistration());
+        }
+    }
+}
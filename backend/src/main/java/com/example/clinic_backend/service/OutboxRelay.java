@@ -0,0 +1,249 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.event.OutboxEnqueuedEvent;
+import com.example.clinic_backend.model.OutboxMessage;
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.OutboxMessageRepository;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Gui cac thong bao trong bang outbox_messages.
+// - nhan lo bang SELECT ... FOR UPDATE SKIP LOCKED + doi han (lease): nhieu node khong gui trung,
+//   node chet giua chung thi lo duoc gui lai khi het han
+// - gui ngoai transaction, ket noi database khong bi giu trong luc cho SMTP
+// - loi thi hen lai theo backoff luy thua; qua so lan toi da thi chuyen DEAD
+//   (SMTP bi ExternalCallGuard tu choi thi khong tinh lan thu, tranh DEAD hang loat khi SMTP sap)
+@Service
+public class OutboxRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private static final long LEASE_MINUTES = 5;
+    private static final long MAX_BACKOFF_SECONDS = 3600;
+
+    private final OutboxMessageRepository outboxRepository;
+    private final PatientRegistrationRepository registrationRepository;
+    private final EmailService emailService;
+    private final WebSocketService webSocketService;
+    private final TransactionTemplate relayTransaction;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long baseBackoffSeconds;
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final ExecutorService relay = Executors.newSingleThreadExecutor(r -> new Thread(r, "outbox-relay"));
+
+    public OutboxRelay(OutboxMessageRepository outboxRepository,
+                       PatientRegistrationRepository registrationRepository,
+                       EmailService emailService,
+                       WebSocketService webSocketService,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${app.outbox.batch-size:50}") int batchSize,
+                       @Value("${app.outbox.max-attempts:8}") int maxAttempts,
+                       @Value("${app.outbox.base-backoff-seconds:30}") long baseBackoffSeconds) {
+        this.outboxRepository = outboxRepository;
+        this.registrationRepository = registrationRepository;
+        this.emailService = emailService;
+        this.webSocketService = webSocketService;
+        this.relayTransaction = new TransactionTemplate(transactionManager);
+        this.relayTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffSeconds = Math.max(1, baseBackoffSeconds);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        relay.shutdown();
+        relay.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    // co thong bao moi: gui ngay sau commit, khong cho chu ky quet
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onEnqueued(OutboxEnqueuedEvent event) {
+        wakeUp();
+    }
+
+    // quet dinh ky: thong bao den han gui lai, thong bao cua node khac bi bo do
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:5000}")
+    public void poll() {
+        wakeUp();
+    }
+
+    // xoa thong bao da gui qua 7 ngay
+    @Scheduled(cron = "0 30 3 * * *")
+    public void purgeSent() {
+        Integer deleted = relayTransaction.execute(status ->
+            outboxRepository.deleteSentBefore(LocalDateTime.now().minusDays(7)));
+        logger.info("Outbox: xóa {} thông báo đã gửi", deleted);
+    }
+
+    private void wakeUp() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                relay.execute(this::drain);
+            } catch (RuntimeException e) {
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        try {
+            List<OutboxMessage> batch;
+            do {
+                batch = claimBatch();
+                if (!batch.isEmpty()) {
+                    deliver(batch);
+                }
+            } while (batch.size() == batchSize);
+        } catch (Exception e) {
+            logger.error("Outbox: lỗi khi gửi lô thông báo: {}", e.getMessage());
+        }
+    }
+
+    // khoa va nhan 1 lo den han trong transaction ngan
+    private List<OutboxMessage> claimBatch() {
+        List<OutboxMessage> batch = relayTransaction.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<Long> ids = outboxRepository.lockDueIds(now, batchSize);
+            if (ids.isEmpty()) {
+                return Collections.<OutboxMessage>emptyList();
+            }
+            outboxRepository.claim(ids, now.plusMinutes(LEASE_MINUTES));
+            return outboxRepository.findAllById(ids);
+        });
+        if (batch == null) {
+            return Collections.emptyList();
+        }
+        List<OutboxMessage> sorted = new ArrayList<>(batch);
+        sorted.sort(Comparator.comparing(OutboxMessage::getId));
+        return sorted;
+    }
+
+    private void deliver(List<OutboxMessage> batch) {
+        Set<Long> registrationIds = new HashSet<>();
+        for (OutboxMessage message : batch) {
+            if (message.getRegistrationId() != null) {
+                registrationIds.add(message.getRegistrationId());
+            }
+        }
+        Map<Long, PatientRegistration> registrations = new HashMap<>();
+        for (PatientRegistration registration : registrationRepository.findAllById(registrationIds)) {
+            registrations.put(registration.getId(), registration);
+        }
+
+        List<Long> sentIds = new ArrayList<>();
+        List<OutboxMessage> failures = new ArrayList<>();
+        for (OutboxMessage message : batch) {
+            try {
+                send(message, registrations.get(message.getRegistrationId()));
+                sentIds.add(message.getId());
+            } catch (Exception e) {
+                message.setLastError(truncate(e.getMessage()));
+                if (ExternalCallGuard.isRejected(e)) {
+                    // SMTP dang tam ngung (breaker mo / qua tai): chua gui nen khong tinh lan thu
+                    message.setAttempts(message.getAttempts() - 1);
+                }
+                failures.add(message);
+            }
+        }
+
+        relayTransaction.executeWithoutResult(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            if (!sentIds.isEmpty()) {
+                outboxRepository.markSent(sentIds, now);
+            }
+            for (OutboxMessage message : failures) {
+                if (message.getAttempts() >= maxAttempts) {
+                    message.setStatus(OutboxService.DEAD);
+                    logger.error("Outbox: thông báo {} ({}) chuyển DEAD sau {} lần: {}",
+                        message.getId(), message.getType(), message.getAttempts(), message.getLastError());
+                } else {
+                    message.setNextAttemptAt(now.plusSeconds(backoffSeconds(message.getAttempts())));
+                    logger.warn("Outbox: thông báo {} ({}) lỗi lần {}, gửi lại lúc {}: {}",
+                        message.getId(), message.getType(), message.getAttempts(),
+                        message.getNextAttemptAt(), message.getLastError());
+                }
+                outboxRepository.save(message);
+            }
+        });
+
+        logger.debug("Outbox: gửi {} thông báo, lỗi {}", sentIds.size(), failures.size());
+    }
+
+    private void send(OutboxMessage message, PatientRegistration registration) {
+        if (registration == null) {
+            throw new RuntimeException("Không tìm thấy đơn đăng ký " + message.getRegistrationId());
+        }
+        switch (message.getType()) {
+            case OutboxService.EMAIL_APPROVAL:
+                emailService.sendApprovalEmail(registration);
+                break;
+            case OutboxService.EMAIL_PAYMENT_SUCCESS:
+                emailService.sendPaymentSuccessEmail(registration);
+                break;
+            case OutboxService.EMAIL_CANCELLATION:
+                emailService.sendCancellationEmail(registration, message.getPayload());
+                break;
+            case OutboxService.EMAIL_REFUND_PROCESSED:
+                emailService.sendRefundProcessedEmail(registration);
+                break;
+            case OutboxService.EMAIL_REFUND_REJECTED:
+                emailService.sendRefundRejectedEmail(registration, message.getPayload());
+                break;
+            case OutboxService.ADMIN_REFUND_REQUEST:
+                Map<String, Object> refundNotification = new HashMap<>();
+                refundNotification.put("type", "REFUND_REQUEST");
+                refundNotification.put("appointmentId", registration.getId());
+                refundNotification.put("patientName", registration.getFullName());
+                refundNotification.put("refundAmount",
+                    message.getPayload() != null ? new BigDecimal(message.getPayload()) : BigDecimal.ZERO);
+                refundNotification.put("requestedAt", message.getCreatedAt());
+                refundNotification.put("registrationNumber", registration.getRegistrationNumber());
+                webSocketService.sendNotificationToAdmins(refundNotification);
+                break;
+            default:
+                throw new RuntimeException("Loại thông báo không hợp lệ: " + message.getType());
+        }
+    }
+
+    // 30s, 60s, 120s ... toi da 1 gio
+    private long backoffSeconds(int attempts) {
+        long delay = baseBackoffSeconds << Math.min(Math.max(attempts - 1, 0), 20);
+        return Math.min(delay, MAX_BACKOFF_SECONDS);
+    }
+
+    private static String truncate(String error) {
+        if (error == null) {
+            return null;
+        }
+        return error.length() > 500 ? error.substring(0, 500) : error;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.event.OutboxEnqueuedEvent;
+import com.example.clinic_backend.model.OutboxMessage;
+import com.example.clinic_backend.repository.OutboxMessageRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Ghi thong bao gui ra ngoai vao bang outbox trong cung transaction voi thay doi du lieu.
+// Khong goi SMTP trong transaction: OutboxRelay gui sau khi commit, loi thi gui lai.
+@Service
+public class OutboxService {
+
+    public static final String EMAIL_APPROVAL = "EMAIL_APPROVAL";
+    public static final String EMAIL_PAYMENT_SUCCESS = "EMAIL_PAYMENT_SUCCESS";
+    public static final String EMAIL_CANCELLATION = "EMAIL_CANCELLATION";
+    public static final String EMAIL_REFUND_PROCESSED = "EMAIL_REFUND_PROCESSED";
+    public static final String EMAIL_REFUND_REJECTED = "EMAIL_REFUND_REJECTED";
+    public static final String ADMIN_REFUND_REQUEST = "ADMIN_REFUND_REQUEST";
+
+    public static final String PENDING = "PENDING";
+    public static final String SENT = "SENT";
+    public static final String DEAD = "DEAD";
+
+    private final OutboxMessageRepository outboxRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public OutboxService(OutboxMessageRepository outboxRepository, ApplicationEventPublisher eventPublisher) {
+        this.outboxRepository = outboxRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    // tham gia transaction dang chay; khong co thi tu mo transaction rieng
+    @Transactional
+    public OutboxMessage enqueue(String type, Long registrationId, String payload) {
+        OutboxMessage saved = outboxRepository.save(new OutboxMessage(type, registrationId, payload));
+        eventPublisher.publishEvent(new OutboxEnqueuedEvent(saved.getId()));
+        return saved;
+    }
+
+    // so thong bao theo trang thai va cac thong bao DEAD gan nhat
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pending", outboxRepository.countByStatus(PENDING));
+        stats.put("sent", outboxRepository.countByStatus(SENT));
+        stats.put("dead", outboxRepository.countByStatus(DEAD));
+
+        List<Map<String, Object>> recentDead = new ArrayList<>();
+        for (OutboxMessage message : outboxRepository.findTop50ByStatusOrderByIdDesc(DEAD)) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("id", message.getId());
+            item.put("type", message.getType());
+            item.put("registrationId", message.getRegistrationId());
+            item.put("attempts", message.getAttempts());
+            item.put("lastError", message.getLastError());
+            item.put("createdAt", message.getCreatedAt());
+            recentDead.add(item);
+        }
+        stats.put("recentDead", recentDead);
+        return stats;
+    }
+
+    // dua thong bao DEAD ve hang doi (admin)
+    @Transactional
+    public boolean requeueDead(Long id) {
+        boolean requeued = outboxRepository.requeueDead(id, LocalDateTime.now()) > 0;
+        if (requeued) {
+            eventPublisher.publishEvent(new OutboxEnqueuedEvent(id));
+        }
+        return requeued;
+    }
+}
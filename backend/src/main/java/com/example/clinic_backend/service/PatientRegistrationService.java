@@ -1,8 +1,11 @@
 package com.example.clinic_backend.service;
 
 import com.example.clinic_backend.dto.CancelAppointmentDTO;
+import com.example.clinic_backend.event.AppointmentNotificationEvent;
+import com.example.clinic_backend.event.RegistrationStatusChangedEvent;
 import com.example.clinic_backend.model.PatientRegistration;
 import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,23 +25,26 @@ public class PatientRegistrationService {
 
     private final PatientRegistrationRepository repository;
     private final AutoApprovalService autoApprovalService;
-    private final EmailService emailService;
+    private final OutboxService outboxService;
     
     @Autowired
     private DoctorSlotService doctorSlotService;
 
     @Autowired
-    private WebSocketService webSocketService;
+    private SlotCapacityLedger slotCapacityLedger;
 
-    // Số bệnh nhân tối đa cho mỗi slot
-    private static final int MAX_PATIENTS_PER_SLOT = 10;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private IdentifierService identifierService;
 
     public PatientRegistrationService(PatientRegistrationRepository repository,
                                     AutoApprovalService autoApprovalService,
-                                    EmailService emailService) {
+                                    OutboxService outboxService) {
         this.repository = repository;
         this.autoApprovalService = autoApprovalService;
-        this.emailService = emailService;
+        this.outboxService = outboxService;
     }
 
     // Lấy tất cả lịch hẹn
@@ -155,20 +161,14 @@ public class PatientRegistrationService {
             // Nếu không có doctorId, không cần kiểm tra slot
             if (registration.getDoctorId() == null) {
                 System.out.println("Không chọn bác sĩ - đánh dấu cần xử lý thủ công");
+                String previousStatus = registration.getStatus();
                 registration.setStatus("NEEDS_MANUAL_REVIEW");
                 
                 PatientRegistration savedRegistration = repository.save(registration);
+                eventPublisher.publishEvent(new RegistrationStatusChangedEvent(savedRegistration, previousStatus));
                 
-                // Gửi thông báo real-time
-                new Thread(() -> {
-                    try {
-                        Thread.sleep(1000);
-                        webSocketService.notifyNewAppointment(savedRegistration);
-                        System.out.println("Đã gửi thông báo cho đơn đăng ký: " + savedRegistration.getId());
-                    } catch (Exception e) {
-                        System.err.println("Lỗi khi gửi thông báo: " + e.getMessage());
-                    }
-                }).start();
+                // Gửi thông báo real-time (sau khi commit)
+                eventPublisher.publishEvent(AppointmentNotificationEvent.newAppointment(savedRegistration));
                 
                 return savedRegistration;
             }
@@ -183,20 +183,14 @@ public class PatientRegistrationService {
                 
                 if (!slotAvailable) {
                     System.out.println("Không có slot khả dụng, đánh dấu cần xử lý thủ công");
+                    String previousStatus = registration.getStatus();
                     registration.setStatus("NEEDS_MANUAL_REVIEW");
                     
                     PatientRegistration savedRegistration = repository.save(registration);
+                    eventPublisher.publishEvent(new RegistrationStatusChangedEvent(savedRegistration, previousStatus));
                     
-                    // Gửi thông báo real-time
-                    new Thread(() -> {
-                        try {
-                            Thread.sleep(1000);
-                            webSocketService.notifyNewAppointment(savedRegistration);
-                            System.out.println("Đã gửi thông báo cho đơn đăng ký: " + savedRegistration.getId());
-                        } catch (Exception e) {
-                            System.err.println("Lỗi khi gửi thông báo: " + e.getMessage());
-                        }
-                    }).start();
+                    // Gửi thông báo real-time (sau khi commit)
+                    eventPublisher.publishEvent(AppointmentNotificationEvent.newAppointment(savedRegistration));
                     
                     return savedRegistration;
                 }
@@ -208,16 +202,8 @@ public class PatientRegistrationService {
             System.out.println("Quá trình đăng ký hoàn tất!");
             System.out.println("Trạng thái cuối cùng: " + processedRegistration.getStatus());
             
-            // Gửi thông báo real-time
-            new Thread(() -> {
-                try {
-                    Thread.sleep(1000);
-                    webSocketService.notifyNewAppointment(processedRegistration);
-                    System.out.println("Đã gửi thông báo cho đơn đăng ký: " + processedRegistration.getId());
-                } catch (Exception e) {
-                    System.err.println("Lỗi khi gửi thông báo: " + e.getMessage());
-                }
-            }).start();
+            // Gửi thông báo real-time (sau khi commit)
+            eventPublisher.publishEvent(AppointmentNotificationEvent.newAppointment(processedRegistration));
             
             return processedRegistration;
             
@@ -228,6 +214,41 @@ public class PatientRegistrationService {
         }
     }
 
+    // Nhận đơn vào hàng đợi intake: chỉ lưu đơn PENDING, việc kiểm tra slot và duyệt do worker làm sau
+    @Transactional
+    public PatientRegistration acceptRegistration(PatientRegistration registration) {
+        if (registration.getRegistrationNumber() == null) {
+            registration.setRegistrationNumber(generateRegistrationNumber());
+        }
+        if (registration.getCreatedAt() == null) {
+            registration.setCreatedAt(LocalDateTime.now());
+        }
+        if (registration.getExaminationFee() == null) {
+            registration.setExaminationFee(BigDecimal.valueOf(200000));
+        }
+        registration.setStatus("PENDING");
+        return repository.save(registration);
+    }
+
+    // Xử lý đơn PENDING đã nhận qua intake (gọi từ worker)
+    @Transactional
+    public PatientRegistration processPendingRegistration(Long registrationId) {
+        PatientRegistration registration = repository.findById(registrationId)
+            .orElseThrow(() -> new RuntimeException("Không tìm thấy đơn đăng ký với ID: " + registrationId));
+        
+        // đã được xử lý (vd. quét lại sau khi khởi động)
+        if (!"PENDING".equals(registration.getStatus())) {
+            return registration;
+        }
+        // giành đơn trước khi duyệt: worker khác (node khác, hoặc đơn vừa được quét lại) đang / đã xử lý thì dừng.
+        // Trạng thái PROCESSING không bao giờ được commit: lưu đơn ghi đè trạng thái cuối, lỗi thì rollback về PENDING
+        if (repository.claimPending(registrationId) != 1) {
+            System.out.println("Đơn " + registrationId + " đã được worker khác xử lý, bỏ qua");
+            return registration;
+        }
+        return createRegistration(registration);
+    }
+
     // Lấy lịch hẹn cần xử lý thủ công
     public List<PatientRegistration> getRegistrationsNeedingManualReview() {
         return repository.findByStatusOrderByCreatedAtAsc("NEEDS_MANUAL_REVIEW");
@@ -252,19 +273,8 @@ public class PatientRegistrationService {
 
         if (hasSlot) {
             System.out.println("Duyệt thủ công - Để AutoApprovalService xử lý số thứ tự");
-            PatientRegistration approvedRegistration = autoApprovalService.autoApproveRegistration(registration, registration.getAssignedSession());
-            
-            // Gửi email khi duyệt đơn thành công
-            if ("APPROVED".equals(approvedRegistration.getStatus())) {
-                try {
-                    emailService.sendApprovalEmail(approvedRegistration);
-                    System.out.println("Đã gửi email duyệt đơn cho: " + approvedRegistration.getEmail());
-                } catch (Exception e) {
-                    System.err.println("Lỗi gửi email duyệt đơn: " + e.getMessage());
-                }
-            }
-            
-            return approvedRegistration;
+            // AutoApprovalService đã ghi email duyệt đơn vào outbox
+            return autoApprovalService.autoApproveRegistration(registration, registration.getAssignedSession());
         } else {
             throw new RuntimeException("Không có slot khả dụng cho buổi khám này");
         }
@@ -279,9 +289,26 @@ public class PatientRegistrationService {
         }
 
         PatientRegistration registration = registrationOpt.get();
+        String previousStatus = registration.getStatus();
         registration.setStatus("REJECTED");
         
-        return repository.save(registration);
+        PatientRegistration saved = repository.save(registration);
+        eventPublisher.publishEvent(new RegistrationStatusChangedEvent(saved, previousStatus));
+        return saved;
+    }
+
+    // Đánh dấu cần xử lý thủ công
+    @Transactional
+    public PatientRegistration markForManualReview(Long registrationId) {
+        PatientRegistration registration = repository.findById(registrationId)
+            .orElseThrow(() -> new RuntimeException("Không tìm thấy đơn đăng ký với ID: " + registrationId));
+        
+        String previousStatus = registration.getStatus();
+        registration.setStatus("NEEDS_MANUAL_REVIEW");
+        
+        PatientRegistration saved = repository.save(registration);
+        eventPublisher.publishEvent(new RegistrationStatusChangedEvent(saved, previousStatus));
+        return saved;
     }
 
     // Xử lý thanh toán thành công
@@ -302,13 +329,8 @@ public class PatientRegistrationService {
 
         PatientRegistration savedRegistration = repository.save(registration);
 
-        // Gửi email thanh toán thành công
-        try {
-            emailService.sendPaymentSuccessEmail(savedRegistration);
-            System.out.println("Đã gửi email thanh toán thành công cho: " + savedRegistration.getEmail());
-        } catch (Exception e) {
-            System.err.println("Lỗi gửi email thanh toán: " + e.getMessage());
-        }
+        // Email thanh toán thành công (gửi sau khi commit qua outbox)
+        outboxService.enqueue(OutboxService.EMAIL_PAYMENT_SUCCESS, savedRegistration.getId(), null);
 
         return savedRegistration;
     }
@@ -330,17 +352,13 @@ public class PatientRegistrationService {
                 return false;
             }
             
-            Integer approvedCount = repository.countByDoctorIdAndAppointmentDateAndAssignedSessionAndStatus(
-                doctorId, appointmentDate, assignedSession, "APPROVED"
-            );
-            
-            if (approvedCount == null) {
-                approvedCount = 0;
-            }
+            // Đọc từ sổ cái slot trong bộ nhớ thay vì COUNT(*)
+            int approvedCount = slotCapacityLedger.getApprovedCount(doctorId, appointmentDate, assignedSession);
+            int maxPatients = slotCapacityLedger.getMaxPatients(doctorId, appointmentDate, assignedSession);
             
-            System.out.println("Kiểm tra slot - " + assignedSession + ": " + approvedCount + "/" + MAX_PATIENTS_PER_SLOT + " đơn đã được duyệt");
+            System.out.println("Kiểm tra slot - " + assignedSession + ": " + approvedCount + "/" + maxPatients + " đơn đã được duyệt");
             
-            boolean available = approvedCount < MAX_PATIENTS_PER_SLOT;
+            boolean available = slotCapacityLedger.hasCapacity(doctorId, appointmentDate, assignedSession);
             System.out.println("Slot khả dụng: " + available);
             
             return available;
@@ -400,7 +418,7 @@ public class PatientRegistrationService {
 
     // Tạo mã đăng ký
     private String generateRegistrationNumber() {
-        return "REG-" + System.currentTimeMillis();
+        return identifierService.nextRegistrationNumber();
     }
     
     // Hủy lịch hẹn - FIXED VERSION
@@ -582,6 +600,7 @@ public class PatientRegistrationService {
         
         try {
             // Cập nhật thông tin hủy
+            String previousStatus = registration.getStatus();
             registration.setStatus("CANCELLED");
             registration.setCancelledAt(LocalDateTime.now());
             registration.setCancelledBy(userId);
@@ -617,24 +636,14 @@ public class PatientRegistrationService {
             
             // Lưu thay đổi
             PatientRegistration cancelledRegistration = repository.save(registration);
+            eventPublisher.publishEvent(new RegistrationStatusChangedEvent(cancelledRegistration, previousStatus));
             
-            // Gửi email thông báo hủy lịch
-            try {
-                emailService.sendCancellationEmail(cancelledRegistration, cancelDTO.getReason());
-                result.put("emailSent", true);
-                System.out.println("Đã gửi email thông báo hủy lịch");
-            } catch (Exception e) {
-                System.err.println("Lỗi gửi email hủy lịch: " + e.getMessage());
-                result.put("emailSent", false);
-            }
+            // Email thông báo hủy lịch (gửi sau khi commit qua outbox)
+            outboxService.enqueue(OutboxService.EMAIL_CANCELLATION, cancelledRegistration.getId(), cancelDTO.getReason());
+            result.put("emailSent", true);
             
-            // Gửi thông báo real-time
-            try {
-                webSocketService.notifyAppointmentCancelled(cancelledRegistration);
-                System.out.println("Đã gửi thông báo real-time về việc hủy lịch");
-            } catch (Exception e) {
-                System.err.println("Lỗi gửi thông báo real-time: " + e.getMessage());
-            }
+            // Gửi thông báo real-time (sau khi commit)
+            eventPublisher.publishEvent(AppointmentNotificationEvent.cancelled(cancelledRegistration));
             
             result.put("success", true);
             result.put("message", "Hủy lịch hẹn thành công");
@@ -783,24 +792,9 @@ public class PatientRegistrationService {
         }
     }
     
-    // Thông báo cho admin về yêu cầu hoàn tiền
+    // Thông báo cho admin về yêu cầu hoàn tiền (WebSocket, gửi sau khi commit qua outbox)
     private void notifyAdminAboutRefundRequest(PatientRegistration registration, BigDecimal refundAmount) {
-        try {
-            // Gửi thông báo qua WebSocket
-            Map<String, Object> refundNotification = new HashMap<>();
-            refundNotification.put("type", "REFUND_REQUEST");
-            refundNotification.put("appointmentId", registration.getId());
-            refundNotification.put("patientName", registration.getFullName());
-            refundNotification.put("refundAmount", refundAmount);
-            refundNotification.put("requestedAt", LocalDateTime.now());
-            refundNotification.put("registrationNumber", registration.getRegistrationNumber());
-            
-            webSocketService.sendNotificationToAdmins(refundNotification);
-            
-            System.out.println("Đã gửi thông báo yêu cầu hoàn tiền cho admin");
-        } catch (Exception e) {
-            System.err.println("Lỗi gửi thông báo hoàn tiền: " + e.getMessage());
-        }
+        outboxService.enqueue(OutboxService.ADMIN_REFUND_REQUEST, registration.getId(), refundAmount.toPlainString());
     }
     
     // Lấy danh sách lịch hẹn có thể hủy
@@ -852,12 +846,8 @@ public class PatientRegistrationService {
                 
                 result.put("message", "Đã duyệt yêu cầu hoàn tiền");
                 
-                // Gửi email thông báo hoàn tiền thành công
-                try {
-                    emailService.sendRefundProcessedEmail(registration);
-                } catch (Exception e) {
-                    System.err.println("Lỗi gửi email hoàn tiền: " + e.getMessage());
-                }
+                // Email thông báo hoàn tiền thành công (qua outbox)
+                outboxService.enqueue(OutboxService.EMAIL_REFUND_PROCESSED, registration.getId(), null);
             } else {
                 registration.setRefundStatus("REJECTED");
                 registration.setCancellationReason(
@@ -867,12 +857,8 @@ public class PatientRegistrationService {
                 
                 result.put("message", "Đã từ chối yêu cầu hoàn tiền");
                 
-                // Gửi email thông báo từ chối hoàn tiền
-                try {
-                    emailService.sendRefundRejectedEmail(registration, adminNote);
-                } catch (Exception e) {
-                    System.err.println("Lỗi gửi email từ chối hoàn tiền: " + e.getMessage());
-                }
+                // Email thông báo từ chối hoàn tiền (qua outbox)
+                outboxService.enqueue(OutboxService.EMAIL_REFUND_REJECTED, registration.getId(), adminNote);
             }
             
             repository.save(registration);
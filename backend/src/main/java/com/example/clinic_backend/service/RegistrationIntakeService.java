@@ -0,0 +1,240 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Nhan don dang ky bat dong bo: luu don PENDING, tra ve ticket ngay,
+// sau do worker xu ly duyet don theo phan vung bac si.
+// - moi phan vung 1 thread: cac don cung bac si chay tuan tu, khong tranh chap bo dem slot
+// - hang doi moi phan vung co gioi han; day thi tu choi ngay (backpressure) thay vi giu request
+// - don PENDING bi bo lai (khoi dong lai, hang doi day) duoc quet va dua lai vao hang doi
+//   (lease "intake-sweep": moi luc chi 1 node quet; bo qua don dang bi worker node nao do giu)
+// - lease khong ngan 2 worker cung lay 1 don (don con trong hang doi node khac van co the bi quet lai):
+//   worker gianh don bang PatientRegistrationRepository.claimPending truoc khi duyet, ben thua bo qua
+@Service
+public class RegistrationIntakeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegistrationIntakeService.class);
+
+    public static final String QUEUED = "QUEUED";
+    public static final String PROCESSING = "PROCESSING";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+
+    private final PatientRegistrationService registrationService;
+    private final PatientRegistrationRepository registrationRepository;
+    private final SchedulerLockService lockService;
+    private final int partitionCount;
+    private final int queueCapacity;
+
+    private ThreadPoolExecutor[] workers;
+    private Semaphore[] permits;
+
+    // ticket dang xu ly; xong thi xoa, trang thai doc lai tu database
+    private final ConcurrentHashMap<Long, Ticket> tickets = new ConcurrentHashMap<>();
+
+    public RegistrationIntakeService(PatientRegistrationService registrationService,
+                                     PatientRegistrationRepository registrationRepository,
+                                     SchedulerLockService lockService,
+                                     @Value("${app.intake.partitions:4}") int partitionCount,
+                                     @Value("${app.intake.queue-capacity:200}") int queueCapacity) {
+        this.registrationService = registrationService;
+        this.registrationRepository = registrationRepository;
+        this.lockService = lockService;
+        this.partitionCount = Math.max(1, partitionCount);
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        workers = new ThreadPoolExecutor[partitionCount];
+        permits = new Semaphore[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            String name = "intake-" + i;
+            workers[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> new Thread(r, name));
+            permits[i] = new Semaphore(queueCapacity);
+        }
+        logger.info("Intake đăng ký: {} phân vùng, {} đơn chờ mỗi phân vùng", partitionCount, queueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        for (ThreadPoolExecutor worker : workers) {
+            worker.shutdown();
+        }
+        for (ThreadPoolExecutor worker : workers) {
+            worker.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    // luu don va dua vao hang doi; tra ve ticket (= id don) hoac null neu hang doi day
+    public Long submit(PatientRegistration registration) {
+        int partition = partitionOf(registration);
+        Semaphore permit = permits[partition];
+        if (!permit.tryAcquire()) {
+            logger.warn("Hàng đợi intake phân vùng {} đã đầy, từ chối đơn của {}", partition, registration.getEmail());
+            return null;
+        }
+
+        try {
+            PatientRegistration saved = registrationService.acceptRegistration(registration);
+            enqueue(saved.getId(), partition, permit);
+            return saved.getId();
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+    }
+
+    // trang thai ticket: dang cho / dang xu ly / xong (doc tu database) / loi
+    public Map<String, Object> getStatus(Long ticketId) {
+        Ticket ticket = tickets.get(ticketId);
+        PatientRegistration registration = registrationRepository.findById(ticketId).orElse(null);
+        if (registration == null && ticket == null) {
+            return null;
+        }
+
+        Map<String, Object> status = new HashMap<>();
+        status.put("ticketId", ticketId);
+        if (ticket != null) {
+            status.put("state", ticket.state);
+            status.put("partition", ticket.partition);
+            status.put("acceptedAt", ticket.acceptedAt);
+            if (ticket.message != null) {
+                status.put("message", ticket.message);
+            }
+        } else {
+            status.put("state", "PENDING".equals(registration.getStatus()) ? QUEUED : DONE);
+        }
+
+        if (registration != null) {
+            status.put("status", registration.getStatus());
+            status.put("registrationNumber", registration.getRegistrationNumber());
+            status.put("doctorId", registration.getDoctorId());
+            status.put("assignedSession", registration.getAssignedSession());
+            status.put("queueNumber", registration.getQueueNumber());
+        }
+        return status;
+    }
+
+    // so don dang cho theo tung phan vung
+    public Map<String, Object> getQueueStats() {
+        Map<String, Object> stats = new HashMap<>();
+        int[] depths = new int[partitionCount];
+        int total = 0;
+        for (int i = 0; i < partitionCount; i++) {
+            depths[i] = queueCapacity - permits[i].availablePermits();
+            total += depths[i];
+        }
+        stats.put("partitions", partitionCount);
+        stats.put("capacityPerPartition", queueCapacity);
+        stats.put("depths", depths);
+        stats.put("total", total);
+        return stats;
+    }
+
+    // dua lai cac don PENDING bi bo lai vao hang doi (sau khi khoi dong lai hoac hang doi day)
+    @Scheduled(fixedDelayString = "${app.intake.sweep-interval-ms:60000}")
+    public void sweepPending() {
+        // ticket loi giu lai 10 phut de client doc duoc thong bao, sau do cho phep thu lai
+        LocalDateTime failedBefore = LocalDateTime.now().minusMinutes(10);
+        tickets.values().removeIf(t -> FAILED.equals(t.state) && t.acceptedAt.isBefore(failedBefore));
+
+        lockService.runIfLeader("intake-sweep", this::requeueStalePending);
+    }
+
+    // don PENDING qua 1 phut chua co worker nao giu
+    private void requeueStalePending() {
+        List<Long> pendingIds = registrationRepository.findStalePendingIds(
+            LocalDate.now(), LocalDateTime.now().minusMinutes(1));
+
+        int requeued = 0;
+        for (Long id : pendingIds) {
+            if (tickets.containsKey(id)) {
+                continue;
+            }
+            PatientRegistration registration = registrationRepository.findById(id).orElse(null);
+            if (registration == null) {
+                continue;
+            }
+            int partition = partitionOf(registration);
+            Semaphore permit = permits[partition];
+            if (!permit.tryAcquire()) {
+                continue;
+            }
+            try {
+                enqueue(id, partition, permit);
+                requeued++;
+            } catch (RuntimeException e) {
+                permit.release();
+            }
+        }
+
+        if (requeued > 0) {
+            logger.info("Đưa lại {} đơn PENDING vào hàng đợi intake", requeued);
+        }
+    }
+
+    private void enqueue(Long registrationId, int partition, Semaphore permit) {
+        Ticket ticket = new Ticket(partition);
+        tickets.put(registrationId, ticket);
+        try {
+            workers[partition].execute(() -> process(registrationId, ticket, permit));
+        } catch (RuntimeException e) {
+            tickets.remove(registrationId);
+            throw e;
+        }
+    }
+
+    private void process(Long registrationId, Ticket ticket, Semaphore permit) {
+        ticket.state = PROCESSING;
+        try {
+            PatientRegistration processed = registrationService.processPendingRegistration(registrationId);
+            tickets.remove(registrationId);
+            logger.debug("Intake xử lý xong đơn {}: {}", registrationId, processed.getStatus());
+        } catch (Exception e) {
+            ticket.state = FAILED;
+            ticket.message = e.getMessage();
+            logger.error("Intake lỗi xử lý đơn {}: {}", registrationId, e.getMessage());
+        } finally {
+            permit.release();
+        }
+    }
+
+    // cung bac si -> cung phan vung; chua chon bac si thi chia theo khoa
+    private int partitionOf(PatientRegistration registration) {
+        Object key = registration.getDoctorId() != null ? registration.getDoctorId() : registration.getDepartment();
+        return Math.floorMod(Objects.hashCode(key), partitionCount);
+    }
+
+    private static final class Ticket {
+        private final int partition;
+        private final LocalDateTime acceptedAt = LocalDateTime.now();
+        private volatile String state = QUEUED;
+        private volatile String message;
+
+        private Ticket(int partition) {
+            this.partition = partition;
+        }
+    }
+}
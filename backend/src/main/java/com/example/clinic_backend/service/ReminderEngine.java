@@ -0,0 +1,198 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import com.google.common.util.concurrent.RateLimiter;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Gui email nhac lich song song voi toc do gioi han.
+// - moi worker giu 1 ket noi SMTP suot luot gui (khong mo session moi cho tung email)
+// - token bucket chung cho moi worker: tong so email/giay khong vuot cau hinh
+// - co reminderSent cap nhat theo lo bang 1 cau UPDATE ... WHERE id IN (...)
+// - moi lan gui qua circuit breaker "smtp" (ExternalCallGuard): SMTP loi lien tiep thi bo qua nhanh, lan sau gui lai
+@Service
+public class ReminderEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReminderEngine.class);
+
+    private final JavaMailSender mailSender;
+    private final PatientRegistrationRepository registrationRepository;
+    private final ExternalCallGuard externalCallGuard;
+    private final TransactionTemplate flushTransaction;
+    private final int connections;
+    private final int flushSize;
+    private final RateLimiter rateLimiter;
+    private final ExecutorService workers;
+
+    public ReminderEngine(JavaMailSender mailSender,
+                          PatientRegistrationRepository registrationRepository,
+                          ExternalCallGuard externalCallGuard,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${app.reminders.connections:4}") int connections,
+                          @Value("${app.reminders.rate-per-second:5}") double ratePerSecond,
+                          @Value("${app.reminders.flush-size:100}") int flushSize) {
+        this.mailSender = mailSender;
+        this.registrationRepository = registrationRepository;
+        this.externalCallGuard = externalCallGuard;
+        this.flushTransaction = new TransactionTemplate(transactionManager);
+        this.flushTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.connections = Math.max(1, connections);
+        this.flushSize = Math.max(1, flushSize);
+        this.rateLimiter = RateLimiter.create(ratePerSecond > 0 ? ratePerSecond : 5);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(this.connections,
+            r -> new Thread(r, "reminder-smtp-" + threadIndex.getAndIncrement()));
+    }
+
+    @PreDestroy
+    public void stop() {
+        workers.shutdownNow();
+    }
+
+    // gui nhac lich cho danh sach lich hen; messageFactory tra ve null neu khong gui duoc (vd. thieu email)
+    public Map<String, Object> send(List<PatientRegistration> appointments,
+                                    Function<PatientRegistration, MimeMessage> messageFactory) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        Queue<PatientRegistration> queue = new ConcurrentLinkedQueue<>(appointments);
+        AtomicInteger sent = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        int workerCount = Math.min(connections, Math.max(1, appointments.size()));
+        List<Callable<Void>> tasks = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            tasks.add(() -> {
+                runWorker(queue, messageFactory, sent, failed);
+                return null;
+            });
+        }
+        for (Future<Void> future : workers.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                logger.error("Lỗi worker gửi nhắc lịch: {}", e.getMessage());
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("total", appointments.size());
+        result.put("sent", sent.get());
+        result.put("failed", failed.get());
+        result.put("durationMs", System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private void runWorker(Queue<PatientRegistration> queue, Function<PatientRegistration, MimeMessage> messageFactory,
+                           AtomicInteger sent, AtomicInteger failed) {
+        Transport transport = null;
+        List<Long> sentIds = new ArrayList<>();
+        try {
+            PatientRegistration appointment;
+            while (!Thread.currentThread().isInterrupted() && (appointment = queue.poll()) != null) {
+                MimeMessage message;
+                try {
+                    message = messageFactory.apply(appointment);
+                } catch (Exception e) {
+                    logger.error("Lỗi tạo email nhắc lịch cho đơn {}: {}", appointment.getId(), e.getMessage());
+                    message = null;
+                }
+                if (message == null) {
+                    failed.incrementAndGet();
+                    continue;
+                }
+
+                rateLimiter.acquire();
+                try {
+                    // worker da la pool rieng co gioi han: chi can breaker, timeout do socket SMTP
+                    Transport current = transport;
+                    MimeMessage outgoing = message;
+                    transport = externalCallGuard.callInline(ExternalCallGuard.SMTP, () -> deliver(current, outgoing));
+                    sentIds.add(appointment.getId());
+                    sent.incrementAndGet();
+                    logger.debug("Đã gửi email nhắc lịch cho: {}", appointment.getEmail());
+                } catch (Exception e) {
+                    // ket noi co the da hong: dong lai, email sau mo ket noi moi
+                    failed.incrementAndGet();
+                    logger.error("Lỗi gửi email nhắc lịch cho đơn {}: {}", appointment.getId(), e.getMessage());
+                    close(transport);
+                    transport = null;
+                }
+
+                if (sentIds.size() >= flushSize) {
+                    flush(sentIds);
+                }
+            }
+        } finally {
+            flush(sentIds);
+            close(transport);
+        }
+    }
+
+    // gui qua ket noi dang giu; chua co ket noi thi mo moi
+    private Transport deliver(Transport transport, MimeMessage message) throws MessagingException {
+        if (!(mailSender instanceof JavaMailSenderImpl)) {
+            mailSender.send(message);
+            return null;
+        }
+        JavaMailSenderImpl sender = (JavaMailSenderImpl) mailSender;
+        if (transport == null || !transport.isConnected()) {
+            close(transport);
+            transport = sender.getSession().getTransport(sender.getProtocol() != null ? sender.getProtocol() : "smtp");
+            transport.connect(sender.getHost(), sender.getPort(), sender.getUsername(), sender.getPassword());
+        }
+        message.saveChanges();
+        transport.sendMessage(message, message.getAllRecipients());
+        return transport;
+    }
+
+    // danh dau da gui theo lo; loi thi lan sau gui lai (giong cach cu)
+    private void flush(List<Long> sentIds) {
+        if (sentIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(sentIds);
+        sentIds.clear();
+        try {
+            flushTransaction.executeWithoutResult(status ->
+                registrationRepository.markRemindersSent(ids, LocalDateTime.now()));
+        } catch (Exception e) {
+            logger.error("Lỗi cập nhật trạng thái reminder cho {} đơn: {}", ids.size(), e.getMessage());
+        }
+    }
+
+    private static void close(Transport transport) {
+        if (transport == null) {
+            return;
+        }
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            logger.debug("Lỗi đóng kết nối SMTP: {}", e.getMessage());
+        }
+    }
+}
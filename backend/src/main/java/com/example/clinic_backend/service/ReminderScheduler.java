@@ -0,0 +1,173 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.dto.ReminderCandidateDTO;
+import com.example.clinic_backend.event.RegistrationStatusChangedEvent;
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+
+// Hen gio gui email nhac lich bang banh xe thoi gian trong bo nho.
+// - nap lich hen can nhac 1 lan/ngay (va khi khoi dong) bang projection nhe
+// - duyet / huy don thi cap nhat banh xe theo su kien, khong query lai
+// - moi phut chi xoay banh xe; chi khi co lich den han moi doc database va gui
+// - nhieu node: chi node giu lease "reminders" (SchedulerLockService) moi xoay banh xe va gui
+@Service
+public class ReminderScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReminderScheduler.class);
+
+    private static final String APPROVED = "APPROVED";
+    private static final LocalTime DEFAULT_START = LocalTime.of(7, 0);
+    private static final long RETRY_MINUTES = 15;
+    private static final String LOCK = "reminders";
+
+    private final PatientRegistrationRepository registrationRepository;
+    private final EmailService emailService;
+    private final SchedulerLockService lockService;
+    private final long leadHours;
+    private final ReminderTimingWheel wheel;
+
+    // fencing token cua lease dang giu, -1 = chua giu
+    private volatile long leaderToken = -1;
+
+    public ReminderScheduler(PatientRegistrationRepository registrationRepository,
+                             EmailService emailService,
+                             SchedulerLockService lockService,
+                             @Value("${app.reminders.lead-hours:24}") long leadHours) {
+        this.registrationRepository = registrationRepository;
+        this.emailService = emailService;
+        this.lockService = lockService;
+        this.leadHours = Math.max(1, leadHours);
+        this.wheel = new ReminderTimingWheel(toMinute(LocalDateTime.now()));
+    }
+
+    // nap lai lich can nhac: khi khoi dong, khi nhan lease va moi gio (dong bo voi don duyet o node khac)
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "0 1 * * * *")
+    public void reload() {
+        LocalDate today = LocalDate.now();
+        LocalDate horizon = today.plusDays(leadHours / 24 + 1);
+        List<ReminderCandidateDTO> candidates = registrationRepository.findReminderCandidates(today, horizon);
+        int scheduled = 0;
+        for (ReminderCandidateDTO candidate : candidates) {
+            if (schedule(candidate.getId(), candidate.getAppointmentDate(), candidate.getAssignedSession())) {
+                scheduled++;
+            }
+        }
+        logger.info("Nhắc lịch: nạp {} lịch hẹn ({} → {}), đang hẹn giờ {}", scheduled, today, horizon, wheel.size());
+    }
+
+    // xoay banh xe; khong co lich den han thi khong truy cap database
+    @Scheduled(fixedRate = 60000)
+    public void tick() {
+        OptionalLong token = lockService.tryAcquire(LOCK);
+        if (token.isEmpty()) {
+            // node khac dang gui nhac lich
+            leaderToken = -1;
+            return;
+        }
+        if (token.getAsLong() != leaderToken) {
+            // vua nhan lease: node truoc co the da chet giua chung, nap lai cho du
+            leaderToken = token.getAsLong();
+            reload();
+        }
+
+        long nowMinute = toMinute(LocalDateTime.now());
+        List<Long> dueIds = wheel.advanceTo(nowMinute);
+        if (dueIds.isEmpty()) {
+            return;
+        }
+
+        LocalDate today = LocalDate.now();
+        List<PatientRegistration> appointments = new ArrayList<>();
+        for (PatientRegistration registration : registrationRepository.findAllById(dueIds)) {
+            // trang thai co the da doi o node khac
+            if (APPROVED.equals(registration.getStatus()) && !Boolean.TRUE.equals(registration.getReminderSent())
+                    && registration.getAppointmentDate() != null && !registration.getAppointmentDate().isBefore(today)) {
+                appointments.add(registration);
+            }
+        }
+
+        // fencing: lease co the da het han trong luc doc database
+        if (!lockService.isValid(LOCK, leaderToken)) {
+            logger.warn("Nhắc lịch: mất lease {}, để lại {} lịch hẹn", LOCK, dueIds.size());
+            leaderToken = -1;
+            for (Long id : dueIds) {
+                wheel.schedule(id, nowMinute);
+            }
+            return;
+        }
+        logger.info("Nhắc lịch: {} lịch hẹn đến hạn, gửi {}", dueIds.size(), appointments.size());
+        emailService.sendAppointmentReminders(appointments);
+
+        // kiem tra lai sau 15 phut: don gui loi (chua danh dau reminderSent) se duoc gui lai
+        long retryMinute = toMinute(LocalDateTime.now().plusMinutes(RETRY_MINUTES));
+        for (PatientRegistration appointment : appointments) {
+            wheel.schedule(appointment.getId(), retryMinute);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRegistrationStatusChanged(RegistrationStatusChangedEvent event) {
+        if (APPROVED.equals(event.getNewStatus())) {
+            schedule(event.getRegistrationId(), event.getAppointmentDate(), event.getAssignedSession());
+        } else if (APPROVED.equals(event.getPreviousStatus())) {
+            wheel.cancel(event.getRegistrationId());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("scheduled", wheel.size());
+        stats.put("leadHours", leadHours);
+        stats.put("leaderToken", leaderToken);
+        stats.put("lock", lockService.getStats());
+        return stats;
+    }
+
+    // gio nhac = gio bat dau khung gio - leadHours; lich da qua thi bo
+    private boolean schedule(Long registrationId, LocalDate appointmentDate, String assignedSession) {
+        if (registrationId == null || appointmentDate == null) {
+            return false;
+        }
+        LocalDateTime start = appointmentDate.atTime(startOf(assignedSession));
+        if (start.isBefore(LocalDateTime.now())) {
+            return false;
+        }
+        wheel.schedule(registrationId, toMinute(start.minusHours(leadHours)));
+        return true;
+    }
+
+    // "07:00-08:00" -> 07:00
+    private static LocalTime startOf(String assignedSession) {
+        if (assignedSession == null || assignedSession.length() < 5) {
+            return DEFAULT_START;
+        }
+        try {
+            return LocalTime.parse(assignedSession.substring(0, 5));
+        } catch (Exception e) {
+            return DEFAULT_START;
+        }
+    }
+
+    private static long toMinute(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toEpochSecond() / 60;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.clinic_backend.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Banh xe thoi gian nhieu tang, don vi la phut (epoch minute).
+// Tang 0: 60 o x 1 phut, tang 1: 24 o x 1 gio, tang 2: 32 o x 1 ngay, xa hon nua thi de trong overflow.
+// Dau moi gio / ngay, o tuong ung duoc do xuong tang duoi; o phut hien tai thi den han.
+// Huy / doi gio kieu luoi: chi sua dueAt, ban cu trong o bi bo qua khi toi luot.
+final class ReminderTimingWheel {
+
+    private static final int[] SIZES = {60, 24, 32};
+    private static final long[] SPANS = {1, 60, 1440};
+
+    private final List<List<Set<Long>>> levels = new ArrayList<>();
+    private final TreeMap<Long, Set<Long>> overflow = new TreeMap<>();
+    private final Map<Long, Long> dueAt = new HashMap<>();
+    private long currentMinute;
+
+    ReminderTimingWheel(long startMinute) {
+        this.currentMinute = startMinute;
+        for (int size : SIZES) {
+            List<Set<Long>> buckets = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                buckets.add(new HashSet<>());
+            }
+            levels.add(buckets);
+        }
+    }
+
+    // hen gio (da qua gio thi den han o lan tick ke tiep)
+    synchronized void schedule(Long id, long dueMinute) {
+        long due = Math.max(dueMinute, currentMinute);
+        dueAt.put(id, due);
+        place(id, due);
+    }
+
+    synchronized void cancel(Long id) {
+        dueAt.remove(id);
+    }
+
+    synchronized int size() {
+        return dueAt.size();
+    }
+
+    synchronized long currentMinute() {
+        return currentMinute;
+    }
+
+    // chay den nowMinute (tinh ca nowMinute), tra ve cac id den han
+    synchronized List<Long> advanceTo(long nowMinute) {
+        List<Long> fired = new ArrayList<>();
+        while (currentMinute <= nowMinute) {
+            if (currentMinute % SPANS[2] == 0) {
+                cascade(2);
+                pullOverflow();
+            }
+            if (currentMinute % SPANS[1] == 0) {
+                cascade(1);
+            }
+
+            Set<Long> bucket = levels.get(0).get((int) (currentMinute % SIZES[0]));
+            for (Long id : bucket) {
+                Long due = dueAt.get(id);
+                if (due != null && due <= currentMinute) {
+                    dueAt.remove(id);
+                    fired.add(id);
+                }
+            }
+            bucket.clear();
+            currentMinute++;
+        }
+        return fired;
+    }
+
+    private void place(Long id, long due) {
+        for (int level = 0; level < SIZES.length; level++) {
+            if (due / SPANS[level] - currentMinute / SPANS[level] < SIZES[level]) {
+                levels.get(level).get((int) ((due / SPANS[level]) % SIZES[level])).add(id);
+                return;
+            }
+        }
+        overflow.computeIfAbsent(due, k -> new HashSet<>()).add(id);
+    }
+
+    // dau gio / ngay: do o cua khoang vua bat dau xuong tang duoi
+    private void cascade(int level) {
+        Set<Long> bucket = levels.get(level).get((int) ((currentMinute / SPANS[level]) % SIZES[level]));
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(bucket);
+        bucket.clear();
+        for (Long id : ids) {
+            Long due = dueAt.get(id);
+            if (due != null) {
+                place(id, due);
+            }
+        }
+    }
+
+    private void pullOverflow() {
+        Iterator<Map.Entry<Long, Set<Long>>> it = overflow.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Set<Long>> entry = it.next();
+            if (entry.getKey() / SPANS[2] - currentMinute / SPANS[2] >= SIZES[2]) {
+                break;
+            }
+            it.remove();
+            for (Long id : entry.getValue()) {
+                Long due = dueAt.get(id);
+                if (due != null) {
+                    place(id, due);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.repository.SchedulerLockRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Lease trong bang scheduler_locks de job @Scheduled chi chay tren 1 node cua cum.
+// - node nao nhan duoc lease thi chay job; node giu lease gia han moi lan chay va dinh ky (heartbeat)
+// - node chet: lease tu het han (app.scheduler-lock.lease-ms), node khac nhan voi fencing token moi
+// - job kiem tra isValid(token) truoc khi ghi / gui de node cu mat lease khong chay tiep
+// Thoi gian lease tinh theo gio database nen khong phu thuoc dong ho tung node.
+@Service
+public class SchedulerLockService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchedulerLockService.class);
+
+    private final SchedulerLockRepository lockRepository;
+    private final TransactionTemplate lockTransaction;
+    private final long leaseMs;
+    private final String holder;
+
+    // lease node nay dang giu: ten lock -> fencing token
+    private final ConcurrentHashMap<String, Long> held = new ConcurrentHashMap<>();
+
+    public SchedulerLockService(SchedulerLockRepository lockRepository,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${app.scheduler-lock.lease-ms:120000}") long leaseMs) {
+        this.lockRepository = lockRepository;
+        // nhan lease trong transaction rieng, commit ngay
+        this.lockTransaction = new TransactionTemplate(transactionManager);
+        this.lockTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.leaseMs = Math.max(1000, leaseMs);
+        this.holder = hostName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    // nhan hoac gia han lease; tra ve fencing token, rong neu node khac dang giu
+    public OptionalLong tryAcquire(String lockName) {
+        Long token;
+        try {
+            token = lockTransaction.execute(status -> {
+                int updated = lockRepository.acquire(lockName, holder, leaseMs);
+                if (updated == 0 && lockRepository.insertIfAbsent(lockName) > 0) {
+                    // lock moi: tao dong roi nhan
+                    updated = lockRepository.acquire(lockName, holder, leaseMs);
+                }
+                return updated > 0 ? lockRepository.findToken(lockName, holder).orElse(null) : null;
+            });
+        } catch (Exception e) {
+            // khong ket noi duoc database: coi nhu khong giu lease
+            logger.error("Lỗi nhận lease {}: {}", lockName, e.getMessage());
+            token = null;
+        }
+
+        Long previous = token != null ? held.put(lockName, token) : held.remove(lockName);
+        if (token != null && !token.equals(previous)) {
+            logger.info("Nhận lease {} (token {}) trên node {}", lockName, token, holder);
+        } else if (token == null && previous != null) {
+            logger.warn("Mất lease {} (token {}) trên node {}", lockName, previous, holder);
+        }
+        return token != null ? OptionalLong.of(token) : OptionalLong.empty();
+    }
+
+    // chay job neu nhan duoc lease; false neu node khac dang chay
+    public boolean runIfLeader(String lockName, Runnable job) {
+        if (tryAcquire(lockName).isEmpty()) {
+            return false;
+        }
+        job.run();
+        return true;
+    }
+
+    // fencing: token con hieu luc (chua bi node khac nhan, lease chua het han)
+    public boolean isValid(String lockName, long token) {
+        try {
+            return lockRepository.countValid(lockName, holder, token) > 0;
+        } catch (Exception e) {
+            logger.error("Lỗi kiểm tra lease {}: {}", lockName, e.getMessage());
+            return false;
+        }
+    }
+
+    // gia han cac lease dang giu giua cac lan chay job (job chay thua hon lease)
+    @Scheduled(fixedDelayString = "${app.scheduler-lock.renew-interval-ms:30000}")
+    public void renewHeld() {
+        for (String lockName : held.keySet()) {
+            tryAcquire(lockName);
+        }
+    }
+
+    @PreDestroy
+    public void releaseAll() {
+        for (String lockName : held.keySet()) {
+            try {
+                lockTransaction.executeWithoutResult(status -> lockRepository.release(lockName, holder));
+            } catch (Exception e) {
+                logger.warn("Không trả được lease {}: {}", lockName, e.getMessage());
+            }
+        }
+        held.clear();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("holder", holder);
+        stats.put("leaseMs", leaseMs);
+        stats.put("held", new HashMap<>(held));
+        return stats;
+    }
+
+    private static String hostName() {
+        try {
+            String name = InetAddress.getLocalHost().getHostName();
+            return name.length() > 100 ? name.substring(0, 100) : name;
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.clinic_backend.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+// 1 node: gui thang vao simple broker trong process
+@Service
+@ConditionalOnProperty(name = "app.broker.mode", havingValue = "simple", matchIfMissing = true)
+public class SimpleBrokerFanout implements MessageFanout {
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    public SimpleBrokerFanout(SimpMessagingTemplate messagingTemplate) {
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    @Override
+    public void convertAndSend(String destination, Object payload) {
+        messagingTemplate.convertAndSend(destination, payload);
+    }
+
+    @Override
+    public void convertAndSendToUser(String user, String destination, Object payload) {
+        messagingTemplate.convertAndSendToUser(user, destination, payload);
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.model.Doctor;
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.DoctorRepository;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Phan cong tu dong (bac si, khung gio) cho don dang ky theo khoa.
+// Bang chiem cho cua ca khoa trong mot ngay duoc dung tu so cai slot trong bo nho
+// (nap bang 1 query neu chua co), sau do chinh sach chon o tot nhat trong mot lan duyet.
+// Phan cong hang loat: moi don duyet trong transaction rieng (khoa bo dem slot chi giu trong 1 don,
+// don loi rollback rieng va vao danh sach bo qua).
+@Service
+public class SlotAssignmentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlotAssignmentService.class);
+
+    private static final String NEEDS_MANUAL_REVIEW = "NEEDS_MANUAL_REVIEW";
+
+    // cac khung gio co dinh
+    private static final String[] TIME_SLOTS = {
+        "07:00-08:00", "08:00-09:00", "09:00-10:00", "10:00-11:00",
+        "11:00-12:00", "13:00-14:00", "14:00-15:00", "15:00-16:00", "16:00-17:00"
+    };
+
+    private final PatientRegistrationRepository registrationRepository;
+    private final DoctorRepository doctorRepository;
+    private final SlotCapacityLedger slotCapacityLedger;
+    private final AutoApprovalService autoApprovalService;
+    private final TransactionTemplate itemTransaction;
+
+    // con tro xoay vong theo khoa
+    private final ConcurrentHashMap<String, AtomicInteger> roundRobinCursors = new ConcurrentHashMap<>();
+
+    public SlotAssignmentService(PatientRegistrationRepository registrationRepository,
+                                 DoctorRepository doctorRepository,
+                                 SlotCapacityLedger slotCapacityLedger,
+                                 AutoApprovalService autoApprovalService,
+                                 PlatformTransactionManager transactionManager) {
+        this.registrationRepository = registrationRepository;
+        this.doctorRepository = doctorRepository;
+        this.slotCapacityLedger = slotCapacityLedger;
+        this.autoApprovalService = autoApprovalService;
+        // moi don 1 transaction ngan, commit ngay
+        this.itemTransaction = new TransactionTemplate(transactionManager);
+        this.itemTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // phan cong va duyet mot don, tra ve null neu khong con khung gio trong
+    @Transactional
+    public PatientRegistration assignAndApprove(PatientRegistration registration, List<Doctor> doctors,
+                                                AssignmentPolicy policy) {
+        if (doctors.isEmpty() || registration.getAppointmentDate() == null) {
+            return null;
+        }
+
+        Occupancy occupancy = buildOccupancy(doctors, registration.getAppointmentDate());
+        int[] cell = policy.pick(occupancy, nextOffset(policy, registration.getDepartment()));
+        if (cell == null) {
+            return null;
+        }
+
+        PatientRegistration saved = approve(registration, occupancy, cell, policy);
+        if ("APPROVED".equals(saved.getStatus())) {
+            occupancy.book(cell[0], cell[1]);
+        }
+        return saved;
+    }
+
+    // phan cong toan bo don NEEDS_MANUAL_REVIEW, moi don 1 transaction
+    // (khong chay trong transaction cua nguoi goi: transaction ngoai se giu khoa cua moi don toi cuoi lo)
+    public Map<String, Object> assignBacklog(AssignmentPolicy policy) {
+        List<PatientRegistration> backlog = registrationRepository.findByStatusOrderByCreatedAtAsc(NEEDS_MANUAL_REVIEW);
+        LocalDate today = LocalDate.now();
+
+        // nhom theo (khoa, ngay), giu thu tu don cu truoc
+        Map<String, List<PatientRegistration>> groups = new LinkedHashMap<>();
+        List<Long> skipped = new ArrayList<>();
+        for (PatientRegistration registration : backlog) {
+            if (registration.getDepartment() == null || registration.getAppointmentDate() == null
+                    || registration.getAppointmentDate().isBefore(today)) {
+                skipped.add(registration.getId());
+                continue;
+            }
+            String key = registration.getDepartment() + "|" + registration.getAppointmentDate();
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(registration);
+        }
+
+        Map<String, List<Doctor>> doctorsByDepartment = new HashMap<>();
+        List<Map<String, Object>> assignments = new ArrayList<>();
+
+        for (List<PatientRegistration> group : groups.values()) {
+            PatientRegistration first = group.get(0);
+            List<Doctor> doctors = doctorsByDepartment.computeIfAbsent(first.getDepartment(),
+                doctorRepository::findByDepartmentNameContaining);
+            if (doctors.isEmpty()) {
+                group.forEach(r -> skipped.add(r.getId()));
+                continue;
+            }
+
+            Occupancy occupancy = buildOccupancy(doctors, first.getAppointmentDate());
+            for (PatientRegistration registration : group) {
+                int[] cell = policy.pick(occupancy, nextOffset(policy, registration.getDepartment()));
+                if (cell == null) {
+                    skipped.add(registration.getId());
+                    continue;
+                }
+
+                PatientRegistration saved;
+                try {
+                    saved = itemTransaction.execute(status -> approveQueued(registration.getId(), occupancy, cell, policy));
+                } catch (Exception e) {
+                    // transaction cua don da rollback, cac don khac khong anh huong
+                    logger.warn("Lỗi phân công đơn {}: {}", registration.getId(), e.getMessage());
+                    skipped.add(registration.getId());
+                    continue;
+                }
+                if (saved == null || !"APPROVED".equals(saved.getStatus())) {
+                    skipped.add(registration.getId());
+                    continue;
+                }
+                // chi tinh cho khi don da commit
+                occupancy.book(cell[0], cell[1]);
+
+                Map<String, Object> assignment = new HashMap<>();
+                assignment.put("registrationId", saved.getId());
+                assignment.put("doctorId", saved.getDoctorId());
+                assignment.put("timeSlot", saved.getAssignedSession());
+                assignment.put("queueNumber", saved.getQueueNumber());
+                assignments.add(assignment);
+            }
+        }
+
+        logger.info("Phân công hàng loạt ({}): {} đơn, duyệt {}, bỏ qua {}",
+            policy, backlog.size(), assignments.size(), skipped.size());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("policy", policy.name());
+        result.put("total", backlog.size());
+        result.put("assigned", assignments.size());
+        result.put("assignments", assignments);
+        result.put("skipped", skipped);
+        return result;
+    }
+
+    // doc lai don trong transaction cua no; null neu don da duoc xu ly o noi khac
+    private PatientRegistration approveQueued(Long registrationId, Occupancy occupancy, int[] cell,
+                                              AssignmentPolicy policy) {
+        PatientRegistration registration = registrationRepository.findById(registrationId).orElse(null);
+        if (registration == null || !NEEDS_MANUAL_REVIEW.equals(registration.getStatus())) {
+            return null;
+        }
+        return approve(registration, occupancy, cell, policy);
+    }
+
+    private PatientRegistration approve(PatientRegistration registration, Occupancy occupancy, int[] cell,
+                                        AssignmentPolicy policy) {
+        Doctor doctor = occupancy.doctors.get(cell[0]);
+        String timeSlot = TIME_SLOTS[cell[1]];
+
+        logger.debug("Phân công đơn {} ({}): bác sĩ {}, khung giờ {}",
+            registration.getId(), policy, doctor.getId(), timeSlot);
+
+        registration.setDoctorId(doctor.getId());
+        registration.setAssignedSession(timeSlot);
+
+        return autoApprovalService.autoApproveRegistration(registration, timeSlot);
+    }
+
+    private int nextOffset(AssignmentPolicy policy, String department) {
+        if (policy != AssignmentPolicy.ROUND_ROBIN) {
+            return 0;
+        }
+        String key = department != null ? department : "";
+        return roundRobinCursors.computeIfAbsent(key, k -> new AtomicInteger()).getAndIncrement();
+    }
+
+    private Occupancy buildOccupancy(List<Doctor> doctors, LocalDate appointmentDate) {
+        List<Long> doctorIds = new ArrayList<>(doctors.size());
+        for (Doctor doctor : doctors) {
+            doctorIds.add(doctor.getId());
+        }
+        slotCapacityLedger.preload(doctorIds, appointmentDate);
+
+        Occupancy occupancy = new Occupancy(doctors, TIME_SLOTS.length);
+        for (int d = 0; d < doctors.size(); d++) {
+            Long doctorId = doctors.get(d).getId();
+            for (int s = 0; s < TIME_SLOTS.length; s++) {
+                occupancy.approved[d][s] = slotCapacityLedger.getApprovedCount(doctorId, appointmentDate, TIME_SLOTS[s]);
+                occupancy.max[d][s] = slotCapacityLedger.getMaxPatients(doctorId, appointmentDate, TIME_SLOTS[s]);
+                occupancy.active[d][s] = slotCapacityLedger.isActive(doctorId, appointmentDate, TIME_SLOTS[s]);
+                occupancy.load[d] += occupancy.approved[d][s];
+            }
+        }
+        return occupancy;
+    }
+
+    // bang chiem cho bac si x khung gio cua mot khoa trong mot ngay
+    static final class Occupancy {
+        private final List<Doctor> doctors;
+        private final int[][] approved;
+        private final int[][] max;
+        private final boolean[][] active;
+        private final int[] load;
+
+        private Occupancy(List<Doctor> doctors, int slotCount) {
+            this.doctors = doctors;
+            this.approved = new int[doctors.size()][slotCount];
+            this.max = new int[doctors.size()][slotCount];
+            this.active = new boolean[doctors.size()][slotCount];
+            this.load = new int[doctors.size()];
+        }
+
+        int doctorCount() {
+            return load.length;
+        }
+
+        int slotCount() {
+            return TIME_SLOTS.length;
+        }
+
+        int load(int d) {
+            return load[d];
+        }
+
+        boolean isFree(int d, int s) {
+            return active[d][s] && approved[d][s] < max[d][s];
+        }
+
+        int firstFreeSlot(int d) {
+            for (int s = 0; s < TIME_SLOTS.length; s++) {
+                if (isFree(d, s)) {
+                    return s;
+                }
+            }
+            return -1;
+        }
+
+        void book(int d, int s) {
+            approved[d][s]++;
+            load[d]++;
+        }
+    }
+}
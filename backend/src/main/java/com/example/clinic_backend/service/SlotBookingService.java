@@ -0,0 +1,167 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.event.RegistrationStatusChangedEvent;
+import com.example.clinic_backend.repository.DoctorSlotRepository;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Giu cho trong slot bang UPDATE co dieu kien tren occupied_count cua doctor_slots:
+// UPDATE ... SET occupied_count = occupied_count + 1 WHERE ... AND occupied_count < max_patients.
+// - chay trong transaction dat lich (cung ket noi): khong muon them ket noi tu pool, rollback thi cho tu duoc tra
+// - dong slot bi khoa tu luc giu toi khi transaction dat lich ket thuc: dat lich cung slot xep hang tren dong do
+// - 0 dong: doc lai co khoa (ban moi nhat) de biet het cho / slot bi khoa / chua co slot / chua co bo dem,
+//   tao slot hoac bo dem roi thu lai; khong gioi han so lan, moi vong deu doi trang thai hoac ket thuc
+// Doi chieu dinh ky (1 node) dat lai occupied_count = so don APPROVED cho slot khong co thay doi gan day
+// (sua tay trong database, don doi trang thai khong qua JPA).
+// Bat bang app.booking.mode=optimistic; mac dinh (counter) giu cach cap so cu.
+// Che do counter giu cho trong so cai bo nho cua tung node nen chi dung cho 1 node:
+// nhieu node (app.broker.mode=database) phai dung optimistic, cau hinh counter + database khong cho khoi dong.
+@Service
+public class SlotBookingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlotBookingService.class);
+
+    private static final String APPROVED = "APPROVED";
+    private static final String RECONCILE_LOCK = "slot-occupancy-reconcile";
+    // chi sua slot khong doi trong khoang nay: slot vua co dat lich / huy khong bi dong vao
+    private static final int RECONCILE_QUIET_SECONDS = 600;
+
+    private final DoctorSlotRepository doctorSlotRepository;
+    private final PatientRegistrationRepository registrationRepository;
+    private final SchedulerLockService schedulerLockService;
+    private final TransactionTemplate bookingTransaction;
+    private final boolean optimistic;
+
+    public SlotBookingService(DoctorSlotRepository doctorSlotRepository,
+                              PatientRegistrationRepository registrationRepository,
+                              SchedulerLockService schedulerLockService,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${app.booking.mode:counter}") String mode,
+                              @Value("${app.broker.mode:simple}") String brokerMode) {
+        this.doctorSlotRepository = doctorSlotRepository;
+        this.registrationRepository = registrationRepository;
+        this.schedulerLockService = schedulerLockService;
+        // tham gia transaction dang chay (PROPAGATION_REQUIRED), khong co thi tu mo
+        this.bookingTransaction = new TransactionTemplate(transactionManager);
+        this.optimistic = "optimistic".equalsIgnoreCase(mode != null ? mode.trim() : null);
+        if (!optimistic && "database".equalsIgnoreCase(brokerMode != null ? brokerMode.trim() : null)) {
+            // moi node mot so cai rieng: cac node cung duyet cho cuoi cua slot -> vuot max_patients
+            throw new IllegalStateException("app.booking.mode=counter chỉ dùng cho 1 node; "
+                + "chạy nhiều node (app.broker.mode=database) cần app.booking.mode=optimistic");
+        }
+    }
+
+    public boolean isOptimistic() {
+        return optimistic;
+    }
+
+    // giu 1 cho; false neu slot da day / bi khoa
+    // goi trong transaction dat lich: cho commit / rollback cung don
+    public boolean reserveSeat(Long doctorId, LocalDate appointmentDate, String timeSlot) {
+        String date = appointmentDate.toString();
+        Boolean reserved = bookingTransaction.execute(status -> reserve(doctorId, appointmentDate, date, timeSlot));
+        return Boolean.TRUE.equals(reserved);
+    }
+
+    // bo cho vua giu trong transaction hien tai (dat lich loi nhung transaction van commit, vd. chuyen manual review)
+    public void cancelReservation(Long doctorId, LocalDate appointmentDate, String timeSlot) {
+        releaseSeat(doctorId, appointmentDate, timeSlot);
+    }
+
+    // tra 1 cho (don da duyet bi huy / tu choi), trong transaction dang chay
+    public void releaseSeat(Long doctorId, LocalDate appointmentDate, String timeSlot) {
+        bookingTransaction.executeWithoutResult(status ->
+            doctorSlotRepository.decrementOccupied(doctorId, appointmentDate.toString(), timeSlot));
+    }
+
+    // dat lai occupied_count tu so don APPROVED cho slot tu hom nay tro di
+    @Scheduled(fixedDelayString = "${app.booking.reconcile-interval-ms:600000}",
+               initialDelayString = "${app.booking.reconcile-interval-ms:600000}")
+    public void reconcileOccupancy() {
+        if (!optimistic) {
+            return;
+        }
+        schedulerLockService.runIfLeader(RECONCILE_LOCK, () -> {
+            try {
+                Integer fixed = bookingTransaction.execute(status -> doctorSlotRepository.reconcileOccupied(
+                    LocalDate.now().toString(), null, RECONCILE_QUIET_SECONDS));
+                if (fixed != null && fixed > 0) {
+                    logger.warn("Đối chiếu occupied_count: sửa {} slot lệch với số đơn đã duyệt", fixed);
+                }
+            } catch (Exception e) {
+                logger.error("Lỗi đối chiếu occupied_count: {}", e.getMessage());
+            }
+        });
+    }
+
+    // don roi khoi APPROVED -> tra cho truoc khi transaction doi trang thai commit (cung ket noi, rollback thi giu nguyen)
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onRegistrationStatusChanged(RegistrationStatusChangedEvent event) {
+        if (!optimistic || !APPROVED.equals(event.getPreviousStatus()) || APPROVED.equals(event.getNewStatus())
+                || event.getDoctorId() == null || event.getAppointmentDate() == null
+                || event.getAssignedSession() == null) {
+            return;
+        }
+        try {
+            releaseSeat(event.getDoctorId(), event.getAppointmentDate(), event.getAssignedSession());
+        } catch (Exception e) {
+            logger.error("Lỗi trả chỗ slot cho đơn {}: {}", event.getRegistrationId(), e.getMessage());
+        }
+    }
+
+    // giu cho tren ket noi cua transaction hien tai
+    boolean reserve(Long doctorId, LocalDate appointmentDate, String date, String timeSlot) {
+        while (true) {
+            if (doctorSlotRepository.incrementOccupiedIfAvailable(doctorId, date, timeSlot) == 1) {
+                return true;
+            }
+
+            // khoa dong va doc ban moi nhat: tu day toi het transaction khong ai doi duoc slot
+            List<Object[]> rows = doctorSlotRepository.lockBookingState(doctorId, date, timeSlot);
+            if (rows.isEmpty()) {
+                // chua co slot: tao slot mac dinh voi so don da duyet hien tai (2 request cung tao thi bo qua)
+                doctorSlotRepository.insertSlotIfAbsent(doctorId, date, timeSlot, approvedCount(doctorId, appointmentDate, timeSlot));
+                continue;
+            }
+
+            Object[] row = rows.get(0);
+            Long id = ((Number) row[0]).longValue();
+            Integer occupied = row[1] != null ? ((Number) row[1]).intValue() : null;
+            int maxPatients = row[2] != null ? ((Number) row[2]).intValue() : 10;
+            boolean active = row[3] == null || toBoolean(row[3]);
+
+            if (!active || (occupied != null && occupied >= maxPatients)) {
+                return false;
+            }
+            if (occupied == null) {
+                // slot cu chua co bo dem: khoi tao 1 lan tu so don da duyet
+                doctorSlotRepository.initOccupied(id, approvedCount(doctorId, appointmentDate, timeSlot));
+            }
+            // con cho (vua duoc tra giua 2 cau lenh hoac vua khoi tao bo dem): thu lai
+        }
+    }
+
+    private int approvedCount(Long doctorId, LocalDate appointmentDate, String timeSlot) {
+        Integer count = registrationRepository.countByDoctorIdAndAppointmentDateAndAssignedSessionAndStatus(
+            doctorId, appointmentDate, timeSlot, APPROVED);
+        return count != null ? count : 0;
+    }
+
+    private static boolean toBoolean(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        return ((Number) value).intValue() != 0;
+    }
+}
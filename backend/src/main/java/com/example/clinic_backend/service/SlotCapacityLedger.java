@@ -0,0 +1,437 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.event.RegistrationStatusChangedEvent;
+import com.example.clinic_backend.event.SlotCapacityChangedEvent;
+import com.example.clinic_backend.model.DoctorSlot;
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.DoctorSlotRepository;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import com.google.common.util.concurrent.Striped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+// So cai suc chua slot trong bo nho: so don APPROVED va so benh nhan toi da
+// cho tung (bac si, ngay, khung gio). Kiem tra con slot chi doc bo nho thay vi COUNT(*).
+// - nap lazy theo (bac si, ngay): id cac don APPROVED cua tung khung gio
+// - cap nhat theo su kien duyet/huy/tu choi sau khi commit, theo id don nen nap lai / su kien lap lai khong dem trung
+// - duyet don: giu cho bang kiem tra va tang trong 1 buoc (tryReserve), transaction rollback thi tra cho
+// - doi chieu dinh ky voi database de sua sai lech
+@Service
+public class SlotCapacityLedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlotCapacityLedger.class);
+
+    private static final int DEFAULT_MAX_PATIENTS = 10;
+    private static final String APPROVED = "APPROVED";
+
+    private final PatientRegistrationRepository registrationRepository;
+    private final DoctorSlotRepository doctorSlotRepository;
+
+    private final ConcurrentHashMap<DayKey, DayLedger> days = new ConcurrentHashMap<>();
+
+    // khoa theo stripe de moi ngay chi nap tu database mot lan
+    private final Striped<Lock> seedLocks = Striped.lock(64);
+
+    // so thu tu thay doi: doi chieu bo qua slot co thay doi sau khi doc database
+    private final AtomicLong changes = new AtomicLong();
+
+    public SlotCapacityLedger(PatientRegistrationRepository registrationRepository,
+                              DoctorSlotRepository doctorSlotRepository) {
+        this.registrationRepository = registrationRepository;
+        this.doctorSlotRepository = doctorSlotRepository;
+    }
+
+    // kiem tra slot con cho khong (O(1) sau lan nap dau tien)
+    public boolean hasCapacity(Long doctorId, LocalDate appointmentDate, String timeSlot) {
+        if (doctorId == null || appointmentDate == null || timeSlot == null) {
+            return false;
+        }
+        SlotCounter counter = dayOf(doctorId, appointmentDate).slot(timeSlot);
+        return counter.active && counter.taken() < counter.maxPatients;
+    }
+
+    // giu 1 cho cho don trong transaction hien tai (kiem tra va tang nguyen tu, 2 don khong cung lot qua cho cuoi).
+    // transaction ket thuc thi tra cho; don da duyet duoc tinh theo id nen su kien sau commit khong cong them
+    public boolean tryReserve(PatientRegistration registration, String timeSlot) {
+        Long doctorId = registration.getDoctorId();
+        LocalDate appointmentDate = registration.getAppointmentDate();
+        if (doctorId == null || appointmentDate == null || timeSlot == null) {
+            return false;
+        }
+        SlotCounter counter = dayOf(doctorId, appointmentDate).slot(timeSlot);
+        if (!counter.tryHold(changes.incrementAndGet())) {
+            return false;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // ngoai transaction: chi kiem tra, khong giu cho
+            counter.release(null, changes.incrementAndGet());
+            return true;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                boolean approved = status == STATUS_COMMITTED && registration.getId() != null
+                        && APPROVED.equals(registration.getStatus())
+                        && timeSlot.equals(registration.getAssignedSession());
+                counter.release(approved ? registration.getId() : null, changes.incrementAndGet());
+            }
+        });
+        return true;
+    }
+
+    // so cho da dung: don da duyet + cho dang giu
+    public int getApprovedCount(Long doctorId, LocalDate appointmentDate, String timeSlot) {
+        return dayOf(doctorId, appointmentDate).slot(timeSlot).taken();
+    }
+
+    public int getMaxPatients(Long doctorId, LocalDate appointmentDate, String timeSlot) {
+        return dayOf(doctorId, appointmentDate).slot(timeSlot).maxPatients;
+    }
+
+    public boolean isActive(Long doctorId, LocalDate appointmentDate, String timeSlot) {
+        return dayOf(doctorId, appointmentDate).slot(timeSlot).active;
+    }
+
+    // nap truoc nhieu bac si cho mot ngay bang 1 query (dung cho phan cong theo khoa)
+    public void preload(Collection<Long> doctorIds, LocalDate appointmentDate) {
+        List<Long> missing = new ArrayList<>();
+        for (Long doctorId : doctorIds) {
+            if (doctorId != null && !days.containsKey(new DayKey(doctorId, appointmentDate))) {
+                missing.add(doctorId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        // giu khoa nap cua cac ngay (theo thu tu stripe, khong deadlock) de su kien den trong luc nap cho nap xong
+        List<DayKey> keys = new ArrayList<>();
+        for (Long doctorId : missing) {
+            keys.add(new DayKey(doctorId, appointmentDate));
+        }
+        List<Lock> locks = new ArrayList<>();
+        for (Lock lock : seedLocks.bulkGet(keys)) {
+            lock.lock();
+            locks.add(lock);
+        }
+        try {
+            missing.removeIf(doctorId -> days.containsKey(new DayKey(doctorId, appointmentDate)));
+            if (missing.isEmpty()) {
+                return;
+            }
+
+            Map<Long, DayLedger> loaded = new HashMap<>();
+            for (Long doctorId : missing) {
+                loaded.put(doctorId, new DayLedger());
+            }
+
+            String date = appointmentDate.toString();
+            for (Object[] row : doctorSlotRepository.findAvailabilityCells(missing, date, date)) {
+                DayLedger day = loaded.get(((Number) row[0]).longValue());
+                if (day == null || row[2] == null) {
+                    continue;
+                }
+                SlotCounter counter = day.slot((String) row[2]);
+                if (row[3] != null) {
+                    counter.maxPatients = ((Number) row[3]).intValue();
+                }
+                counter.active = row[4] == null || ((Number) row[4]).intValue() != 0;
+            }
+            for (Object[] row : registrationRepository.findApprovedIdsByDoctors(missing, appointmentDate)) {
+                DayLedger day = loaded.get((Long) row[0]);
+                if (day != null && row[1] != null) {
+                    day.slot((String) row[1]).add((Long) row[2]);
+                }
+            }
+
+            for (Map.Entry<Long, DayLedger> entry : loaded.entrySet()) {
+                days.putIfAbsent(new DayKey(entry.getKey(), appointmentDate), entry.getValue());
+            }
+            logger.debug("Nap truoc so cai slot: {} bac si, ngay {}", missing.size(), appointmentDate);
+        } finally {
+            for (Lock lock : locks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    // so ngay dang duoc giu trong bo nho
+    public int getCachedDayCount() {
+        return days.size();
+    }
+
+    // ========== CAP NHAT THEO SU KIEN ==========
+
+    // chay truoc cac listener khac (danh sach cho doc so cai ngay sau su kien)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRegistrationStatusChanged(RegistrationStatusChangedEvent event) {
+        boolean wasApproved = APPROVED.equals(event.getPreviousStatus());
+        boolean isApproved = APPROVED.equals(event.getNewStatus());
+        if (wasApproved == isApproved || event.getRegistrationId() == null || event.getDoctorId() == null
+                || event.getAppointmentDate() == null || event.getAssignedSession() == null) {
+            return;
+        }
+
+        DayKey key = new DayKey(event.getDoctorId(), event.getAppointmentDate());
+        DayLedger day = days.get(key);
+        if (day == null) {
+            // ngay dang nap thi cho nap xong (ap theo id nen khong trung voi don lan nap da thay);
+            // ngay chua nap thi bo qua, lan nap sau se doc tu database
+            Lock lock = seedLocks.get(key);
+            lock.lock();
+            try {
+                day = days.get(key);
+            } finally {
+                lock.unlock();
+            }
+            if (day == null) {
+                return;
+            }
+        }
+
+        day.slot(event.getAssignedSession()).apply(event.getRegistrationId(), isApproved, changes.incrementAndGet());
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSlotCapacityChanged(SlotCapacityChangedEvent event) {
+        if (event.isBulk()) {
+            days.clear();
+            logger.debug("Xoa toan bo so cai slot sau khi cap nhat hang loat");
+            return;
+        }
+        days.remove(new DayKey(event.getDoctorId(), event.getAppointmentDate()));
+    }
+
+    // ========== DOI CHIEU VOI DATABASE ==========
+
+    @Scheduled(fixedDelayString = "${app.slot-ledger.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        LocalDate today = LocalDate.now();
+        days.keySet().removeIf(key -> key.date.isBefore(today));
+
+        if (days.isEmpty()) {
+            return;
+        }
+
+        LocalDate from = null;
+        LocalDate to = null;
+        for (DayKey key : days.keySet()) {
+            if (from == null || key.date.isBefore(from)) from = key.date;
+            if (to == null || key.date.isAfter(to)) to = key.date;
+        }
+
+        try {
+            // slot thay doi sau moc nay thi giu nguyen, lan doi chieu sau se sua neu con lech
+            long since = changes.get();
+            Map<DayKey, DayLedger> fresh = new HashMap<>();
+            for (DoctorSlot slot : doctorSlotRepository.findByAppointmentDateBetween(from.toString(), to.toString())) {
+                DayKey key = new DayKey(slot.getDoctorId(), LocalDate.parse(slot.getAppointmentDate()));
+                if (days.containsKey(key)) {
+                    fresh.computeIfAbsent(key, k -> new DayLedger()).configure(slot);
+                }
+            }
+            for (Object[] row : registrationRepository.findApprovedIdsByDateRange(from, to)) {
+                DayKey key = new DayKey((Long) row[0], (LocalDate) row[1]);
+                if (row[2] != null && days.containsKey(key)) {
+                    fresh.computeIfAbsent(key, k -> new DayLedger()).slot((String) row[2]).add((Long) row[3]);
+                }
+            }
+
+            int drift = 0;
+            for (Map.Entry<DayKey, DayLedger> entry : days.entrySet()) {
+                DayLedger actual = fresh.getOrDefault(entry.getKey(), new DayLedger());
+                drift += entry.getValue().syncFrom(actual, since);
+            }
+
+            if (drift > 0) {
+                logger.warn("Doi chieu so cai slot: sua {} slot bi lech ({} ngay)", drift, days.size());
+            } else {
+                logger.debug("Doi chieu so cai slot: khong co sai lech ({} ngay)", days.size());
+            }
+        } catch (Exception e) {
+            logger.error("Loi doi chieu so cai slot: {}", e.getMessage());
+        }
+    }
+
+    // ========== NAP DU LIEU ==========
+
+    private DayLedger dayOf(Long doctorId, LocalDate appointmentDate) {
+        DayKey key = new DayKey(doctorId, appointmentDate);
+        DayLedger day = days.get(key);
+        if (day != null) {
+            return day;
+        }
+
+        Lock lock = seedLocks.get(key);
+        lock.lock();
+        try {
+            day = days.get(key);
+            if (day == null) {
+                day = loadDay(doctorId, appointmentDate);
+                days.put(key, day);
+            }
+            return day;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private DayLedger loadDay(Long doctorId, LocalDate appointmentDate) {
+        DayLedger day = new DayLedger();
+
+        List<DoctorSlot> slots = doctorSlotRepository.findByDoctorIdAndAppointmentDate(doctorId, appointmentDate.toString());
+        for (DoctorSlot slot : slots) {
+            day.configure(slot);
+        }
+
+        for (Object[] row : registrationRepository.findApprovedIdsBySession(doctorId, appointmentDate)) {
+            if (row[0] != null) {
+                day.slot((String) row[0]).add((Long) row[1]);
+            }
+        }
+
+        logger.debug("Nap so cai slot: bac si {}, ngay {}", doctorId, appointmentDate);
+        return day;
+    }
+
+    // ========== CAU TRUC DU LIEU ==========
+
+    private static final class DayKey {
+        private final Long doctorId;
+        private final LocalDate date;
+
+        private DayKey(Long doctorId, LocalDate date) {
+            this.doctorId = doctorId;
+            this.date = date;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DayKey)) return false;
+            DayKey other = (DayKey) o;
+            return Objects.equals(doctorId, other.doctorId) && Objects.equals(date, other.date);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(doctorId, date);
+        }
+    }
+
+    private static final class DayLedger {
+        private final ConcurrentHashMap<String, SlotCounter> slots = new ConcurrentHashMap<>();
+
+        SlotCounter slot(String timeSlot) {
+            return slots.computeIfAbsent(timeSlot, t -> new SlotCounter());
+        }
+
+        void configure(DoctorSlot slot) {
+            SlotCounter counter = slot(slot.getTimeSlot());
+            counter.maxPatients = slot.getMaxPatients() != null ? slot.getMaxPatients() : DEFAULT_MAX_PATIENTS;
+            counter.active = slot.getIsActive() == null || slot.getIsActive();
+        }
+
+        // ghi de gia tri tu database (tru slot doi sau moc since), tra ve so slot bi lech
+        int syncFrom(DayLedger actual, long since) {
+            int drift = 0;
+            for (String timeSlot : slots.keySet()) {
+                if (!actual.slots.containsKey(timeSlot)) {
+                    actual.slot(timeSlot);
+                }
+            }
+            for (Map.Entry<String, SlotCounter> entry : actual.slots.entrySet()) {
+                if (slot(entry.getKey()).syncFrom(entry.getValue(), since)) {
+                    drift++;
+                }
+            }
+            return drift;
+        }
+    }
+
+    private static final class SlotCounter {
+        // id don APPROVED da commit
+        private final Set<Long> approvedIds = new HashSet<>();
+        // cho dang giu cho transaction chua ket thuc
+        private int held;
+        // thay doi cuoi cung (theo changes)
+        private long version;
+        private volatile int maxPatients = DEFAULT_MAX_PATIENTS;
+        private volatile boolean active = true;
+
+        synchronized int taken() {
+            return approvedIds.size() + held;
+        }
+
+        synchronized void add(Long registrationId) {
+            approvedIds.add(registrationId);
+        }
+
+        synchronized boolean tryHold(long change) {
+            if (!active || approvedIds.size() + held >= maxPatients) {
+                return false;
+            }
+            held++;
+            version = change;
+            return true;
+        }
+
+        synchronized void release(Long approvedId, long change) {
+            held = Math.max(0, held - 1);
+            if (approvedId != null) {
+                approvedIds.add(approvedId);
+            }
+            version = change;
+        }
+
+        synchronized void apply(Long registrationId, boolean approved, long change) {
+            if (approved) {
+                approvedIds.add(registrationId);
+            } else {
+                approvedIds.remove(registrationId);
+            }
+            version = change;
+        }
+
+        // tra ve true neu lech; slot doi sau moc since thi khong ghi de
+        synchronized boolean syncFrom(SlotCounter expected, long since) {
+            if (version > since) {
+                return false;
+            }
+            Set<Long> ids;
+            synchronized (expected) {
+                ids = new HashSet<>(expected.approvedIds);
+            }
+            boolean drift = !approvedIds.equals(ids)
+                    || maxPatients != expected.maxPatients
+                    || active != expected.active;
+            approvedIds.clear();
+            approvedIds.addAll(ids);
+            maxPatients = expected.maxPatients;
+            active = expected.active;
+            return drift;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.event.RegistrationStatusChangedEvent;
+import com.example.clinic_backend.event.SlotCapacityChangedEvent;
+import com.example.clinic_backend.model.DoctorSlot;
+import com.example.clinic_backend.repository.DoctorSlotRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Day thay doi cho trong cua slot len /topic/slots/{doctorId}/{date} thay cho viec client poll.
+// - delta {timeSlot, current, max, available} khi don duoc duyet / huy hoac suc chua slot doi
+// - snapshot luc subscribe (/app/slots/{doctorId}/{date}) doc tu so cai slot trong bo nho (1 node)
+// - broker trong process: chi tinh delta cho (bac si, ngay) dang co nguoi xem tren node nay
+// - relay qua database (app.broker.mode=database): nguoi xem co the o node khac nen luon gui delta,
+//   node nhan chi giao cho client dang subscribe; cap nhat hang loat chi gui lai cho trang dang xem tren node nay.
+//   So cai bo nho cua node nay khong thay don duyet o node khac nen delta / snapshot doc occupied_count
+//   tu doctor_slots (nhieu node bat buoc app.booking.mode=optimistic, xem SlotBookingService)
+@Service
+public class SlotOccupancyStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlotOccupancyStream.class);
+
+    private static final String APPROVED = "APPROVED";
+    private static final String TOPIC_PREFIX = "/topic/slots/";
+
+    // cac khung gio co dinh
+    private static final String[] TIME_SLOTS = {
+        "07:00-08:00", "08:00-09:00", "09:00-10:00", "10:00-11:00",
+        "11:00-12:00", "13:00-14:00", "14:00-15:00", "15:00-16:00", "16:00-17:00"
+    };
+
+    private final SlotCapacityLedger slotCapacityLedger;
+    private final DoctorSlotRepository doctorSlotRepository;
+    private final StompDigestPublisher publisher;
+    // nhieu node: khong biet nguoi xem cua node khac
+    private final boolean relayed;
+
+    // sessionId|subscriptionId -> destination; destination -> so nguoi dang xem
+    private final ConcurrentHashMap<String, String> subscriptions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> viewers = new ConcurrentHashMap<>();
+
+    public SlotOccupancyStream(SlotCapacityLedger slotCapacityLedger, DoctorSlotRepository doctorSlotRepository,
+                               StompDigestPublisher publisher,
+                               @Value("${app.broker.mode:simple}") String brokerMode) {
+        this.slotCapacityLedger = slotCapacityLedger;
+        this.doctorSlotRepository = doctorSlotRepository;
+        this.publisher = publisher;
+        this.relayed = "database".equalsIgnoreCase(brokerMode != null ? brokerMode.trim() : null);
+    }
+
+    public static String topic(Long doctorId, LocalDate date) {
+        return TOPIC_PREFIX + doctorId + "/" + date;
+    }
+
+    // trang thai ca ngay cua bac si (gui khi client subscribe)
+    public List<Map<String, Object>> snapshot(Long doctorId, LocalDate date) {
+        Map<String, DoctorSlot> rows = slotRows(doctorId, date);
+        List<Map<String, Object>> cells = new ArrayList<>(TIME_SLOTS.length);
+        for (String timeSlot : TIME_SLOTS) {
+            cells.add(delta(doctorId, date, timeSlot, rows.get(timeSlot)));
+        }
+        return cells;
+    }
+
+    // ========== SU KIEN (chay sau so cai slot) ==========
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRegistrationStatusChanged(RegistrationStatusChangedEvent event) {
+        boolean wasApproved = APPROVED.equals(event.getPreviousStatus());
+        boolean isApproved = APPROVED.equals(event.getNewStatus());
+        if (wasApproved == isApproved || event.getDoctorId() == null
+                || event.getAppointmentDate() == null || event.getAssignedSession() == null) {
+            return;
+        }
+        publishDelta(event.getDoctorId(), event.getAppointmentDate(), event.getAssignedSession());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSlotCapacityChanged(SlotCapacityChangedEvent event) {
+        if (event.isBulk()) {
+            // cap nhat hang loat: gui lai ca ngay cho moi trang dang xem
+            for (String destination : new ArrayList<>(viewers.keySet())) {
+                Object[] key = parse(destination);
+                if (key != null) {
+                    publishDay((Long) key[0], (LocalDate) key[1]);
+                }
+            }
+            return;
+        }
+        if (event.getTimeSlot() == null) {
+            publishDay(event.getDoctorId(), event.getAppointmentDate());
+        } else {
+            publishDelta(event.getDoctorId(), event.getAppointmentDate(), event.getTimeSlot());
+        }
+    }
+
+    // ========== NGUOI XEM ==========
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        if (destination == null || !destination.startsWith(TOPIC_PREFIX)) {
+            return;
+        }
+        if (subscriptions.put(key(accessor.getSessionId(), accessor.getSubscriptionId()), destination) == null) {
+            viewers.merge(destination, 1, Integer::sum);
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        release(subscriptions.remove(key(accessor.getSessionId(), accessor.getSubscriptionId())));
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        String prefix = event.getSessionId() + "|";
+        Set<String> keys = new HashSet<>();
+        for (String key : subscriptions.keySet()) {
+            if (key.startsWith(prefix)) {
+                keys.add(key);
+            }
+        }
+        for (String key : keys) {
+            release(subscriptions.remove(key));
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("topics", viewers.size());
+        stats.put("subscriptions", subscriptions.size());
+        stats.put("relayed", relayed);
+        return stats;
+    }
+
+    private void publishDelta(Long doctorId, LocalDate date, String timeSlot) {
+        String destination = topic(doctorId, date);
+        if (!hasViewers(destination)) {
+            return;
+        }
+        DoctorSlot row = relayed
+            ? doctorSlotRepository.findByDoctorIdAndAppointmentDateAndTimeSlot(doctorId, date.toString(), timeSlot).orElse(null)
+            : null;
+        publisher.publish(destination, delta(doctorId, date, timeSlot, row));
+    }
+
+    private void publishDay(Long doctorId, LocalDate date) {
+        String destination = topic(doctorId, date);
+        if (!hasViewers(destination)) {
+            return;
+        }
+        Map<String, DoctorSlot> rows = slotRows(doctorId, date);
+        for (String timeSlot : TIME_SLOTS) {
+            publisher.publish(destination, delta(doctorId, date, timeSlot, rows.get(timeSlot)));
+        }
+    }
+
+    // nhieu node: dong doctor_slots cua ca ngay (1 query); 1 node: so cai da du
+    private Map<String, DoctorSlot> slotRows(Long doctorId, LocalDate date) {
+        Map<String, DoctorSlot> rows = new HashMap<>();
+        if (relayed) {
+            for (DoctorSlot slot : doctorSlotRepository.findByDoctorIdAndAppointmentDate(doctorId, date.toString())) {
+                rows.put(slot.getTimeSlot(), slot);
+            }
+        }
+        return rows;
+    }
+
+    // row co occupied_count: so cho da giu chung cua moi node; chua co dong / bo dem thi doc so cai
+    private Map<String, Object> delta(Long doctorId, LocalDate date, String timeSlot, DoctorSlot row) {
+        int current;
+        int max;
+        boolean active;
+        if (row != null && row.getOccupiedCount() != null) {
+            current = row.getOccupiedCount();
+            max = row.getMaxPatients() != null ? row.getMaxPatients() : 10;
+            active = row.getIsActive() == null || row.getIsActive();
+        } else {
+            current = slotCapacityLedger.getApprovedCount(doctorId, date, timeSlot);
+            max = slotCapacityLedger.getMaxPatients(doctorId, date, timeSlot);
+            active = slotCapacityLedger.isActive(doctorId, date, timeSlot);
+        }
+        Map<String, Object> delta = new HashMap<>();
+        delta.put("timeSlot", timeSlot);
+        delta.put("current", current);
+        delta.put("max", max);
+        delta.put("available", active && current < max);
+        return delta;
+    }
+
+    private boolean hasViewers(String destination) {
+        return relayed || viewers.containsKey(destination);
+    }
+
+    private void release(String destination) {
+        if (destination != null) {
+            viewers.computeIfPresent(destination, (d, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    private static String key(String sessionId, String subscriptionId) {
+        return sessionId + "|" + subscriptionId;
+    }
+
+    // "/topic/slots/5/2025-01-15" -> {5L, 2025-01-15}
+    private static Object[] parse(String destination) {
+        String[] parts = destination.substring(TOPIC_PREFIX.length()).split("/");
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            return new Object[]{Long.valueOf(parts[0]), LocalDate.parse(parts[1])};
+        } catch (Exception e) {
+            logger.debug("Destination slot không hợp lệ: {}", destination);
+            return null;
+        }
+    }
+}
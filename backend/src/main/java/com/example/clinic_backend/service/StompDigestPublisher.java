@@ -0,0 +1,155 @@
+package com.example.clinic_backend.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Gui thong bao STOMP len /topic theo 2 che do:
+// - per-event: moi su kien 1 frame (nhu cu)
+// - digest: gom su kien theo destination trong 1 cua so (vd. 250ms) hoac den N su kien,
+//   gui 1 frame {type: DIGEST, count, events}; cua so chi co 1 su kien thi gui nguyen su kien do
+@Service
+public class StompDigestPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(StompDigestPublisher.class);
+
+    private final MessageFanout fanout;
+    private final boolean digestMode;
+    private final long windowMs;
+    private final int maxEvents;
+
+    private final ConcurrentHashMap<String, Buffer> buffers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher =
+        Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "stomp-digest"));
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong digestFrames = new AtomicLong();
+    private final AtomicLong flushBySize = new AtomicLong();
+    private final AtomicLong flushByWindow = new AtomicLong();
+    private final AtomicLong largestDigest = new AtomicLong();
+
+    public StompDigestPublisher(MessageFanout fanout,
+                                @Value("${app.notifications.stomp-mode:digest}") String mode,
+                                @Value("${app.notifications.digest-window-ms:250}") long windowMs,
+                                @Value("${app.notifications.digest-max-events:50}") int maxEvents) {
+        this.fanout = fanout;
+        this.digestMode = !"per-event".equalsIgnoreCase(mode != null ? mode.trim() : null);
+        this.windowMs = Math.max(1, windowMs);
+        this.maxEvents = Math.max(1, maxEvents);
+    }
+
+    @PreDestroy
+    public void stop() {
+        // gui not cac su kien con trong buffer
+        for (String destination : new ArrayList<>(buffers.keySet())) {
+            flush(destination, false);
+        }
+        flusher.shutdownNow();
+    }
+
+    public void publish(String destination, Object payload) {
+        published.incrementAndGet();
+        if (!digestMode) {
+            send(destination, payload);
+            return;
+        }
+
+        Buffer buffer = buffers.computeIfAbsent(destination, d -> new Buffer());
+        boolean full;
+        synchronized (buffer) {
+            buffer.events.add(payload);
+            full = buffer.events.size() >= maxEvents;
+            if (!full && buffer.timer == null) {
+                buffer.timer = flusher.schedule(() -> flush(destination, false), windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) {
+            flush(destination, true);
+        }
+    }
+
+    // so su kien nhan, so frame gui, ty le gom
+    public Map<String, Object> getStats() {
+        int pending = 0;
+        for (Buffer buffer : buffers.values()) {
+            synchronized (buffer) {
+                pending += buffer.events.size();
+            }
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", digestMode ? "digest" : "per-event");
+        stats.put("windowMs", windowMs);
+        stats.put("maxEvents", maxEvents);
+        stats.put("published", published.get());
+        stats.put("frames", frames.get());
+        stats.put("digestFrames", digestFrames.get());
+        stats.put("flushBySize", flushBySize.get());
+        stats.put("flushByWindow", flushByWindow.get());
+        stats.put("largestDigest", largestDigest.get());
+        stats.put("pending", pending);
+        return stats;
+    }
+
+    private void flush(String destination, boolean bySize) {
+        Buffer buffer = buffers.get(destination);
+        if (buffer == null) {
+            return;
+        }
+        List<Object> events;
+        synchronized (buffer) {
+            if (buffer.events.isEmpty()) {
+                return;
+            }
+            events = buffer.events;
+            buffer.events = new ArrayList<>();
+            if (buffer.timer != null) {
+                buffer.timer.cancel(false);
+                buffer.timer = null;
+            }
+        }
+        (bySize ? flushBySize : flushByWindow).incrementAndGet();
+
+        if (events.size() == 1) {
+            send(destination, events.get(0));
+            return;
+        }
+
+        Map<String, Object> digest = new HashMap<>();
+        digest.put("type", "DIGEST");
+        digest.put("count", events.size());
+        digest.put("events", events);
+        digest.put("flushedAt", LocalDateTime.now());
+        digestFrames.incrementAndGet();
+        largestDigest.accumulateAndGet(events.size(), Math::max);
+        send(destination, digest);
+    }
+
+    private void send(String destination, Object payload) {
+        try {
+            fanout.convertAndSend(destination, payload);
+            frames.incrementAndGet();
+        } catch (Exception e) {
+            logger.error("Lỗi gửi thông báo STOMP tới {}: {}", destination, e.getMessage());
+        }
+    }
+
+    private static final class Buffer {
+        private List<Object> events = new ArrayList<>();
+        private ScheduledFuture<?> timer;
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.event.RegistrationStatusChangedEvent;
+import com.example.clinic_backend.event.SlotCapacityChangedEvent;
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Danh sach cho theo tung (bac si, ngay, khung gio) cho cac don NEEDS_MANUAL_REVIEW.
+// Khi slot duoc giai phong (huy, tu choi, tang suc chua) thi tu dong duyet don cho lau nhat
+// qua AutoApprovalService. Danh sach nam trong bo nho, dung lai tu database khi khoi dong.
+@Service
+public class WaitlistService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WaitlistService.class);
+
+    private static final String NEEDS_MANUAL_REVIEW = "NEEDS_MANUAL_REVIEW";
+    private static final String APPROVED = "APPROVED";
+
+    private final PatientRegistrationRepository registrationRepository;
+    private final AutoApprovalService autoApprovalService;
+    private final SlotCapacityLedger slotCapacityLedger;
+    private final TransactionTemplate promotionTransaction;
+
+    // hang doi theo slot: id don tang dan = thu tu dang ky
+    private final Map<SlotKey, TreeSet<Long>> queues = new HashMap<>();
+    private final Map<Long, SlotKey> index = new HashMap<>();
+
+    // slot can xet duyet them; 1 thread xu ly lan luot, gop cac su kien lien tiep
+    private final Set<SlotKey> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final ExecutorService promoter = Executors.newSingleThreadExecutor(r -> new Thread(r, "waitlist-promoter"));
+
+    public WaitlistService(PatientRegistrationRepository registrationRepository,
+                           AutoApprovalService autoApprovalService,
+                           SlotCapacityLedger slotCapacityLedger,
+                           PlatformTransactionManager transactionManager) {
+        this.registrationRepository = registrationRepository;
+        this.autoApprovalService = autoApprovalService;
+        this.slotCapacityLedger = slotCapacityLedger;
+        // listener chay sau commit nen moi lan duyet can transaction rieng
+        this.promotionTransaction = new TransactionTemplate(transactionManager);
+        this.promotionTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PreDestroy
+    public void stop() {
+        promoter.shutdown();
+    }
+
+    // ========== DUNG LAI TU DATABASE ==========
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        List<PatientRegistration> candidates = registrationRepository.findWaitlistCandidates(LocalDate.now());
+        synchronized (this) {
+            queues.clear();
+            index.clear();
+            for (PatientRegistration registration : candidates) {
+                add(registration.getId(), new SlotKey(registration.getDoctorId(),
+                    registration.getAppointmentDate(), registration.getAssignedSession()));
+            }
+        }
+        logger.info("Danh sách chờ: nạp {} đơn vào {} slot", candidates.size(), queues.size());
+
+        // co the da co cho trong trong luc server tat
+        dirty.addAll(snapshotKeys());
+        scheduleDrain();
+    }
+
+    // bo cac slot da qua ngay
+    @Scheduled(cron = "0 5 0 * * *")
+    public synchronized void evictPastDays() {
+        LocalDate today = LocalDate.now();
+        Iterator<Map.Entry<SlotKey, TreeSet<Long>>> it = queues.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<SlotKey, TreeSet<Long>> entry = it.next();
+            if (entry.getKey().date.isBefore(today)) {
+                entry.getValue().forEach(index::remove);
+                it.remove();
+            }
+        }
+    }
+
+    // ========== CAP NHAT THEO SU KIEN ==========
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRegistrationStatusChanged(RegistrationStatusChangedEvent event) {
+        String previous = event.getPreviousStatus();
+        String current = event.getNewStatus();
+
+        if (NEEDS_MANUAL_REVIEW.equals(previous) && !NEEDS_MANUAL_REVIEW.equals(current)) {
+            remove(event.getRegistrationId());
+        }
+
+        if (NEEDS_MANUAL_REVIEW.equals(current) && event.getDoctorId() != null
+                && event.getAppointmentDate() != null && event.getAssignedSession() != null
+                && !event.getAppointmentDate().isBefore(LocalDate.now())) {
+            synchronized (this) {
+                add(event.getRegistrationId(), new SlotKey(event.getDoctorId(),
+                    event.getAppointmentDate(), event.getAssignedSession()));
+            }
+        }
+
+        // don da duyet bi huy / tu choi / vang -> slot co them cho
+        if (APPROVED.equals(previous) && !APPROVED.equals(current) && event.getDoctorId() != null
+                && event.getAppointmentDate() != null && event.getAssignedSession() != null) {
+            markDirty(new SlotKey(event.getDoctorId(), event.getAppointmentDate(), event.getAssignedSession()));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSlotCapacityChanged(SlotCapacityChangedEvent event) {
+        for (SlotKey key : snapshotKeys()) {
+            if (event.isBulk()
+                    || (key.doctorId.equals(event.getDoctorId()) && key.date.equals(event.getAppointmentDate())
+                        && (event.getTimeSlot() == null || key.timeSlot.equals(event.getTimeSlot())))) {
+                markDirty(key);
+            }
+        }
+    }
+
+    // so don dang cho theo slot
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("slots", queues.size());
+        stats.put("waiting", index.size());
+        return stats;
+    }
+
+    // ========== DUYET DON CHO ==========
+
+    private void markDirty(SlotKey key) {
+        synchronized (this) {
+            if (!queues.containsKey(key)) {
+                return;
+            }
+        }
+        dirty.add(key);
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (!dirty.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+            promoter.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        Iterator<SlotKey> it = dirty.iterator();
+        while (it.hasNext()) {
+            SlotKey key = it.next();
+            it.remove();
+            try {
+                promote(key);
+            } catch (Exception e) {
+                logger.error("Lỗi duyệt danh sách chờ {}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    private void promote(SlotKey key) {
+        if (key.date.isBefore(LocalDate.now())) {
+            return;
+        }
+
+        // moi don thu toi da 1 lan trong mot luot
+        int attempts;
+        synchronized (this) {
+            TreeSet<Long> queue = queues.get(key);
+            attempts = queue != null ? queue.size() : 0;
+        }
+
+        while (attempts-- > 0 && slotCapacityLedger.hasCapacity(key.doctorId, key.date, key.timeSlot)) {
+            Long registrationId;
+            synchronized (this) {
+                TreeSet<Long> queue = queues.get(key);
+                if (queue == null || queue.isEmpty()) {
+                    return;
+                }
+                registrationId = queue.first();
+                remove(registrationId);
+            }
+
+            try {
+                Boolean approved = promotionTransaction.execute(status -> approveWaiter(registrationId, key));
+                if (Boolean.TRUE.equals(approved)) {
+                    logger.info("Danh sách chờ: tự động duyệt đơn {} vào {}", registrationId, key);
+                }
+            } catch (Exception e) {
+                // loi database: tra don ve hang doi, lan sau thu lai
+                synchronized (this) {
+                    add(registrationId, key);
+                }
+                logger.error("Danh sách chờ: lỗi duyệt đơn {}: {}", registrationId, e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private boolean approveWaiter(Long registrationId, SlotKey key) {
+        PatientRegistration registration = registrationRepository.findById(registrationId).orElse(null);
+        if (registration == null || !NEEDS_MANUAL_REVIEW.equals(registration.getStatus())
+                || !key.matches(registration)) {
+            return false;
+        }
+        PatientRegistration saved = autoApprovalService.autoApproveRegistration(registration, registration.getAssignedSession());
+        return APPROVED.equals(saved.getStatus());
+    }
+
+    // ========== CAU TRUC DU LIEU (goi trong synchronized) ==========
+
+    private void add(Long registrationId, SlotKey key) {
+        remove(registrationId);
+        queues.computeIfAbsent(key, k -> new TreeSet<>()).add(registrationId);
+        index.put(registrationId, key);
+    }
+
+    private synchronized void remove(Long registrationId) {
+        SlotKey key = index.remove(registrationId);
+        if (key == null) {
+            return;
+        }
+        TreeSet<Long> queue = queues.get(key);
+        if (queue != null) {
+            queue.remove(registrationId);
+            if (queue.isEmpty()) {
+                queues.remove(key);
+            }
+        }
+    }
+
+    private synchronized List<SlotKey> snapshotKeys() {
+        return new ArrayList<>(queues.keySet());
+    }
+
+    private static final class SlotKey {
+        private final Long doctorId;
+        private final LocalDate date;
+        private final String timeSlot;
+
+        private SlotKey(Long doctorId, LocalDate date, String timeSlot) {
+            this.doctorId = doctorId;
+            this.date = date;
+            this.timeSlot = timeSlot;
+        }
+
+        boolean matches(PatientRegistration registration) {
+            return doctorId.equals(registration.getDoctorId()) && date.equals(registration.getAppointmentDate())
+                && timeSlot.equals(registration.getAssignedSession());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SlotKey)) return false;
+            SlotKey other = (SlotKey) o;
+            return Objects.equals(doctorId, other.doctorId) && Objects.equals(date, other.date)
+                && Objects.equals(timeSlot, other.timeSlot);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(doctorId, date, timeSlot);
+        }
+
+        @Override
+        public String toString() {
+            return doctorId + "/" + date + "/" + timeSlot;
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.example.clinic_backend.service;
 
 import com.example.clinic_backend.model.PatientRegistration;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -11,10 +10,12 @@ import java.util.Map;
 @Service
 public class WebSocketService {
 
-    private final SimpMessagingTemplate messagingTemplate;
+    private final MessageFanout fanout;
+    private final StompDigestPublisher digestPublisher;
     
-    public WebSocketService(SimpMessagingTemplate messagingTemplate) {
-        this.messagingTemplate = messagingTemplate;
+    public WebSocketService(MessageFanout fanout, StompDigestPublisher digestPublisher) {
+        this.fanout = fanout;
+        this.digestPublisher = digestPublisher;
     }
     
     // Thông báo khi có lịch hẹn mới
@@ -28,8 +29,8 @@ public class WebSocketService {
             notification.put("createdAt", LocalDateTime.now());
             notification.put("registrationNumber", appointment.getRegistrationNumber());
             
-            // Gửi đến admin
-            messagingTemplate.convertAndSend("/topic/admin/notifications", notification);
+            // Gửi đến admin (gom theo cửa sổ khi nhiều sự kiện)
+            digestPublisher.publish("/topic/admin/notifications", notification);
             
             System.out.println("Đã gửi thông báo lịch hẹn mới qua WebSocket");
             
@@ -50,12 +51,12 @@ public class WebSocketService {
             notification.put("cancelledAt", LocalDateTime.now());
             notification.put("refundRequested", "REQUESTED".equals(appointment.getRefundStatus()));
             
-            // Gửi đến admin
-            messagingTemplate.convertAndSend("/topic/admin/notifications", notification);
+            // Gửi đến admin (gom theo cửa sổ khi nhiều sự kiện)
+            digestPublisher.publish("/topic/admin/notifications", notification);
             
             // Gửi đến bệnh nhân cụ thể
             if (appointment.getUserId() != null) {
-                messagingTemplate.convertAndSendToUser(
+                fanout.convertAndSendToUser(
                     appointment.getUserId().toString(),
                     "/queue/appointments",
                     notification
@@ -72,7 +73,7 @@ public class WebSocketService {
     // Gửi thông báo cho admin
     public void sendNotificationToAdmins(Map<String, Object> notification) {
         try {
-            messagingTemplate.convertAndSend("/topic/admin/notifications", notification);
+            digestPublisher.publish("/topic/admin/notifications", notification);
             System.out.println("Đã gửi thông báo cho admin qua WebSocket");
         } catch (Exception e) {
             System.err.println("Lỗi gửi thông báo cho admin: " + e.getMessage());
@@ -0,0 +1,249 @@
+package com.example.clinic_backend.repository;
+
+import com.example.clinic_backend.model.Doctor;
+import com.example.clinic_backend.model.DoctorStatistics;
+import com.example.clinic_backend.model.Invoice;
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.support.AnalyticsFixtures;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.TestPropertySource;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// Chay cac query native / keyset tren MySQL that (Testcontainers), doi chieu voi phan gop trong bo nho
+// ma cac test service dung lam repository gia lap. Khong co Docker thi bo qua.
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = "spring.jpa.hibernate.ddl-auto=create-drop")
+@Testcontainers(disabledWithoutDocker = true)
+class AnalyticsQueriesRepositoryTests {
+
+	@Container
+	@ServiceConnection
+	static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0");
+
+	@Autowired
+	private TestEntityManager entityManager;
+
+	@Autowired
+	private InvoiceRepository invoiceRepository;
+
+	@Autowired
+	private PatientRegistrationRepository registrationRepository;
+
+	@Autowired
+	private DoctorStatisticsRepository statisticsRepository;
+
+	private List<Invoice> persistInvoices(List<Invoice> invoices) {
+		for (Invoice invoice : invoices) {
+			invoice.setId(null);
+			entityManager.persist(invoice);
+		}
+		entityManager.flush();
+		entityManager.clear();
+		return invoices;
+	}
+
+	private Invoice invoice(LocalDateTime invoiceDate, String status, String paymentMethod) {
+		Invoice invoice = new Invoice();
+		invoice.setInvoiceDate(invoiceDate);
+		invoice.setAmount(BigDecimal.valueOf(100_000));
+		invoice.setStatus(status);
+		invoice.setPaymentMethod(paymentMethod);
+		return invoice;
+	}
+
+	// period|status|method -> so hoa don|tong tien (bo so 0 thua cua DECIMAL)
+	private static Map<String, String> grouped(List<Object[]> rows) {
+		Map<String, String> groups = new TreeMap<>();
+		for (Object[] row : rows) {
+			BigDecimal amount = new BigDecimal(row[4].toString()).stripTrailingZeros();
+			groups.put(row[0] + "|" + row[1] + "|" + row[2], ((Number) row[3]).longValue() + "|" + amount.toPlainString());
+		}
+		return groups;
+	}
+
+	@Test
+	void aggregateByPeriodMatchesInMemoryGrouping() {
+		List<Invoice> invoices = persistInvoices(AnalyticsFixtures.invoices(LocalDate.of(2024, 12, 1), LocalDate.of(2025, 3, 20), 4));
+		// thu 4 -> thu 7: tuan dau va tuan cuoi bi cat, thang dau bi cat
+		LocalDateTime from = LocalDate.of(2025, 1, 8).atStartOfDay();
+		LocalDateTime to = LocalDate.of(2025, 3, 2).atStartOfDay();
+
+		for (String unit : List.of("DAY", "WEEK", "MONTH")) {
+			Map<String, String> expected = grouped(AnalyticsFixtures.aggregateByPeriod(invoices, unit, from, to));
+			assertFalse(expected.isEmpty());
+			assertEquals(expected, grouped(invoiceRepository.aggregateByPeriod(unit, from, to)), unit);
+		}
+	}
+
+	@Test
+	void keysetPagesVisitEveryInvoiceOnceAcrossEqualDates() {
+		LocalDateTime nine = LocalDateTime.of(2025, 3, 10, 9, 0);
+		LocalDateTime eight = LocalDateTime.of(2025, 3, 10, 8, 0);
+		List<Invoice> invoices = persistInvoices(new ArrayList<>(List.of(
+				invoice(nine, "PAID", "CASH"),
+				invoice(eight, "PAID", "VNPAY"),
+				invoice(nine, "CANCELLED", "CASH"),
+				invoice(nine, "PAID", "WALLET"),
+				invoice(eight, "PAID", "CASH"),
+				invoice(LocalDateTime.of(2025, 3, 9, 10, 0), "PAID", null),
+				// ngoai khoang [from, to)
+				invoice(LocalDateTime.of(2025, 3, 11, 0, 0), "PAID", "CASH"),
+				invoice(LocalDateTime.of(2025, 3, 8, 23, 59), "PAID", "CASH"))));
+		LocalDateTime from = LocalDate.of(2025, 3, 9).atStartOfDay();
+		LocalDateTime to = LocalDate.of(2025, 3, 11).atStartOfDay();
+
+		List<Long> expected = invoices.stream()
+				.filter(i -> !i.getInvoiceDate().isBefore(from) && i.getInvoiceDate().isBefore(to))
+				.sorted(Comparator.comparing(Invoice::getInvoiceDate).thenComparing(Invoice::getId).reversed())
+				.map(Invoice::getId)
+				.collect(Collectors.toList());
+		// trang 2 dong: ranh gioi trang cat ngang 3 hoa don cung gio 09:00
+		assertEquals(expected, pageThrough(from, to, null, 2));
+		assertEquals(expected, pageThrough(from, to, null, 1));
+
+		List<Long> paid = invoices.stream()
+				.filter(i -> "PAID".equals(i.getStatus()) && expected.contains(i.getId()))
+				.sorted(Comparator.comparing(Invoice::getInvoiceDate).thenComparing(Invoice::getId).reversed())
+				.map(Invoice::getId)
+				.collect(Collectors.toList());
+		assertEquals(paid, pageThrough(from, to, "PAID", 2));
+	}
+
+	// doc het cac trang nhu InvoiceService.getInvoicePage: trang sau bat dau sau (invoiceDate, id) cua dong cuoi
+	private List<Long> pageThrough(LocalDateTime from, LocalDateTime to, String status, int size) {
+		List<Long> visited = new ArrayList<>();
+		LocalDateTime cursorDate = to;
+		Long cursorId = Long.MAX_VALUE;
+		while (true) {
+			List<Invoice> page = invoiceRepository.findPageBefore(from, to, cursorDate, cursorId, status, null,
+					PageRequest.of(0, size));
+			if (page.isEmpty()) {
+				return visited;
+			}
+			page.forEach(invoice -> visited.add(invoice.getId()));
+			Invoice last = page.get(page.size() - 1);
+			cursorDate = last.getInvoiceDate();
+			cursorId = last.getId();
+		}
+	}
+
+	private DoctorStatistics dayRow(Long doctorId, LocalDate date, int total, int completed) {
+		DoctorStatistics row = new DoctorStatistics();
+		row.setDoctorId(doctorId);
+		row.setStatDate(date);
+		row.setStatType("DAY");
+		row.setTotalAppointments(total);
+		row.setCompletedAppointments(completed);
+		row.setCancelledAppointments(total - completed);
+		return entityManager.persist(row);
+	}
+
+	private Map<Long, DoctorStatistics> weekRows(LocalDate weekStart) {
+		entityManager.clear();
+		return entityManager.getEntityManager()
+				.createQuery("SELECT s FROM DoctorStatistics s WHERE s.statType = 'WEEK' AND s.statDate = :date",
+						DoctorStatistics.class)
+				.setParameter("date", weekStart)
+				.getResultList().stream()
+				.collect(Collectors.toMap(DoctorStatistics::getDoctorId, s -> s));
+	}
+
+	@Test
+	void upsertRollupSumsClosedWeekAndOverwritesOnRerun() {
+		Long busy = entityManager.persist(new Doctor()).getId();
+		Long idle = entityManager.persist(new Doctor()).getId();
+		LocalDate monday = LocalDate.of(2025, 3, 3);
+		dayRow(busy, monday, 10, 6);
+		dayRow(busy, monday.plusDays(2), 5, 5);
+		DoctorStatistics sunday = dayRow(busy, monday.plusDays(6), 5, 1);
+		// tuan sau: khong tinh
+		dayRow(busy, monday.plusDays(7), 40, 40);
+		entityManager.flush();
+
+		statisticsRepository.upsertRollup("WEEK", "DAY", monday, monday.plusDays(6));
+		Map<Long, DoctorStatistics> rows = weekRows(monday);
+
+		assertEquals(20, rows.get(busy).getTotalAppointments());
+		assertEquals(12, rows.get(busy).getCompletedAppointments());
+		assertEquals(8, rows.get(busy).getCancelledAppointments());
+		assertEquals(60.0, rows.get(busy).getSuccessRate(), 0.001);
+		// bac si khong co lich hen van co dong 0
+		assertEquals(0, rows.get(idle).getTotalAppointments());
+		assertEquals(0.0, rows.get(idle).getSuccessRate(), 0.001);
+
+		// chay lai sau khi dong nguon doi: ghi de, khong cong don
+		DoctorStatistics changed = entityManager.find(DoctorStatistics.class, sunday.getId());
+		changed.setTotalAppointments(10);
+		changed.setCompletedAppointments(9);
+		entityManager.flush();
+		statisticsRepository.upsertRollup("WEEK", "DAY", monday, monday.plusDays(6));
+		rows = weekRows(monday);
+
+		assertEquals(2, rows.size());
+		assertEquals(25, rows.get(busy).getTotalAppointments());
+		assertEquals(20, rows.get(busy).getCompletedAppointments());
+	}
+
+	// so sanh theo gia tri (DECIMAL doc tu MySQL co them so 0 sau dau phay)
+	private static List<Object> normalized(Object[] row) {
+		return Arrays.stream(row)
+				.map(value -> value instanceof BigDecimal ? ((BigDecimal) value).stripTrailingZeros() : value)
+				.collect(Collectors.toList());
+	}
+
+	@Test
+	void analyticsFactQueriesReturnTheFactColumnsOfEveryRegistration() {
+		List<PatientRegistration> registrations = AnalyticsFixtures.registrations(LocalDate.of(2025, 1, 6), 3, 8);
+		for (PatientRegistration registration : registrations) {
+			registration.setId(null);
+			entityManager.persist(registration);
+		}
+		entityManager.flush();
+		entityManager.clear();
+
+		Map<String, Long> expected = new TreeMap<>();
+		for (PatientRegistration registration : registrations) {
+			expected.merge(normalized(AnalyticsFixtures.factRow(registration)).toString(), 1L, Long::sum);
+		}
+		Map<String, Long> streamed = new TreeMap<>();
+		try (Stream<Object[]> rows = registrationRepository.streamAnalyticsFacts()) {
+			rows.forEach(row -> streamed.merge(normalized(row).toString(), 1L, Long::sum));
+		}
+		assertEquals(expected, streamed);
+
+		// doc lai theo id: cung cot, them id dau dong
+		List<Long> ids = List.of(registrations.get(0).getId(), registrations.get(5).getId(), registrations.get(17).getId());
+		Map<Long, List<Object>> byId = new TreeMap<>();
+		for (Object[] row : registrationRepository.findAnalyticsFactsByIds(ids)) {
+			byId.put((Long) row[0], normalized(Arrays.copyOfRange(row, 1, row.length)));
+		}
+		assertEquals(3, byId.size());
+		for (PatientRegistration registration : List.of(registrations.get(0), registrations.get(5), registrations.get(17))) {
+			assertEquals(normalized(AnalyticsFixtures.factRow(registration)), byId.get(registration.getId()));
+		}
+	}
+}
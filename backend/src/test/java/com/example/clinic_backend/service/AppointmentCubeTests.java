@@ -0,0 +1,248 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.event.RegistrationChangeListener;
+import com.example.clinic_backend.event.RegistrationChangedEvent;
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import static com.example.clinic_backend.support.AnalyticsFixtures.factRow;
+import static com.example.clinic_backend.support.AnalyticsFixtures.registrations;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AppointmentCubeTests {
+
+	static final LocalDate START = LocalDate.of(2025, 1, 1);
+
+	private final List<PatientRegistration> registrations = registrations(START, 120, 30);
+	private final PatientRegistrationRepository repository = mock(PatientRegistrationRepository.class);
+	// dong cua lan quet gan nhat theo id: findAnalyticsFactsByIds doc cung snapshot
+	private final Map<Long, Object[]> snapshot = new HashMap<>();
+	private final AppointmentCube cube;
+	private final RegistrationChangeListener listener;
+
+	@SuppressWarnings("unchecked")
+	AppointmentCubeTests() {
+		when(repository.streamAnalyticsFacts()).thenAnswer(inv -> scan().stream());
+		when(repository.findAnalyticsFactsByIds(any())).thenAnswer(inv -> {
+			List<Object[]> rows = new ArrayList<>();
+			for (Long id : (List<Long>) inv.getArgument(0)) {
+				Object[] row = snapshot.get(id);
+				if (row != null) {
+					Object[] withId = new Object[row.length + 1];
+					withId[0] = id;
+					System.arraycopy(row, 0, withId, 1, row.length);
+					rows.add(withId);
+				}
+			}
+			return rows;
+		});
+		cube = new AppointmentCube(repository, mock(PlatformTransactionManager.class));
+		cube.rebuild();
+		listener = new RegistrationChangeListener(event -> cube.onRegistrationChanged((RegistrationChangedEvent) event));
+	}
+
+	@AfterEach
+	void clearSynchronization() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	// chup snapshot cua lan quet
+	private List<Object[]> scan() {
+		snapshot.clear();
+		List<Object[]> rows = new ArrayList<>();
+		for (PatientRegistration registration : registrations) {
+			Object[] row = factRow(registration);
+			snapshot.put(registration.getId(), row);
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	private static long revenue(PatientRegistration r) {
+		return r.getPaidAmount() != null ? r.getPaidAmount().longValue() : 0;
+	}
+
+	@Test
+	void revenueByDepartmentPerWeekMatchesStreamFilter() {
+		LocalDate from = LocalDate.of(2025, 2, 3);
+		LocalDate to = LocalDate.of(2025, 3, 30);
+
+		List<Map<String, Object>> rows = cube.aggregate(new AppointmentCube.Slice().between(from, to).paymentStatus("PAID"),
+				List.of(AppointmentCube.Dimension.WEEK, AppointmentCube.Dimension.DEPARTMENT));
+
+		Map<String, Long> expected = new TreeMap<>();
+		for (PatientRegistration r : registrations) {
+			if ("PAID".equals(r.getPaymentStatus()) && !r.getAppointmentDate().isBefore(from) && !r.getAppointmentDate().isAfter(to)) {
+				LocalDate week = r.getAppointmentDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+				expected.merge(week + "|" + r.getDepartment(), revenue(r), Long::sum);
+			}
+		}
+		Map<String, Long> actual = new TreeMap<>();
+		for (Map<String, Object> row : rows) {
+			actual.put(row.get("week") + "|" + row.get("department"), (Long) row.get("revenue"));
+		}
+		assertEquals(expected, actual);
+		// 8 tuan x 4 khoa, theo thu tu thoi gian
+		assertEquals(32, rows.size());
+		assertEquals("2025-02-03", rows.get(0).get("week"));
+		assertEquals("2025-03-24", rows.get(rows.size() - 1).get("week"));
+	}
+
+	@Test
+	void noShowRateBySlotForOneDoctor() {
+		Map<String, long[]> expected = new TreeMap<>();
+		for (PatientRegistration r : registrations) {
+			if (r.getDoctorId() == 2L) {
+				long[] counts = expected.computeIfAbsent(String.valueOf(r.getAssignedSession()), k -> new long[2]);
+				counts[0]++;
+				if ("MISSED".equals(r.getExaminationStatus())) {
+					counts[1]++;
+				}
+			}
+		}
+
+		List<Map<String, Object>> rows = cube.aggregate(new AppointmentCube.Slice().doctor(2L),
+				List.of(AppointmentCube.Dimension.SLOT));
+
+		assertEquals(expected.size(), rows.size());
+		for (Map<String, Object> row : rows) {
+			long[] counts = expected.get(String.valueOf(row.get("slot")));
+			assertEquals(counts[0], row.get("count"));
+			assertEquals(counts[1], row.get("noShows"));
+			assertEquals(AppointmentCounts.rate((int) counts[1], (int) counts[0]), row.get("noShowRate"));
+		}
+		// gia tri chua tung xuat hien: rong
+		assertTrue(cube.aggregate(new AppointmentCube.Slice().doctor(99L), List.of()).isEmpty());
+		assertEquals(0, cube.count(new AppointmentCube.Slice().department("Khoa khong ton tai")));
+	}
+
+	@Test
+	void committedChangesMoveCountsAndRollbackLeavesCube() {
+		PatientRegistration registration = registrations.stream()
+				.filter(r -> "PENDING".equals(r.getStatus()) && r.getDoctorId() == 1L && !"PAID".equals(r.getPaymentStatus()))
+				.findFirst().orElseThrow();
+		AppointmentCube.Slice doctor = new AppointmentCube.Slice().doctor(1L);
+		long pending = cube.countBy(doctor, AppointmentCube.Dimension.STATUS).get("PENDING");
+		long approved = cube.countBy(doctor, AppointmentCube.Dimension.STATUS).get("APPROVED");
+		AppointmentCube.Slice paid = new AppointmentCube.Slice().doctor(1L).paymentStatus("PAID");
+		long revenue = (Long) cube.aggregate(paid, List.of()).get(0).get("revenue");
+
+		// transaction bi rollback: khong tinh
+		TransactionSynchronizationManager.initSynchronization();
+		listener.onLoad(registration);
+		registration.setStatus("APPROVED");
+		listener.onUpdate(registration);
+		TransactionSynchronizationManager.clearSynchronization();
+		registration.setStatus("PENDING");
+		assertEquals(pending, cube.countBy(doctor, AppointmentCube.Dimension.STATUS).get("PENDING"));
+
+		// duyet + thanh toan, chi thay sau commit
+		TransactionSynchronizationManager.initSynchronization();
+		listener.onLoad(registration);
+		registration.setStatus("APPROVED");
+		registration.setPaymentStatus("PAID");
+		registration.setPaidAmount(BigDecimal.valueOf(200_000));
+		listener.onUpdate(registration);
+		PatientRegistration created = registrations(START, 1, 1).get(0);
+		created.setId((long) registrations.size() + 1);
+		created.setDoctorId(1L);
+		created.setStatus("PENDING");
+		created.setPaymentStatus("UNPAID");
+		created.setPaidAmount(null);
+		listener.onPersist(created);
+		assertEquals(approved, cube.countBy(doctor, AppointmentCube.Dimension.STATUS).get("APPROVED"));
+		TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+		Map<String, Long> byStatus = cube.countBy(doctor, AppointmentCube.Dimension.STATUS);
+		assertEquals(approved + 1, byStatus.get("APPROVED"));
+		assertEquals(pending, byStatus.get("PENDING"));
+		assertEquals(revenue + 200_000, cube.aggregate(paid, List.of()).get(0).get("revenue"));
+	}
+
+	@Test
+	void changeCommittedDuringRebuildIsReplayedOnce() {
+		PatientRegistration registration = registrations.get(0);
+		String after = "CANCELLED".equals(registration.getStatus()) ? "COMPLETED" : "CANCELLED";
+		long total = cube.count(new AppointmentCube.Slice());
+		// quet thay trang thai cu, thay doi commit sau snapshot trong luc dang quet
+		when(repository.streamAnalyticsFacts()).thenAnswer(inv -> {
+			List<Object[]> rows = scan();
+			listener.onLoad(registration);
+			registration.setStatus(after);
+			listener.onUpdate(registration);
+			return rows.stream();
+		});
+
+		cube.rebuild();
+
+		assertEquals(total, cube.count(new AppointmentCube.Slice()));
+		long expected = registrations.stream().filter(r -> after.equals(r.getStatus())).count();
+		assertEquals(expected, cube.count(new AppointmentCube.Slice().status(after)));
+		Map<String, Object> stats = cube.getStats();
+		assertEquals(2L, stats.get("rebuilds"));
+		assertEquals((long) registrations.size(), stats.get("factsLoaded"));
+		assertTrue((Long) stats.get("memoryBytes") > 0);
+	}
+
+	@Test
+	void changeCommittedBeforeSnapshotIsNotCountedTwice() {
+		PatientRegistration registration = registrations.stream()
+				.filter(r -> "PENDING".equals(r.getStatus()) && !"PAID".equals(r.getPaymentStatus()))
+				.findFirst().orElseThrow();
+		AppointmentCube.Slice doctor = new AppointmentCube.Slice().doctor(registration.getDoctorId());
+		long pending = cube.countBy(doctor, AppointmentCube.Dimension.STATUS).get("PENDING");
+		long cancelled = cube.countBy(doctor, AppointmentCube.Dimension.STATUS).get("CANCELLED");
+		long total = cube.count(new AppointmentCube.Slice());
+		// sua, them va xoa don commit sau khi mo nhat ky nhung truoc snapshot: lan quet da thay ca 3
+		PatientRegistration created = registrations(START, 1, 1).get(0);
+		created.setId((long) registrations.size() + 1);
+		PatientRegistration removed = registrations.get(registrations.size() - 1);
+		when(repository.streamAnalyticsFacts()).thenAnswer(inv -> {
+			listener.onLoad(registration);
+			registration.setStatus("CANCELLED");
+			listener.onUpdate(registration);
+			registrations.add(created);
+			listener.onPersist(created);
+			listener.onLoad(removed);
+			registrations.remove(removed);
+			listener.onRemove(removed);
+			return scan().stream();
+		});
+
+		cube.rebuild();
+
+		Map<String, Long> byStatus = cube.countBy(doctor, AppointmentCube.Dimension.STATUS);
+		assertEquals(pending - 1, byStatus.get("PENDING"));
+		assertEquals(cancelled + 1, byStatus.get("CANCELLED"));
+		assertEquals(total, cube.count(new AppointmentCube.Slice()));
+		assertEquals((long) registrations.size(), cube.count(new AppointmentCube.Slice()));
+		long removedCell = registrations.stream()
+				.filter(r -> r.getAppointmentDate().equals(removed.getAppointmentDate())
+						&& r.getDoctorId().equals(removed.getDoctorId()) && Objects.equals(r.getStatus(), removed.getStatus()))
+				.count();
+		assertEquals(removedCell, cube.count(new AppointmentCube.Slice().doctor(removed.getDoctorId())
+				.between(removed.getAppointmentDate(), removed.getAppointmentDate()).status(removed.getStatus())));
+	}
+}
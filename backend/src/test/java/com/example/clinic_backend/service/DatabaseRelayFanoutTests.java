@@ -0,0 +1,128 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.model.BrokerMessage;
+import com.example.clinic_backend.repository.BrokerMessageRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DatabaseRelayFanoutTests {
+
+	// cac dong da commit cua bang broker_messages
+	private final TreeMap<Long, BrokerMessage> committed = new TreeMap<>();
+	private final List<String> delivered = new ArrayList<>();
+	private final DatabaseRelayFanout fanout;
+
+	DatabaseRelayFanoutTests() {
+		BrokerMessageRepository repository = mock(BrokerMessageRepository.class);
+		when(repository.findMaxId()).thenReturn(0L);
+		when(repository.findTop500ByIdGreaterThanOrderByIdAsc(anyLong())).thenAnswer(inv -> {
+			long after = inv.getArgument(0);
+			return new ArrayList<>(committed.tailMap(after, false).values());
+		});
+		when(repository.findByIdInOrderByIdAsc(any())).thenAnswer(inv -> {
+			Collection<Long> ids = inv.getArgument(0);
+			List<BrokerMessage> rows = new ArrayList<>();
+			for (Long id : committed.keySet()) {
+				if (ids.contains(id)) {
+					rows.add(committed.get(id));
+				}
+			}
+			return rows;
+		});
+
+		SimpMessagingTemplate template = mock(SimpMessagingTemplate.class);
+		doAnswer(inv -> {
+			delivered.add(inv.getArgument(0));
+			return null;
+		}).when(template).convertAndSend(anyString(), any(Object.class));
+
+		fanout = new DatabaseRelayFanout(template, repository, new ObjectMapper(), mock(PlatformTransactionManager.class));
+		fanout.start();
+	}
+
+	// node khac commit message co id cho truoc
+	private void commit(long... ids) {
+		for (long id : ids) {
+			BrokerMessage message = new BrokerMessage("other-node", "/topic/m/" + id, null, "{\"id\":" + id + "}");
+			message.setId(id);
+			committed.put(id, message);
+		}
+	}
+
+	@Test
+	void messagesAboveGapAreDeliveredInOrderWithoutWaiting() {
+		commit(1, 2, 4, 5, 7);
+
+		fanout.poll(0);
+
+		assertEquals(List.of("/topic/m/1", "/topic/m/2", "/topic/m/4", "/topic/m/5", "/topic/m/7"), delivered);
+		assertEquals(2, fanout.getStats().get("pendingGaps"));
+		assertEquals(7L, fanout.getStats().get("lastSeenId"));
+	}
+
+	@Test
+	void lateCommitIsDeliveredOnceOnNextPoll() {
+		commit(1, 3, 4);
+		fanout.poll(0);
+
+		// id 2 commit sau khi 3, 4 da duoc giao
+		commit(2, 5);
+		fanout.poll(500);
+		fanout.poll(700);
+
+		assertEquals(List.of("/topic/m/1", "/topic/m/3", "/topic/m/4", "/topic/m/2", "/topic/m/5"), delivered);
+		assertEquals(0, fanout.getStats().get("pendingGaps"));
+		assertEquals(1L, fanout.getStats().get("lateDelivered"));
+		assertEquals(0L, fanout.getStats().get("skipped"));
+	}
+
+	@Test
+	void gapThatNeverCommitsIsDroppedAfterWait() {
+		commit(1, 3);
+		fanout.poll(0);
+		fanout.poll(1999);
+		assertEquals(1, fanout.getStats().get("pendingGaps"));
+
+		fanout.poll(2000);
+		assertEquals(0, fanout.getStats().get("pendingGaps"));
+		assertEquals(1L, fanout.getStats().get("skipped"));
+
+		// khong con theo doi: message cu hon khong bi giao lai, message moi van giao
+		commit(2, 4);
+		fanout.poll(2500);
+		assertEquals(List.of("/topic/m/1", "/topic/m/3", "/topic/m/4"), delivered);
+	}
+
+	@Test
+	void gapsAreTrackedPerIdAndExpireIndependently() {
+		commit(1, 3);
+		fanout.poll(0);
+		commit(5);
+		fanout.poll(1500);
+
+		// id 2 qua han, id 4 van con cho
+		fanout.poll(2000);
+		assertEquals(1, fanout.getStats().get("pendingGaps"));
+		commit(4);
+		fanout.poll(2200);
+
+		assertEquals(List.of("/topic/m/1", "/topic/m/3", "/topic/m/5", "/topic/m/4"), delivered);
+		assertEquals(1L, fanout.getStats().get("skipped"));
+		assertEquals(1L, fanout.getStats().get("lateDelivered"));
+	}
+}
@@ -0,0 +1,133 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// MO HINH SO TRUY VAN, khong do MySQL: so sanh thong ke bac si theo tuan / thang / nam giua cach cu
+// (moi ngay 1 truy van tai entity + 1 truy van tong hop) va 1 truy van GROUP BY.
+// - repository la gia lap Mockito trong bo nho (DoctorStatisticsServiceTests.fakeRegistrationRepository),
+//   GROUP BY duoc tinh bang Java chu khong phai database
+// - moi truy van bi tinh them dung roundTripMicros (parkNanos) thay cho 1 vong mang
+// Ket qua vi vay ~ so truy van x roundTripMicros + chi phi gop trong bo nho; khong phan anh ke hoach truy van,
+// chi muc hay chi phi GROUP BY that tren MySQL - can do lai tren database that truoc khi ket luan.
+// Chay: mvn test-compile, roi chay main() cua lop nay voi classpath test (khong chay trong mvn test);
+// main in so truy van moi request truoc khi do thoi gian.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DoctorStatisticsBenchmark {
+
+	private static final int APPOINTMENTS_PER_DAY = 40;
+	private static final LocalDate END = LocalDate.of(2025, 12, 31);
+
+	@Param({"WEEK", "MONTH", "YEAR"})
+	public String range;
+
+	// do tre gia dinh cua 1 truy van (tham so cua mo hinh, khong phai so do)
+	@Param({"300"})
+	public long roundTripMicros;
+
+	private final AtomicInteger queries = new AtomicInteger();
+	private PatientRegistrationRepository repository;
+	private DoctorStatisticsService service;
+	private LocalDate start;
+
+	@Setup
+	public void setUp() {
+		start = startOf(range);
+		List<PatientRegistration> registrations = DoctorStatisticsServiceTests.registrations(
+				END.minusDays(365), 366, APPOINTMENTS_PER_DAY);
+		repository = DoctorStatisticsServiceTests.fakeRegistrationRepository(registrations, queries,
+				() -> LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(roundTripMicros)));
+		service = DoctorStatisticsServiceTests.service(repository);
+	}
+
+	@Benchmark
+	public Object perDayQueries() {
+		return LegacyChart.build(repository, start, END);
+	}
+
+	@Benchmark
+	public Object groupedQuery() {
+		return service.getCustomStatistics(DoctorStatisticsServiceTests.DOCTOR_ID, start, END);
+	}
+
+	private static LocalDate startOf(String range) {
+		switch (range) {
+			case "WEEK":
+				return END.minusDays(6);
+			case "MONTH":
+				return END.withDayOfMonth(1);
+			default:
+				return END.minusDays(364);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		PrintStream out = System.out;
+		out.println("Mo hinh so truy van (repository gia lap, moi truy van = roundTripMicros), khong phai do tren MySQL");
+		for (String range : new String[]{"WEEK", "MONTH", "YEAR"}) {
+			DoctorStatisticsBenchmark benchmark = new DoctorStatisticsBenchmark();
+			benchmark.range = range;
+			benchmark.roundTripMicros = 300;
+			benchmark.setUp();
+			// service in log bang System.out: tat trong luc dem
+			System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+			benchmark.perDayQueries();
+			int legacy = benchmark.queries.getAndSet(0);
+			benchmark.groupedQuery();
+			int grouped = benchmark.queries.getAndSet(0);
+			System.setOut(out);
+			out.printf("%-5s so truy van / request: theo ngay %d, GROUP BY %d%n", range, legacy, grouped);
+		}
+		new Runner(new OptionsBuilder().include(DoctorStatisticsBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	// ban sao cach tinh cu cua DoctorStatisticsService (truoc khi dung GROUP BY) de lam moc so sanh
+	private static final class LegacyChart {
+
+		static Map<String, Object> build(PatientRegistrationRepository repository, LocalDate startDate, LocalDate endDate) {
+			Map<String, Object> result = new HashMap<>();
+			List<PatientRegistration> appointments = repository
+					.findByDoctorIdAndDateRange(DoctorStatisticsServiceTests.DOCTOR_ID, startDate, endDate);
+			result.put("total", appointments.size());
+			result.put("completed", appointments.stream().filter(a -> "COMPLETED".equals(a.getStatus())).count());
+
+			int points = 0;
+			for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+				List<PatientRegistration> daily = repository
+						.findByDoctorAndDateAndSession(DoctorStatisticsServiceTests.DOCTOR_ID, date, null);
+				long completed = daily.stream().filter(a -> "COMPLETED".equals(a.getStatus())).count();
+				points += daily.isEmpty() ? 0 : (int) (completed * 100 / daily.size());
+			}
+			result.put("points", points);
+			return result;
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.event.RegistrationChangeListener;
+import com.example.clinic_backend.event.RegistrationChangedEvent;
+import com.example.clinic_backend.model.DoctorStatistics;
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.DoctorStatisticsRepository;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DoctorStatisticsRecorderTests {
+
+	private static final LocalDate DATE = LocalDate.of(2025, 3, 10);
+
+	// gia lap bang doctor_statistics (khoa bac si|loai|ngay): INSERT IGNORE + UPDATE cong don
+	private final Map<String, int[]> table = new HashMap<>();
+	private final DoctorStatisticsRepository statisticsRepository = mock(DoctorStatisticsRepository.class);
+	private final PatientRegistrationRepository registrationRepository = mock(PatientRegistrationRepository.class);
+	private final DoctorStatisticsRecorder recorder;
+	private final RegistrationChangeListener listener;
+
+	DoctorStatisticsRecorderTests() {
+		when(statisticsRepository.insertDayIfAbsent(anyLong(), any())).thenAnswer(inv -> {
+			table.putIfAbsent(inv.getArgument(0) + "|DAY|" + inv.getArgument(1), new int[6]);
+			return 1;
+		});
+		when(statisticsRepository.addDelta(anyLong(), anyString(), any(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt()))
+				.thenAnswer(inv -> {
+					// dong chua co (ky chua tong hop): UPDATE khong trung dong nao
+					int[] row = table.get(inv.getArgument(0) + "|" + inv.getArgument(1) + "|" + inv.getArgument(2));
+					if (row == null) {
+						return 0;
+					}
+					for (int i = 0; i < 6; i++) {
+						row[i] += (int) inv.getArgument(i + 3);
+					}
+					return 1;
+				});
+		SchedulerLockService lockService = mock(SchedulerLockService.class);
+		recorder = new DoctorStatisticsRecorder(statisticsRepository, registrationRepository, lockService,
+				mock(DoctorStatisticsRollup.class), mock(PlatformTransactionManager.class), 400, 90, 10000);
+		listener = new RegistrationChangeListener(event -> recorder.onRegistrationChanged((RegistrationChangedEvent) event));
+	}
+
+	@AfterEach
+	void clearSynchronization() throws Exception {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		recorder.stop();
+	}
+
+	private static PatientRegistration registration(Long doctorId, String status) {
+		PatientRegistration registration = new PatientRegistration();
+		registration.setDoctorId(doctorId);
+		registration.setAppointmentDate(DATE);
+		registration.setStatus(status);
+		return registration;
+	}
+
+	private int[] row(Long doctorId) {
+		return row(doctorId, "DAY", DATE);
+	}
+
+	private int[] row(Long doctorId, String type, LocalDate date) {
+		return table.getOrDefault(doctorId + "|" + type + "|" + date, new int[6]);
+	}
+
+	// commit roi cho thread ghi cua recorder ghi xong
+	private void commit() throws Exception {
+		List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		synchronizations.forEach(s -> s.beforeCommit(false));
+		synchronizations.forEach(TransactionSynchronization::afterCommit);
+		recorder.awaitWrites();
+	}
+
+	@Test
+	void transitionsInOneTransactionAreWrittenOnceAfterCommit() throws Exception {
+		TransactionSynchronizationManager.initSynchronization();
+
+		// dang ky -> duyet -> hoan thanh trong cung transaction
+		PatientRegistration registration = registration(1L, "PENDING");
+		listener.onPersist(registration);
+		registration.setStatus("APPROVED");
+		listener.onUpdate(registration);
+		registration.setStatus("COMPLETED");
+		listener.onUpdate(registration);
+		// don khac bi danh dau vang
+		PatientRegistration missed = registration(1L, "APPROVED");
+		listener.onLoad(missed);
+		missed.setStatus("CANCELLED");
+		missed.setExaminationStatus("MISSED");
+		listener.onUpdate(missed);
+
+		verify(statisticsRepository, never()).addDelta(anyLong(), anyString(), any(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt());
+		commit();
+
+		verify(statisticsRepository, times(1)).addDelta(anyLong(), eq("DAY"), any(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt());
+		// total, completed, cancelled, noShow, approved, pending
+		assertEquals("[1, 1, 1, 1, -1, 0]", java.util.Arrays.toString(row(1L)));
+	}
+
+	@Test
+	void reassignedDoctorMovesCountBetweenRows() throws Exception {
+		TransactionSynchronizationManager.initSynchronization();
+
+		PatientRegistration registration = registration(1L, "APPROVED");
+		listener.onLoad(registration);
+		registration.setDoctorId(2L);
+		listener.onUpdate(registration);
+		// thay doi khong lien quan thong ke (thanh toan) khong ghi gi
+		PatientRegistration paid = registration(3L, "APPROVED");
+		listener.onLoad(paid);
+		paid.setPaymentStatus("PAID");
+		listener.onUpdate(paid);
+		commit();
+
+		assertEquals("[-1, 0, 0, 0, -1, 0]", java.util.Arrays.toString(row(1L)));
+		assertEquals("[1, 0, 0, 0, 1, 0]", java.util.Arrays.toString(row(2L)));
+		verify(statisticsRepository, never()).insertDayIfAbsent(eq(3L), any());
+	}
+
+	@Test
+	void changesFlushedAtCommitAreWrittenAfterCommit() throws Exception {
+		TransactionSynchronizationManager.initSynchronization();
+		PatientRegistration registration = registration(1L, "APPROVED");
+		listener.onLoad(registration);
+		registration.setStatus("CANCELLED");
+		listener.onUpdate(registration);
+
+		List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		synchronizations.forEach(s -> s.beforeCommit(false));
+		// flush cua Hibernate luc commit chay sau beforeCommit
+		PatientRegistration late = registration(1L, "PENDING");
+		listener.onPersist(late);
+		synchronizations.forEach(TransactionSynchronization::afterCommit);
+		recorder.awaitWrites();
+
+		assertEquals("[1, 0, 1, 0, -1, 1]", java.util.Arrays.toString(row(1L)));
+		verify(statisticsRepository, times(1)).addDelta(anyLong(), eq("DAY"), any(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt());
+	}
+
+	@Test
+	void statisticsWriteFailureDoesNotFailBooking() throws Exception {
+		when(statisticsRepository.insertDayIfAbsent(anyLong(), any())).thenThrow(new RuntimeException("Lock wait timeout"));
+		TransactionSynchronizationManager.initSynchronization();
+		listener.onPersist(registration(1L, "PENDING"));
+
+		// loi ghi thong ke sau commit: dat lich da commit, chi dem loi cho doi chieu
+		commit();
+
+		assertEquals(1L, recorder.getStats().get("failedBatches"));
+		assertEquals("[0, 0, 0, 0, 0, 0]", java.util.Arrays.toString(row(1L)));
+	}
+
+	@Test
+	void deltasAreWrittenOnTheWriterThreadNotTheCommittingOne() throws Exception {
+		// afterCommit chay khi ket noi cua transaction dat lich chua duoc tra: khong duoc ghi tai cho
+		List<String> threads = new ArrayList<>();
+		when(statisticsRepository.insertDayIfAbsent(anyLong(), any())).thenAnswer(inv -> {
+			threads.add(Thread.currentThread().getName());
+			table.putIfAbsent(inv.getArgument(0) + "|DAY|" + inv.getArgument(1), new int[6]);
+			return 1;
+		});
+		TransactionSynchronizationManager.initSynchronization();
+		listener.onPersist(registration(1L, "PENDING"));
+		commit();
+
+		assertEquals(List.of("doctor-stats-writer"), threads);
+		assertEquals("[1, 0, 0, 0, 0, 1]", java.util.Arrays.toString(row(1L)));
+	}
+
+	@Test
+	void withoutTransactionDeltaIsQueuedForTheWriter() throws Exception {
+		PatientRegistration registration = registration(1L, "PENDING");
+		listener.onPersist(registration);
+		// chua co bac si: khong tinh
+		listener.onPersist(registration(null, "PENDING"));
+		recorder.awaitWrites();
+
+		assertEquals("[1, 0, 0, 0, 0, 1]", java.util.Arrays.toString(row(1L)));
+		verify(statisticsRepository, times(1)).insertDayIfAbsent(anyLong(), any());
+	}
+
+	@Test
+	void reconcileRewritesOnlyDriftedRows() {
+		DoctorStatistics correct = new DoctorStatistics(1L, DATE, "DAY");
+		correct.setTotalAppointments(2);
+		correct.setCompletedAppointments(2);
+		DoctorStatistics drifted = new DoctorStatistics(2L, DATE, "DAY");
+		drifted.setTotalAppointments(5);
+		drifted.setApprovedAppointments(5);
+		DoctorStatistics orphan = new DoctorStatistics(3L, DATE, "DAY");
+		orphan.setTotalAppointments(1);
+		orphan.setPendingAppointments(1);
+		when(statisticsRepository.lockForReconcile(anyString(), any(), any(), isNull()))
+				.thenReturn(new ArrayList<>(List.of(correct, drifted, orphan)));
+		when(registrationRepository.countGroupedByDoctorAndDate(any(), any(), isNull())).thenReturn(List.of(
+				new Object[]{1L, DATE, "COMPLETED", "DONE", 2L},
+				new Object[]{2L, DATE, "APPROVED", "WAITING", 3L},
+				new Object[]{2L, DATE, "CANCELLED", "MISSED", 1L},
+				new Object[]{4L, DATE, "PENDING", "WAITING", 1L}));
+		List<DoctorStatistics> saved = new ArrayList<>();
+		when(statisticsRepository.save(any())).thenAnswer(inv -> {
+			saved.add(inv.getArgument(0));
+			return inv.getArgument(0);
+		});
+
+		int corrected = recorder.reconcile(null, DATE, DATE);
+
+		assertEquals(3, corrected);
+		assertEquals(3, saved.size());
+		assertTrue(!saved.contains(correct));
+		assertEquals(4, drifted.getTotalAppointments());
+		assertEquals(3, drifted.getApprovedAppointments());
+		assertEquals(1, drifted.getCancelledAppointments());
+		assertEquals(1, drifted.getNoShowAppointments());
+		assertEquals(0, orphan.getTotalAppointments());
+		DoctorStatistics created = saved.stream().filter(r -> r.getDoctorId() == 4L).findFirst().orElseThrow();
+		assertEquals(1, created.getPendingAppointments());
+	}
+
+	@Test
+	void closedPeriodRollupsFollowDayChangesAndReconcileFixes() throws Exception {
+		// 10/03/2025: tuan bat dau 10/03, thang 03/2025, nam 2025 deu da dong va da tong hop
+		table.put("1|WEEK|2025-03-10", new int[]{4, 4, 0, 0, 0, 0});
+		table.put("1|MONTH|2025-03-01", new int[]{20, 15, 5, 0, 0, 0});
+		table.put("1|YEAR|2025-01-01", new int[]{90, 70, 20, 0, 0, 0});
+
+		PatientRegistration registration = registration(1L, "COMPLETED");
+		listener.onLoad(registration);
+		registration.setStatus("CANCELLED");
+		listener.onUpdate(registration);
+		recorder.awaitWrites();
+
+		assertEquals("[4, 3, 1, 0, 0, 0]", java.util.Arrays.toString(row(1L, "WEEK", LocalDate.of(2025, 3, 10))));
+		assertEquals("[20, 14, 6, 0, 0, 0]", java.util.Arrays.toString(row(1L, "MONTH", LocalDate.of(2025, 3, 1))));
+		assertEquals("[90, 69, 21, 0, 0, 0]", java.util.Arrays.toString(row(1L, "YEAR", LocalDate.of(2025, 1, 1))));
+		// ky dang mo (hom nay) chua co dong tong hop: khong UPDATE
+		PatientRegistration today = registration(1L, "PENDING");
+		today.setAppointmentDate(LocalDate.now());
+		listener.onPersist(today);
+		recorder.awaitWrites();
+		verify(statisticsRepository, never()).addDelta(anyLong(), eq("WEEK"), eq(
+				DoctorStatisticsRollup.periodStart(LocalDate.now(), "WEEK")), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt());
+
+		// doi chieu sua dong DAY lech (2 don bi bo sot) cung sua dong tong hop
+		DoctorStatistics stored = new DoctorStatistics(1L, DATE, "DAY");
+		stored.setTotalAppointments(1);
+		stored.setCancelledAppointments(1);
+		when(statisticsRepository.lockForReconcile(anyString(), any(), any(), eq(1L)))
+				.thenReturn(new ArrayList<>(List.of(stored)));
+		when(registrationRepository.countGroupedByDoctorAndDate(any(), any(), eq(1L))).thenReturn(List.<Object[]>of(
+				new Object[]{1L, DATE, "CANCELLED", "WAITING", 1L},
+				new Object[]{1L, DATE, "COMPLETED", "DONE", 2L}));
+
+		assertEquals(1, recorder.reconcile(1L, DATE, DATE));
+		assertEquals("[6, 5, 1, 0, 0, 0]", java.util.Arrays.toString(row(1L, "WEEK", LocalDate.of(2025, 3, 10))));
+		assertEquals("[92, 71, 21, 0, 0, 0]", java.util.Arrays.toString(row(1L, "YEAR", LocalDate.of(2025, 1, 1))));
+	}
+}
@@ -0,0 +1,340 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.model.Doctor;
+import com.example.clinic_backend.model.DoctorStatistics;
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.DoctorRepository;
+import com.example.clinic_backend.repository.DoctorStatisticsRepository;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DoctorStatisticsServiceTests {
+
+	static final Long DOCTOR_ID = 3L;
+	static final String[] SESSIONS = {"07:00-08:00", "09:00-10:00", "14:00-15:00", null};
+	static final String[] STATUSES = {"COMPLETED", "COMPLETED", "CANCELLED", "APPROVED", "PENDING"};
+
+	// lich hen ngau nhien (co dinh seed) cho 1 bac si, bo trong vai ngay
+	static List<PatientRegistration> registrations(LocalDate from, int days, int perDay) {
+		Random random = new Random(42);
+		List<PatientRegistration> registrations = new ArrayList<>();
+		for (int day = 0; day < days; day++) {
+			if (day % 6 == 5) {
+				continue;
+			}
+			for (int i = 0; i < perDay; i++) {
+				PatientRegistration registration = new PatientRegistration();
+				registration.setDoctorId(DOCTOR_ID);
+				registration.setAppointmentDate(from.plusDays(day));
+				registration.setAssignedSession(SESSIONS[random.nextInt(SESSIONS.length)]);
+				registration.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+				registration.setExaminationStatus(random.nextInt(5) == 0 ? "MISSED" : "WAITING");
+				registrations.add(registration);
+			}
+		}
+		return registrations;
+	}
+
+	// gia lap cac truy van tren patient_registrations (GROUP BY nhu MySQL); dem so truy van
+	static PatientRegistrationRepository fakeRegistrationRepository(List<PatientRegistration> registrations,
+																	AtomicInteger queries, Runnable roundTrip) {
+		PatientRegistrationRepository repository = mock(PatientRegistrationRepository.class);
+		when(repository.countByDoctorGroupedByDateAndStatus(anyLong(), any(), any())).thenAnswer(inv -> {
+			queries.incrementAndGet();
+			roundTrip.run();
+			LocalDate start = inv.getArgument(1);
+			LocalDate end = inv.getArgument(2);
+			Map<List<Object>, Long> groups = new LinkedHashMap<>();
+			for (PatientRegistration r : registrations) {
+				if (!r.getAppointmentDate().isBefore(start) && !r.getAppointmentDate().isAfter(end)) {
+					groups.merge(Arrays.asList(r.getAppointmentDate(), r.getStatus(), r.getExaminationStatus()), 1L, Long::sum);
+				}
+			}
+			return rows(groups);
+		});
+		when(repository.countByDoctorGroupedBySessionAndStatus(anyLong(), any())).thenAnswer(inv -> {
+			queries.incrementAndGet();
+			roundTrip.run();
+			LocalDate date = inv.getArgument(1);
+			Map<List<Object>, Long> groups = new LinkedHashMap<>();
+			for (PatientRegistration r : registrations) {
+				if (r.getAppointmentDate().equals(date)) {
+					groups.merge(Arrays.asList(r.getAssignedSession(), r.getStatus(), r.getExaminationStatus()), 1L, Long::sum);
+				}
+			}
+			return rows(groups);
+		});
+		// tra theo ngay qua index (doctor_id, appointment_date) nhu MySQL
+		Map<LocalDate, List<PatientRegistration>> byDate = registrations.stream()
+				.collect(Collectors.groupingBy(PatientRegistration::getAppointmentDate));
+		when(repository.findByDoctorAndDateAndSession(anyLong(), any(), any())).thenAnswer(inv -> {
+			queries.incrementAndGet();
+			roundTrip.run();
+			return byDate.getOrDefault(inv.<LocalDate>getArgument(1), List.of());
+		});
+		when(repository.findByDoctorIdAndDateRange(anyLong(), any(), any())).thenAnswer(inv -> {
+			queries.incrementAndGet();
+			roundTrip.run();
+			LocalDate start = inv.getArgument(1);
+			LocalDate end = inv.getArgument(2);
+			return registrations.stream()
+					.filter(r -> !r.getAppointmentDate().isBefore(start) && !r.getAppointmentDate().isAfter(end))
+					.toList();
+		});
+		return repository;
+	}
+
+	// khoang ngoai cua so doi chieu: tinh tu patient_registrations
+	static DoctorStatisticsService service(PatientRegistrationRepository registrationRepository) {
+		return service(registrationRepository, mock(DoctorStatisticsRepository.class), false);
+	}
+
+	static DoctorStatisticsService service(PatientRegistrationRepository registrationRepository,
+										   DoctorStatisticsRepository statisticsRepository, boolean countersCover) {
+		Doctor doctor = new Doctor();
+		doctor.setId(DOCTOR_ID);
+		doctor.setFullName("BS. Nguyễn Văn A");
+		DoctorRepository doctorRepository = mock(DoctorRepository.class);
+		when(doctorRepository.findById(eq(DOCTOR_ID))).thenReturn(Optional.of(doctor));
+		DoctorStatisticsRecorder recorder = mock(DoctorStatisticsRecorder.class);
+		when(recorder.covers(any())).thenReturn(countersCover);
+		return new DoctorStatisticsService(statisticsRepository, registrationRepository, doctorRepository, recorder);
+	}
+
+	// dong DAY dung nhu bo dem da doi chieu
+	static List<DoctorStatistics> dayRows(List<PatientRegistration> registrations) {
+		Map<LocalDate, DoctorStatistics> rows = new TreeMap<>();
+		for (PatientRegistration r : registrations) {
+			DoctorStatistics row = rows.computeIfAbsent(r.getAppointmentDate(),
+					date -> new DoctorStatistics(DOCTOR_ID, date, "DAY"));
+			row.setTotalAppointments(row.getTotalAppointments() + 1);
+			if ("COMPLETED".equals(r.getStatus())) {
+				row.setCompletedAppointments(row.getCompletedAppointments() + 1);
+			} else if ("CANCELLED".equals(r.getStatus())) {
+				row.setCancelledAppointments(row.getCancelledAppointments() + 1);
+			} else if ("APPROVED".equals(r.getStatus())) {
+				row.setApprovedAppointments(row.getApprovedAppointments() + 1);
+			} else if ("PENDING".equals(r.getStatus())) {
+				row.setPendingAppointments(row.getPendingAppointments() + 1);
+			}
+			if ("MISSED".equals(r.getExaminationStatus())) {
+				row.setNoShowAppointments(row.getNoShowAppointments() + 1);
+			}
+		}
+		return new ArrayList<>(rows.values());
+	}
+
+	private static List<Object[]> rows(Map<List<Object>, Long> groups) {
+		List<Object[]> rows = new ArrayList<>();
+		groups.forEach((key, count) -> rows.add(new Object[]{key.get(0), key.get(1), key.get(2), count}));
+		return rows;
+	}
+
+	private static long count(List<PatientRegistration> registrations, LocalDate date, String status) {
+		return registrations.stream()
+				.filter(r -> date == null || r.getAppointmentDate().equals(date))
+				.filter(r -> status == null || status.equals(r.getStatus()))
+				.count();
+	}
+
+	private static long countInMonth(List<PatientRegistration> registrations, int month, String status) {
+		return registrations.stream()
+				.filter(r -> r.getAppointmentDate().getMonthValue() == month)
+				.filter(r -> status == null || status.equals(r.getStatus()))
+				.count();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void customRangeUsesOneGroupedQueryAndFillsEveryMonth() {
+		LocalDate start = LocalDate.of(2025, 1, 1);
+		List<PatientRegistration> registrations = registrations(start, 365, 12);
+		AtomicInteger queries = new AtomicInteger();
+		DoctorStatisticsService service = service(fakeRegistrationRepository(registrations, queries, () -> { }));
+
+		Map<String, Object> response = service.getCustomStatistics(DOCTOR_ID, start, start.plusDays(364));
+
+		assertEquals(true, response.get("success"));
+		assertEquals(1, queries.get());
+
+		Map<String, Object> chart = (Map<String, Object>) response.get("chartData");
+		List<String> labels = (List<String>) chart.get("labels");
+		List<Integer> totals = (List<Integer>) chart.get("totals");
+		List<Integer> completeds = (List<Integer>) chart.get("completeds");
+		// khoang 1 nam: moi thang 1 diem
+		assertEquals("MONTH", chart.get("granularity"));
+		assertEquals(12, labels.size());
+		assertEquals("01/2025", labels.get(0));
+		assertEquals("12/2025", labels.get(11));
+		for (int month = 0; month < 12; month++) {
+			int m = month + 1;
+			assertEquals(countInMonth(registrations, m, null), (long) totals.get(month), "totals " + m);
+			assertEquals(countInMonth(registrations, m, "COMPLETED"), (long) completeds.get(month), "completeds " + m);
+		}
+
+		Map<String, Object> stats = (Map<String, Object>) response.get("stats");
+		assertEquals(registrations.size(), stats.get("totalAppointments"));
+		assertEquals((int) count(registrations, null, "COMPLETED"), stats.get("completedAppointments"));
+		assertEquals((int) count(registrations, null, "CANCELLED"), stats.get("cancelledAppointments"));
+		assertEquals((int) count(registrations, null, "APPROVED"), stats.get("approvedAppointments"));
+		assertEquals((int) count(registrations, null, "PENDING"), stats.get("pendingAppointments"));
+		assertEquals((int) registrations.stream().filter(r -> "MISSED".equals(r.getExaminationStatus())).count(),
+				stats.get("noShowAppointments"));
+		double successRate = (double) stats.get("successRate");
+		double expected = ((double) count(registrations, null, "COMPLETED") / registrations.size()) * 100;
+		assertEquals(Math.round(expected * 100.0) / 100.0, successRate);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void longRangeReadsMonthRollupsAndStitchesPartialMonthsFromDayRows() {
+		LocalDate start = LocalDate.of(2025, 1, 15);
+		LocalDate end = LocalDate.of(2025, 12, 20);
+		List<PatientRegistration> registrations = registrations(LocalDate.of(2025, 1, 1), 365, 6);
+		List<DoctorStatistics> days = dayRows(registrations);
+		// thang 02 - 11 da tong hop, rieng thang 06 chua co dong MONTH
+		List<DoctorStatistics> months = new ArrayList<>();
+		for (int m = 2; m <= 11; m++) {
+			if (m == 6) {
+				continue;
+			}
+			LocalDate first = LocalDate.of(2025, m, 1);
+			DoctorStatistics month = new DoctorStatistics(DOCTOR_ID, first, "MONTH");
+			AppointmentCounts counts = new AppointmentCounts();
+			days.stream().filter(d -> d.getStatDate().getMonthValue() == first.getMonthValue()).forEach(counts::add);
+			counts.copyTo(month);
+			months.add(month);
+		}
+		DoctorStatisticsRepository statisticsRepository = mock(DoctorStatisticsRepository.class);
+		when(statisticsRepository.findByDoctorIdAndStatTypeInAndStatDateBetween(anyLong(), any(), any(), any()))
+				.thenAnswer(inv -> months.stream()
+						.filter(r -> inv.<Collection<String>>getArgument(1).contains(r.getStatType()))
+						.filter(r -> !r.getStatDate().isBefore(inv.getArgument(2)) && !r.getStatDate().isAfter(inv.getArgument(3)))
+						.toList());
+		List<LocalDate> requestedDays = new ArrayList<>();
+		when(statisticsRepository.findByDoctorIdAndStatTypeAndStatDateIn(anyLong(), eq("DAY"), any())).thenAnswer(inv -> {
+			requestedDays.addAll(inv.<Collection<LocalDate>>getArgument(2));
+			return days.stream().filter(d -> requestedDays.contains(d.getStatDate())).toList();
+		});
+		AtomicInteger queries = new AtomicInteger();
+		DoctorStatisticsService service = service(
+				fakeRegistrationRepository(registrations, queries, () -> { }), statisticsRepository, true);
+
+		Map<String, Object> response = service.getCustomStatistics(DOCTOR_ID, start, end);
+
+		assertEquals(0, queries.get());
+		// 17 ngay thang 01 + 30 ngay thang 06 + 20 ngay thang 12
+		assertEquals(17 + 30 + 20, requestedDays.size());
+		verify(statisticsRepository, never()).findByDoctorIdAndStatTypeAndStatDateBetweenOrderByStatDateAsc(
+				anyLong(), anyString(), any(), any());
+		Map<String, Object> chart = (Map<String, Object>) response.get("chartData");
+		List<String> labels = (List<String>) chart.get("labels");
+		List<Integer> totals = (List<Integer>) chart.get("totals");
+		assertEquals(12, labels.size());
+		assertEquals("01/2025", labels.get(0));
+		List<PatientRegistration> inRange = registrations.stream()
+				.filter(r -> !r.getAppointmentDate().isBefore(start) && !r.getAppointmentDate().isAfter(end))
+				.toList();
+		for (int month = 0; month < 12; month++) {
+			assertEquals(countInMonth(inRange, month + 1, null), (long) totals.get(month), "totals " + (month + 1));
+		}
+		Map<String, Object> stats = (Map<String, Object>) response.get("stats");
+		assertEquals(inRange.size(), stats.get("totalAppointments"));
+		assertEquals((int) count(inRange, null, "CANCELLED"), stats.get("cancelledAppointments"));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void todayChartCountsSlotsAndKeepsUnassignedInSummary() {
+		LocalDate today = LocalDate.now();
+		List<PatientRegistration> registrations = registrations(today, 1, 40);
+		AtomicInteger queries = new AtomicInteger();
+		DoctorStatisticsService service = service(fakeRegistrationRepository(registrations, queries, () -> { }));
+
+		Map<String, Object> response = service.getDoctorStatistics(DOCTOR_ID, "TODAY");
+
+		assertEquals(1, queries.get());
+		Map<String, Object> chart = (Map<String, Object>) response.get("chartData");
+		List<String> labels = (List<String>) chart.get("labels");
+		List<Integer> totals = (List<Integer>) chart.get("totals");
+		assertEquals(9, labels.size());
+		for (int slot = 0; slot < labels.size(); slot++) {
+			String session = labels.get(slot);
+			assertEquals(registrations.stream().filter(r -> session.equals(r.getAssignedSession())).count(),
+					(long) totals.get(slot), session);
+		}
+		int charted = totals.stream().mapToInt(Integer::intValue).sum();
+		Map<String, Object> stats = (Map<String, Object>) response.get("stats");
+		assertEquals(registrations.size(), stats.get("totalAppointments"));
+		assertTrue(charted < registrations.size());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void monthChartHasOnePointPerElapsedDay() {
+		LocalDate today = LocalDate.now();
+		LocalDate start = today.withDayOfMonth(1);
+		AtomicInteger queries = new AtomicInteger();
+		DoctorStatisticsService service = service(fakeRegistrationRepository(
+				registrations(start, today.getDayOfMonth(), 5), queries, () -> { }));
+
+		Map<String, Object> response = service.getDoctorStatistics(DOCTOR_ID, "MONTH");
+
+		assertEquals(1, queries.get());
+		List<String> labels = (List<String>) ((Map<String, Object>) response.get("chartData")).get("labels");
+		assertEquals(today.getDayOfMonth(), labels.size());
+		assertEquals("1", labels.get(0));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void reconciledRangeReadsDayCountersWithoutScanningRegistrations() {
+		LocalDate today = LocalDate.now();
+		LocalDate start = today.minusDays(29);
+		List<PatientRegistration> registrations = registrations(start, 30, 8);
+		AtomicInteger queries = new AtomicInteger();
+		DoctorStatisticsRepository statisticsRepository = mock(DoctorStatisticsRepository.class);
+		when(statisticsRepository.findByDoctorIdAndStatTypeAndStatDateBetweenOrderByStatDateAsc(
+				anyLong(), anyString(), any(), any())).thenReturn(dayRows(registrations));
+		DoctorStatisticsService service = service(
+				fakeRegistrationRepository(registrations, queries, () -> { }), statisticsRepository, true);
+
+		Map<String, Object> response = service.getCustomStatistics(DOCTOR_ID, start, today);
+
+		assertEquals(0, queries.get());
+		List<Integer> totals = (List<Integer>) ((Map<String, Object>) response.get("chartData")).get("totals");
+		assertEquals(30, totals.size());
+		for (int day = 0; day < 30; day++) {
+			assertEquals(count(registrations, start.plusDays(day), null), (long) totals.get(day));
+		}
+		Map<String, Object> stats = (Map<String, Object>) response.get("stats");
+		assertEquals(registrations.size(), stats.get("totalAppointments"));
+		assertEquals((int) count(registrations, null, "PENDING"), stats.get("pendingAppointments"));
+		assertEquals((int) registrations.stream().filter(r -> "MISSED".equals(r.getExaminationStatus())).count(),
+				stats.get("noShowAppointments"));
+	}
+}
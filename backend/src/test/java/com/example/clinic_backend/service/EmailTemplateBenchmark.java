@@ -0,0 +1,168 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.model.PatientRegistration;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+// So sanh tao email nhac lich cho 1 lo 10.000 don: builder noi chuoi cu (multipart) va template bien dich san.
+// Chay: mvn test-compile, roi chay main() cua lop nay voi classpath test (khong chay trong mvn test).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailTemplateBenchmark {
+
+	private static final int BATCH = 10_000;
+
+	private final List<PatientRegistration> batch = new ArrayList<>(BATCH);
+	private EmailService emailService;
+	private Session session;
+
+	@Setup
+	public void setUp() {
+		emailService = new EmailService();
+		emailService.loadTemplates();
+		session = Session.getInstance(new Properties());
+
+		for (int i = 0; i < BATCH; i++) {
+			PatientRegistration appointment = new PatientRegistration();
+			appointment.setFullName("Bệnh nhân " + i);
+			appointment.setEmail("patient" + i + "@example.com");
+			appointment.setRegistrationNumber("U010125" + String.format("%04d", i));
+			appointment.setAppointmentDate(LocalDate.of(2025, 1, 2));
+			appointment.setDepartment("Nội tổng quát");
+			appointment.setRoomNumber(i % 2 == 0 ? "P." + (i % 20) : null);
+			appointment.setQueueNumber(i % 50 + 1);
+			batch.add(appointment);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void legacyBuilder(Blackhole blackhole) throws Exception {
+		for (PatientRegistration appointment : batch) {
+			MimeMessage message = new MimeMessage(session);
+			MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+			helper.setTo(appointment.getEmail());
+			helper.setSubject("Nhắc lịch khám - " + appointment.getRegistrationNumber());
+			helper.setText(LegacyReminderBuilder.build(appointment), true);
+			blackhole.consume(message);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void compiledTemplate(Blackhole blackhole) throws Exception {
+		for (PatientRegistration appointment : batch) {
+			MimeMessage message = new MimeMessage(session);
+			MimeMessageHelper helper = new MimeMessageHelper(message, false, "UTF-8");
+			helper.setTo(appointment.getEmail());
+			helper.setSubject("Nhắc lịch khám - " + appointment.getRegistrationNumber());
+			helper.setText(emailService.buildReminderEmailContent(appointment), true);
+			blackhole.consume(message);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(EmailTemplateBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	// ban sao builder cu cua EmailService (truoc khi dung template) de lam moc so sanh
+	private static final class LegacyReminderBuilder {
+
+		private static final String PRIMARY_COLOR = "#1E88E5";
+		private static final String PRIMARY_DARK = "#1565C0";
+		private static final String WARNING_COLOR = "#FF9800";
+
+		static String build(PatientRegistration appointment) {
+			String appointmentDate = appointment.getAppointmentDate() != null
+				? appointment.getAppointmentDate().format(DateTimeFormatter.ofPattern("dd/MM/yyyy")) : "Chưa xác định";
+			String registrationNumber = appointment.getRegistrationNumber() != null ? appointment.getRegistrationNumber() : "N/A";
+			String department = appointment.getDepartment() != null ? appointment.getDepartment() : "N/A";
+			String roomNumber = appointment.getRoomNumber() != null ? appointment.getRoomNumber() : "";
+			String queueNumber = appointment.getQueueNumber() != null ? String.valueOf(appointment.getQueueNumber()) : "";
+
+			StringBuilder html = new StringBuilder();
+			html.append("<!DOCTYPE html><html><head><meta charset='UTF-8'>")
+				.append("<style>")
+				.append("body { font-family: Arial, sans-serif; line-height: 1.6; }")
+				.append(".container { max-width: 600px; margin: auto; background: white; }")
+				.append(".header { background: ").append(PRIMARY_COLOR).append("; color: white; padding: 25px; text-align: center; }")
+				.append(".hospital-name { font-size: 18px; margin-top: 5px; opacity: 0.9; }")
+				.append(".content { padding: 20px; background: #f8f9fa; }")
+				.append(".reminder-badge { background: #fff3e0; color: #e65100; padding: 12px 25px; border-radius: 25px; font-weight: bold; display: inline-block; margin-bottom: 15px; border: 2px solid ").append(WARNING_COLOR).append("; }")
+				.append(".info-card { background: white; padding: 20px; margin: 15px 0; border-radius: 5px; border-left: 4px solid ").append(WARNING_COLOR).append("; box-shadow: 0 2px 4px rgba(0,0,0,0.1); }")
+				.append(".note-box { background: #e3f2fd; padding: 15px; border-radius: 5px; margin: 15px 0; border-left: 4px solid ").append(PRIMARY_COLOR).append("; }")
+				.append(".footer { text-align: center; margin-top: 20px; color: #666; font-size: 12px; padding: 15px; background: #f0f0f0; }")
+				.append("</style></head><body>")
+				.append("<div class='container'>")
+				.append("<div class='header'>")
+				.append("<h2 style='margin: 0;'>NHẮC LỊCH KHÁM</h2>")
+				.append("<div class='hospital-name'>Bệnh Viện Đại Học Y Dược Tp.HCM</div>")
+				.append("</div>")
+				.append("<div class='content'>")
+				.append("<div style='text-align: center;'>")
+				.append("<span class='reminder-badge'>LỊCH KHÁM VÀO NGÀY MAI</span>")
+				.append("</div>")
+				.append("<div class='info-card'>")
+				.append("<h3 style='color: ").append(PRIMARY_COLOR).append("; margin-top: 0;'>Kính gửi: ").append(appointment.getFullName()).append("</h3>")
+				.append("<p>Đây là email nhắc lịch khám cho đơn đăng ký của bạn.</p>")
+				.append("<div style='background: #f0f8ff; padding: 15px; border-radius: 5px;'>")
+				.append("<h4 style='color: ").append(PRIMARY_DARK).append("; margin-top: 0;'>Thông tin lịch hẹn</h4>")
+				.append("<p><strong>Mã đơn:</strong> ").append(registrationNumber).append("</p>")
+				.append("<p><strong>Ngày khám:</strong> <span style='color: ").append(PRIMARY_COLOR).append("; font-weight: bold;'>").append(appointmentDate).append(" (NGÀY MAI)</span></p>")
+				.append("<p><strong>Khoa khám:</strong> ").append(department).append("</p>");
+
+			if (!roomNumber.isEmpty()) {
+				html.append("<p><strong>Phòng khám:</strong> ").append(roomNumber).append("</p>");
+			}
+			if (!queueNumber.isEmpty()) {
+				html.append("<p><strong>Số thứ tự:</strong> ").append(queueNumber).append("</p>");
+			}
+
+			html.append("</div>")
+				.append("</div>")
+				.append("<div class='note-box'>")
+				.append("<h4 style='color: ").append(PRIMARY_DARK).append("; margin-top: 0;'>Hướng dẫn quan trọng</h4>")
+				.append("<ul style='margin: 10px 0; padding-left: 20px;'>")
+				.append("<li><strong>Vui lòng đến trước 15 phút</strong> để làm thủ tục</li>")
+				.append("<li>Mang theo <strong>CMND/CCCD</strong> và <strong>thẻ BHYT</strong> (nếu có)</li>")
+				.append("<li>Chuẩn bị sẵn các kết quả xét nghiệm, chẩn đoán hình ảnh cũ (nếu có)</li>")
+				.append("<li>Nếu không thể đến được, vui lòng liên hệ hotline để hủy lịch</li>")
+				.append("</ul>")
+				.append("</div>")
+				.append("<div class='footer'>")
+				.append("<p><strong>Hotline hỗ trợ:</strong> 1900 1234</p>")
+				.append("<p>Đây là email tự động, vui lòng không trả lời.</p>")
+				.append("</div>")
+				.append("</div>")
+				.append("</div></body></html>");
+
+			return html.toString();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.model.PatientRegistration;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmailTemplateTests {
+
+	private static final Map<String, String> PARTIALS = Map.of("footer", "\n  <p>Hotline</p>\n");
+
+	@Test
+	void rendersVariablesSectionsAndPartials() {
+		EmailTemplate template = EmailTemplate.compile("test",
+				"<div>\n  <b>{{name}}</b>\n  {{#room}}<i>{{room}}</i>{{/room}}\n  {{>footer}}\n</div>",
+				PARTIALS::get, "name", "room");
+
+		assertEquals("<div><b>An</b><i>P.12</i><p>Hotline</p></div>", template.render("An", "P.12"));
+		// section an khi bien rong
+		assertEquals("<div><b>An</b><p>Hotline</p></div>", template.render("An", null));
+		assertEquals("<div><b>An</b><p>Hotline</p></div>", template.render("An", ""));
+	}
+
+	@Test
+	void escapesValues() {
+		EmailTemplate template = EmailTemplate.compile("test", "<p>{{reason}}</p>", PARTIALS::get, "reason");
+
+		assertEquals("<p>&lt;script&gt;&amp;&#39;&quot;</p>", template.render("<script>&'\""));
+	}
+
+	@Test
+	void rejectsUndeclaredVariablesAndUnclosedSections() {
+		assertThrows(IllegalStateException.class,
+				() -> EmailTemplate.compile("test", "{{missing}}", PARTIALS::get, "name"));
+		assertThrows(IllegalStateException.class,
+				() -> EmailTemplate.compile("test", "{{#name}}x", PARTIALS::get, "name"));
+		assertThrows(IllegalArgumentException.class,
+				() -> EmailTemplate.compile("test", "{{name}}", PARTIALS::get, "name").render());
+	}
+
+	@Test
+	void loadsBundledTemplates() {
+		EmailService service = new EmailService();
+		service.loadTemplates();
+
+		PatientRegistration appointment = new PatientRegistration();
+		appointment.setFullName("Nguyễn Văn An");
+		appointment.setRegistrationNumber("U0101250001");
+		appointment.setAppointmentDate(LocalDate.of(2025, 1, 2));
+		appointment.setDepartment("Nội tổng quát");
+		appointment.setQueueNumber(7);
+		appointment.setExaminationFee(new BigDecimal("150000"));
+
+		String reminder = service.buildReminderEmailContent(appointment);
+		assertTrue(reminder.startsWith("<!DOCTYPE html>"));
+		assertTrue(reminder.contains("Kính gửi: Nguyễn Văn An</h3>"));
+		assertTrue(reminder.contains("02/01/2025 (NGÀY MAI)"));
+		assertTrue(reminder.contains("<strong>Số thứ tự:</strong> 7</p>"));
+		assertFalse(reminder.contains("Phòng khám"));
+		assertFalse(reminder.contains("{{"));
+
+		String cancellation = service.buildCancellationEmailContent(appointment, "Bận việc");
+		assertFalse(cancellation.contains("refund-box'>"));
+		appointment.setRefundStatus("REQUESTED");
+		cancellation = service.buildCancellationEmailContent(appointment, "Bận việc");
+		assertTrue(cancellation.contains("ĐANG CHỜ XỬ LÝ"));
+		assertFalse(cancellation.contains("ĐÃ XỬ LÝ"));
+	}
+}
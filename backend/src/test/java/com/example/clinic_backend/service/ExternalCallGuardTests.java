@@ -0,0 +1,98 @@
+package com.example.clinic_backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExternalCallGuardTests {
+
+	private final AtomicLong clock = new AtomicLong(1_000);
+
+	private ExternalCallGuard.Bulkhead bulkhead(int threads, int queue, long timeoutMs) {
+		return new ExternalCallGuard.Bulkhead("test", threads, queue, timeoutMs, 3, 5_000, clock::get);
+	}
+
+	private static Object fail() {
+		throw new IllegalStateException("smtp down");
+	}
+
+	@Test
+	void opensAfterConsecutiveFailuresAndProbesWhenHalfOpen() {
+		ExternalCallGuard.Bulkhead bulkhead = bulkhead(2, 2, 1_000);
+
+		for (int i = 0; i < 3; i++) {
+			assertThrows(IllegalStateException.class, () -> bulkhead.call(ExternalCallGuardTests::fail));
+		}
+		assertEquals(ExternalCallGuard.State.OPEN, bulkhead.state());
+
+		// dang mo: tu choi ngay, khong goi dich vu
+		RuntimeException rejected = assertThrows(RuntimeException.class, () -> bulkhead.call(() -> "ok"));
+		assertTrue(ExternalCallGuard.isRejected(rejected));
+		assertFalse(bulkhead.isCallPermitted());
+
+		// het thoi gian mo: 1 lan thu loi -> mo lai
+		clock.addAndGet(5_000);
+		assertTrue(bulkhead.isCallPermitted());
+		assertThrows(IllegalStateException.class, () -> bulkhead.call(ExternalCallGuardTests::fail));
+		assertEquals(ExternalCallGuard.State.OPEN, bulkhead.state());
+
+		// lan thu thanh cong -> dong
+		clock.addAndGet(5_000);
+		assertEquals("ok", bulkhead.call(() -> "ok"));
+		assertEquals(ExternalCallGuard.State.CLOSED, bulkhead.state());
+		assertEquals(1L, bulkhead.getStats().get("shortCircuited"));
+		bulkhead.shutdown();
+	}
+
+	@Test
+	void slowCallsTimeOutAndCountAsFailures() {
+		ExternalCallGuard.Bulkhead bulkhead = bulkhead(1, 1, 50);
+
+		RuntimeException error = assertThrows(RuntimeException.class, () -> bulkhead.call(() -> {
+			Thread.sleep(5_000);
+			return "late";
+		}));
+		assertFalse(ExternalCallGuard.isRejected(error));
+		assertEquals(1L, bulkhead.getStats().get("timeouts"));
+		assertEquals(1L, bulkhead.getStats().get("failures"));
+		bulkhead.shutdown();
+	}
+
+	@Test
+	void fullBulkheadRejectsWithoutBlockingCaller() throws Exception {
+		ExternalCallGuard.Bulkhead bulkhead = bulkhead(1, 1, 10_000);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+
+		Thread busy = new Thread(() -> bulkhead.call(() -> {
+			started.countDown();
+			return release.await(10, TimeUnit.SECONDS);
+		}));
+		busy.start();
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		Thread queued = new Thread(() -> bulkhead.call(() -> true));
+		queued.start();
+		while ((int) bulkhead.getStats().get("queued") == 0) {
+			Thread.sleep(5);
+		}
+
+		// 1 luong dang chay + 1 cho: lan thu 3 bi tu choi ngay
+		RuntimeException error = assertThrows(RuntimeException.class, () -> bulkhead.call(() -> true));
+		assertTrue(ExternalCallGuard.isRejected(error));
+		assertEquals(1L, bulkhead.getStats().get("rejected"));
+		// bi tu choi do day khong mo breaker
+		assertEquals(ExternalCallGuard.State.CLOSED, bulkhead.state());
+
+		release.countDown();
+		busy.join();
+		queued.join();
+		bulkhead.shutdown();
+	}
+}
@@ -0,0 +1,171 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.repository.IdSequenceRepository;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IdentifierServiceTests {
+
+	private static final int NODES = 4;
+	private static final int THREADS_PER_NODE = 4;
+	private static final int IDS_PER_THREAD = 250_000;
+	private static final int BLOCK_SIZE = 100;
+
+	// gia lap bang id_sequences: UPDATE + SELECT cung dong, khoa dong nhu MySQL
+	private static IdSequenceRepository fakeSequenceTable() {
+		return fakeSequenceTable(new AtomicReference<>(), new CountDownLatch(0), ConcurrentHashMap.newKeySet());
+	}
+
+	// stalled: luong bi treo trong advance cho den khi release (gia lap cho connection / khoa dong)
+	// reservingThreads: ten cac luong da lay khoi
+	private static IdSequenceRepository fakeSequenceTable(AtomicReference<Thread> stalled, CountDownLatch release,
+			Set<String> reservingThreads) {
+		Map<String, Long> table = new ConcurrentHashMap<>();
+		ThreadLocal<Long> lastRead = new ThreadLocal<>();
+		IdSequenceRepository repository = mock(IdSequenceRepository.class);
+
+		when(repository.insertIfAbsent(anyString(), anyLong())).thenAnswer(inv -> {
+			table.putIfAbsent(inv.getArgument(0), inv.getArgument(1));
+			return 1;
+		});
+		when(repository.advance(anyString(), anyLong())).thenAnswer(inv -> {
+			String name = inv.getArgument(0);
+			long blockSize = inv.getArgument(1);
+			reservingThreads.add(Thread.currentThread().getName());
+			if (Thread.currentThread() == stalled.get()) {
+				release.await();
+			}
+			Long value = table.computeIfPresent(name, (k, v) -> v + blockSize);
+			lastRead.set(value);
+			return value == null ? 0 : 1;
+		});
+		when(repository.findNextValue(anyString())).thenAnswer(inv -> Optional.ofNullable(lastRead.get()));
+		return repository;
+	}
+
+	private static IdentifierService node(IdSequenceRepository repository) {
+		return new IdentifierService(repository, mock(PatientRegistrationRepository.class),
+				mock(PlatformTransactionManager.class), BLOCK_SIZE);
+	}
+
+	@Test
+	void idsAreUniqueAcrossNodesAndThreads() throws Exception {
+		IdSequenceRepository repository = fakeSequenceTable();
+		List<IdentifierService> nodes = new ArrayList<>();
+		for (int i = 0; i < NODES; i++) {
+			nodes.add(node(repository));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(NODES * THREADS_PER_NODE);
+		List<Future<long[]>> futures = new ArrayList<>();
+		for (IdentifierService service : nodes) {
+			for (int t = 0; t < THREADS_PER_NODE; t++) {
+				futures.add(pool.submit(() -> {
+					long[] ids = new long[IDS_PER_THREAD];
+					for (int i = 0; i < IDS_PER_THREAD; i++) {
+						ids[i] = service.nextValue("TXN", "TXN-test", () -> 0L);
+					}
+					return ids;
+				}));
+			}
+		}
+
+		int total = NODES * THREADS_PER_NODE * IDS_PER_THREAD;
+		long[] all = new long[total];
+		int offset = 0;
+		for (Future<long[]> future : futures) {
+			long[] ids = future.get();
+			System.arraycopy(ids, 0, all, offset, ids.length);
+			offset += ids.length;
+		}
+		pool.shutdown();
+
+		Arrays.sort(all);
+		for (int i = 1; i < all.length; i++) {
+			assertTrue(all[i] != all[i - 1], "Trung ma: " + all[i]);
+		}
+		assertEquals(1, all[0]);
+		// moi node bo phi toi da phan con lai cua khoi dang dung + cac khoi du phong (lay truoc / luong cung lay)
+		assertTrue(all[all.length - 1] <= total + (long) NODES * (THREADS_PER_NODE + 2) * BLOCK_SIZE);
+	}
+
+	@Test
+	void newSequenceStartsAfterSeed() {
+		IdentifierService service = node(fakeSequenceTable());
+
+		assertEquals(42, service.nextValue("REG", "REG-010125", () -> 41L));
+		assertEquals(43, service.nextValue("REG", "REG-010125", () -> 41L));
+		// doi ngay: sequence moi, bat dau lai
+		assertEquals(1, service.nextValue("REG", "REG-020125", () -> 0L));
+	}
+
+	@Test
+	void slowBlockReservationDoesNotBlockOtherThreads() throws Exception {
+		AtomicReference<Thread> stalled = new AtomicReference<>();
+		CountDownLatch release = new CountDownLatch(1);
+		IdentifierService service = node(fakeSequenceTable(stalled, release, ConcurrentHashMap.newKeySet()));
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+
+		// luong dau tien bi treo khi lay khoi
+		Future<Long> slow = pool.submit(() -> {
+			stalled.set(Thread.currentThread());
+			return service.nextValue("TXN", "TXN-test", () -> 0L);
+		});
+		while (stalled.get() == null) {
+			Thread.yield();
+		}
+		// luong khac van cap so duoc: khong cho sau khoa cua luong dang lay khoi
+		Future<Long> fast = pool.submit(() -> service.nextValue("TXN", "TXN-test", () -> 0L));
+		long value = fast.get(5, TimeUnit.SECONDS);
+		assertFalse(slow.isDone());
+
+		release.countDown();
+		assertNotEquals(value, (long) slow.get(5, TimeUnit.SECONDS));
+		pool.shutdown();
+		service.stop();
+	}
+
+	@Test
+	void callerInsideTransactionWaitsForPrefetchThreadInsteadOfReservingItself() throws Exception {
+		Set<String> reservingThreads = ConcurrentHashMap.newKeySet();
+		IdentifierService service = node(fakeSequenceTable(new AtomicReference<>(), new CountDownLatch(0), reservingThreads));
+
+		// transaction dat lich da giu ket noi: khong duoc lay them ket noi de giu khoi
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+		try {
+			for (int i = 1; i <= BLOCK_SIZE * 3; i++) {
+				assertEquals(i, service.nextValue("REG", "REG-010125", () -> 0L));
+			}
+		} finally {
+			TransactionSynchronizationManager.setActualTransactionActive(false);
+		}
+		service.stop();
+
+		assertEquals(Set.of("id-block-prefetch"), reservingThreads);
+	}
+}
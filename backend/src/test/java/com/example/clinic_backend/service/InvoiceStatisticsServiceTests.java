@@ -0,0 +1,146 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.model.Invoice;
+import com.example.clinic_backend.repository.InvoiceRepository;
+import com.example.clinic_backend.support.AnalyticsFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class InvoiceStatisticsServiceTests {
+
+	static final LocalDate TODAY = LocalDate.of(2025, 3, 20);
+
+	private final List<Invoice> invoices = AnalyticsFixtures.invoices(LocalDate.of(2024, 12, 1), TODAY, 12);
+	private final List<LocalDateTime[]> queries = new ArrayList<>();
+	private final InvoiceRepository repository = mock(InvoiceRepository.class);
+	private final InvoiceStatisticsService service = new InvoiceStatisticsService(repository, 60_000);
+
+	InvoiceStatisticsServiceTests() {
+		// gop trong bo nho nhu aggregateByPeriod (doi chieu voi MySQL trong AnalyticsQueriesRepositoryTests)
+		when(repository.aggregateByPeriod(anyString(), any(), any())).thenAnswer(inv -> {
+			LocalDateTime from = inv.getArgument(1);
+			LocalDateTime to = inv.getArgument(2);
+			queries.add(new LocalDateTime[]{from, to});
+			return AnalyticsFixtures.aggregateByPeriod(invoices, inv.getArgument(0), from, to);
+		});
+	}
+
+	@AfterEach
+	void clearSynchronization() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	private BigDecimal revenue(LocalDate from, LocalDate to, String method) {
+		return invoices.stream()
+				.filter(i -> "PAID".equals(i.getStatus()))
+				.filter(i -> method == null || method.equals(i.getPaymentMethod() != null ? i.getPaymentMethod() : "UNKNOWN"))
+				.filter(i -> !i.getInvoiceDate().toLocalDate().isBefore(from) && !i.getInvoiceDate().toLocalDate().isAfter(to))
+				.map(Invoice::getAmount)
+				.reduce(BigDecimal.ZERO, BigDecimal::add);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void weeklyTotalsAndPaymentSplitMatchInvoices() {
+		// thu 4 -> thu 6: tuan dau va tuan cuoi bi cat
+		LocalDate from = LocalDate.of(2025, 1, 8);
+		LocalDate to = LocalDate.of(2025, 2, 21);
+
+		Map<String, Object> statistics = service.statistics(from, to, "week", TODAY);
+
+		assertEquals("WEEK", statistics.get("granularity"));
+		assertEquals(revenue(from, to, null), statistics.get("totalRevenue"));
+		long total = invoices.stream()
+				.filter(i -> !i.getInvoiceDate().toLocalDate().isBefore(from) && !i.getInvoiceDate().toLocalDate().isAfter(to))
+				.count();
+		assertEquals(total, statistics.get("totalInvoices"));
+
+		List<Map<String, Object>> periods = (List<Map<String, Object>>) statistics.get("periods");
+		assertEquals(7, periods.size());
+		assertEquals("2025-01-06", periods.get(0).get("period"));
+		assertEquals("08/01", periods.get(0).get("label"));
+		assertEquals(revenue(from, LocalDate.of(2025, 1, 12), null), periods.get(0).get("revenue"));
+		assertEquals(revenue(LocalDate.of(2025, 1, 13), LocalDate.of(2025, 1, 19), null), periods.get(1).get("revenue"));
+		assertEquals(revenue(LocalDate.of(2025, 2, 17), to, null), periods.get(6).get("revenue"));
+
+		for (Map<String, Object> method : (List<Map<String, Object>>) statistics.get("byPaymentMethod")) {
+			assertEquals(revenue(from, to, (String) method.get("paymentMethod")), method.get("revenue"));
+		}
+		assertEquals(1, queries.size());
+	}
+
+	@Test
+	void closedPeriodsAreServedFromCacheAndOnlyOpenOrCutPeriodsHitDatabase() {
+		LocalDate from = LocalDate.of(2025, 1, 8);
+		Map<String, Object> first = service.statistics(from, TODAY, "WEEK", TODAY);
+		assertEquals(1, queries.size());
+		assertEquals(0, first.get("cachedPeriods"));
+
+		queries.clear();
+		Map<String, Object> second = service.statistics(from, TODAY, "WEEK", TODAY);
+
+		// tuan dau bi cat + tuan hien tai con mo: 2 query, cac tuan giua lay tu cache
+		assertEquals(2, queries.size());
+		assertEquals(from.atStartOfDay(), queries.get(0)[0]);
+		assertEquals(LocalDate.of(2025, 1, 13).atStartOfDay(), queries.get(0)[1]);
+		assertEquals(LocalDate.of(2025, 3, 17).atStartOfDay(), queries.get(1)[0]);
+		assertEquals(TODAY.plusDays(1).atStartOfDay(), queries.get(1)[1]);
+		assertEquals(9, second.get("cachedPeriods"));
+		assertEquals(first.get("totalRevenue"), second.get("totalRevenue"));
+		assertEquals(first.get("periods"), second.get("periods"));
+	}
+
+	@Test
+	void committedInvoiceChangeEvictsItsClosedPeriods() {
+		LocalDate from = LocalDate.of(2025, 1, 1);
+		LocalDate to = LocalDate.of(2025, 1, 31);
+		service.statistics(from, to, "MONTH", TODAY);
+		Invoice invoice = invoices.stream()
+				.filter(i -> "PAID".equals(i.getStatus()) && i.getInvoiceDate().toLocalDate().isAfter(from))
+				.findFirst().orElseThrow();
+
+		// huy hoa don trong transaction: cache chi bo sau commit
+		TransactionSynchronizationManager.initSynchronization();
+		invoice.setStatus("CANCELLED");
+		service.invoiceChanged(invoice.getInvoiceDate());
+		queries.clear();
+		assertEquals(1, service.statistics(from, to, "MONTH", TODAY).get("cachedPeriods"));
+		assertEquals(0, queries.size());
+		TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+		Map<String, Object> statistics = service.statistics(from, to, "MONTH", TODAY);
+		assertEquals(0, statistics.get("cachedPeriods"));
+		assertEquals(1, queries.size());
+		assertEquals(revenue(from, to, null), statistics.get("totalRevenue"));
+		assertEquals(1L, service.getStats().get("evictions"));
+	}
+
+	@Test
+	void granularityIsPickedFromRangeLengthAndValidated() {
+		assertEquals("DAY", InvoiceStatisticsService.granularityOf(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 3, 3)));
+		assertEquals("WEEK", InvoiceStatisticsService.granularityOf(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 6, 30)));
+		assertEquals("MONTH", InvoiceStatisticsService.granularityOf(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31)));
+		assertThrows(IllegalArgumentException.class,
+				() -> service.statistics(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31), "YEAR", TODAY));
+		assertThrows(IllegalArgumentException.class,
+				() -> service.statistics(LocalDate.of(2025, 2, 1), LocalDate.of(2025, 1, 31), null, TODAY));
+	}
+}
@@ -0,0 +1,123 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PatientRegistrationServiceTests {
+
+	private static final Long REGISTRATION_ID = 42L;
+
+	// gia lap 1 dong patient_registrations: claimPending nguyen tu nhu UPDATE ... WHERE status = 'PENDING'
+	private static final class RegistrationRow {
+		private String status = "PENDING";
+
+		synchronized PatientRegistration load() {
+			PatientRegistration registration = new PatientRegistration();
+			registration.setId(REGISTRATION_ID);
+			registration.setDoctorId(7L);
+			registration.setAppointmentDate(LocalDate.of(2025, 3, 20));
+			registration.setRegistrationNumber("U0000001");
+			registration.setStatus(status);
+			return registration;
+		}
+
+		synchronized int claim() {
+			if (!"PENDING".equals(status)) {
+				return 0;
+			}
+			status = "PROCESSING";
+			return 1;
+		}
+
+		synchronized void commit(String finalStatus) {
+			status = finalStatus;
+		}
+	}
+
+	private final RegistrationRow row = new RegistrationRow();
+	private final AtomicInteger approvals = new AtomicInteger();
+	private volatile CyclicBarrier loaded = new CyclicBarrier(1);
+
+	private PatientRegistrationService service() {
+		PatientRegistrationRepository repository = mock(PatientRegistrationRepository.class);
+		when(repository.findById(anyLong())).thenAnswer(inv -> {
+			PatientRegistration registration = row.load();
+			// ca 2 worker doc don PENDING truoc khi ben nao kip giu
+			loaded.await(5, TimeUnit.SECONDS);
+			return Optional.of(registration);
+		});
+		when(repository.claimPending(anyLong())).thenAnswer(inv -> row.claim());
+
+		AutoApprovalService autoApprovalService = mock(AutoApprovalService.class);
+		when(autoApprovalService.processNewRegistration(any(PatientRegistration.class))).thenAnswer(inv -> {
+			PatientRegistration registration = inv.getArgument(0);
+			approvals.incrementAndGet();
+			registration.setStatus("APPROVED");
+			row.commit("APPROVED");
+			return registration;
+		});
+
+		PatientRegistrationService service = new PatientRegistrationService(repository, autoApprovalService,
+				mock(OutboxService.class));
+		ReflectionTestUtils.setField(service, "eventPublisher", mock(ApplicationEventPublisher.class));
+		return service;
+	}
+
+	@Test
+	void twoWorkersProcessingTheSameRegistrationApproveItOnce() throws Exception {
+		PatientRegistrationService service = service();
+		loaded = new CyclicBarrier(2);
+
+		// vd. worker cua node nhan don va worker cua node quet lai
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<PatientRegistration>> futures = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			futures.add(pool.submit(() -> {
+				start.await();
+				return service.processPendingRegistration(REGISTRATION_ID);
+			}));
+		}
+		start.countDown();
+		int approvedResults = 0;
+		for (Future<PatientRegistration> future : futures) {
+			if ("APPROVED".equals(future.get(5, TimeUnit.SECONDS).getStatus())) {
+				approvedResults++;
+			}
+		}
+		pool.shutdown();
+
+		assertEquals(1, approvals.get());
+		assertEquals(1, approvedResults);
+	}
+
+	@Test
+	void processedRegistrationIsNotProcessedAgain() {
+		PatientRegistrationService service = service();
+
+		assertEquals("APPROVED", service.processPendingRegistration(REGISTRATION_ID).getStatus());
+		assertEquals("APPROVED", service.processPendingRegistration(REGISTRATION_ID).getStatus());
+		assertEquals(1, approvals.get());
+	}
+}
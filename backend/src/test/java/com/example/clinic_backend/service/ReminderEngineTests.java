@@ -0,0 +1,143 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Provider;
+import jakarta.mail.Session;
+import jakarta.mail.URLName;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.eclipse.angus.mail.smtp.SMTPTransport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReminderEngineTests {
+
+	private static final int APPOINTMENTS = 300;
+	private static final double RATE_PER_SECOND = 200;
+	private static final int CONNECTIONS = 4;
+
+	@RegisterExtension
+	static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+	// transport SMTP dem so lan mo ket noi toi server
+	public static class CountingSmtpTransport extends SMTPTransport {
+		static final AtomicInteger opened = new AtomicInteger();
+
+		public CountingSmtpTransport(Session session, URLName urlName) {
+			super(session, urlName);
+		}
+
+		@Override
+		protected synchronized boolean protocolConnect(String host, int port, String user, String password)
+				throws MessagingException {
+			boolean connected = super.protocolConnect(host, port, user, password);
+			if (connected) {
+				opened.incrementAndGet();
+			}
+			return connected;
+		}
+	}
+
+	private static JavaMailSenderImpl mailSender() {
+		JavaMailSenderImpl sender = new JavaMailSenderImpl();
+		sender.setHost("localhost");
+		sender.setPort(ServerSetupTest.SMTP.getPort());
+		// moi transport "smtp" cua session nay la CountingSmtpTransport
+		Properties properties = new Properties();
+		properties.setProperty("mail.smtp.class", CountingSmtpTransport.class.getName());
+		Session session = Session.getInstance(properties);
+		session.addProvider(new Provider(Provider.Type.TRANSPORT, "smtp",
+				CountingSmtpTransport.class.getName(), "clinic-test", "1"));
+		sender.setSession(session);
+		return sender;
+	}
+
+	private static PatientRegistration appointment(long id, String email) {
+		PatientRegistration appointment = new PatientRegistration();
+		appointment.setId(id);
+		appointment.setEmail(email);
+		return appointment;
+	}
+
+	private static MimeMessage message(JavaMailSenderImpl sender, PatientRegistration appointment) {
+		if (appointment.getEmail() == null) {
+			return null;
+		}
+		try {
+			MimeMessage message = sender.createMimeMessage();
+			message.setFrom(new InternetAddress("clinic@localhost"));
+			message.setRecipients(MimeMessage.RecipientType.TO, appointment.getEmail());
+			message.setSubject("Nhac lich kham " + appointment.getId());
+			message.setText("Lich kham ngay mai");
+			return message;
+		} catch (MessagingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Test
+	void sendsAllRemindersOverPooledConnectionsAndMarksThemInBatches() throws Exception {
+		PatientRegistrationRepository repository = mock(PatientRegistrationRepository.class);
+		Set<Long> marked = ConcurrentHashMap.newKeySet();
+		List<Integer> batchSizes = new ArrayList<>();
+		when(repository.markRemindersSent(anyList(), any(LocalDateTime.class))).thenAnswer(inv -> {
+			List<Long> ids = inv.getArgument(0);
+			marked.addAll(ids);
+			synchronized (batchSizes) {
+				batchSizes.add(ids.size());
+			}
+			return ids.size();
+		});
+
+		JavaMailSenderImpl sender = mailSender();
+		CountingSmtpTransport.opened.set(0);
+		ReminderEngine engine = new ReminderEngine(sender, repository, new ExternalCallGuard(new StandardEnvironment()),
+				mock(PlatformTransactionManager.class),
+				CONNECTIONS, RATE_PER_SECOND, 50);
+
+		List<PatientRegistration> appointments = new ArrayList<>();
+		for (long id = 1; id <= APPOINTMENTS; id++) {
+			appointments.add(appointment(id, "patient" + id + "@localhost"));
+		}
+		// khong co email -> tinh la that bai, khong danh dau
+		appointments.add(appointment(APPOINTMENTS + 1, null));
+
+		Map<String, Object> result = engine.send(appointments, a -> message(sender, a));
+		engine.stop();
+
+		assertEquals(APPOINTMENTS, result.get("sent"));
+		assertEquals(1, result.get("failed"));
+		assertEquals(APPOINTMENTS, greenMail.getReceivedMessages().length);
+		// moi worker giu 1 ket noi SMTP cho ca lo, khong mo ket noi moi cho tung email
+		int opened = CountingSmtpTransport.opened.get();
+		assertTrue(opened >= 1 && opened <= CONNECTIONS, "So ket noi SMTP: " + opened);
+		assertEquals(APPOINTMENTS, marked.size());
+		// cap nhat theo lo, khong phai tung don
+		assertTrue(batchSizes.size() < APPOINTMENTS / 10, "So lan UPDATE: " + batchSizes.size());
+		// token bucket: 300 email o 200/giay mat it nhat ~1 giay
+		assertTrue((Long) result.get("durationMs") >= 1000L * (APPOINTMENTS - RATE_PER_SECOND) / RATE_PER_SECOND);
+	}
+}
@@ -0,0 +1,77 @@
+package com.example.clinic_backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReminderTimingWheelTests {
+
+	// bat dau giua ngay de thu ca cac lan do o gio / ngay
+	private static final long START = 28_000_000L + 737;
+
+	@Test
+	void firesEachReminderAtItsDueMinute() {
+		ReminderTimingWheel wheel = new ReminderTimingWheel(START);
+		Random random = new Random(42);
+		Map<Long, Long> expected = new HashMap<>();
+		for (long id = 1; id <= 5_000; id++) {
+			// toi 40 ngay: di qua ca 3 tang va overflow
+			long due = START + random.nextInt(40 * 1440);
+			expected.put(id, due);
+			wheel.schedule(id, due);
+		}
+
+		int fired = 0;
+		for (long minute = START; minute <= START + 40 * 1440; minute++) {
+			for (Long id : wheel.advanceTo(minute)) {
+				assertEquals(expected.get(id), minute, "Don " + id + " den han sai phut");
+				fired++;
+			}
+		}
+		assertEquals(expected.size(), fired);
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	void cancelledAndRescheduledRemindersFireOnce() {
+		ReminderTimingWheel wheel = new ReminderTimingWheel(START);
+		wheel.schedule(1L, START + 3 * 60);
+		wheel.schedule(2L, START + 2 * 1440);
+		wheel.cancel(2L);
+		// doi gio som hon
+		wheel.schedule(1L, START + 10);
+
+		List<Long> fired = new ArrayList<>();
+		long firedAt = -1;
+		for (long minute = START; minute <= START + 3 * 1440; minute++) {
+			List<Long> due = wheel.advanceTo(minute);
+			if (!due.isEmpty() && firedAt < 0) {
+				firedAt = minute;
+			}
+			fired.addAll(due);
+		}
+		assertEquals(List.of(1L), fired);
+		assertEquals(START + 10, firedAt);
+	}
+
+	@Test
+	void overdueReminderFiresOnNextTickAndCatchUpSkipsNothing() {
+		ReminderTimingWheel wheel = new ReminderTimingWheel(START);
+		wheel.schedule(1L, START - 500);
+		wheel.schedule(2L, START + 90);
+		wheel.schedule(3L, START + 3000);
+
+		assertEquals(List.of(1L), wheel.advanceTo(START));
+		// server bi dung lau roi chay lai: xoay bu mot lan
+		List<Long> caughtUp = wheel.advanceTo(START + 5000);
+		assertTrue(caughtUp.containsAll(List.of(2L, 3L)));
+		assertEquals(2, caughtUp.size());
+	}
+}
@@ -0,0 +1,139 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.repository.SchedulerLockRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SchedulerLockServiceTests {
+
+	private static final long LEASE_MS = 10_000;
+
+	// gio "database" dung chung cho cac node
+	private final AtomicLong now = new AtomicLong(1_000_000);
+
+	private static final class Row {
+		private String holder;
+		private long leaseUntil;
+		private long token;
+	}
+
+	// gia lap bang scheduler_locks theo dung cac cau SQL trong repository
+	private SchedulerLockRepository fakeLockTable() {
+		Map<String, Row> table = new ConcurrentHashMap<>();
+		SchedulerLockRepository repository = mock(SchedulerLockRepository.class);
+
+		when(repository.insertIfAbsent(anyString())).thenAnswer(inv -> {
+			Row row = new Row();
+			row.leaseUntil = now.get();
+			return table.putIfAbsent(inv.getArgument(0), row) == null ? 1 : 0;
+		});
+		when(repository.acquire(anyString(), anyString(), anyLong())).thenAnswer(inv -> {
+			Row row = table.get(inv.<String>getArgument(0));
+			String holder = inv.getArgument(1);
+			long leaseMs = inv.getArgument(2);
+			synchronized (table) {
+				if (row == null || !(holder.equals(row.holder) || row.leaseUntil <= now.get())) {
+					return 0;
+				}
+				if (!(holder.equals(row.holder) && row.leaseUntil > now.get())) {
+					row.token++;
+				}
+				row.leaseUntil = now.get() + leaseMs;
+				row.holder = holder;
+				return 1;
+			}
+		});
+		when(repository.findToken(anyString(), anyString())).thenAnswer(inv -> {
+			Row row = table.get(inv.<String>getArgument(0));
+			return row != null && inv.getArgument(1).equals(row.holder) ? Optional.of(row.token) : Optional.empty();
+		});
+		when(repository.countValid(anyString(), anyString(), anyLong())).thenAnswer(inv -> {
+			Row row = table.get(inv.<String>getArgument(0));
+			return row != null && Objects.equals(inv.getArgument(1), row.holder)
+				&& row.token == inv.<Long>getArgument(2) && row.leaseUntil > now.get() ? 1L : 0L;
+		});
+		when(repository.release(anyString(), anyString())).thenAnswer(inv -> {
+			Row row = table.get(inv.<String>getArgument(0));
+			if (row != null && inv.getArgument(1).equals(row.holder)) {
+				row.leaseUntil = now.get();
+				return 1;
+			}
+			return 0;
+		});
+		return repository;
+	}
+
+	private static SchedulerLockService node(SchedulerLockRepository repository) {
+		return new SchedulerLockService(repository, mock(PlatformTransactionManager.class), LEASE_MS);
+	}
+
+	@Test
+	void onlyOneNodeHoldsTheLease() {
+		SchedulerLockRepository repository = fakeLockTable();
+		SchedulerLockService a = node(repository);
+		SchedulerLockService b = node(repository);
+
+		OptionalLong first = a.tryAcquire("reminders");
+		assertTrue(first.isPresent());
+		assertTrue(b.tryAcquire("reminders").isEmpty());
+
+		// gia han giu nguyen token
+		now.addAndGet(LEASE_MS / 2);
+		assertEquals(first, a.tryAcquire("reminders"));
+		now.addAndGet(LEASE_MS / 2);
+		assertTrue(b.tryAcquire("reminders").isEmpty());
+
+		AtomicBoolean ran = new AtomicBoolean();
+		assertFalse(b.runIfLeader("reminders", () -> ran.set(true)));
+		assertFalse(ran.get());
+		assertTrue(a.runIfLeader("reminders", () -> ran.set(true)));
+		assertTrue(ran.get());
+	}
+
+	@Test
+	void expiredLeaseMovesWithNewFencingToken() {
+		SchedulerLockRepository repository = fakeLockTable();
+		SchedulerLockService a = node(repository);
+		SchedulerLockService b = node(repository);
+
+		long oldToken = a.tryAcquire("reminders").getAsLong();
+		assertTrue(a.isValid("reminders", oldToken));
+
+		// node a ngung gia han (treo / chet)
+		now.addAndGet(LEASE_MS + 1);
+		assertFalse(a.isValid("reminders", oldToken));
+		long newToken = b.tryAcquire("reminders").getAsLong();
+
+		assertTrue(newToken > oldToken);
+		assertFalse(a.isValid("reminders", oldToken));
+		assertTrue(a.tryAcquire("reminders").isEmpty());
+	}
+
+	@Test
+	void releasedLeaseIsTakenImmediately() {
+		SchedulerLockRepository repository = fakeLockTable();
+		SchedulerLockService a = node(repository);
+		SchedulerLockService b = node(repository);
+
+		a.tryAcquire("intake-sweep");
+		a.releaseAll();
+
+		assertTrue(b.tryAcquire("intake-sweep").isPresent());
+	}
+}
@@ -0,0 +1,140 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.model.Doctor;
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.DoctorRepository;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SlotAssignmentServiceTests {
+
+	private static final String DEPARTMENT = "Noi tong quat";
+	private static final LocalDate DATE = LocalDate.now().plusDays(3);
+
+	private final Map<Long, PatientRegistration> rows = new LinkedHashMap<>();
+	private final List<TransactionDefinition> transactions = new ArrayList<>();
+	private final AtomicInteger commits = new AtomicInteger();
+	private final AtomicInteger rollbacks = new AtomicInteger();
+	private final AtomicInteger approvals = new AtomicInteger();
+	private Long failingId;
+	private Runnable afterListing = () -> { };
+
+	private PatientRegistration registration(Long id) {
+		PatientRegistration registration = new PatientRegistration();
+		registration.setId(id);
+		registration.setDepartment(DEPARTMENT);
+		registration.setAppointmentDate(DATE);
+		registration.setStatus("NEEDS_MANUAL_REVIEW");
+		rows.put(id, registration);
+		return registration;
+	}
+
+	private SlotAssignmentService service() {
+		PatientRegistrationRepository registrationRepository = mock(PatientRegistrationRepository.class);
+		when(registrationRepository.findByStatusOrderByCreatedAtAsc("NEEDS_MANUAL_REVIEW"))
+				.thenAnswer(inv -> {
+					List<PatientRegistration> backlog = new ArrayList<>(rows.values());
+					afterListing.run();
+					return backlog;
+				});
+		when(registrationRepository.findById(anyLong()))
+				.thenAnswer(inv -> Optional.ofNullable(rows.get((Long) inv.getArgument(0))));
+
+		Doctor doctor = new Doctor();
+		doctor.setId(7L);
+		DoctorRepository doctorRepository = mock(DoctorRepository.class);
+		when(doctorRepository.findByDepartmentNameContaining(DEPARTMENT)).thenReturn(List.of(doctor));
+
+		SlotCapacityLedger ledger = mock(SlotCapacityLedger.class);
+		when(ledger.getMaxPatients(anyLong(), any(LocalDate.class), anyString())).thenReturn(10);
+		when(ledger.isActive(anyLong(), any(LocalDate.class), anyString())).thenReturn(true);
+
+		AutoApprovalService autoApprovalService = mock(AutoApprovalService.class);
+		when(autoApprovalService.autoApproveRegistration(any(PatientRegistration.class), anyString())).thenAnswer(inv -> {
+			PatientRegistration registration = inv.getArgument(0);
+			if (registration.getId().equals(failingId)) {
+				// vd. loi sau khi cap so thu tu: nem lai de rollback ca don
+				throw new RuntimeException("Lock wait timeout");
+			}
+			approvals.incrementAndGet();
+			registration.setStatus("APPROVED");
+			return registration;
+		});
+
+		PlatformTransactionManager transactionManager = new PlatformTransactionManager() {
+			@Override
+			public TransactionStatus getTransaction(TransactionDefinition definition) {
+				transactions.add(definition);
+				return new SimpleTransactionStatus();
+			}
+
+			@Override
+			public void commit(TransactionStatus status) {
+				commits.incrementAndGet();
+			}
+
+			@Override
+			public void rollback(TransactionStatus status) {
+				rollbacks.incrementAndGet();
+			}
+		};
+
+		return new SlotAssignmentService(registrationRepository, doctorRepository, ledger, autoApprovalService,
+				transactionManager);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void failedRegistrationRollsBackAloneAndIsSkipped() {
+		registration(1L);
+		registration(2L);
+		registration(3L);
+		failingId = 2L;
+
+		Map<String, Object> result = service().assignBacklog(AssignmentPolicy.EARLIEST_SLOT);
+
+		assertEquals(2, result.get("assigned"));
+		assertEquals(List.of(2L), result.get("skipped"));
+		// moi don 1 transaction rieng, khong tham gia transaction cua nguoi goi
+		assertEquals(3, transactions.size());
+		for (TransactionDefinition definition : transactions) {
+			assertEquals(TransactionDefinition.PROPAGATION_REQUIRES_NEW, definition.getPropagationBehavior());
+		}
+		assertEquals(2, commits.get());
+		assertEquals(1, rollbacks.get());
+		assertEquals(2, ((List<Map<String, Object>>) result.get("assignments")).size());
+	}
+
+	@Test
+	void registrationHandledElsewhereIsSkipped() {
+		registration(1L);
+		registration(2L);
+		// don 1 duoc duyet tay sau khi lo doc danh sach
+		afterListing = () -> rows.get(1L).setStatus("APPROVED");
+
+		Map<String, Object> result = service().assignBacklog(AssignmentPolicy.EARLIEST_SLOT);
+
+		assertEquals(1, result.get("assigned"));
+		assertEquals(List.of(1L), result.get("skipped"));
+		assertEquals(1, approvals.get());
+	}
+}
@@ -0,0 +1,129 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.model.DoctorSlot;
+import com.example.clinic_backend.repository.DoctorSlotRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Giu cho tren MySQL that voi pool Hikari nho: moi dat lich da giu 1 ket noi (transaction dat lich),
+// giu cho khong duoc muon them ket noi, neu khong cac dat lich cho nhau toi connection-timeout roi loi.
+// Khong co Docker thi bo qua.
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(SlotBookingService.class)
+@TestPropertySource(properties = {
+		"spring.jpa.hibernate.ddl-auto=create-drop",
+		"app.booking.mode=optimistic",
+		"spring.datasource.hikari.maximum-pool-size=4",
+		"spring.datasource.hikari.connection-timeout=10000"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers(disabledWithoutDocker = true)
+class SlotBookingPoolTests {
+
+	private static final Long DOCTOR_ID = 7L;
+	private static final LocalDate DATE = LocalDate.of(2025, 1, 15);
+	private static final String TIME_SLOT = "08:00-09:00";
+	private static final int MAX_PATIENTS = 20;
+	private static final int BOOKINGS = 40;
+
+	@Container
+	@ServiceConnection
+	static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0");
+
+	@MockitoBean
+	private SchedulerLockService schedulerLockService;
+
+	@Autowired
+	private SlotBookingService bookingService;
+
+	@Autowired
+	private DoctorSlotRepository slotRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@BeforeEach
+	void createSlot() {
+		slotRepository.deleteAll();
+		DoctorSlot slot = new DoctorSlot(DOCTOR_ID, DATE.toString(), TIME_SLOT, MAX_PATIENTS);
+		slot.setOccupiedCount(0);
+		slotRepository.save(slot);
+	}
+
+	private int occupied() {
+		return slotRepository.findByDoctorIdAndAppointmentDateAndTimeSlot(DOCTOR_ID, DATE.toString(), TIME_SLOT)
+				.orElseThrow().getOccupiedCount();
+	}
+
+	@Test
+	void bookingsFarAbovePoolSizeFillTheSlotWithoutWaitingForConnections() throws Exception {
+		TransactionTemplate booking = new TransactionTemplate(transactionManager);
+		ExecutorService pool = Executors.newFixedThreadPool(BOOKINGS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Boolean>> futures = new ArrayList<>();
+		for (int i = 0; i < BOOKINGS; i++) {
+			futures.add(pool.submit(() -> {
+				start.await();
+				return booking.execute(status -> {
+					// transaction dat lich da giu ket noi truoc khi giu cho
+					slotRepository.count();
+					return bookingService.reserveSeat(DOCTOR_ID, DATE, TIME_SLOT);
+				});
+			}));
+		}
+		start.countDown();
+
+		// can ket noi thu 2 de giu cho -> 4 transaction giu het pool va cho nhau, loi sau 10s connection-timeout
+		int reserved = 0;
+		for (Future<Boolean> future : futures) {
+			if (future.get(60, TimeUnit.SECONDS)) {
+				reserved++;
+			}
+		}
+		pool.shutdown();
+
+		assertEquals(MAX_PATIENTS, reserved);
+		assertEquals(MAX_PATIENTS, occupied());
+	}
+
+	@Test
+	void rolledBackBookingReturnsItsSeat() {
+		TransactionTemplate booking = new TransactionTemplate(transactionManager);
+
+		booking.executeWithoutResult(status -> {
+			assertTrue(bookingService.reserveSeat(DOCTOR_ID, DATE, TIME_SLOT));
+			status.setRollbackOnly();
+		});
+		assertEquals(0, occupied());
+
+		booking.executeWithoutResult(status -> assertTrue(bookingService.reserveSeat(DOCTOR_ID, DATE, TIME_SLOT)));
+		assertEquals(1, occupied());
+	}
+}
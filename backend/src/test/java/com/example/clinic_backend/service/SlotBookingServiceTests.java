@@ -0,0 +1,201 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.repository.DoctorSlotRepository;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Logic giu cho tren 1 dong gia lap; ket noi / transaction that: SlotBookingPoolTests
+class SlotBookingServiceTests {
+
+	private static final Long DOCTOR_ID = 7L;
+	private static final LocalDate DATE = LocalDate.of(2025, 1, 15);
+	private static final String TIME_SLOT = "08:00-09:00";
+	private static final int MAX_PATIENTS = 20;
+	private static final int BOOKINGS = 500;
+
+	// gia lap 1 dong doctor_slots: UPDATE ... WHERE occupied_count < max_patients nguyen tu nhu MySQL
+	private static final class SlotRow {
+		private boolean exists;
+		private Integer occupied;
+		private final int maxPatients;
+
+		private SlotRow(Integer occupied, int maxPatients) {
+			this.exists = true;
+			this.occupied = occupied;
+			this.maxPatients = maxPatients;
+		}
+
+		synchronized List<Object[]> lock() {
+			if (!exists) {
+				return Collections.emptyList();
+			}
+			return Collections.singletonList(new Object[]{1L, occupied, maxPatients, Boolean.TRUE});
+		}
+
+		synchronized int incrementIfAvailable() {
+			if (!exists || occupied == null || occupied >= maxPatients) {
+				return 0;
+			}
+			occupied++;
+			return 1;
+		}
+
+		synchronized int insert(int count) {
+			if (exists) {
+				return 0;
+			}
+			exists = true;
+			occupied = count;
+			return 1;
+		}
+
+		synchronized int init(int count) {
+			if (occupied != null) {
+				return 0;
+			}
+			occupied = count;
+			return 1;
+		}
+
+		synchronized int decrement() {
+			if (occupied == null || occupied == 0) {
+				return 0;
+			}
+			occupied--;
+			return 1;
+		}
+
+		synchronized int occupied() {
+			return occupied;
+		}
+	}
+
+	private static SlotBookingService service(SlotRow row, int approvedCount) {
+		DoctorSlotRepository slotRepository = mock(DoctorSlotRepository.class);
+		when(slotRepository.incrementOccupiedIfAvailable(anyLong(), anyString(), anyString()))
+				.thenAnswer(inv -> row.incrementIfAvailable());
+		when(slotRepository.lockBookingState(anyLong(), anyString(), anyString())).thenAnswer(inv -> row.lock());
+		when(slotRepository.insertSlotIfAbsent(anyLong(), anyString(), anyString(), anyInt()))
+				.thenAnswer(inv -> row.insert(inv.getArgument(3)));
+		when(slotRepository.initOccupied(anyLong(), anyInt())).thenAnswer(inv -> row.init(inv.getArgument(1)));
+		when(slotRepository.decrementOccupied(anyLong(), anyString(), anyString())).thenAnswer(inv -> row.decrement());
+
+		PatientRegistrationRepository registrationRepository = mock(PatientRegistrationRepository.class);
+		when(registrationRepository.countByDoctorIdAndAppointmentDateAndAssignedSessionAndStatus(
+				anyLong(), any(LocalDate.class), anyString(), eq("APPROVED"))).thenReturn(approvedCount);
+
+		return new SlotBookingService(slotRepository, registrationRepository, mock(SchedulerLockService.class),
+				mock(PlatformTransactionManager.class), "optimistic", "database");
+	}
+
+	@Test
+	void parallelBookingsFillSlotExactlyWithoutExceedingIt() throws Exception {
+		SlotRow row = new SlotRow(0, MAX_PATIENTS);
+		SlotBookingService service = service(row, 0);
+
+		ExecutorService pool = Executors.newFixedThreadPool(64);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Boolean>> futures = new ArrayList<>();
+		for (int i = 0; i < BOOKINGS; i++) {
+			futures.add(pool.submit(() -> {
+				start.await();
+				return service.reserveSeat(DOCTOR_ID, DATE, TIME_SLOT);
+			}));
+		}
+		start.countDown();
+
+		int reserved = 0;
+		for (Future<Boolean> future : futures) {
+			if (future.get()) {
+				reserved++;
+			}
+		}
+		pool.shutdown();
+
+		// tranh chap khong lam mat cho: du 20, khong hon
+		assertEquals(MAX_PATIENTS, reserved);
+		assertEquals(MAX_PATIENTS, row.occupied());
+	}
+
+	@Test
+	void sequentialBookingsFillSlotExactly() {
+		SlotRow row = new SlotRow(0, MAX_PATIENTS);
+		SlotBookingService service = service(row, 0);
+
+		int reserved = 0;
+		for (int i = 0; i < MAX_PATIENTS + 5; i++) {
+			if (service.reserveSeat(DOCTOR_ID, DATE, TIME_SLOT)) {
+				reserved++;
+			}
+		}
+
+		assertEquals(MAX_PATIENTS, reserved);
+		assertEquals(MAX_PATIENTS, row.occupied());
+	}
+
+	@Test
+	void legacySlotIsSeededFromApprovedCount() {
+		// slot cu chua co occupied_count, da co 19 don duyet -> chi con 1 cho
+		SlotRow row = new SlotRow(null, MAX_PATIENTS);
+		SlotBookingService service = service(row, MAX_PATIENTS - 1);
+
+		assertTrue(service.reserveSeat(DOCTOR_ID, DATE, TIME_SLOT));
+		assertFalse(service.reserveSeat(DOCTOR_ID, DATE, TIME_SLOT));
+		assertEquals(MAX_PATIENTS, row.occupied());
+	}
+
+	@Test
+	void missingSlotIsCreatedFromApprovedCount() {
+		SlotRow row = new SlotRow(null, MAX_PATIENTS);
+		row.exists = false;
+		SlotBookingService service = service(row, 3);
+
+		assertTrue(service.reserveSeat(DOCTOR_ID, DATE, TIME_SLOT));
+		assertEquals(4, row.occupied());
+	}
+
+	@Test
+	void cancelledReservationReturnsTheSeat() {
+		SlotRow row = new SlotRow(MAX_PATIENTS - 1, MAX_PATIENTS);
+		SlotBookingService service = service(row, 0);
+
+		assertTrue(service.reserveSeat(DOCTOR_ID, DATE, TIME_SLOT));
+		assertFalse(service.reserveSeat(DOCTOR_ID, DATE, TIME_SLOT));
+		service.cancelReservation(DOCTOR_ID, DATE, TIME_SLOT);
+		assertEquals(MAX_PATIENTS - 1, row.occupied());
+		assertTrue(service.reserveSeat(DOCTOR_ID, DATE, TIME_SLOT));
+	}
+
+	@Test
+	void counterModeRefusesToStartWithMultiNodeBroker() {
+		// so cai bo nho cua tung node khong chan duoc node khac duyet vuot suc chua
+		assertThrows(IllegalStateException.class, () -> new SlotBookingService(mock(DoctorSlotRepository.class),
+				mock(PatientRegistrationRepository.class), mock(SchedulerLockService.class),
+				mock(PlatformTransactionManager.class), "counter", "database"));
+		assertFalse(new SlotBookingService(mock(DoctorSlotRepository.class),
+				mock(PatientRegistrationRepository.class), mock(SchedulerLockService.class),
+				mock(PlatformTransactionManager.class), "counter", "simple").isOptimistic());
+	}
+}
@@ -0,0 +1,193 @@
+package com.example.clinic_backend.service;
+
+import com.example.clinic_backend.event.RegistrationStatusChangedEvent;
+import com.example.clinic_backend.model.PatientRegistration;
+import com.example.clinic_backend.repository.DoctorSlotRepository;
+import com.example.clinic_backend.repository.PatientRegistrationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SlotCapacityLedgerTests {
+
+	private static final Long DOCTOR = 7L;
+	private static final LocalDate DATE = LocalDate.of(2025, 3, 20);
+	private static final String SLOT = "08:00-09:00";
+
+	// don APPROVED da commit trong database: id -> khung gio
+	private final Map<Long, String> approved = new ConcurrentHashMap<>();
+	private final AtomicLong ids = new AtomicLong(100);
+	private volatile CountDownLatch seedStarted = new CountDownLatch(0);
+	private volatile CountDownLatch seedRelease = new CountDownLatch(0);
+	private final SlotCapacityLedger ledger;
+
+	SlotCapacityLedgerTests() {
+		PatientRegistrationRepository registrationRepository = mock(PatientRegistrationRepository.class);
+		when(registrationRepository.findApprovedIdsBySession(anyLong(), any())).thenAnswer(inv -> {
+			List<Object[]> rows = new ArrayList<>();
+			approved.forEach((id, session) -> rows.add(new Object[]{session, id}));
+			// gia lap query nap cham: doc xong roi moi cho
+			seedStarted.countDown();
+			seedRelease.await();
+			return rows;
+		});
+		ledger = new SlotCapacityLedger(registrationRepository, mock(DoctorSlotRepository.class));
+	}
+
+	@AfterEach
+	void clearSynchronization() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	private PatientRegistration registration() {
+		PatientRegistration registration = new PatientRegistration();
+		registration.setDoctorId(DOCTOR);
+		registration.setAppointmentDate(DATE);
+		return registration;
+	}
+
+	// duyet don trong transaction: giu cho, luu, ket thuc transaction
+	private boolean approveInTransaction(PatientRegistration registration, boolean commit) {
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			if (!ledger.tryReserve(registration, SLOT)) {
+				return false;
+			}
+			registration.setId(ids.incrementAndGet());
+			registration.setAssignedSession(SLOT);
+			registration.setStatus("APPROVED");
+			if (commit) {
+				approved.put(registration.getId(), SLOT);
+			}
+			int status = commit ? TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK;
+			List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+			TransactionSynchronizationManager.clearSynchronization();
+			synchronizations.forEach(s -> s.afterCompletion(status));
+			if (commit) {
+				ledger.onRegistrationStatusChanged(new RegistrationStatusChangedEvent(registration, "PENDING"));
+			}
+			return true;
+		} finally {
+			clearSynchronization();
+		}
+	}
+
+	@Test
+	void concurrentReservationsNeverExceedCapacity() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(16);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Boolean>> futures = new ArrayList<>();
+		for (int i = 0; i < 64; i++) {
+			futures.add(pool.submit(() -> {
+				start.await();
+				return approveInTransaction(registration(), true);
+			}));
+		}
+		start.countDown();
+		int admitted = 0;
+		for (Future<Boolean> future : futures) {
+			if (future.get()) {
+				admitted++;
+			}
+		}
+		pool.shutdown();
+
+		// suc chua mac dinh 10
+		assertEquals(10, admitted);
+		assertEquals(10, approved.size());
+		assertEquals(10, ledger.getApprovedCount(DOCTOR, DATE, SLOT));
+		assertFalse(ledger.hasCapacity(DOCTOR, DATE, SLOT));
+	}
+
+	@Test
+	void rolledBackReservationReleasesSeat() {
+		for (int i = 0; i < 9; i++) {
+			assertTrue(approveInTransaction(registration(), true));
+		}
+		assertTrue(approveInTransaction(registration(), false));
+
+		assertEquals(9, ledger.getApprovedCount(DOCTOR, DATE, SLOT));
+		assertTrue(ledger.hasCapacity(DOCTOR, DATE, SLOT));
+		assertTrue(approveInTransaction(registration(), true));
+		assertFalse(approveInTransaction(registration(), true));
+	}
+
+	@Test
+	void seedAndAfterCommitEventCountEachRegistrationOnce() {
+		// don 1 da commit truoc khi nap: lan nap da thay, su kien sau commit khong cong them
+		PatientRegistration registration = registration();
+		registration.setId(1L);
+		registration.setAssignedSession(SLOT);
+		registration.setStatus("APPROVED");
+		approved.put(1L, SLOT);
+
+		assertEquals(1, ledger.getApprovedCount(DOCTOR, DATE, SLOT));
+		ledger.onRegistrationStatusChanged(new RegistrationStatusChangedEvent(registration, "PENDING"));
+		ledger.onRegistrationStatusChanged(new RegistrationStatusChangedEvent(registration, "PENDING"));
+		assertEquals(1, ledger.getApprovedCount(DOCTOR, DATE, SLOT));
+
+		registration.setStatus("CANCELLED");
+		approved.remove(1L);
+		ledger.onRegistrationStatusChanged(new RegistrationStatusChangedEvent(registration, "APPROVED"));
+		ledger.onRegistrationStatusChanged(new RegistrationStatusChangedEvent(registration, "APPROVED"));
+		assertEquals(0, ledger.getApprovedCount(DOCTOR, DATE, SLOT));
+	}
+
+	@Test
+	void eventArrivingDuringSeedIsAppliedAfterSeedByRegistrationId() throws Exception {
+		approved.put(1L, SLOT);
+		seedStarted = new CountDownLatch(1);
+		seedRelease = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+
+		// lan nap doc database truoc khi don 2 commit va don 1 bi huy
+		Future<Integer> seed = pool.submit(() -> ledger.getApprovedCount(DOCTOR, DATE, SLOT));
+		assertTrue(seedStarted.await(5, TimeUnit.SECONDS));
+
+		PatientRegistration added = registration();
+		added.setId(2L);
+		added.setAssignedSession(SLOT);
+		added.setStatus("APPROVED");
+		PatientRegistration cancelled = registration();
+		cancelled.setId(1L);
+		cancelled.setAssignedSession(SLOT);
+		cancelled.setStatus("CANCELLED");
+		Future<?> events = pool.submit(() -> {
+			ledger.onRegistrationStatusChanged(new RegistrationStatusChangedEvent(added, "PENDING"));
+			ledger.onRegistrationStatusChanged(new RegistrationStatusChangedEvent(cancelled, "APPROVED"));
+		});
+
+		// su kien cho lan nap xong, khong bi bo qua
+		Thread.sleep(100);
+		assertFalse(events.isDone());
+		seedRelease.countDown();
+		seed.get(5, TimeUnit.SECONDS);
+		events.get(5, TimeUnit.SECONDS);
+		pool.shutdown();
+
+		assertEquals(1, ledger.getApprovedCount(DOCTOR, DATE, SLOT));
+	}
+}
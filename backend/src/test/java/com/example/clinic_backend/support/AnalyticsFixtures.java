@@ -0,0 +1,117 @@
+package com.example.clinic_backend.support;
+
+import com.example.clinic_backend.model.Invoice;
+import com.example.clinic_backend.model.PatientRegistration;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Du lieu mau dung chung cho test phan tich (cube lich hen, thong ke hoa don) va test repository tren MySQL.
+// Cung seed nen ket qua gop trong bo nho (repository gia lap cua test service) doi chieu duoc voi query native that.
+public final class AnalyticsFixtures {
+
+	public static final String[] DEPARTMENTS = {"Nội khoa", "Nhi khoa", "Da liễu", "Tai mũi họng"};
+	public static final String[] SLOTS = {"07:00-08:00", "08:00-09:00", "09:00-10:00", "14:00-15:00", null};
+	public static final String[] STATUSES = {"APPROVED", "COMPLETED", "CANCELLED", "PENDING", "NEEDS_MANUAL_REVIEW"};
+	public static final String[] PAYMENT_METHODS = {"VNPAY", "WALLET", "CASH", null};
+
+	private AnalyticsFixtures() {
+	}
+
+	// lich hen ngau nhien (co dinh seed) cho 5 bac si; id danh tu 1, dat lai null truoc khi luu qua JPA
+	public static List<PatientRegistration> registrations(LocalDate from, int days, int perDay) {
+		Random random = new Random(7);
+		List<PatientRegistration> registrations = new ArrayList<>();
+		long id = 1;
+		for (int day = 0; day < days; day++) {
+			for (int i = 0; i < perDay; i++) {
+				PatientRegistration registration = new PatientRegistration();
+				registration.setId(id);
+				registration.setDoctorId(1L + random.nextInt(5));
+				registration.setDepartment(DEPARTMENTS[random.nextInt(DEPARTMENTS.length)]);
+				registration.setAppointmentDate(from.plusDays(day));
+				registration.setAssignedSession(SLOTS[random.nextInt(SLOTS.length)]);
+				registration.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+				registration.setExaminationStatus(random.nextInt(6) == 0 ? "MISSED" : "WAITING");
+				if (random.nextBoolean()) {
+					registration.setPaymentStatus("PAID");
+					registration.setPaidAmount(BigDecimal.valueOf(150_000 + 10_000 * random.nextInt(10)));
+				} else {
+					registration.setPaymentStatus(random.nextBoolean() ? "UNPAID" : null);
+				}
+				// cot bat buoc cua bang, khong dung trong thong ke
+				registration.setFullName("Bệnh nhân " + id);
+				registration.setDob(LocalDate.of(1990, 1, 1));
+				registration.setGender("Nam");
+				registration.setPhone("0900000000");
+				registration.setEmail("patient" + id + "@example.com");
+				registration.setAddress("Hà Nội");
+				registration.setCreatedAt(from.plusDays(day).atStartOfDay().minusDays(1));
+				registrations.add(registration);
+				id++;
+			}
+		}
+		return registrations;
+	}
+
+	// dong nhu PatientRegistrationRepository.streamAnalyticsFacts
+	public static Object[] factRow(PatientRegistration r) {
+		return new Object[]{r.getDoctorId(), r.getDepartment(), r.getAppointmentDate(), r.getAssignedSession(),
+				r.getStatus(), r.getPaymentStatus(), r.getExaminationStatus(), r.getPaidAmount()};
+	}
+
+	// hoa don ngau nhien (co dinh seed), phan lon PAID; id danh tu 1
+	public static List<Invoice> invoices(LocalDate from, LocalDate to, int perDay) {
+		Random random = new Random(11);
+		List<Invoice> invoices = new ArrayList<>();
+		long id = 1;
+		for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+			for (int i = 0; i < perDay; i++) {
+				Invoice invoice = new Invoice();
+				invoice.setId(id++);
+				invoice.setInvoiceDate(date.atTime(7 + random.nextInt(12), random.nextInt(60)));
+				invoice.setAmount(BigDecimal.valueOf(100_000 + 50_000 * random.nextInt(6)));
+				invoice.setPaymentMethod(PAYMENT_METHODS[random.nextInt(PAYMENT_METHODS.length)]);
+				invoice.setStatus(random.nextInt(8) == 0 ? "CANCELLED" : "PAID");
+				invoices.add(invoice);
+			}
+		}
+		return invoices;
+	}
+
+	// ngay dau ky (DAY / WEEK bat dau thu 2 / MONTH) nhu CASE cua InvoiceRepository.aggregateByPeriod
+	public static LocalDate periodStart(LocalDate date, String unit) {
+		switch (unit) {
+			case "MONTH":
+				return date.withDayOfMonth(1);
+			case "WEEK":
+				return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+			default:
+				return date;
+		}
+	}
+
+	// gop trong bo nho nhu InvoiceRepository.aggregateByPeriod: period, status, payment_method, so hoa don, tong tien
+	public static List<Object[]> aggregateByPeriod(List<Invoice> invoices, String unit, LocalDateTime from, LocalDateTime to) {
+		Map<String, Object[]> groups = new LinkedHashMap<>();
+		for (Invoice invoice : invoices) {
+			if (invoice.getInvoiceDate().isBefore(from) || !invoice.getInvoiceDate().isBefore(to)) {
+				continue;
+			}
+			String period = periodStart(invoice.getInvoiceDate().toLocalDate(), unit).toString();
+			Object[] row = groups.computeIfAbsent(period + "|" + invoice.getStatus() + "|" + invoice.getPaymentMethod(),
+					k -> new Object[]{period, invoice.getStatus(), invoice.getPaymentMethod(), 0L, BigDecimal.ZERO});
+			row[3] = (Long) row[3] + 1;
+			row[4] = ((BigDecimal) row[4]).add(invoice.getAmount());
+		}
+		return new ArrayList<>(groups.values());
+	}
+}